@@ -134,6 +134,14 @@ public final class Globals {
             org.apache.coyote.Constants.SENDFILE_FILE_END_ATTR;
 
 
+    /**
+     * 由servlet使用的请求属性, 告诉连接器响应是静态资源, 以便 HTTP/2 连接器从它的 Referer 学习推送集合.
+     * 值类型是{@code java.lang.Boolean}.
+     */
+    public static final String PUSH_STATIC_RESOURCE_ATTR =
+            org.apache.coyote.Constants.PUSH_STATIC_RESOURCE_ATTR;
+
+
     /**
      * 由RemoteIpFilter设置的请求属性, RemoteIpValve 标识连接器，当通过一个或多个代理接收请求时，与此请求关联的远程IP地址.
      * 通常通过X-Forwarded-For HTTP header提供.
@@ -0,0 +1,202 @@
+package org.apache.catalina.connector;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.tomcat.util.ExceptionUtils;
+
+/**
+ * 按组件统计 {@link CoyoteAdapter#service} 中每个请求在容器线程上分配的字节数.
+ * <p>
+ * 通过反射使用 <code>com.sun.management.ThreadMXBean</code> 读取线程已经分配的字节数, 在每个组件的前后各读取一次,
+ * 因此在不提供这个接口的 JVM 上只是不支持, 而不会失败.
+ * 读取本身的分配在创建时测量并扣除. 异步请求只统计容器线程中的部分.
+ * <p>
+ * 线程分配的统计是 JVM 范围的设置. 只在至少一个审计处于活动状态时启用, 最后一个审计 {@link #stop() 停止}时恢复之前的设置.
+ * 测量有开销, 因此只用于诊断, 默认禁用.
+ */
+final class AllocationAudit {
+
+    static final int PARSE = 0;
+    static final int CONTAINER = 1;
+    static final int FINISH = 2;
+    static final int LOG = 3;
+    static final int RECYCLE = 4;
+
+    private static final String[] COMPONENT_NAMES = {
+        "parse", "container", "finish", "log", "recycle"
+    };
+
+    private static final ThreadMXBean threadBean;
+    private static final Method isEnabledMethod;
+    private static final Method setEnabledMethod;
+    private static final Method getAllocatedBytesMethod;
+
+    static {
+        ThreadMXBean bean = null;
+        Method m1 = null;
+        Method m2 = null;
+        Method m3 = null;
+
+        try {
+            Class<?> clazz = Class.forName("com.sun.management.ThreadMXBean");
+            bean = ManagementFactory.getThreadMXBean();
+            if (clazz.isInstance(bean) && ((Boolean) clazz.getMethod(
+                    "isThreadAllocatedMemorySupported").invoke(bean)).booleanValue()) {
+                m1 = clazz.getMethod("isThreadAllocatedMemoryEnabled");
+                m2 = clazz.getMethod("setThreadAllocatedMemoryEnabled", boolean.class);
+                m3 = clazz.getMethod("getThreadAllocatedBytes", long.class);
+            }
+        } catch (ClassNotFoundException e) {
+            // Not a HotSpot based JVM
+        } catch (Throwable t) {
+            // LinkageError, SecurityException 等. 不支持
+            ExceptionUtils.handleThrowable(t);
+            m3 = null;
+        }
+
+        isEnabledMethod = m1;
+        setEnabledMethod = m2;
+        getAllocatedBytesMethod = m3;
+        threadBean = m3 == null ? null : bean;
+    }
+
+    /*
+     * 活动的审计的数量, 以及第一个审计启动之前线程分配统计的设置. 由 AllocationAudit.class 的锁保护.
+     */
+    private static int active = 0;
+    private static boolean previouslyEnabled;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong[] bytes = new AtomicLong[COMPONENT_NAMES.length];
+
+    /**
+     * 连续两次 {@link #mark()} 之间的分配, 每个区间扣除一次.
+     */
+    private final long overhead;
+
+    private boolean stopped = false;
+
+
+    private AllocationAudit() {
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = new AtomicLong();
+        }
+        long start = mark();
+        long end = mark();
+        overhead = Math.max(0, end - start);
+    }
+
+
+    /**
+     * 启用线程分配的统计 (如果还没有启用) 并创建一个审计.
+     *
+     * @return 新的审计, 或者 <code>null</code> 如果 JVM 不支持测量线程的分配
+     */
+    static AllocationAudit start() {
+        if (threadBean == null) {
+            return null;
+        }
+        synchronized (AllocationAudit.class) {
+            if (active == 0) {
+                try {
+                    previouslyEnabled =
+                            ((Boolean) isEnabledMethod.invoke(threadBean)).booleanValue();
+                    if (!previouslyEnabled) {
+                        setEnabledMethod.invoke(threadBean, Boolean.TRUE);
+                    }
+                } catch (IllegalAccessException | IllegalArgumentException |
+                        InvocationTargetException e) {
+                    // 例如 SecurityManager 不允许修改设置
+                    return null;
+                }
+            }
+            active++;
+        }
+        return new AllocationAudit();
+    }
+
+
+    /**
+     * 停止这个审计. 如果这是最后一个活动的审计, 恢复线程分配统计之前的设置.
+     * 之后 {@link #record(int, long)} 不再统计.
+     */
+    void stop() {
+        synchronized (AllocationAudit.class) {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+            active--;
+            if (active == 0 && !previouslyEnabled) {
+                try {
+                    setEnabledMethod.invoke(threadBean, Boolean.FALSE);
+                } catch (IllegalAccessException | IllegalArgumentException |
+                        InvocationTargetException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+
+    /**
+     * @return 当前线程到目前为止分配的字节数, 或者 -1 如果无法测量 (例如统计已经禁用)
+     */
+    long mark() {
+        try {
+            return ((Long) getAllocatedBytesMethod.invoke(threadBean,
+                    Long.valueOf(Thread.currentThread().getId()))).longValue();
+        } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+            return -1;
+        }
+    }
+
+
+    /**
+     * 将从 <code>start</code> 到现在的分配记录到组件.
+     *
+     * @param component 组件的索引
+     * @param start     组件开始时 {@link #mark()} 的值
+     *
+     * @return 现在 {@link #mark()} 的值, 作为下一个组件的开始
+     */
+    long record(int component, long start) {
+        long now = mark();
+        if (start >= 0 && now >= 0) {
+            bytes[component].addAndGet(Math.max(0, now - start - overhead));
+        }
+        return now;
+    }
+
+
+    void requestCompleted() {
+        requests.incrementAndGet();
+    }
+
+
+    /**
+     * @return 每个组件每个请求平均分配的字节数, 用于通过 JMX 报告
+     */
+    String[] getSummary() {
+        long count = requests.get();
+        String[] result = new String[COMPONENT_NAMES.length];
+        for (int i = 0; i < COMPONENT_NAMES.length; i++) {
+            long total = bytes[i].get();
+            result[i] = COMPONENT_NAMES[i] + ":" + (count == 0 ? 0 : total / count) +
+                    " bytes/request (total " + total + " bytes, " + count + " requests)";
+        }
+        return result;
+    }
+
+
+    void reset() {
+        requests.set(0);
+        for (AtomicLong b : bytes) {
+            b.set(0);
+        }
+    }
+}
@@ -189,6 +189,18 @@ public class Connector extends LifecycleMBeanBase  {
     protected boolean useIPVHosts = false;
 
 
+    /**
+     * 请求映射缓存的大小. 0 表示禁用缓存.
+     */
+    protected int mappingCacheSize = 0;
+
+
+    /**
+     * 每个请求的分配的统计, 如果禁用分配审计, 则为 <code>null</code>.
+     */
+    private volatile AllocationAudit allocationAudit = null;
+
+
     /**
      * Coyote协议处理程序类名.
      * 默认为 Coyote HTTP/1.1 protocolHandler.
@@ -785,6 +797,77 @@ public class Connector extends LifecycleMBeanBase  {
     }
 
 
+    /**
+     * @return 请求映射缓存的大小. 0 表示禁用缓存
+     */
+    public int getMappingCacheSize() {
+        return mappingCacheSize;
+    }
+
+
+    /**
+     * 设置请求映射缓存的大小. 缓存以服务器名称和未解码的URI为键, 命中时跳过URI的解码, 规范化和映射.
+     * 必须在连接器初始化之前设置.
+     *
+     * @param mappingCacheSize 缓存的条目的最大数量, 0 表示禁用缓存
+     */
+    public void setMappingCacheSize(int mappingCacheSize) {
+        this.mappingCacheSize = mappingCacheSize;
+    }
+
+
+    /**
+     * @return <code>true</code> 如果启用了分配审计
+     */
+    public boolean getAllocationAudit() {
+        return allocationAudit != null;
+    }
+
+
+    /**
+     * 启用或禁用分配审计. 启用时, 按组件 (解析, 容器, 结束, 访问日志, 回收) 统计每个请求在容器线程上分配的字节数.
+     * 可以在运行时通过 JMX 修改. 如果 JVM 不支持测量线程的分配, 则忽略.
+     *
+     * @param allocationAudit <code>true</code> 启用分配审计
+     */
+    public synchronized void setAllocationAudit(boolean allocationAudit) {
+        if (!allocationAudit) {
+            AllocationAudit audit = this.allocationAudit;
+            if (audit != null) {
+                this.allocationAudit = null;
+                audit.stop();
+            }
+        } else if (this.allocationAudit == null) {
+            this.allocationAudit = AllocationAudit.start();
+            if (this.allocationAudit == null) {
+                log.warn(sm.getString("coyoteConnector.allocationAuditUnsupported"));
+            }
+        }
+    }
+
+
+    AllocationAudit getAllocationAuditStats() {
+        return allocationAudit;
+    }
+
+
+    /**
+     * @return 每个组件每个请求平均分配的字节数, 如果禁用分配审计, 则为 <code>null</code>
+     */
+    public String[] getAllocationsPerRequest() {
+        AllocationAudit audit = allocationAudit;
+        return audit == null ? null : audit.getSummary();
+    }
+
+
+    public void resetAllocationAudit() {
+        AllocationAudit audit = allocationAudit;
+        if (audit != null) {
+            audit.reset();
+        }
+    }
+
+
     public String getExecutorName() {
         Object obj = protocolHandler.getExecutor();
         if (obj instanceof org.apache.catalina.Executor) {
@@ -987,6 +1070,9 @@ public class Connector extends LifecycleMBeanBase  {
             getService().removeConnector(this);
         }
 
+        // 恢复 JVM 范围的线程分配统计的设置
+        setAllocationAudit(false);
+
         super.destroyInternal();
     }
 
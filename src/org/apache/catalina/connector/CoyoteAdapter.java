@@ -4,7 +4,6 @@ import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.EnumSet;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.servlet.ReadListener;
 import javax.servlet.RequestDispatcher;
@@ -19,6 +18,7 @@ import org.apache.catalina.Host;
 import org.apache.catalina.Wrapper;
 import org.apache.catalina.authenticator.AuthenticatorBase;
 import org.apache.catalina.core.AsyncContextImpl;
+import org.apache.catalina.core.StandardContext;
 import org.apache.catalina.util.ServerInfo;
 import org.apache.catalina.util.SessionConfig;
 import org.apache.catalina.util.URLEncoder;
@@ -81,6 +81,11 @@ public class CoyoteAdapter implements Adapter {
     public CoyoteAdapter(Connector connector) {
         super();
         this.connector = connector;
+        if (connector.getMappingCacheSize() > 0) {
+            mappingCache = new MappingCache(connector.getMappingCacheSize());
+        } else {
+            mappingCache = null;
+        }
     }
 
 
@@ -93,6 +98,12 @@ public class CoyoteAdapter implements Adapter {
     private final Connector connector;
 
 
+    /**
+     * 请求映射的缓存, 如果禁用则为 <code>null</code>.
+     */
+    private final MappingCache mappingCache;
+
+
     /**
      * The string manager for this package.
      */
@@ -214,9 +225,7 @@ public class CoyoteAdapter implements Adapter {
             }
 
             // 检查处理器是否处于错误状态. 如果是, 马上释放.
-            AtomicBoolean error = new AtomicBoolean(false);
-            res.action(ActionCode.IS_ERROR, error);
-            if (error.get()) {
+            if (response.isCoyoteError()) {
                 if (request.isAsyncCompleting()) {
                     // 连接将被强制关闭. 需要触发调用onComplete().
                     res.action(ActionCode.ASYNC_POST_PROCESS,  null);
@@ -243,6 +252,7 @@ public class CoyoteAdapter implements Adapter {
                 }
                 Context context = request.getContext();
                 if (context != null) {
+                    recordPhases(context, req);
                     context.logAccess(request, response, time, false);
                 } else {
                     log(req, res, time);
@@ -293,18 +303,27 @@ public class CoyoteAdapter implements Adapter {
         boolean async = false;
         boolean postParseSuccess = false;
 
+        // 分配审计, 如果启用. allocated 是当前组件开始时线程已经分配的字节数
+        AllocationAudit audit = connector.getAllocationAuditStats();
+        long allocated = audit == null ? 0 : audit.mark();
+
         req.getRequestProcessor().setWorkerThreadName(THREAD_NAME.get());
 
         try {
             // 解析并设置Catalina 并配置指定的请求参数
             postParseSuccess = postParseRequest(req, request, res, response);
+            if (audit != null) {
+                allocated = audit.record(AllocationAudit.PARSE, allocated);
+            }
             if (postParseSuccess) {
                 // 检查阀门，如果支持异步
                 request.setAsyncSupported(
                         connector.getService().getContainer().getPipeline().isAsyncSupported());
                 // 调用容器
+                req.markPhase(org.apache.coyote.Constants.PHASE_SERVICE_START);
                 connector.getService().getContainer().getPipeline().getFirst().invoke(
                         request, response);
+                req.markPhase(org.apache.coyote.Constants.PHASE_SERVICE_END);
             }
             if (request.isAsync()) {
                 async = true;
@@ -329,18 +348,24 @@ public class CoyoteAdapter implements Adapter {
                 if (!request.isAsyncCompleting() && throwable != null) {
                     request.getAsyncContextInternal().setErrorState(throwable, true);
                 }
+                if (audit != null) {
+                    allocated = audit.record(AllocationAudit.CONTAINER, allocated);
+                }
             } else {
+                if (audit != null) {
+                    allocated = audit.record(AllocationAudit.CONTAINER, allocated);
+                }
                 request.finishRequest();
                 response.finishResponse();
+                if (audit != null) {
+                    allocated = audit.record(AllocationAudit.FINISH, allocated);
+                }
             }
 
         } catch (IOException e) {
             // Ignore
         } finally {
-            AtomicBoolean error = new AtomicBoolean(false);
-            res.action(ActionCode.IS_ERROR, error);
-
-            if (request.isAsyncCompleting() && error.get()) {
+            if (request.isAsyncCompleting() && response.isCoyoteError()) {
                 // 连接将被强制关闭. 需要在这里触发调用onComplete().
                 res.action(ActionCode.ASYNC_POST_PROCESS,  null);
                 async = false;
@@ -354,10 +379,14 @@ public class CoyoteAdapter implements Adapter {
                 // 如果上下文是 null, 端点很可能是关闭的, 此连接关闭，请求在不同线程中循环使用.
                 //该线程将更新访问日志，因此在此情况下不更新访问日志是可以的.
                 if (context != null) {
+                    recordPhases(context, req);
                     context.logAccess(request, response,
                             System.currentTimeMillis() - req.getStartTime(), false);
                 }
             }
+            if (audit != null) {
+                allocated = audit.record(AllocationAudit.LOG, allocated);
+            }
 
             req.getRequestProcessor().setWorkerThreadName(null);
 
@@ -366,6 +395,20 @@ public class CoyoteAdapter implements Adapter {
                 request.recycle();
                 response.recycle();
             }
+            if (audit != null) {
+                audit.record(AllocationAudit.RECYCLE, allocated);
+                audit.requestCompleted();
+            }
+        }
+    }
+
+
+    /**
+     * 将已完成请求的各阶段延迟记录到 Context 的统计中.
+     */
+    private static void recordPhases(Context context, org.apache.coyote.Request req) {
+        if (context instanceof StandardContext) {
+            ((StandardContext) context).getPhaseStats().record(req);
         }
     }
 
@@ -546,7 +589,34 @@ public class CoyoteAdapter implements Adapter {
 
         MessageBytes decodedURI = req.decodedURI();
 
-        if (undecodedURI.getType() == MessageBytes.T_BYTES) {
+        MessageBytes serverName;
+        if (connector.getUseIPVHosts()) {
+            serverName = req.localName();
+            if (serverName.isNull()) {
+                // well, they did ask for it
+                res.action(ActionCode.REQ_LOCAL_NAME_ATTRIBUTE, null);
+            }
+        } else {
+            serverName = req.serverName();
+        }
+
+        // 缓存的映射跳过路径参数解析, 解码, 规范化和第一次映射.
+        // 没有服务器名称的请求不使用缓存, 因为映射器将默认主机名设置到服务器名称中
+        String mappingCacheServerName = null;
+        long mappingModificationCount = 0;
+        MappingCache.Entry cachedMapping = null;
+        if (mappingCache != null && undecodedURI.getType() == MessageBytes.T_BYTES &&
+                !serverName.isNull()) {
+            mappingCacheServerName = serverName.toString();
+            mappingModificationCount =
+                    connector.getService().getMapper().getModificationCount();
+            cachedMapping = mappingCache.get(mappingCacheServerName,
+                    undecodedURI.getByteChunk(), mappingModificationCount);
+        }
+
+        if (cachedMapping != null) {
+            cachedMapping.restoreURI(decodedURI);
+        } else if (undecodedURI.getType() == MessageBytes.T_BYTES) {
             // 将原始URI复制到 decodedURI
             decodedURI.duplicate(undecodedURI);
 
@@ -600,26 +670,27 @@ public class CoyoteAdapter implements Adapter {
         }
 
         // Request mapping.
-        MessageBytes serverName;
-        if (connector.getUseIPVHosts()) {
-            serverName = req.localName();
-            if (serverName.isNull()) {
-                // well, they did ask for it
-                res.action(ActionCode.REQ_LOCAL_NAME_ATTRIBUTE, null);
-            }
-        } else {
-            serverName = req.serverName();
-        }
-
         // 第二映射循环的版本和希望得到那个版本的Context
         String version = null;
         Context versionContext = null;
         boolean mapRequired = true;
 
         while (mapRequired) {
-            // 这将默认映射最新版本
-            connector.getService().getMapper().map(serverName, decodedURI,
-                    version, request.getMappingData());
+            if (cachedMapping != null) {
+                cachedMapping.restoreMapping(request.getMappingData());
+                // 只使用一次, 任何重新映射都需要映射器
+                cachedMapping = null;
+            } else {
+                // 这将默认映射最新版本
+                connector.getService().getMapper().map(serverName, decodedURI,
+                        version, request.getMappingData());
+                if (mappingCacheServerName != null && version == null) {
+                    mappingCache.put(mappingCacheServerName, undecodedURI.getByteChunk(),
+                            mappingModificationCount, decodedURI, request.getMappingData());
+                    // 只缓存第一次映射的结果
+                    mappingCacheServerName = null;
+                }
+            }
 
             // 如果在这一点上没有上下文, 很可能没有部署根上下文
             if (request.getContext() == null) {
@@ -0,0 +1,216 @@
+package org.apache.catalina.connector;
+
+import java.util.Arrays;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Host;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.mapper.MappingData;
+import org.apache.catalina.servlet4preview.http.MappingMatch;
+import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.buf.MessageBytes;
+
+/**
+ * 缓存请求映射的结果, 以 (服务器名称, 未解码的URI字节) 为键, 以便热点URI跳过解码, 规范化和映射.
+ * <p>
+ * 缓存是直接映射的: 每个键只能位于一个槽中, 新的条目覆盖槽中现有的条目, 因此大小是有界的, 查找不需要加锁或分配.
+ * 条目是不可变的. 条目记录了映射时 {@link org.apache.catalina.mapper.Mapper#getModificationCount()} 的值,
+ * 在 MapperListener 添加或删除主机, 上下文或包装器之后, 条目不再匹配. 缓存发现修改次数改变时清除所有的条目,
+ * 以免重新加载或删除的上下文 (及其类加载器) 仍然可以从缓存访问.
+ * <p>
+ * 只缓存不依赖于 Web 应用资源的映射结果. 欢迎文件 (以 '/' 结尾的 URI) 和默认 servlet 的映射检查资源是否存在,
+ * 因此不缓存.
+ */
+final class MappingCache {
+
+    private final Entry[] entries;
+    private final int mask;
+
+    /**
+     * 条目对应的映射器的修改次数. 修改次数只增加.
+     */
+    private volatile long modificationCount = -1;
+
+
+    /**
+     * @param size 槽的数量, 向上取整到 2 的幂
+     */
+    MappingCache(int size) {
+        int capacity = size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+        entries = new Entry[capacity];
+        mask = capacity - 1;
+    }
+
+
+    /**
+     * @param serverName        请求的服务器名称
+     * @param uri               未解码的请求URI
+     * @param modificationCount 映射器当前的修改次数
+     *
+     * @return 缓存的映射, 或者 <code>null</code>
+     */
+    Entry get(String serverName, ByteChunk uri, long modificationCount) {
+        checkModificationCount(modificationCount);
+        Entry entry = entries[hash(serverName, uri) & mask];
+        if (entry == null || entry.modificationCount != modificationCount ||
+                !entry.matches(serverName, uri) || entry.context.getPaused()) {
+            return null;
+        }
+        return entry;
+    }
+
+
+    /**
+     * 如果可以缓存, 缓存映射的结果.
+     *
+     * @param serverName        请求的服务器名称
+     * @param uri               未解码的请求URI
+     * @param modificationCount 映射之前读取的映射器的修改次数
+     * @param decodedURI        解码和规范化的URI
+     * @param mappingData       映射的结果
+     */
+    void put(String serverName, ByteChunk uri, long modificationCount,
+            MessageBytes decodedURI, MappingData mappingData) {
+        if (!isCacheable(uri, decodedURI, mappingData)) {
+            return;
+        }
+        checkModificationCount(modificationCount);
+        int index = hash(serverName, uri) & mask;
+        Entry entry = new Entry(serverName, uri, modificationCount, decodedURI, mappingData);
+        entries[index] = entry;
+        if (this.modificationCount != modificationCount && entries[index] == entry) {
+            // 映射器在映射期间被修改, 或者另一个线程在此期间清除了缓存. 不保留可能已经过时的条目
+            entries[index] = null;
+        }
+    }
+
+
+    /*
+     * 如果映射器被修改, 清除所有的条目. 先发布新的修改次数再清除, 因此并发的 put() 要么看到新的修改次数并删除自己的条目,
+     * 要么在清除之前写入条目.
+     */
+    private void checkModificationCount(long modificationCount) {
+        if (modificationCount <= this.modificationCount) {
+            return;
+        }
+        synchronized (this) {
+            if (modificationCount > this.modificationCount) {
+                this.modificationCount = modificationCount;
+                Arrays.fill(entries, null);
+            }
+        }
+    }
+
+
+    private static boolean isCacheable(ByteChunk uri, MessageBytes decodedURI,
+            MappingData mappingData) {
+        if (mappingData.context == null || mappingData.wrapper == null ||
+                !mappingData.redirectPath.isNull() || mappingData.context.getPaused()) {
+            return false;
+        }
+        if (mappingData.matchType == MappingMatch.DEFAULT ||
+                mappingData.matchType == MappingMatch.UNKNOWN) {
+            return false;
+        }
+        // 路径参数 (例如会话ID) 设置在请求中, 所以必须解析
+        if (uri.indexOf(';', 0) >= 0) {
+            return false;
+        }
+        String path = decodedURI.toString();
+        return path.length() > 0 && path.charAt(path.length() - 1) != '/';
+    }
+
+
+    private static int hash(String serverName, ByteChunk uri) {
+        int h = serverName.hashCode();
+        byte[] buf = uri.getBuffer();
+        int end = uri.getEnd();
+        for (int i = uri.getStart(); i < end; i++) {
+            h = 31 * h + buf[i];
+        }
+        // 混合高位, 因为槽由低位选择
+        return h ^ (h >>> 16);
+    }
+
+
+    static final class Entry {
+
+        private final String serverName;
+        private final byte[] uri;
+        private final long modificationCount;
+        private final String decodedURI;
+
+        private final Host host;
+        private final Context context;
+        private final int contextSlashCount;
+        private final Context[] contexts;
+        private final Wrapper wrapper;
+        private final boolean jspWildCard;
+        private final String contextPath;
+        private final String requestPath;
+        private final String wrapperPath;
+        private final String pathInfo;
+        private final MappingMatch matchType;
+
+        private Entry(String serverName, ByteChunk uri, long modificationCount,
+                MessageBytes decodedURI, MappingData mappingData) {
+            this.serverName = serverName;
+            this.uri = new byte[uri.getLength()];
+            System.arraycopy(uri.getBuffer(), uri.getStart(), this.uri, 0, this.uri.length);
+            this.modificationCount = modificationCount;
+            this.decodedURI = decodedURI.toString();
+            host = mappingData.host;
+            context = mappingData.context;
+            contextSlashCount = mappingData.contextSlashCount;
+            contexts = mappingData.contexts;
+            wrapper = mappingData.wrapper;
+            jspWildCard = mappingData.jspWildCard;
+            contextPath = mappingData.contextPath.toString();
+            requestPath = mappingData.requestPath.toString();
+            wrapperPath = mappingData.wrapperPath.toString();
+            pathInfo = mappingData.pathInfo.toString();
+            matchType = mappingData.matchType;
+        }
+
+
+        private boolean matches(String serverName, ByteChunk uri) {
+            if (uri.getLength() != this.uri.length || !serverName.equals(this.serverName)) {
+                return false;
+            }
+            byte[] buf = uri.getBuffer();
+            int start = uri.getStart();
+            for (int i = 0; i < this.uri.length; i++) {
+                if (buf[start + i] != this.uri[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+
+        /**
+         * 设置解码的URI, 代替解析路径参数, 解码和规范化.
+         */
+        void restoreURI(MessageBytes decodedURI) {
+            decodedURI.setString(this.decodedURI);
+        }
+
+
+        /**
+         * 设置映射的结果, 代替映射.
+         */
+        void restoreMapping(MappingData mappingData) {
+            mappingData.host = host;
+            mappingData.context = context;
+            mappingData.contextSlashCount = contextSlashCount;
+            mappingData.contexts = contexts;
+            mappingData.wrapper = wrapper;
+            mappingData.jspWildCard = jspWildCard;
+            mappingData.contextPath.setString(contextPath);
+            mappingData.requestPath.setString(requestPath);
+            mappingData.wrapperPath.setString(wrapperPath);
+            mappingData.pathInfo.setString(pathInfo);
+            mappingData.matchType = matchType;
+        }
+    }
+}
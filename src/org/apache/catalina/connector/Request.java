@@ -1,6 +1,7 @@
 package org.apache.catalina.connector;
 
 import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -79,12 +80,12 @@ import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.InstanceManager;
 import org.apache.tomcat.util.ExceptionUtils;
 import org.apache.tomcat.util.buf.B2CConverter;
-import org.apache.tomcat.util.buf.ByteChunk;
 import org.apache.tomcat.util.buf.MessageBytes;
 import org.apache.tomcat.util.buf.StringUtils;
 import org.apache.tomcat.util.buf.UDecoder;
 import org.apache.tomcat.util.http.CookieProcessor;
 import org.apache.tomcat.util.http.FastHttpDateFormat;
+import org.apache.tomcat.util.http.FormDecoder;
 import org.apache.tomcat.util.http.Parameters;
 import org.apache.tomcat.util.http.Parameters.FailReason;
 import org.apache.tomcat.util.http.ServerCookie;
@@ -276,10 +277,9 @@ public class Request implements org.apache.catalina.servlet4preview.http.HttpSer
 
 
     /**
-     * Post 数据缓冲区.
+     * 表单主体的解码器. 如果主体中的参数还没有全部解析, 则没有完成.
      */
-    protected static final int CACHED_POST_LEN = 8192;
-    protected byte[] postData = null;
+    protected final FormDecoder formDecoder = new FormDecoder();
 
 
     /**
@@ -414,6 +414,7 @@ public class Request implements org.apache.catalina.servlet4preview.http.HttpSer
         userPrincipal = null;
         subject = null;
         parametersParsed = false;
+        formDecoder.recycle();
         if (parts != null) {
             for (Part part: parts) {
                 try {
@@ -442,7 +443,9 @@ public class Request implements org.apache.catalina.servlet4preview.http.HttpSer
         recycleSessionInfo();
         recycleCookieInfo(false);
 
-        if (Globals.IS_SECURITY_ENABLED || Connector.RECYCLE_FACADES) {
+        // 只有 getParameterMap() 返回的映射 (已锁定) 可能被应用程序持有, 需要替换
+        if (parameterMap.isLocked() &&
+                (Globals.IS_SECURITY_ENABLED || Connector.RECYCLE_FACADES)) {
             parameterMap = new ParameterMap<>();
         } else {
             parameterMap.setLocked(false);
@@ -1004,6 +1007,8 @@ public class Request implements org.apache.catalina.servlet4preview.http.HttpSer
                 (sm.getString("coyoteRequest.getInputStream.ise"));
         }
 
+        // 已经开始解析的表单主体属于参数
+        finishParameters();
         usingInputStream = true;
         if (inputStream == null) {
             inputStream = new CoyoteInputStream(inputBuffer);
@@ -1063,7 +1068,14 @@ public class Request implements org.apache.catalina.servlet4preview.http.HttpSer
         if (!parametersParsed) {
             parseParameters();
         }
-        return coyoteRequest.getParameters().getParameter(name);
+        Parameters parameters = coyoteRequest.getParameters();
+        String value = parameters.getParameter(name);
+        // 只读取表单主体直到找到这个参数
+        while (value == null && !formDecoder.isFinished()) {
+            parseFormParameters();
+            value = parameters.getParameter(name);
+        }
+        return value;
     }
 
 
@@ -1102,6 +1114,7 @@ public class Request implements org.apache.catalina.servlet4preview.http.HttpSer
         if (!parametersParsed) {
             parseParameters();
         }
+        finishParameters();
         return coyoteRequest.getParameters().getParameterNames();
     }
 
@@ -1117,6 +1130,7 @@ public class Request implements org.apache.catalina.servlet4preview.http.HttpSer
         if (!parametersParsed) {
             parseParameters();
         }
+        finishParameters();
         return coyoteRequest.getParameters().getParameterValues(name);
     }
 
@@ -1145,6 +1159,7 @@ public class Request implements org.apache.catalina.servlet4preview.http.HttpSer
                 (sm.getString("coyoteRequest.getReader.ise"));
         }
 
+        finishParameters();
         usingReader = true;
         inputBuffer.checkConverter();
         if (reader == null) {
@@ -3044,61 +3059,10 @@ public class Request implements org.apache.catalina.servlet4preview.http.HttpSer
                     parameters.setParseFailedReason(FailReason.POST_TOO_LARGE);
                     return;
                 }
-                byte[] formData = null;
-                if (len < CACHED_POST_LEN) {
-                    if (postData == null) {
-                        postData = new byte[CACHED_POST_LEN];
-                    }
-                    formData = postData;
-                } else {
-                    formData = new byte[len];
-                }
-                try {
-                    if (readPostBody(formData, len) != len) {
-                        parameters.setParseFailedReason(FailReason.REQUEST_BODY_INCOMPLETE);
-                        return;
-                    }
-                } catch (IOException e) {
-                    // Client disconnect
-                    Context context = getContext();
-                    if (context != null && context.getLogger().isDebugEnabled()) {
-                        context.getLogger().debug(
-                                sm.getString("coyoteRequest.parseParameters"),
-                                e);
-                    }
-                    parameters.setParseFailedReason(FailReason.CLIENT_DISCONNECT);
-                    return;
-                }
-                parameters.processParameters(formData, 0, len);
+                formDecoder.start(parameters, getStream(), len, -1);
             } else if ("chunked".equalsIgnoreCase(
                     coyoteRequest.getHeader("transfer-encoding"))) {
-                byte[] formData = null;
-                try {
-                    formData = readChunkedPostBody();
-                } catch (IllegalStateException ise) {
-                    // chunkedPostTooLarge error
-                    parameters.setParseFailedReason(FailReason.POST_TOO_LARGE);
-                    Context context = getContext();
-                    if (context != null && context.getLogger().isDebugEnabled()) {
-                        context.getLogger().debug(
-                                sm.getString("coyoteRequest.parseParameters"),
-                                ise);
-                    }
-                    return;
-                } catch (IOException e) {
-                    // Client disconnect
-                    parameters.setParseFailedReason(FailReason.CLIENT_DISCONNECT);
-                    Context context = getContext();
-                    if (context != null && context.getLogger().isDebugEnabled()) {
-                        context.getLogger().debug(
-                                sm.getString("coyoteRequest.parseParameters"),
-                                e);
-                    }
-                    return;
-                }
-                if (formData != null) {
-                    parameters.processParameters(formData, 0, formData.length);
-                }
+                formDecoder.start(parameters, getStream(), -1, connector.getMaxPostSize());
             }
             success = true;
         } finally {
@@ -3111,65 +3075,55 @@ public class Request implements org.apache.catalina.servlet4preview.http.HttpSer
 
 
     /**
-     * 读取数组中的POST正文.
-     *
-     * @param body 将读取主体的字节数组
-     * @param len 主体长度
-     * @return 已读取的字节计数
-     * @throws IOException 如果发生了IO异常
+     * 解析表单主体中的下一块参数.
+     * <p>
+     * 如果之后的一块失败 (主体太大, 不完整或者客户端断开连接), 之前的块中解析的参数仍然可见, 而不是丢弃主体中所有的参数.
+     * 需要拒绝这样的请求的应用程序应检查 {@link Globals#PARAMETER_PARSE_FAILED_ATTR}, 它会先读取主体的剩余部分.
      */
-    protected int readPostBody(byte[] body, int len)
-        throws IOException {
+    protected void parseFormParameters() {
 
-        int offset = 0;
-        do {
-            int inputLen = getStream().read(body, offset, len - offset);
-            if (inputLen <= 0) {
-                return offset;
+        Parameters parameters = coyoteRequest.getParameters();
+        boolean success = false;
+        try {
+            formDecoder.decodeNext();
+            success = true;
+        } catch (EOFException e) {
+            parameters.setParseFailedReason(FailReason.REQUEST_BODY_INCOMPLETE);
+        } catch (IllegalStateException ise) {
+            // 分块的主体超过 maxPostSize
+            checkSwallowInput();
+            parameters.setParseFailedReason(FailReason.POST_TOO_LARGE);
+            Context context = getContext();
+            if (context != null && context.getLogger().isDebugEnabled()) {
+                context.getLogger().debug(
+                        sm.getString("coyoteRequest.parseParameters"),
+                        ise);
             }
-            offset += inputLen;
-        } while ((len - offset) > 0);
-        return len;
+        } catch (IOException e) {
+            // Client disconnect
+            parameters.setParseFailedReason(FailReason.CLIENT_DISCONNECT);
+            Context context = getContext();
+            if (context != null && context.getLogger().isDebugEnabled()) {
+                context.getLogger().debug(
+                        sm.getString("coyoteRequest.parseParameters"),
+                        e);
+            }
+        } finally {
+            if (!success) {
+                parameters.setParseFailedReason(FailReason.UNKNOWN);
+            }
+        }
 
     }
 
 
     /**
-     * 读取分块的post主体.
-     *
-     * @return 作为字节数组的post主体
-     * @throws IOException 如果发生了IO异常
+     * 解析表单主体中剩余的所有参数.
      */
-    protected byte[] readChunkedPostBody() throws IOException {
-        ByteChunk body = new ByteChunk();
-
-        byte[] buffer = new byte[CACHED_POST_LEN];
-
-        int len = 0;
-        while (len > -1) {
-            len = getStream().read(buffer, 0, CACHED_POST_LEN);
-            if (connector.getMaxPostSize() >= 0 &&
-                    (body.getLength() + len) > connector.getMaxPostSize()) {
-                // Too much data
-                checkSwallowInput();
-                throw new IllegalStateException(
-                        sm.getString("coyoteRequest.chunkedPostTooLarge"));
-            }
-            if (len > 0) {
-                body.append(buffer, 0, len);
-            }
+    protected void finishParameters() {
+        while (!formDecoder.isFinished()) {
+            parseFormParameters();
         }
-        if (body.getLength() == 0) {
-            return null;
-        }
-        if (body.getLength() < body.getBuffer().length) {
-            int length = body.getLength();
-            byte[] result = new byte[length];
-            System.arraycopy(body.getBuffer(), 0, result, 0, length);
-            return result;
-        }
-
-        return body.getBuffer();
     }
 
 
@@ -3305,6 +3259,10 @@ public class Request implements org.apache.catalina.servlet4preview.http.HttpSer
                 new SpecialAttributeAdapter() {
                     @Override
                     public Object get(Request request, String name) {
+                        // 表单主体的解析失败可能位于尚未读取的部分
+                        if (request.isParametersParsed()) {
+                            request.finishParameters();
+                        }
                         if (request.getCoyoteRequest().getParameters()
                                 .isParseFailed()) {
                             return Boolean.TRUE;
@@ -3321,6 +3279,9 @@ public class Request implements org.apache.catalina.servlet4preview.http.HttpSer
                 new SpecialAttributeAdapter() {
                     @Override
                     public Object get(Request request, String name) {
+                        if (request.isParametersParsed()) {
+                            request.finishParameters();
+                        }
                         return request.getCoyoteRequest().getParameters().getParseFailedReason();
                     }
 
@@ -18,6 +18,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.ServletOutputStream;
@@ -191,6 +192,12 @@ public class Response implements HttpServletResponse {
     private final AtomicInteger errorState = new AtomicInteger(0);
 
 
+    /**
+     * 用于查询处理器的错误状态, 以免每个请求分配一个新的对象.
+     */
+    private final AtomicBoolean coyoteError = new AtomicBoolean(false);
+
+
     /**
      * 是否使用输出流.
      */
@@ -417,6 +424,18 @@ public class Response implements HttpServletResponse {
     }
 
 
+    /**
+     * 只能由处理这个响应的容器线程调用.
+     *
+     * @return <code>true</code> 如果处理器 (而不是应用程序) 处于错误状态
+     */
+    boolean isCoyoteError() {
+        coyoteError.set(false);
+        getCoyoteResponse().action(ActionCode.IS_ERROR, coyoteError);
+        return coyoteError.get();
+    }
+
+
     public boolean isErrorReportRequired() {
         return errorState.get() == 1;
     }
@@ -48,9 +48,9 @@ public final class ApplicationFilterChain implements FilterChain {
     // ----------------------------------------------------- Instance Variables
 
     /**
-     * Filters.
+     * Filters. 可能是由多个链共享的预编译的模板, 因此不能就地修改.
      */
-    private ApplicationFilterConfig[] filters = new ApplicationFilterConfig[0];
+    private ApplicationFilterConfig[] filters = FilterChainTemplates.NO_FILTERS;
 
 
     /**
@@ -242,25 +242,13 @@ public final class ApplicationFilterChain implements FilterChain {
     // -------------------------------------------------------- Package Methods
 
     /**
-     * 添加一个过滤器到过滤器链中.
+     * 设置过滤器链中的过滤器.
      *
-     * @param filterConfig The FilterConfig for the servlet to be executed
+     * @param filters 按执行顺序的过滤器. 数组不会被修改, 因此可以由多个链共享
      */
-    void addFilter(ApplicationFilterConfig filterConfig) {
-
-        // Prevent the same filter being added multiple times
-        for(ApplicationFilterConfig filter:filters)
-            if(filter==filterConfig)
-                return;
-
-        if (n == filters.length) {
-            ApplicationFilterConfig[] newFilters =
-                new ApplicationFilterConfig[n + INCREMENT];
-            System.arraycopy(filters, 0, newFilters, 0, n);
-            filters = newFilters;
-        }
-        filters[n++] = filterConfig;
-
+    void setFilters(ApplicationFilterConfig[] filters) {
+        this.filters = filters;
+        this.n = filters.length;
     }
 
 
@@ -268,9 +256,7 @@ public final class ApplicationFilterChain implements FilterChain {
      * 释放对该链执行的过滤器和包装器的引用.
      */
     void release() {
-        for (int i = 0; i < n; i++) {
-            filters[i] = null;
-        }
+        filters = FilterChainTemplates.NO_FILTERS;
         n = 0;
         pos = 0;
         servlet = null;
@@ -57,12 +57,12 @@ public final class ApplicationFilterFactory {
         filterChain.setServlet(servlet);
         filterChain.setServletSupportsAsync(wrapper.isAsyncSupported());
 
-        // 获取此上下文的过滤器映射
+        // 获取此上下文的预编译的过滤器链
         StandardContext context = (StandardContext) wrapper.getParent();
-        FilterMap filterMaps[] = context.findFilterMaps();
+        FilterChainTemplates templates = context.getFilterChainTemplates();
 
         // 如果没有过滤器映射
-        if ((filterMaps == null) || (filterMaps.length == 0))
+        if (templates == null)
             return (filterChain);
 
         // 获取匹配过滤器映射所需的信息
@@ -75,76 +75,15 @@ public final class ApplicationFilterFactory {
             requestPath = attribute.toString();
         }
 
-        String servletName = wrapper.getName();
-
-        // 将相关的路径映射过滤器添加到此过滤器链中
-        for (int i = 0; i < filterMaps.length; i++) {
-            if (!matchDispatcher(filterMaps[i] ,dispatcher)) {
-                continue;
-            }
-            if (!matchFiltersURL(filterMaps[i], requestPath))
-                continue;
-            ApplicationFilterConfig filterConfig = (ApplicationFilterConfig)
-                context.findFilterConfig(filterMaps[i].getFilterName());
-            if (filterConfig == null) {
-                // FIXME - log configuration problem
-                continue;
-            }
-            filterChain.addFilter(filterConfig);
-        }
-
-        // 添加与servlet名称匹配的过滤器
-        for (int i = 0; i < filterMaps.length; i++) {
-            if (!matchDispatcher(filterMaps[i] ,dispatcher)) {
-                continue;
-            }
-            if (!matchFiltersServlet(filterMaps[i], servletName))
-                continue;
-            ApplicationFilterConfig filterConfig = (ApplicationFilterConfig)
-                context.findFilterConfig(filterMaps[i].getFilterName());
-            if (filterConfig == null) {
-                // FIXME - log configuration problem
-                continue;
-            }
-            filterChain.addFilter(filterConfig);
-        }
+        // 路径映射的过滤器, 之后是与servlet名称匹配的过滤器
+        filterChain.setFilters(templates.getFilters(wrapper.getName(), dispatcher, requestPath));
 
         // 返回已完成的过滤器链
         return filterChain;
     }
 
 
-    // -------------------------------------------------------- Private Methods
-
-
-    /**
-     * 返回<code>true</code>如果上下文相对请求路径与指定过滤器映射的要求相匹配;
-     * 否则返回<code>null</code>.
-     *
-     * @param filterMap 正在检查的过滤器映射
-     * @param requestPath 此请求的上下文相对请求路径
-     */
-    private static boolean matchFiltersURL(FilterMap filterMap, String requestPath) {
-
-        // 检查特殊的 "*" URL模式, 也与命名的调度相匹配
-        if (filterMap.getMatchAllUrlPatterns())
-            return true;
-
-        if (requestPath == null)
-            return false;
-
-        // 上下文相对请求路径匹配
-        String[] testPaths = filterMap.getURLPatterns();
-
-        for (int i = 0; i < testPaths.length; i++) {
-            if (matchFiltersURL(testPaths[i], requestPath)) {
-                return true;
-            }
-        }
-
-        // No match
-        return false;
-    }
+    // ------------------------------------------------------- Package Methods
 
 
     /**
@@ -154,7 +93,7 @@ public final class ApplicationFilterFactory {
      * @param testPath 正在检查的URL映射
      * @param requestPath 上下文相对请求路径
      */
-    private static boolean matchFiltersURL(String testPath, String requestPath) {
+    static boolean matchFiltersURL(String testPath, String requestPath) {
 
         if (testPath == null)
             return false;
@@ -202,7 +141,7 @@ public final class ApplicationFilterFactory {
      * @param filterMap Filter mapping being checked
      * @param servletName Servlet name being checked
      */
-    private static boolean matchFiltersServlet(FilterMap filterMap,
+    static boolean matchFiltersServlet(FilterMap filterMap,
                                         String servletName) {
 
         if (servletName == null) {
@@ -227,7 +166,7 @@ public final class ApplicationFilterFactory {
     /**
      * 返回true, 如果调度器类型匹配FilterMap中指定的调度器类型
      */
-    private static boolean matchDispatcher(FilterMap filterMap, DispatcherType type) {
+    static boolean matchDispatcher(FilterMap filterMap, DispatcherType type) {
         switch (type) {
             case FORWARD :
                 if ((filterMap.getDispatcherMapping() & FilterMap.FORWARD) != 0) {
@@ -0,0 +1,243 @@
+package org.apache.catalina.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.servlet.DispatcherType;
+
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+
+/**
+ * 一个上下文的预编译的过滤器链.
+ * <p>
+ * 在过滤器启动时, 过滤器映射按调度器类型分组, 并解析为 {@link ApplicationFilterConfig}.
+ * 匹配所有 URL 的映射 (<code>*</code>) 总是匹配, 其余的 URL 映射 (最多 64 个) 各分配一个位.
+ * 对于每个请求, 只需要检查这些映射的 URL 模式, 匹配的位组成请求路径的 URL 模式类.
+ * 对于每个 (servlet 名称, 调度器类型, URL 模式类), 过滤器链的数组只计算一次, 之后作为不可变的模板由所有请求共享.
+ * <p>
+ * 映射或过滤器配置修改后, 上下文丢弃这个对象并创建一个新的.
+ */
+final class FilterChainTemplates {
+
+    static final ApplicationFilterConfig[] NO_FILTERS = new ApplicationFilterConfig[0];
+
+    /**
+     * 每个 (servlet 名称, 调度器类型) 缓存的 URL 模式类的最大数量.
+     */
+    private static final int MAX_TEMPLATES = 256;
+
+    private static final DispatcherType[] DISPATCHER_TYPES = DispatcherType.values();
+
+    /**
+     * 按调度器类型, 匹配调度器类型且有 URL 模式的映射, 按映射的顺序.
+     */
+    private final UrlFilter[][] urlFilters;
+
+    /**
+     * 按调度器类型, 如果有超过 64 个依赖路径的 URL 映射, 则为 <code>false</code>, 此时不使用模板.
+     */
+    private final boolean[] cacheable;
+
+    /**
+     * 有过滤器配置的映射, 按映射的顺序, 用于计算 servlet 名称的映射.
+     */
+    private final FilterMap[] filterMaps;
+    private final ApplicationFilterConfig[] filterConfigs;
+
+    private final ConcurrentMap<String,ServletTemplates> servletTemplates =
+            new ConcurrentHashMap<>();
+
+
+    FilterChainTemplates(StandardContext context, FilterMap[] filterMaps) {
+        List<FilterMap> maps = new ArrayList<>(filterMaps.length);
+        List<ApplicationFilterConfig> configs = new ArrayList<>(filterMaps.length);
+        for (FilterMap filterMap : filterMaps) {
+            ApplicationFilterConfig filterConfig = (ApplicationFilterConfig)
+                    context.findFilterConfig(filterMap.getFilterName());
+            if (filterConfig != null) {
+                maps.add(filterMap);
+                configs.add(filterConfig);
+            }
+        }
+        this.filterMaps = maps.toArray(new FilterMap[maps.size()]);
+        this.filterConfigs = configs.toArray(new ApplicationFilterConfig[configs.size()]);
+
+        urlFilters = new UrlFilter[DISPATCHER_TYPES.length][];
+        cacheable = new boolean[DISPATCHER_TYPES.length];
+        for (DispatcherType dispatcher : DISPATCHER_TYPES) {
+            List<UrlFilter> filters = new ArrayList<>();
+            int bit = 0;
+            for (int i = 0; i < this.filterMaps.length; i++) {
+                FilterMap filterMap = this.filterMaps[i];
+                if (!ApplicationFilterFactory.matchDispatcher(filterMap, dispatcher)) {
+                    continue;
+                }
+                if (filterMap.getMatchAllUrlPatterns()) {
+                    filters.add(new UrlFilter(this.filterConfigs[i], null, -1));
+                } else if (filterMap.getURLPatterns().length > 0) {
+                    filters.add(new UrlFilter(this.filterConfigs[i],
+                            filterMap.getURLPatterns(), bit++));
+                }
+            }
+            urlFilters[dispatcher.ordinal()] = filters.toArray(new UrlFilter[filters.size()]);
+            cacheable[dispatcher.ordinal()] = bit <= Long.SIZE;
+        }
+    }
+
+
+    /**
+     * @param servletName 要执行的 servlet 的名称
+     * @param dispatcher  调度器类型
+     * @param requestPath 上下文相对的请求路径, 对于命名的调度为 <code>null</code>
+     *
+     * @return 过滤器链中的过滤器, 按执行的顺序. 调用者不能修改返回的数组
+     */
+    ApplicationFilterConfig[] getFilters(String servletName, DispatcherType dispatcher,
+            String requestPath) {
+        int d = dispatcher.ordinal();
+        UrlFilter[] filters = urlFilters[d];
+        ServletTemplates templates = getServletTemplates(servletName);
+
+        if (!cacheable[d]) {
+            return createFilters(filters, requestPath, templates.servletFilters[d]);
+        }
+
+        long urlClass = 0;
+        if (requestPath != null) {
+            for (UrlFilter filter : filters) {
+                if (filter.bit >= 0 && filter.matches(requestPath)) {
+                    urlClass |= 1L << filter.bit;
+                }
+            }
+        }
+
+        ConcurrentMap<Long,ApplicationFilterConfig[]> chains = templates.chains[d];
+        Long key = Long.valueOf(urlClass);
+        ApplicationFilterConfig[] result = chains.get(key);
+        if (result == null) {
+            result = createFilters(filters, urlClass, templates.servletFilters[d]);
+            if (chains.size() < MAX_TEMPLATES) {
+                chains.put(key, result);
+            }
+        }
+        return result;
+    }
+
+
+    private ServletTemplates getServletTemplates(String servletName) {
+        // 名称为 null 的 servlet 没有 servlet 名称的映射
+        String key = servletName == null ? "" : servletName;
+        ServletTemplates result = servletTemplates.get(key);
+        if (result == null) {
+            result = new ServletTemplates(servletName);
+            ServletTemplates existing = servletTemplates.putIfAbsent(key, result);
+            if (existing != null) {
+                result = existing;
+            }
+        }
+        return result;
+    }
+
+
+    private static ApplicationFilterConfig[] createFilters(UrlFilter[] filters, long urlClass,
+            ApplicationFilterConfig[] servletFilters) {
+        List<ApplicationFilterConfig> result = new ArrayList<>();
+        for (UrlFilter filter : filters) {
+            if (filter.bit < 0 || (urlClass & (1L << filter.bit)) != 0) {
+                add(result, filter.filterConfig);
+            }
+        }
+        return complete(result, servletFilters);
+    }
+
+
+    private static ApplicationFilterConfig[] createFilters(UrlFilter[] filters,
+            String requestPath, ApplicationFilterConfig[] servletFilters) {
+        List<ApplicationFilterConfig> result = new ArrayList<>();
+        for (UrlFilter filter : filters) {
+            if (filter.bit < 0 || (requestPath != null && filter.matches(requestPath))) {
+                add(result, filter.filterConfig);
+            }
+        }
+        return complete(result, servletFilters);
+    }
+
+
+    private static ApplicationFilterConfig[] complete(List<ApplicationFilterConfig> result,
+            ApplicationFilterConfig[] servletFilters) {
+        for (ApplicationFilterConfig filterConfig : servletFilters) {
+            add(result, filterConfig);
+        }
+        if (result.isEmpty()) {
+            return NO_FILTERS;
+        }
+        return result.toArray(new ApplicationFilterConfig[result.size()]);
+    }
+
+
+    /**
+     * 防止同一个过滤器被多次添加.
+     */
+    private static void add(List<ApplicationFilterConfig> filters,
+            ApplicationFilterConfig filterConfig) {
+        for (ApplicationFilterConfig filter : filters) {
+            if (filter == filterConfig) {
+                return;
+            }
+        }
+        filters.add(filterConfig);
+    }
+
+
+    private static final class UrlFilter {
+
+        private final ApplicationFilterConfig filterConfig;
+        private final String[] urlPatterns;
+        private final int bit;
+
+        private UrlFilter(ApplicationFilterConfig filterConfig, String[] urlPatterns, int bit) {
+            this.filterConfig = filterConfig;
+            this.urlPatterns = urlPatterns;
+            this.bit = bit;
+        }
+
+        private boolean matches(String requestPath) {
+            for (String urlPattern : urlPatterns) {
+                if (ApplicationFilterFactory.matchFiltersURL(urlPattern, requestPath)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+
+    /**
+     * 一个 servlet 的按调度器类型的 servlet 名称映射和过滤器链的模板.
+     */
+    private final class ServletTemplates {
+
+        private final ApplicationFilterConfig[][] servletFilters;
+        private final ConcurrentMap<Long,ApplicationFilterConfig[]>[] chains;
+
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        private ServletTemplates(String servletName) {
+            servletFilters = new ApplicationFilterConfig[DISPATCHER_TYPES.length][];
+            chains = new ConcurrentMap[DISPATCHER_TYPES.length];
+            for (DispatcherType dispatcher : DISPATCHER_TYPES) {
+                List<ApplicationFilterConfig> filters = new ArrayList<>();
+                for (int i = 0; i < filterMaps.length; i++) {
+                    if (ApplicationFilterFactory.matchDispatcher(filterMaps[i], dispatcher) &&
+                            ApplicationFilterFactory.matchFiltersServlet(filterMaps[i], servletName)) {
+                        filters.add(filterConfigs[i]);
+                    }
+                }
+                servletFilters[dispatcher.ordinal()] =
+                        filters.toArray(new ApplicationFilterConfig[filters.size()]);
+                chains[dispatcher.ordinal()] = new ConcurrentHashMap<>();
+            }
+        }
+    }
+}
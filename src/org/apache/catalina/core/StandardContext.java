@@ -92,6 +92,7 @@ import org.apache.catalina.util.ContextName;
 import org.apache.catalina.util.ExtensionValidator;
 import org.apache.catalina.util.URLEncoder;
 import org.apache.catalina.webresources.StandardRoot;
+import org.apache.coyote.RequestPhaseStats;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.naming.ContextBindings;
@@ -358,6 +359,13 @@ public class StandardContext extends ContainerBase
      */
     private final ContextFilterMaps filterMaps = new ContextFilterMaps();
 
+
+    /**
+     * 预编译的过滤器链, 如果需要重新编译则为 <code>null</code>.
+     */
+    private volatile FilterChainTemplates filterChainTemplates = null;
+    private final Object filterChainTemplatesLock = new Object();
+
     /**
      * 是否忽略注解.
      */
@@ -583,6 +591,11 @@ public class StandardContext extends ContainerBase
     private long startTime;
     private long tldScanTime;
 
+    /**
+     * 此上下文处理的请求在各处理阶段的延迟分布.
+     */
+    private final RequestPhaseStats phaseStats = new RequestPhaseStats();
+
     /**
      * 引擎名称. 如果是null, 使用域名.
      */
@@ -1507,6 +1520,21 @@ public class StandardContext extends ContainerBase
         this.tldScanTime = tldScanTime;
     }
 
+    public RequestPhaseStats getPhaseStats() {
+        return phaseStats;
+    }
+
+    /**
+     * @return 此上下文处理的请求在每个处理阶段的延迟分布 (微秒)
+     */
+    public String[] getPhaseLatencies() {
+        return phaseStats.getSummary();
+    }
+
+    public void resetPhaseLatencies() {
+        phaseStats.reset();
+    }
+
 
     @Override
     public boolean getDenyUncoveredHttpMethods() {
@@ -2681,6 +2709,7 @@ public class StandardContext extends ContainerBase
         validateFilterMap(filterMap);
         // 将此筛选器映射添加到注册集
         filterMaps.add(filterMap);
+        resetFilterChainTemplates();
         fireContainerEvent("addFilterMap", filterMap);
     }
 
@@ -2697,6 +2726,7 @@ public class StandardContext extends ContainerBase
         validateFilterMap(filterMap);
         // Add this filter mapping to our registered set
         filterMaps.addBefore(filterMap);
+        resetFilterChainTemplates();
         fireContainerEvent("addFilterMap", filterMap);
     }
 
@@ -3677,6 +3707,7 @@ public class StandardContext extends ContainerBase
     @Override
     public void removeFilterMap(FilterMap filterMap) {
         filterMaps.remove(filterMap);
+        resetFilterChainTemplates();
         // Inform interested listeners
         fireContainerEvent("removeFilterMap", filterMap);
     }
@@ -4238,6 +4269,10 @@ public class StandardContext extends ContainerBase
             }
         }
 
+        // 在启动时编译过滤器链, 而不是在第一个请求时
+        resetFilterChainTemplates();
+        getFilterChainTemplates();
+
         return ok;
     }
 
@@ -4261,6 +4296,7 @@ public class StandardContext extends ContainerBase
             }
             filterConfigs.clear();
         }
+        resetFilterChainTemplates();
         return true;
 
     }
@@ -4278,6 +4314,38 @@ public class StandardContext extends ContainerBase
     }
 
 
+    /**
+     * 返回预编译的过滤器链, 如果过滤器映射或过滤器配置在上次编译后被修改, 重新编译.
+     *
+     * @return 过滤器链的模板, 或者 <code>null</code> 如果没有过滤器映射
+     */
+    FilterChainTemplates getFilterChainTemplates() {
+        FilterChainTemplates result = filterChainTemplates;
+        if (result == null) {
+            FilterMap[] maps = findFilterMaps();
+            if (maps.length == 0) {
+                return null;
+            }
+            // 与 resetFilterChainTemplates() 同步, 以便不会发布过时的模板
+            synchronized (filterChainTemplatesLock) {
+                result = filterChainTemplates;
+                if (result == null) {
+                    result = new FilterChainTemplates(this, findFilterMaps());
+                    filterChainTemplates = result;
+                }
+            }
+        }
+        return result;
+    }
+
+
+    private void resetFilterChainTemplates() {
+        synchronized (filterChainTemplatesLock) {
+            filterChainTemplates = null;
+        }
+    }
+
+
     /**
      * 配置一组应用事件监听器.
      * 
@@ -0,0 +1,201 @@
+package org.apache.catalina.ha.tcp;
+
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleEvent;
+import org.apache.catalina.LifecycleListener;
+import org.apache.catalina.ha.CatalinaCluster;
+import org.apache.catalina.ha.ClusterListener;
+import org.apache.catalina.ha.ClusterMessage;
+import org.apache.catalina.tribes.Member;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.net.SessionTicketKeyRing;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * 在集群的所有节点之间共享 TLS 会话票证密钥, 以便客户端可以在任何节点上恢复会话.
+ * <p>
+ * 密钥设置到名为 {@link #getKeyRingName()} 的 {@link SessionTicketKeyRing}, 使用它的 SSLHostConfig 需要设置
+ * <code>sessionTicketKeyRingName</code> 为相同的名称. 启动时, 节点向其它节点请求当前的密钥.
+ * 运行时间最长的节点 (协调者) 在集群的后台处理中按 {@link #getRotationInterval()} 轮换密钥, 并发送给所有节点.
+ * 如果协调者停止, 下一个运行时间最长的节点接替它.
+ * <p>
+ * 密钥以明文通过集群的通道发送, 因此通道必须位于受信任的网络上或者是加密的.
+ */
+public class SessionTicketKeyListener extends ClusterListener implements LifecycleListener {
+
+    private static final Log log = LogFactory.getLog(SessionTicketKeyListener.class);
+    private static final StringManager sm = StringManager.getManager(SessionTicketKeyListener.class);
+
+    private String keyRingName = "cluster";
+    private int rotationInterval = 3600;
+    private int keyCount = 3;
+
+
+    public String getKeyRingName() {
+        return keyRingName;
+    }
+
+
+    public void setKeyRingName(String keyRingName) {
+        this.keyRingName = keyRingName;
+    }
+
+
+    public int getRotationInterval() {
+        return rotationInterval;
+    }
+
+
+    /**
+     * @param rotationInterval 协调者生成新的加密密钥的间隔, 秒. 小于 1 表示不轮换
+     */
+    public void setRotationInterval(int rotationInterval) {
+        this.rotationInterval = rotationInterval;
+    }
+
+
+    public int getKeyCount() {
+        return keyCount;
+    }
+
+
+    /**
+     * @param keyCount 密钥环中保留的密钥的数量, 包括当前的加密密钥. 只有当前的加密密钥被设置到 SSL 上下文
+     */
+    public void setKeyCount(int keyCount) {
+        this.keyCount = keyCount;
+    }
+
+
+    @Override
+    public void setCluster(CatalinaCluster cluster) {
+        if (this.cluster instanceof Lifecycle) {
+            ((Lifecycle) this.cluster).removeLifecycleListener(this);
+        }
+        super.setCluster(cluster);
+        if (cluster instanceof Lifecycle) {
+            ((Lifecycle) cluster).addLifecycleListener(this);
+        }
+    }
+
+
+    @Override
+    public void lifecycleEvent(LifecycleEvent event) {
+        if (Lifecycle.AFTER_START_EVENT.equals(event.getType())) {
+            requestKeys();
+        } else if (Lifecycle.PERIODIC_EVENT.equals(event.getType())) {
+            backgroundProcess();
+        }
+    }
+
+
+    @Override
+    public void messageReceived(ClusterMessage msg) {
+        SessionTicketKeyMessage keyMessage = (SessionTicketKeyMessage) msg;
+        if (!keyRingName.equals(keyMessage.getKeyRingName())) {
+            return;
+        }
+        SessionTicketKeyRing keyRing = SessionTicketKeyRing.getKeyRing(keyRingName);
+        if (keyMessage.getEventType() == SessionTicketKeyMessage.EVT_GET_KEYS) {
+            byte[][] keys = keyRing.getKeys();
+            if (keys != null) {
+                cluster.send(new SessionTicketKeyMessage(SessionTicketKeyMessage.EVT_KEYS,
+                        keyRingName, keys, keyRing.getRotated()), msg.getAddress());
+            }
+        } else if (keyMessage.getEventType() == SessionTicketKeyMessage.EVT_KEYS) {
+            // 只接受更新的密钥, 因为请求的回复可能来自多个节点
+            if (keyMessage.getRotated() > keyRing.getRotated()) {
+                try {
+                    keyRing.setKeys(keyMessage.getKeys(), keyMessage.getRotated());
+                    if (log.isDebugEnabled()) {
+                        log.debug(sm.getString("sessionTicketKeyListener.received",
+                                keyRingName, msg.getAddress()));
+                    }
+                } catch (IllegalArgumentException e) {
+                    log.warn(sm.getString("sessionTicketKeyListener.invalid",
+                            keyRingName, msg.getAddress()), e);
+                }
+            }
+        }
+    }
+
+
+    @Override
+    public boolean accept(ClusterMessage msg) {
+        return msg instanceof SessionTicketKeyMessage;
+    }
+
+
+    /**
+     * 向其它节点请求当前的密钥. 如果这是唯一的节点, 生成新的密钥.
+     */
+    protected void requestKeys() {
+        if (cluster.getMembers().length == 0) {
+            backgroundProcess();
+        } else {
+            cluster.send(new SessionTicketKeyMessage(SessionTicketKeyMessage.EVT_GET_KEYS,
+                    keyRingName, null, 0));
+        }
+    }
+
+
+    /**
+     * 如果这个节点是协调者, 并且还没有密钥或者密钥需要轮换, 生成新的密钥并发送给所有节点.
+     */
+    protected void backgroundProcess() {
+        SessionTicketKeyRing keyRing = SessionTicketKeyRing.getKeyRing(keyRingName);
+        byte[][] keys = keyRing.getKeys();
+        long now = System.currentTimeMillis();
+        if (keys != null && (rotationInterval < 1 ||
+                now - keyRing.getRotated() < rotationInterval * 1000L)) {
+            return;
+        }
+        if (!isCoordinator()) {
+            if (keys == null) {
+                // 之前的请求可能在其它节点有密钥之前发送
+                requestKeys();
+            }
+            return;
+        }
+        keys = SessionTicketKeyRing.rotate(keys, keyCount);
+        keyRing.setKeys(keys, now);
+        if (log.isDebugEnabled()) {
+            log.debug(sm.getString("sessionTicketKeyListener.rotated", keyRingName));
+        }
+        if (cluster.getMembers().length > 0) {
+            cluster.send(new SessionTicketKeyMessage(SessionTicketKeyMessage.EVT_KEYS,
+                    keyRingName, keys, now));
+        }
+    }
+
+
+    /**
+     * @return <code>true</code> 如果这个节点是运行时间最长的节点
+     */
+    protected boolean isCoordinator() {
+        Member local = cluster.getLocalMember();
+        for (Member member : cluster.getMembers()) {
+            if (member.getMemberAliveTime() > local.getMemberAliveTime()) {
+                return false;
+            }
+            if (member.getMemberAliveTime() == local.getMemberAliveTime() &&
+                    compare(member.getUniqueId(), local.getUniqueId()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static int compare(byte[] a, byte[] b) {
+        int len = Math.min(a.length, b.length);
+        for (int i = 0; i < len; i++) {
+            int diff = (a[i] & 0xff) - (b[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return a.length - b.length;
+    }
+}
@@ -0,0 +1,64 @@
+package org.apache.catalina.ha.tcp;
+
+import org.apache.catalina.ha.ClusterMessageBase;
+
+/**
+ * 在集群节点之间复制 TLS 会话票证密钥的消息.
+ */
+public class SessionTicketKeyMessage extends ClusterMessageBase {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 请求其它节点发送当前的密钥.
+     */
+    public static final int EVT_GET_KEYS = 1;
+
+    /**
+     * 当前的密钥.
+     */
+    public static final int EVT_KEYS = 2;
+
+    private final int eventType;
+    private final String keyRingName;
+    private final byte[][] keys;
+    private final long rotated;
+
+
+    public SessionTicketKeyMessage(int eventType, String keyRingName, byte[][] keys,
+            long rotated) {
+        this.eventType = eventType;
+        this.keyRingName = keyRingName;
+        this.keys = keys;
+        this.rotated = rotated;
+    }
+
+
+    public int getEventType() {
+        return eventType;
+    }
+
+
+    public String getKeyRingName() {
+        return keyRingName;
+    }
+
+
+    public byte[][] getKeys() {
+        return keys;
+    }
+
+
+    /**
+     * @return 当前的加密密钥创建的时间
+     */
+    public long getRotated() {
+        return rotated;
+    }
+
+
+    @Override
+    public String getUniqueId() {
+        return keyRingName + "#" + eventType + "#" + rotated;
+    }
+}
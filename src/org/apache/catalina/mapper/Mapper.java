@@ -8,6 +8,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.catalina.Context;
 import org.apache.catalina.Host;
@@ -55,8 +56,29 @@ public final class Mapper {
             new ConcurrentHashMap<>();
 
 
+    /**
+     * 映射的修改次数. 在修改生效之后递增, 以便缓存映射结果的组件可以检测到过时的结果.
+     */
+    private final AtomicLong modificationCount = new AtomicLong(0);
+
+
     // --------------------------------------------------------- Public Methods
 
+    /**
+     * 返回映射的修改次数. 在映射之前读取此值的调用者可以缓存映射的结果, 直到此值改变.
+     *
+     * @return 主机, 上下文, 包装器或欢迎文件的修改次数
+     */
+    public long getModificationCount() {
+        return modificationCount.get();
+    }
+
+
+    private void modified() {
+        modificationCount.incrementAndGet();
+    }
+
+
     /**
      * 设置默认主机.
      *
@@ -69,6 +91,7 @@ public final class Mapper {
         } else {
             defaultHost = exactFind(hosts, this.defaultHostName);
         }
+        modified();
     }
 
 
@@ -117,6 +140,7 @@ public final class Mapper {
             }
         }
         newHost.addAliases(newAliases);
+        modified();
     }
 
 
@@ -141,6 +165,7 @@ public final class Mapper {
             }
         }
         hosts = Arrays.copyOf(newHosts, j);
+        modified();
     }
 
     /**
@@ -169,6 +194,7 @@ public final class Mapper {
             if (newAlias.name.equals(defaultHostName)) {
                 defaultHost = newAlias;
             }
+            modified();
             if (log.isDebugEnabled()) {
                 log.debug(sm.getString("mapper.addHostAlias.success",
                         newAlias.name, newAlias.getRealHostName()));
@@ -208,6 +234,7 @@ public final class Mapper {
         if (removeMap(hosts, newHosts, alias)) {
             hosts = newHosts;
             hostMapping.getRealHost().removeAlias(hostMapping);
+            modified();
         }
 
     }
@@ -262,6 +289,8 @@ public final class Mapper {
             if (wrappers != null) {
                 addWrappers(newContextVersion, wrappers);
             }
+            // 在部署时编译映射索引, 而不是在第一个请求时
+            newContextVersion.getWrapperTrie();
 
             ContextList contextList = mappedHost.contextList;
             MappedContext mappedContext = exactFind(contextList.contexts, path);
@@ -291,6 +320,7 @@ public final class Mapper {
                 }
             }
         }
+        modified();
     }
 
 
@@ -333,6 +363,7 @@ public final class Mapper {
                 } else {
                     context.versions = newContextVersions;
                 }
+                modified();
             }
         }
     }
@@ -356,6 +387,7 @@ public final class Mapper {
             return;
         }
         contextVersion.markPaused();
+        modified();
     }
 
 
@@ -448,10 +480,6 @@ public final class Mapper {
                 MappedWrapper[] newWrappers = new MappedWrapper[oldWrappers.length + 1];
                 if (insertMap(oldWrappers, newWrappers, newWrapper)) {
                     context.wildcardWrappers = newWrappers;
-                    int slashCount = slashCount(newWrapper.name);
-                    if (slashCount > context.nesting) {
-                        context.nesting = slashCount;
-                    }
                 }
             } else if (path.startsWith("*.")) {
                 // Extension wrapper
@@ -486,7 +514,9 @@ public final class Mapper {
                     context.exactWrappers = newWrappers;
                 }
             }
+            context.invalidateWrapperTrie();
         }
+        modified();
     }
 
 
@@ -526,14 +556,6 @@ public final class Mapper {
                 MappedWrapper[] newWrappers =
                     new MappedWrapper[oldWrappers.length - 1];
                 if (removeMap(oldWrappers, newWrappers, name)) {
-                    // Recalculate nesting
-                    context.nesting = 0;
-                    for (int i = 0; i < newWrappers.length; i++) {
-                        int slashCount = slashCount(newWrappers[i].name);
-                        if (slashCount > context.nesting) {
-                            context.nesting = slashCount;
-                        }
-                    }
                     context.wildcardWrappers = newWrappers;
                 }
             } else if (path.startsWith("*.")) {
@@ -570,7 +592,9 @@ public final class Mapper {
                     context.exactWrappers = newWrappers;
                 }
             }
+            context.invalidateWrapperTrie();
         }
+        modified();
     }
 
 
@@ -594,6 +618,7 @@ public final class Mapper {
         System.arraycopy(contextVersion.welcomeResources, 0, newWelcomeResources, 0, len - 1);
         newWelcomeResources[len - 1] = welcomeFile;
         contextVersion.welcomeResources = newWelcomeResources;
+        modified();
     }
 
 
@@ -628,6 +653,7 @@ public final class Mapper {
                         newWelcomeResources, match, len - match);
             }
             contextVersion.welcomeResources = newWelcomeResources;
+            modified();
         }
     }
 
@@ -646,6 +672,7 @@ public final class Mapper {
             return;
         }
         contextVersion.welcomeResources = new String[0];
+        modified();
     }
 
 
@@ -828,16 +855,15 @@ public final class Mapper {
         int servletPath = pathOffset + length;
         path.setOffset(servletPath);
 
+        WrapperTrie wrapperTrie = contextVersion.getWrapperTrie();
+
         // Rule 1 -- Exact Match
-        MappedWrapper[] exactWrappers = contextVersion.exactWrappers;
-        internalMapExactWrapper(exactWrappers, path, mappingData);
+        internalMapExactWrapper(wrapperTrie, path, mappingData);
 
         // Rule 2 -- Prefix Match
         boolean checkJspWelcomeFiles = false;
-        MappedWrapper[] wildcardWrappers = contextVersion.wildcardWrappers;
         if (mappingData.wrapper == null) {
-            internalMapWildcardWrapper(wildcardWrappers, contextVersion.nesting,
-                                       path, mappingData);
+            internalMapWildcardWrapper(wrapperTrie, path, mappingData);
             if (mappingData.wrapper != null && mappingData.jspWildCard) {
                 char[] buf = path.getBuffer();
                 if (buf[pathEnd - 1] == '/') {
@@ -868,9 +894,8 @@ public final class Mapper {
         }
 
         // Rule 3 -- Extension Match
-        MappedWrapper[] extensionWrappers = contextVersion.extensionWrappers;
         if (mappingData.wrapper == null && !checkJspWelcomeFiles) {
-            internalMapExtensionWrapper(extensionWrappers, path, mappingData,
+            internalMapExtensionWrapper(wrapperTrie, path, mappingData,
                     true);
         }
 
@@ -891,13 +916,11 @@ public final class Mapper {
                     path.setOffset(servletPath);
 
                     // Rule 4a -- Welcome resources processing for exact macth
-                    internalMapExactWrapper(exactWrappers, path, mappingData);
+                    internalMapExactWrapper(wrapperTrie, path, mappingData);
 
                     // Rule 4b -- Welcome resources processing for prefix match
                     if (mappingData.wrapper == null) {
-                        internalMapWildcardWrapper
-                            (wildcardWrappers, contextVersion.nesting,
-                             path, mappingData);
+                        internalMapWildcardWrapper(wrapperTrie, path, mappingData);
                     }
 
                     // Rule 4c -- Welcome resources processing for physical folder
@@ -907,7 +930,7 @@ public final class Mapper {
                         WebResource file =
                                 contextVersion.resources.getResource(pathStr);
                         if (file != null && file.isFile()) {
-                            internalMapExtensionWrapper(extensionWrappers, path,
+                            internalMapExtensionWrapper(wrapperTrie, path,
                                                         mappingData, true);
                             if (mappingData.wrapper == null
                                 && contextVersion.defaultWrapper != null) {
@@ -950,7 +973,7 @@ public final class Mapper {
                     path.append(contextVersion.welcomeResources[i], 0,
                                 contextVersion.welcomeResources[i].length());
                     path.setOffset(servletPath);
-                    internalMapExtensionWrapper(extensionWrappers, path,
+                    internalMapExtensionWrapper(wrapperTrie, path,
                                                 mappingData, false);
                 }
 
@@ -1004,8 +1027,9 @@ public final class Mapper {
      * 精确映射.
      */
     private final void internalMapExactWrapper
-        (MappedWrapper[] wrappers, CharChunk path, MappingData mappingData) {
-        MappedWrapper wrapper = exactFind(wrappers, path);
+        (WrapperTrie wrapperTrie, CharChunk path, MappingData mappingData) {
+        MappedWrapper wrapper = wrapperTrie.findExact(path.getBuffer(),
+                path.getStart(), path.getEnd());
         if (wrapper != null) {
             mappingData.requestPath.setString(wrapper.name);
             mappingData.wrapper = wrapper.object;
@@ -1025,53 +1049,27 @@ public final class Mapper {
 
 
     /**
-     * 通配符映射.
+     * 通配符映射. 最长的前缀匹配在映射索引的一次遍历中找到.
      */
     private final void internalMapWildcardWrapper
-        (MappedWrapper[] wrappers, int nesting, CharChunk path,
-         MappingData mappingData) {
+        (WrapperTrie wrapperTrie, CharChunk path, MappingData mappingData) {
 
-        int pathEnd = path.getEnd();
-
-        int lastSlash = -1;
-        int length = -1;
-        int pos = find(wrappers, path);
-        if (pos != -1) {
-            boolean found = false;
-            while (pos >= 0) {
-                if (path.startsWith(wrappers[pos].name)) {
-                    length = wrappers[pos].name.length();
-                    if (path.getLength() == length) {
-                        found = true;
-                        break;
-                    } else if (path.startsWithIgnoreCase("/", length)) {
-                        found = true;
-                        break;
-                    }
-                }
-                if (lastSlash == -1) {
-                    lastSlash = nthSlash(path, nesting + 1);
-                } else {
-                    lastSlash = lastSlash(path);
-                }
-                path.setEnd(lastSlash);
-                pos = find(wrappers, path);
-            }
-            path.setEnd(pathEnd);
-            if (found) {
-                mappingData.wrapperPath.setString(wrappers[pos].name);
-                if (path.getLength() > length) {
-                    mappingData.pathInfo.setChars
-                        (path.getBuffer(),
-                         path.getOffset() + length,
-                         path.getLength() - length);
-                }
-                mappingData.requestPath.setChars
-                    (path.getBuffer(), path.getOffset(), path.getLength());
-                mappingData.wrapper = wrappers[pos].object;
-                mappingData.jspWildCard = wrappers[pos].jspWildCard;
-                mappingData.matchType = MappingMatch.PATH;
+        MappedWrapper wrapper = wrapperTrie.findWildcard(path.getBuffer(),
+                path.getStart(), path.getEnd());
+        if (wrapper != null) {
+            int length = wrapper.name.length();
+            mappingData.wrapperPath.setString(wrapper.name);
+            if (path.getLength() > length) {
+                mappingData.pathInfo.setChars
+                    (path.getBuffer(),
+                     path.getOffset() + length,
+                     path.getLength() - length);
             }
+            mappingData.requestPath.setChars
+                (path.getBuffer(), path.getOffset(), path.getLength());
+            mappingData.wrapper = wrapper.object;
+            mappingData.jspWildCard = wrapper.jspWildCard;
+            mappingData.matchType = MappingMatch.PATH;
         }
     }
 
@@ -1079,12 +1077,12 @@ public final class Mapper {
     /**
      * 扩展名映射.
      *
-     * @param wrappers          用于检查匹配的包装器集合
+     * @param wrapperTrie       用于检查匹配的映射索引
      * @param path              要映射的路径
      * @param mappingData       结果的映射数据
      * @param resourceExpected  这个映射是否希望找到资源
      */
-    private final void internalMapExtensionWrapper(MappedWrapper[] wrappers,
+    private final void internalMapExtensionWrapper(WrapperTrie wrapperTrie,
             CharChunk path, MappingData mappingData, boolean resourceExpected) {
         char[] buf = path.getBuffer();
         int pathEnd = path.getEnd();
@@ -1105,9 +1103,8 @@ public final class Mapper {
                 }
             }
             if (period >= 0) {
-                path.setOffset(period + 1);
-                path.setEnd(pathEnd);
-                MappedWrapper wrapper = exactFind(wrappers, path);
+                MappedWrapper wrapper = wrapperTrie.findExtension(buf,
+                        period + 1, pathEnd);
                 if (wrapper != null
                         && (resourceExpected || !wrapper.resourceOnly)) {
                     mappingData.wrapperPath.setChars(buf, servletPath, pathEnd
@@ -1117,8 +1114,6 @@ public final class Mapper {
                     mappingData.wrapper = wrapper.object;
                     mappingData.matchType = MappingMatch.EXTENSION;
                 }
-                path.setOffset(servletPath);
-                path.setEnd(pathEnd);
             }
         }
     }
@@ -1629,8 +1624,8 @@ public final class Mapper {
         public MappedWrapper[] exactWrappers = new MappedWrapper[0];
         public MappedWrapper[] wildcardWrappers = new MappedWrapper[0];
         public MappedWrapper[] extensionWrappers = new MappedWrapper[0];
-        public int nesting = 0;
         private volatile boolean paused;
+        private volatile WrapperTrie wrapperTrie = null;
 
         public ContextVersion(String version, String path, int slashCount,
                 Context context, WebResourceRoot resources,
@@ -1649,6 +1644,32 @@ public final class Mapper {
         public void markPaused() {
             paused = true;
         }
+
+        /**
+         * @return 精确, 通配符和扩展名映射的编译索引. 如果映射在上次编译后被修改, 重新编译
+         */
+        WrapperTrie getWrapperTrie() {
+            WrapperTrie result = wrapperTrie;
+            if (result == null) {
+                // 与 addWrapper 和 removeWrapper 同步, 以便不会发布过时的索引
+                synchronized (this) {
+                    result = wrapperTrie;
+                    if (result == null) {
+                        result = new WrapperTrie(exactWrappers, wildcardWrappers,
+                                extensionWrappers);
+                        wrapperTrie = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * 在修改映射后调用, 调用者必须持有这个对象的锁.
+         */
+        void invalidateWrapperTrie() {
+            wrapperTrie = null;
+        }
     }
 
     // ---------------------------------------------------- Wrapper Inner Class
@@ -0,0 +1,174 @@
+package org.apache.catalina.mapper;
+
+import java.util.Arrays;
+
+import org.apache.catalina.mapper.Mapper.MappedWrapper;
+
+/**
+ * 一个上下文版本的包装器映射的编译索引, 基数树 (radix trie).
+ * <p>
+ * 精确映射和通配符映射共享一棵树, 因此通配符的最长前缀匹配只需要一次遍历路径,
+ * 而不是对每个 '/' 截断路径后再次二分查找. 扩展名映射使用另一棵树.
+ * 索引是不可变的, 在映射修改后由 {@link Mapper.ContextVersion} 重新构建.
+ */
+final class WrapperTrie {
+
+    private final Node root = new Node(new char[0]);
+    private final Node extensions = new Node(new char[0]);
+
+
+    WrapperTrie(MappedWrapper[] exactWrappers, MappedWrapper[] wildcardWrappers,
+            MappedWrapper[] extensionWrappers) {
+        for (MappedWrapper wrapper : exactWrappers) {
+            insert(root, wrapper.name).exact = wrapper;
+        }
+        for (MappedWrapper wrapper : wildcardWrappers) {
+            insert(root, wrapper.name).wildcard = wrapper;
+        }
+        for (MappedWrapper wrapper : extensionWrappers) {
+            insert(extensions, wrapper.name).exact = wrapper;
+        }
+    }
+
+
+    /**
+     * @return 名称等于 <code>buf[start, end)</code> 的精确映射, 或者 <code>null</code>
+     */
+    MappedWrapper findExact(char[] buf, int start, int end) {
+        Node node = find(root, buf, start, end);
+        return node == null ? null : node.exact;
+    }
+
+
+    /**
+     * @return 路径 <code>buf[start, end)</code> 的最长的通配符映射, 或者 <code>null</code>.
+     *         映射的名称必须等于路径, 或者是路径在 '/' 之前的前缀
+     */
+    MappedWrapper findWildcard(char[] buf, int start, int end) {
+        MappedWrapper result = null;
+        Node node = root;
+        int pos = start;
+        while (true) {
+            if (node.wildcard != null && (pos == end || buf[pos] == '/')) {
+                result = node.wildcard;
+            }
+            if (pos == end) {
+                return result;
+            }
+            Node child = node.child(buf[pos]);
+            if (child == null || !child.matches(buf, pos, end)) {
+                return result;
+            }
+            pos += child.label.length;
+            node = child;
+        }
+    }
+
+
+    /**
+     * @return 扩展名等于 <code>buf[start, end)</code> 的扩展名映射, 或者 <code>null</code>
+     */
+    MappedWrapper findExtension(char[] buf, int start, int end) {
+        Node node = find(extensions, buf, start, end);
+        return node == null ? null : node.exact;
+    }
+
+
+    private static Node find(Node node, char[] buf, int start, int end) {
+        int pos = start;
+        while (pos < end) {
+            Node child = node.child(buf[pos]);
+            if (child == null || !child.matches(buf, pos, end)) {
+                return null;
+            }
+            pos += child.label.length;
+            node = child;
+        }
+        return node;
+    }
+
+
+    /**
+     * 返回指定键的节点, 如果需要, 创建节点或者拆分现有的边.
+     */
+    private static Node insert(Node node, String key) {
+        int pos = 0;
+        while (pos < key.length()) {
+            int index = Arrays.binarySearch(node.firsts, key.charAt(pos));
+            if (index < 0) {
+                Node child = new Node(key.substring(pos).toCharArray());
+                node.addChild(-index - 1, child);
+                return child;
+            }
+            Node child = node.children[index];
+            char[] label = child.label;
+            int common = 1;
+            while (common < label.length && pos + common < key.length() &&
+                    label[common] == key.charAt(pos + common)) {
+                common++;
+            }
+            if (common < label.length) {
+                // 键在边的中间结束或者分叉, 拆分边
+                Node split = new Node(Arrays.copyOf(label, common));
+                child.label = Arrays.copyOfRange(label, common, label.length);
+                split.addChild(0, child);
+                node.children[index] = split;
+                child = split;
+            }
+            pos += common;
+            node = child;
+        }
+        return node;
+    }
+
+
+    private static final class Node {
+
+        /*
+         * 树构建后这些字段不再修改, 并通过 WrapperTrie 的 final 字段安全地发布.
+         */
+        private char[] label;
+        private char[] firsts = new char[0];
+        private Node[] children = new Node[0];
+        private MappedWrapper exact;
+        private MappedWrapper wildcard;
+
+        private Node(char[] label) {
+            this.label = label;
+        }
+
+        private Node child(char c) {
+            int index = Arrays.binarySearch(firsts, c);
+            return index < 0 ? null : children[index];
+        }
+
+        /**
+         * @return <code>true</code> 如果 <code>buf[pos, end)</code> 以这个节点的标签开始.
+         *         第一个字符已经由 {@link #child(char)} 匹配
+         */
+        private boolean matches(char[] buf, int pos, int end) {
+            if (end - pos < label.length) {
+                return false;
+            }
+            for (int i = 1; i < label.length; i++) {
+                if (buf[pos + i] != label[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void addChild(int index, Node child) {
+            char[] newFirsts = new char[firsts.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(firsts, 0, newFirsts, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            newFirsts[index] = child.label[0];
+            newChildren[index] = child;
+            System.arraycopy(firsts, index, newFirsts, index + 1, firsts.length - index);
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            firsts = newFirsts;
+            children = newChildren;
+        }
+    }
+}
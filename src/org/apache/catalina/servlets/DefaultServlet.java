@@ -765,8 +765,14 @@ public class DefaultServlet extends HttpServlet {
             // Checking If headers
             included = (request.getAttribute(
                     RequestDispatcher.INCLUDE_CONTEXT_PATH) != null);
-            if (!included && !isError && !checkIfHeaders(request, response, resource)) {
-                return;
+            if (!included && !isError) {
+                if ("HTTP/2.0".equals(request.getProtocol())) {
+                    // 允许连接器学习引用这个资源的页面的推送集合 (包括 304 响应)
+                    request.setAttribute(Globals.PUSH_STATIC_RESOURCE_ATTR, Boolean.TRUE);
+                }
+                if (!checkIfHeaders(request, response, resource)) {
+                    return;
+                }
             }
         }
 
@@ -31,6 +31,7 @@ import org.apache.catalina.connector.Response;
 import org.apache.catalina.util.TLSUtil;
 import org.apache.coyote.ActionCode;
 import org.apache.coyote.RequestInfo;
+import org.apache.coyote.RequestPhaseStats;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.ExceptionUtils;
@@ -87,6 +88,8 @@ import org.apache.tomcat.util.collections.SynchronizedStack;
  * <li><code>%{xxx}r</code> xxx 是 ServletRequest中的属性
  * <li><code>%{xxx}s</code> xxx 是 HttpSession中的属性
  * <li><code>%{xxx}t</code> xxx 是一个增强的 SimpleDateFormat 格式 (有关支持的时间模式的详细信息，请参阅配置参考文档)
+ * <li><code>%{xxx}L</code> xxx 是请求处理阶段的区间名称 (connect, headers, queue, prepare, service,
+ *     firstWrite, write, total), 写入该区间所用的时间, 微秒
  * </ul>
  *
  * <p>
@@ -1175,6 +1178,27 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
         }
     }
 
+    /**
+     * 写入请求处理阶段区间所用的时间, 微秒 - %{xxx}L
+     */
+    protected static class PhaseTimeElement implements AccessLogElement {
+        private final int interval;
+
+        public PhaseTimeElement(int interval) {
+            this.interval = interval;
+        }
+
+        @Override
+        public void addElement(CharArrayWriter buf, Date date, Request request, Response response, long time) {
+            long nanos = RequestPhaseStats.getIntervalNanos(request.getCoyoteRequest(), interval);
+            if (nanos < 0) {
+                buf.append('-');
+            } else {
+                buf.append(Long.toString(nanos / 1000));
+            }
+        }
+    }
+
     /**
      * 写入查询字符串 (预先准备一个 '?', 如果它存在) - %q
      */
@@ -1514,6 +1538,13 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
             return new SessionAttributeElement(name);
         case 't':
             return new DateAndTimeElement(name);
+        case 'L': {
+            int interval = RequestPhaseStats.getInterval(name);
+            if (interval < 0) {
+                return new StringElement("???");
+            }
+            return new PhaseTimeElement(interval);
+        }
         default:
             return new StringElement("???");
         }
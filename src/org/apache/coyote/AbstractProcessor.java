@@ -130,6 +130,25 @@ public abstract class AbstractProcessor extends AbstractProcessorLight implement
     }
 
 
+    /**
+     * 从 socket 包装器中获取连接建立和排队的时间, 记录为当前请求的阶段时间戳.
+     * 应该在请求 header 解析完成后调用.
+     */
+    protected final void markConnectionPhases() {
+        request.markPhase(Constants.PHASE_HEADERS_PARSED);
+        long acceptTime = socketWrapper.consumeAcceptTime();
+        if (acceptTime != 0) {
+            request.setPhaseTime(Constants.PHASE_ACCEPT, acceptTime);
+        }
+        long dispatchTime = socketWrapper.getDispatchTime();
+        if (dispatchTime != 0) {
+            request.setPhaseTime(Constants.PHASE_QUEUED, dispatchTime);
+            request.setPhaseTime(Constants.PHASE_DEQUEUED, socketWrapper.getDispatchStartTime());
+            socketWrapper.clearDispatchTimes();
+        }
+    }
+
+
     @Override
     public final void setSslSupport(SSLSupport sslSupport) {
         this.sslSupport = sslSupport;
@@ -225,6 +244,7 @@ public abstract class AbstractProcessor extends AbstractProcessorLight implement
         // 'Normal' servlet 支持
         case COMMIT: {
             if (!response.isCommitted()) {
+                request.markPhase(Constants.PHASE_FIRST_WRITE);
                 try {
                     // 验证并写入响应 header
                     prepareResponse();
@@ -243,6 +263,7 @@ public abstract class AbstractProcessor extends AbstractProcessorLight implement
             } catch (IOException e) {
                 setErrorState(ErrorState.CLOSE_CONNECTION_NOW, e);
             }
+            request.markPhase(Constants.PHASE_RESPONSE_END);
             break;
         }
         case ACK: {
@@ -627,7 +648,8 @@ public abstract class AbstractProcessor extends AbstractProcessorLight implement
         SocketWrapperBase<?> socketWrapper = getSocketWrapper();
         Iterator<DispatchType> dispatches = getIteratorAndClearDispatches();
         if (socketWrapper != null) {
-            synchronized (socketWrapper) {
+            socketWrapper.getLock().lock();
+            try {
                 /*
                  * 通过在非容器线程中定义读和/或写监听器来调用非阻塞IO时，调用此方法.
                  * 一旦非容器线程完成，就调用它, 因此第一次调用 onWritePossible() 和 onDataAvailable() 视容器而定.
@@ -641,6 +663,8 @@ public abstract class AbstractProcessor extends AbstractProcessorLight implement
                     DispatchType dispatchType = dispatches.next();
                     socketWrapper.processSocket(dispatchType.getSocketStatus(), false);
                 }
+            } finally {
+                socketWrapper.getLock().unlock();
             }
         }
     }
@@ -1,7 +1,9 @@
 package org.apache.coyote;
 
+import java.io.IOException;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
@@ -205,6 +207,30 @@ public abstract class AbstractProtocol<S> implements ProtocolHandler,
         endpoint.setMaxThreads(maxThreads);
     }
 
+    public boolean getUseVirtualThreads() { return endpoint.getUseVirtualThreads(); }
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        endpoint.setUseVirtualThreads(useVirtualThreads);
+    }
+
+
+    public long getAdmissionTargetLatency() { return endpoint.getAdmissionTargetLatency(); }
+    public void setAdmissionTargetLatency(long admissionTargetLatency) {
+        endpoint.setAdmissionTargetLatency(admissionTargetLatency);
+    }
+
+
+    public long getAdmissionInterval() { return endpoint.getAdmissionInterval(); }
+    public void setAdmissionInterval(long admissionInterval) {
+        endpoint.setAdmissionInterval(admissionInterval);
+    }
+
+
+    public String getAdmissionController() { return endpoint.getAdmissionController(); }
+    public void setAdmissionController(String admissionController) {
+        endpoint.setAdmissionController(admissionController);
+    }
+
+
     public int getMaxConnections() { return endpoint.getMaxConnections(); }
     public void setMaxConnections(int maxConnections) {
         endpoint.setMaxConnections(maxConnections);
@@ -622,6 +648,9 @@ public abstract class AbstractProtocol<S> implements ProtocolHandler,
 
     protected static class ConnectionHandler<S> implements AbstractEndpoint.Handler<S> {
 
+        private static final byte[] HTTP2_CLIENT_PREFACE =
+                "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
         private final AbstractProtocol<S> proto;
         private final RequestGroupInfo global = new RequestGroupInfo();
         private final AtomicLong registerCount = new AtomicLong(0);
@@ -710,6 +739,8 @@ public abstract class AbstractProtocol<S> implements ProtocolHandler,
                                     negotiatedProtocol));
                             */
                         }
+                    } else if (status == SocketEvent.OPEN_READ) {
+                        processor = getPriorKnowledgeProcessor(wrapper);
                     }
                 }
                 if (processor == null) {
@@ -758,6 +789,9 @@ public abstract class AbstractProtocol<S> implements ProtocolHandler,
                             }
                         } else {
                             HttpUpgradeHandler httpUpgradeHandler = upgradeToken.getHttpUpgradeHandler();
+                            // 剩余输入可能引用 Http11 处理器的 header 缓冲区, 必须在释放处理器
+                            // (可能将缓冲区返回到池中) 之前复制
+                            wrapper.unRead(leftOverInput);
                             // R释放 Http11 处理器来重用
                             release(processor);
                             // 创建升级处理器
@@ -766,7 +800,6 @@ public abstract class AbstractProtocol<S> implements ProtocolHandler,
                                 getLog().debug(sm.getString("abstractConnectionHandler.upgradeCreate",
                                         processor, wrapper));
                             }
-                            wrapper.unRead(leftOverInput);
                             // 将连接标记为升级
                             wrapper.setUpgraded(true);
                             // 与处理器关联的连接
@@ -883,6 +916,39 @@ public abstract class AbstractProtocol<S> implements ProtocolHandler,
         }
 
 
+        /*
+         * 检查明文 HTTP/2 (prior knowledge) 的连接前言, 以便不必先创建 HTTP/1.1 处理器.
+         * 一旦确定了协议, 将其记录为连接的协商协议, 之后的请求不再检查.
+         * 前言不完整时, 仍由 HTTP/1.1 处理器检测.
+         */
+        private Processor getPriorKnowledgeProcessor(SocketWrapperBase<S> wrapper)
+                throws IOException {
+            UpgradeProtocol upgradeProtocol = getProtocol().getUpgradeProtocol("h2c");
+            if (upgradeProtocol == null) {
+                return null;
+            }
+            ByteBuffer preface = ByteBuffer.allocate(HTTP2_CLIENT_PREFACE.length);
+            int nRead = wrapper.peek(preface);
+            if (nRead <= 0) {
+                return null;
+            }
+            for (int i = 0; i < nRead; i++) {
+                if (preface.get(i) != HTTP2_CLIENT_PREFACE[i]) {
+                    wrapper.setNegotiatedProtocol("http/1.1");
+                    return null;
+                }
+            }
+            if (nRead < HTTP2_CLIENT_PREFACE.length) {
+                return null;
+            }
+            wrapper.setNegotiatedProtocol(upgradeProtocol.getHttpUpgradeName(false));
+            if (getLog().isDebugEnabled()) {
+                getLog().debug(sm.getString("abstractConnectionHandler.priorKnowledge", wrapper));
+            }
+            return upgradeProtocol.getProcessor(wrapper, getProtocol().getAdapter());
+        }
+
+
         /**
          * 一旦processor不再需要，handler将使用它.
          *
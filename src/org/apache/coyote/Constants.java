@@ -30,6 +30,18 @@ public final class Constants {
     public static final int STAGE_KEEPALIVE = 6;
     public static final int STAGE_ENDED = 7;
 
+    // 请求处理阶段, 用于 {@link Request#markPhase(int)} 记录的时间戳 (System.nanoTime())
+    public static final int PHASE_ACCEPT = 0;
+    public static final int PHASE_FIRST_BYTE = 1;
+    public static final int PHASE_HEADERS_PARSED = 2;
+    public static final int PHASE_QUEUED = 3;
+    public static final int PHASE_DEQUEUED = 4;
+    public static final int PHASE_SERVICE_START = 5;
+    public static final int PHASE_SERVICE_END = 6;
+    public static final int PHASE_FIRST_WRITE = 7;
+    public static final int PHASE_RESPONSE_END = 8;
+    public static final int PHASE_COUNT = 9;
+
     // 默认协议设置
     public static final int DEFAULT_CONNECTION_LINGER = -1;
     public static final boolean DEFAULT_TCP_NO_DELAY = true;
@@ -75,6 +87,13 @@ public final class Constants {
     public static final String SENDFILE_FILE_END_ATTR = "org.apache.tomcat.sendfile.end";
 
 
+    /**
+     * servlet使用它告诉连接器响应是静态资源, HTTP/2 连接器可以从它的 Referer 学习推送集合.
+     * 值应该是 {@code Boolean.TRUE}.
+     */
+    public static final String PUSH_STATIC_RESOURCE_ATTR = "org.apache.tomcat.push.static";
+
+
     /**
      * RemoteIpFilter, RemoteIpValve (可以由其他类似组件来设置)设置的请求属性, 标识连接器的与此请求相关联的远程IP地址, 当通过一个或多个代理接收请求时.
      * 它通常通过 X-Forwarded-For HTTP header 提供.
@@ -0,0 +1,144 @@
+package org.apache.coyote;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 对数线性分桶的延迟直方图 (类似 HdrHistogram), 记录时不分配内存, 可被多个线程并发更新.
+ * <p>
+ * 值以微秒记录. 每个 2 的幂区间被分为 {@value #SUB_BUCKETS} 个线性子桶, 因此相对误差不超过约 6%.
+ * 超过可表示范围的值记入最后一个桶.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /*
+     * 2^36 微秒 (约 19 小时) 以上的值记入最后一个桶.
+     */
+    private static final int MAX_EXPONENT = 36;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+
+    /**
+     * 记录一个延迟值.
+     *
+     * @param nanos 延迟, 以纳秒为单位. 负值被忽略.
+     */
+    public void recordNanos(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        long micros = nanos / 1000;
+        counts.incrementAndGet(bucketIndex(micros));
+        totalCount.incrementAndGet();
+        totalMicros.addAndGet(micros);
+        long max = maxMicros.get();
+        while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+            max = maxMicros.get();
+        }
+    }
+
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+
+    public long getMeanMicros() {
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        return totalMicros.get() / count;
+    }
+
+
+    /**
+     * @param percentile 百分位, 0 到 100
+     * @return 该百分位的延迟上限 (微秒), 如果没有记录任何值, 则为 0
+     */
+    public long getPercentileMicros(double percentile) {
+        long count = 0;
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(count * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+        if (target < 1) {
+            target = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalMicros.set(0);
+        maxMicros.set(0);
+    }
+
+
+    /**
+     * @return 以逗号分隔的摘要: 数量, 平均值, 50/90/99/99.9 百分位和最大值 (微秒)
+     */
+    @Override
+    public String toString() {
+        return "count=" + getCount() + ",mean=" + getMeanMicros() +
+                ",p50=" + getPercentileMicros(50) + ",p90=" + getPercentileMicros(90) +
+                ",p99=" + getPercentileMicros(99) + ",p999=" + getPercentileMicros(99.9) +
+                ",max=" + getMaxMicros();
+    }
+
+
+    /*
+     * 小于 SUB_BUCKETS 的值每个值一个桶. 其它值按最高位所在的 2 的幂区间, 再按其后的 SUB_BUCKET_BITS 位分桶.
+     */
+    private static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = index % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (sub + 1) * width - 1;
+    }
+}
@@ -3,6 +3,7 @@ package org.apache.coyote;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -122,6 +123,8 @@ public final class Request {
     private long bytesRead=0;
     // 请求的时间 - 避免重复调用 System.currentTime
     private long startTime = -1;
+    // 各处理阶段的时间戳 (System.nanoTime()), 0 表示未记录. 参见 Constants.PHASE_*
+    private final long[] phaseTimes = new long[Constants.PHASE_COUNT];
     private int available = 0;
 
     private final RequestInfo reqProcessorMX=new RequestInfo(this);
@@ -553,6 +556,29 @@ public final class Request {
         this.startTime = startTime;
     }
 
+    /**
+     * 记录当前时间为指定处理阶段的时间戳. 如果该阶段已经记录, 则忽略.
+     *
+     * @param phase 参见 <code>Constants.PHASE_*</code>
+     */
+    public void markPhase(int phase) {
+        if (phaseTimes[phase] == 0) {
+            phaseTimes[phase] = System.nanoTime();
+        }
+    }
+
+    public void setPhaseTime(int phase, long nanoTime) {
+        phaseTimes[phase] = nanoTime;
+    }
+
+    /**
+     * @param phase 参见 <code>Constants.PHASE_*</code>
+     * @return 该阶段的时间戳 (System.nanoTime()), 如果未记录, 则为 0
+     */
+    public long getPhaseTime(int phase) {
+        return phaseTimes[phase];
+    }
+
     // -------------------- Per-Request "notes" --------------------
 
 
@@ -624,6 +650,7 @@ public final class Request {
         allDataReadEventSent.set(false);
 
         startTime = -1;
+        Arrays.fill(phaseTimes, 0);
     }
 
     // -------------------- Info  --------------------
@@ -14,6 +14,7 @@ public class RequestGroupInfo {
     private int deadErrorCount = 0;
     private long deadBytesReceived = 0;
     private long deadBytesSent = 0;
+    private final RequestPhaseStats phaseStats = new RequestPhaseStats();
 
     public synchronized void addRequestProcessor( RequestInfo rp ) {
         processors.add( rp );
@@ -126,6 +127,17 @@ public class RequestGroupInfo {
         }
     }
 
+    public RequestPhaseStats getPhaseStats() {
+        return phaseStats;
+    }
+
+    /**
+     * @return 每个请求处理阶段的延迟分布 (微秒)
+     */
+    public String[] getPhaseLatencies() {
+        return phaseStats.getSummary();
+    }
+
     public void resetCounters() {
         this.setBytesReceived(0);
         this.setBytesSent(0);
@@ -133,5 +145,6 @@ public class RequestGroupInfo {
         this.setProcessingTime(0);
         this.setMaxTime(0);
         this.setErrorCount(0);
+        phaseStats.reset();
     }
 }
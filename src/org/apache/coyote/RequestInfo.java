@@ -147,6 +147,9 @@ public class RequestInfo  {
             maxTime=time;
             maxRequestUri=req.requestURI().toString();
         }
+        if (global != null) {
+            global.getPhaseStats().record(req);
+        }
     }
 
     public int getStage() {
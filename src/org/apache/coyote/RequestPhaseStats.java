@@ -0,0 +1,116 @@
+package org.apache.coyote;
+
+/**
+ * 按请求处理阶段统计的延迟直方图. 每个区间是 {@link Request} 中记录的两个阶段时间戳之差,
+ * 两个时间戳中任何一个未记录时, 该区间不被统计.
+ * <p>
+ * 连接器 ({@link RequestGroupInfo}) 和 Context 各持有一个实例.
+ */
+public class RequestPhaseStats {
+
+    /**
+     * 区间名称, 也用于 AccessLogValve 的 <code>%{name}L</code>.
+     */
+    public static final String[] INTERVAL_NAMES = {
+        "connect", "headers", "queue", "prepare", "service", "firstWrite", "write", "total"
+    };
+
+    private static final int[] INTERVAL_START = {
+        Constants.PHASE_ACCEPT,
+        Constants.PHASE_FIRST_BYTE,
+        Constants.PHASE_QUEUED,
+        Constants.PHASE_HEADERS_PARSED,
+        Constants.PHASE_SERVICE_START,
+        Constants.PHASE_FIRST_BYTE,
+        Constants.PHASE_SERVICE_END,
+        Constants.PHASE_FIRST_BYTE
+    };
+
+    private static final int[] INTERVAL_END = {
+        Constants.PHASE_FIRST_BYTE,
+        Constants.PHASE_HEADERS_PARSED,
+        Constants.PHASE_DEQUEUED,
+        Constants.PHASE_SERVICE_START,
+        Constants.PHASE_SERVICE_END,
+        Constants.PHASE_FIRST_WRITE,
+        Constants.PHASE_RESPONSE_END,
+        Constants.PHASE_RESPONSE_END
+    };
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[INTERVAL_NAMES.length];
+
+
+    public RequestPhaseStats() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+
+    /**
+     * @param name 区间名称
+     * @return 区间的索引, 如果名称未知, 则为 -1
+     */
+    public static int getInterval(String name) {
+        for (int i = 0; i < INTERVAL_NAMES.length; i++) {
+            if (INTERVAL_NAMES[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * @param request  请求
+     * @param interval 区间的索引
+     * @return 该请求在指定区间所用的时间 (纳秒), 如果任何一端的阶段未记录, 则为 -1
+     */
+    public static long getIntervalNanos(Request request, int interval) {
+        long start = request.getPhaseTime(INTERVAL_START[interval]);
+        long end = request.getPhaseTime(INTERVAL_END[interval]);
+        if (start == 0 || end == 0) {
+            return -1;
+        }
+        return end - start;
+    }
+
+
+    /**
+     * 记录请求所有已知区间的时间.
+     *
+     * @param request 已完成的请求
+     */
+    public void record(Request request) {
+        for (int i = 0; i < histograms.length; i++) {
+            long nanos = getIntervalNanos(request, i);
+            if (nanos >= 0) {
+                histograms[i].recordNanos(nanos);
+            }
+        }
+    }
+
+
+    public LatencyHistogram getHistogram(int interval) {
+        return histograms[interval];
+    }
+
+
+    /**
+     * @return 每个区间的摘要, 用于通过 JMX 报告
+     */
+    public String[] getSummary() {
+        String[] result = new String[histograms.length];
+        for (int i = 0; i < histograms.length; i++) {
+            result[i] = INTERVAL_NAMES[i] + ":" + histograms[i].toString();
+        }
+        return result;
+    }
+
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+}
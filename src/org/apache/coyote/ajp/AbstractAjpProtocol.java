@@ -88,6 +88,18 @@ public abstract class AbstractAjpProtocol<S> extends AbstractProtocol<S> {
     }
 
 
+    /**
+     * 合并阻塞的响应写入. 启用时, SEND_HEADERS 和 SEND_BODY_CHUNK 包写入 socket 的写缓冲区后不立即刷新,
+     * 因此 header 和第一个块, 以及多个小的块, 通过一次 socket 写入发送. 缓冲区满, 应用刷新, 读取请求主体,
+     * 或者响应结束时刷新. 非阻塞 I/O 总是在每个包之后刷新.
+     */
+    private boolean coalesceWrites = false;
+    public boolean getCoalesceWrites() { return coalesceWrites; }
+    public void setCoalesceWrites(boolean coalesceWrites) {
+        this.coalesceWrites = coalesceWrites;
+    }
+
+
     /**
      * 应该在本地Web服务器层中进行身份验证吗, 或者在Servlet 容器中 ?
      */
@@ -163,6 +175,7 @@ public abstract class AbstractAjpProtocol<S> extends AbstractProtocol<S> {
         AjpProcessor processor = new AjpProcessor(getPacketSize(), getEndpoint());
         processor.setAdapter(getAdapter());
         processor.setAjpFlush(getAjpFlush());
+        processor.setCoalesceWrites(getCoalesceWrites());
         processor.setTomcatAuthentication(getTomcatAuthentication());
         processor.setTomcatAuthorization(getTomcatAuthorization());
         processor.setRequiredSecret(requiredSecret);
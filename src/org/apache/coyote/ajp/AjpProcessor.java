@@ -269,6 +269,18 @@ public class AjpProcessor extends AbstractProcessor {
     }
 
 
+    /**
+     * 合并阻塞的响应写入. 启用时, SEND_HEADERS 和 SEND_BODY_CHUNK 包写入 socket 的写缓冲区后不立即刷新,
+     * 因此 header 和第一个块, 以及多个小的块, 通过一次 socket 写入发送. 缓冲区满, 应用刷新, 读取请求主体,
+     * 或者响应结束时刷新. 非阻塞 I/O 总是在每个包之后刷新.
+     */
+    private boolean coalesceWrites = false;
+    public boolean getCoalesceWrites() { return coalesceWrites; }
+    public void setCoalesceWrites(boolean coalesceWrites) {
+        this.coalesceWrites = coalesceWrites;
+    }
+
+
     /**
      * 在关闭连接之前，Tomcat将等待后续请求的毫秒数. 默认 -1 不限制.
      */
@@ -410,6 +422,9 @@ public class AjpProcessor extends AbstractProcessor {
                 }
                 keptAlive = true;
                 request.setStartTime(System.currentTimeMillis());
+                // AJP 消息整体读取, 首字节与 header 解析完成视为同一时刻
+                request.markPhase(org.apache.coyote.Constants.PHASE_FIRST_BYTE);
+                markConnectionPhases();
             } catch (IOException e) {
                 setErrorState(ErrorState.CLOSE_CONNECTION_NOW, e);
                 break;
@@ -437,7 +452,8 @@ public class AjpProcessor extends AbstractProcessor {
                 }
             }
 
-            if (!getErrorState().isError() && !cping && endpoint.isPaused()) {
+            if (!getErrorState().isError() && !cping &&
+                    (endpoint.isPaused() || !endpoint.admitRequest())) {
                 // 503 - Service unavailable
                 response.setStatus(503);
                 setErrorState(ErrorState.CLOSE_CLEAN, null);
@@ -1045,7 +1061,9 @@ public class AjpProcessor extends AbstractProcessor {
         // 写入缓冲区
         responseMessage.end();
         socketWrapper.write(true, responseMessage.getBuffer(), 0, responseMessage.getLen());
-        socketWrapper.flush(true);
+        if (!coalesceWrites || response.getWriteListener() != null) {
+            socketWrapper.flush(true);
+        }
     }
 
 
@@ -1267,6 +1285,7 @@ public class AjpProcessor extends AbstractProcessor {
     @Deprecated
     private void writeData(ByteChunk chunk) throws IOException {
         boolean blocking = (response.getWriteListener() == null);
+        boolean flush = !blocking || !coalesceWrites;
 
         int len = chunk.getLength();
         int off = 0;
@@ -1280,7 +1299,9 @@ public class AjpProcessor extends AbstractProcessor {
             responseMessage.appendBytes(chunk.getBytes(), chunk.getOffset() + off, thisTime);
             responseMessage.end();
             socketWrapper.write(blocking, responseMessage.getBuffer(), 0, responseMessage.getLen());
-            socketWrapper.flush(blocking);
+            if (flush) {
+                socketWrapper.flush(blocking);
+            }
 
             len -= thisTime;
             off += thisTime;
@@ -1292,6 +1313,7 @@ public class AjpProcessor extends AbstractProcessor {
 
     private void writeData(ByteBuffer chunk) throws IOException {
         boolean blocking = (response.getWriteListener() == null);
+        boolean flush = !blocking || !coalesceWrites;
 
         int len = chunk.remaining();
         int off = 0;
@@ -1306,7 +1328,9 @@ public class AjpProcessor extends AbstractProcessor {
             responseMessage.appendBytes(chunk);
             responseMessage.end();
             socketWrapper.write(blocking, responseMessage.getBuffer(), 0, responseMessage.getLen());
-            socketWrapper.flush(blocking);
+            if (flush) {
+                socketWrapper.flush(blocking);
+            }
 
             len -= thisTime;
             off += thisTime;
@@ -47,10 +47,29 @@ public abstract class AbstractHttp11Protocol<S> extends AbstractProtocol<S> {
             configureUpgradeProtocol(upgradeProtocol);
         }
 
+        if (getInitialHttpHeaderSize() > 0 && getInitialHttpHeaderSize() < getMaxHttpHeaderSize()) {
+            inputHeaderBufferPool = new HeaderBufferPool(getInitialHttpHeaderSize(),
+                    getMaxHttpHeaderSize(), getHeaderBufferPoolLimit());
+            outputHeaderBufferPool = new HeaderBufferPool(getInitialHttpHeaderSize(),
+                    getMaxHttpHeaderSize(), getHeaderBufferPoolLimit());
+        }
+
         super.init();
     }
 
 
+    @Override
+    public void destroy() throws Exception {
+        super.destroy();
+        if (inputHeaderBufferPool != null) {
+            inputHeaderBufferPool.clear();
+        }
+        if (outputHeaderBufferPool != null) {
+            outputHeaderBufferPool.clear();
+        }
+    }
+
+
     @Override
     protected String getProtocolName() {
         return "Http";
@@ -124,6 +143,47 @@ public abstract class AbstractHttp11Protocol<S> extends AbstractProtocol<S> {
     public void setMaxHttpHeaderSize(int valueI) { maxHttpHeaderSize = valueI; }
 
 
+    /**
+     * 处理器初始分配的 HTTP header 缓冲区大小. 需要更大缓冲区的请求和响应从分级池中借用,
+     * 每级大小翻倍, 直到 maxHttpHeaderSize. 不小于 maxHttpHeaderSize 时禁用池.
+     */
+    private int initialHttpHeaderSize = 2 * 1024;
+    public int getInitialHttpHeaderSize() { return initialHttpHeaderSize; }
+    public void setInitialHttpHeaderSize(int initialHttpHeaderSize) {
+        this.initialHttpHeaderSize = initialHttpHeaderSize;
+    }
+
+
+    /**
+     * header 缓冲区池的每一级中保留的最大缓冲区数量. -1 表示使用较大的默认容量.
+     */
+    private int headerBufferPoolLimit = 256;
+    public int getHeaderBufferPoolLimit() { return headerBufferPoolLimit; }
+    public void setHeaderBufferPoolLimit(int headerBufferPoolLimit) {
+        this.headerBufferPoolLimit = headerBufferPoolLimit;
+    }
+
+
+    private HeaderBufferPool inputHeaderBufferPool = null;
+    private HeaderBufferPool outputHeaderBufferPool = null;
+
+    /**
+     * @return 请求 header 缓冲区池每一级的使用情况, 如果池被禁用则为空数组
+     */
+    public String[] getInputHeaderBufferPoolUsage() {
+        HeaderBufferPool pool = inputHeaderBufferPool;
+        return pool == null ? new String[0] : pool.getUsage();
+    }
+
+    /**
+     * @return 响应 header 缓冲区池每一级的使用情况, 如果池被禁用则为空数组
+     */
+    public String[] getOutputHeaderBufferPoolUsage() {
+        HeaderBufferPool pool = outputHeaderBufferPool;
+        return pool == null ? new String[0] : pool.getUsage();
+    }
+
+
     /**
      * 在数据上传期间指定一个不同的（通常较长）连接超时.
      */
@@ -272,6 +332,16 @@ public abstract class AbstractHttp11Protocol<S> extends AbstractProtocol<S> {
     }
 
 
+    /**
+     * 流水线请求的响应合并写入前可以推迟刷新的最大字节数. 0 表示禁用.
+     */
+    private int maxDeferredPipelineBytes = 16 * 1024;
+    public int getMaxDeferredPipelineBytes() { return maxDeferredPipelineBytes; }
+    public void setMaxDeferredPipelineBytes(int maxDeferredPipelineBytes) {
+        this.maxDeferredPipelineBytes = maxDeferredPipelineBytes;
+    }
+
+
     /**
      * 指示是否将协议视为安全的. 这通常意味着使用HTTPS, 但可能是假的 https, 即反向代理后面.
      */
@@ -811,11 +881,13 @@ public abstract class AbstractHttp11Protocol<S> extends AbstractProtocol<S> {
         Http11Processor processor = new Http11Processor(getMaxHttpHeaderSize(),
                 getAllowHostHeaderMismatch(), getRejectIllegalHeaderName(), getEndpoint(),
                 getMaxTrailerSize(), allowedTrailerHeaders, getMaxExtensionSize(),
-                getMaxSwallowSize(), httpUpgradeProtocols, getSendReasonPhrase());
+                getMaxSwallowSize(), httpUpgradeProtocols, getSendReasonPhrase(),
+                inputHeaderBufferPool, outputHeaderBufferPool);
         processor.setAdapter(getAdapter());
         processor.setMaxKeepAliveRequests(getMaxKeepAliveRequests());
         processor.setConnectionUploadTimeout(getConnectionUploadTimeout());
         processor.setDisableUploadTimeout(getDisableUploadTimeout());
+        processor.setMaxDeferredPipelineBytes(getMaxDeferredPipelineBytes());
         processor.setCompressionMinSize(getCompressionMinSize());
         processor.setCompression(getCompression());
         processor.setNoCompressionUserAgents(getNoCompressionUserAgents());
@@ -0,0 +1,151 @@
+package org.apache.coyote.http11;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.tomcat.util.collections.ConcurrentRingPool;
+
+/**
+ * HTTP header 缓冲区的分级池.
+ * <p>
+ * 处理器以 {@link #getInitialSize()} 大小的缓冲区开始, 只有当请求或响应的 header 确实需要时,
+ * 才从池中借用更大的缓冲区 (每一级大小翻倍, 最后一级为 maxHttpHeaderSize), 并在回收时归还.
+ * 这样大量空闲的处理器不会各自持有 maxHttpHeaderSize 大小的缓冲区.
+ * <p>
+ * 级别 0 (初始大小) 由处理器自己持有, 不进入池.
+ */
+public class HeaderBufferPool {
+
+    private final int[] tierSizes;
+    private final ConcurrentRingPool<ByteBuffer>[] pools;
+
+    /*
+     * 每一级的统计: 创建的缓冲区数量, 借出的缓冲区数量, 因池已满而丢弃的缓冲区数量.
+     */
+    private final AtomicLongArray created;
+    private final AtomicLongArray borrowed;
+    private final AtomicLongArray discarded;
+
+
+    /**
+     * @param initialSize 处理器初始持有的 header 缓冲区大小
+     * @param maxSize     header 缓冲区的最大大小 (maxHttpHeaderSize)
+     * @param limit       每一级池中保留的最大缓冲区数量. 参见 {@link ConcurrentRingPool#ConcurrentRingPool(int)}
+     */
+    public HeaderBufferPool(int initialSize, int maxSize, int limit) {
+        if (initialSize <= 0 || initialSize > maxSize) {
+            initialSize = maxSize;
+        }
+        int count = 1;
+        for (long size = initialSize; size < maxSize; size <<= 1) {
+            count++;
+        }
+        tierSizes = new int[count];
+        long size = initialSize;
+        for (int i = 0; i < count; i++) {
+            tierSizes[i] = (int) Math.min(size, maxSize);
+            size <<= 1;
+        }
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        ConcurrentRingPool<ByteBuffer>[] pools = new ConcurrentRingPool[count];
+        this.pools = pools;
+        for (int i = 1; i < count; i++) {
+            pools[i] = new ConcurrentRingPool<>(limit);
+        }
+        created = new AtomicLongArray(count);
+        borrowed = new AtomicLongArray(count);
+        discarded = new AtomicLongArray(count);
+    }
+
+
+    public int getInitialSize() {
+        return tierSizes[0];
+    }
+
+
+    public int getMaxSize() {
+        return tierSizes[tierSizes.length - 1];
+    }
+
+
+    public int getTierCount() {
+        return tierSizes.length;
+    }
+
+
+    public int getTierSize(int tier) {
+        return tierSizes[tier];
+    }
+
+
+    /**
+     * @param size 需要的 header 缓冲区大小
+     * @return 能容纳指定大小的最小级别, 如果超过最大大小, 则为 -1
+     */
+    public int getTier(int size) {
+        for (int i = 0; i < tierSizes.length; i++) {
+            if (tierSizes[i] >= size) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * 借用指定级别的缓冲区.
+     *
+     * @param tier  级别, 必须大于 0
+     * @param extra 除 header 之外需要的额外容量 (例如输入缓冲区需要的 socket 读取缓冲区大小)
+     *
+     * @return 容量至少为 <code>getTierSize(tier) + extra</code> 的已清空缓冲区
+     */
+    public ByteBuffer borrow(int tier, int extra) {
+        int capacity = tierSizes[tier] + extra;
+        borrowed.incrementAndGet(tier);
+        ByteBuffer result = pools[tier].pop();
+        if (result == null || result.capacity() < capacity) {
+            created.incrementAndGet(tier);
+            result = ByteBuffer.allocate(capacity);
+        }
+        result.clear();
+        return result;
+    }
+
+
+    /**
+     * 归还之前通过 {@link #borrow(int, int)} 借用的缓冲区.
+     *
+     * @param tier   借用时的级别
+     * @param buffer 要归还的缓冲区. 调用者此后不得再使用它.
+     */
+    public void release(int tier, ByteBuffer buffer) {
+        borrowed.decrementAndGet(tier);
+        if (!pools[tier].push(buffer)) {
+            discarded.incrementAndGet(tier);
+        }
+    }
+
+
+    /**
+     * @return 每一级的使用情况, 用于通过 JMX 报告
+     */
+    public String[] getUsage() {
+        String[] result = new String[tierSizes.length - 1];
+        for (int i = 1; i < tierSizes.length; i++) {
+            long inUse = borrowed.get(i);
+            long total = created.get(i) - discarded.get(i);
+            result[i - 1] = "size=" + tierSizes[i] + ",inUse=" + inUse + ",pooled=" +
+                    Math.max(0, total - inUse) + ",created=" + created.get(i) +
+                    ",discarded=" + discarded.get(i);
+        }
+        return result;
+    }
+
+
+    public void clear() {
+        for (int i = 1; i < pools.length; i++) {
+            pools[i].clear();
+        }
+    }
+}
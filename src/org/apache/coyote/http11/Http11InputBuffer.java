@@ -125,17 +125,41 @@ public class Http11InputBuffer implements InputBuffer, ApplicationBufferHandler
      */
     private int socketReadBufferSize;
 
+    /**
+     * 提供更大 header 缓冲区的池. 如果为 <code>null</code>, 缓冲区始终按 headerBufferSize 分配.
+     */
+    private final HeaderBufferPool headerBufferPool;
+
+    /**
+     * 处理器持有的初始缓冲区, 当前缓冲区所在的池级别 (0 表示初始缓冲区), 以及当前缓冲区可用于 header 的大小.
+     */
+    private ByteBuffer initialByteBuffer;
+    private int headerBufferTier = 0;
+    private int headerCapacity;
+
 
     // ----------------------------------------------------------- Constructors
 
     public Http11InputBuffer(Request request, int headerBufferSize,
             boolean rejectIllegalHeaderName) {
+        this(request, headerBufferSize, rejectIllegalHeaderName, null);
+    }
+
+
+    public Http11InputBuffer(Request request, int headerBufferSize,
+            boolean rejectIllegalHeaderName, HeaderBufferPool headerBufferPool) {
 
         this.request = request;
         headers = request.getMimeHeaders();
 
         this.headerBufferSize = headerBufferSize;
         this.rejectIllegalHeaderName = rejectIllegalHeaderName;
+        this.headerBufferPool = headerBufferPool;
+        if (headerBufferPool == null) {
+            headerCapacity = headerBufferSize;
+        } else {
+            headerCapacity = headerBufferPool.getInitialSize();
+        }
 
         filterLibrary = new InputFilter[0];
         activeFilters = new InputFilter[0];
@@ -249,6 +273,14 @@ public class Http11InputBuffer implements InputBuffer, ApplicationBufferHandler
         wrapper = null;
         request.recycle();
 
+        // 归还借用的缓冲区. 请求已回收, 不再有对其内容的引用.
+        if (headerBufferTier > 0) {
+            headerBufferPool.release(headerBufferTier, byteBuffer);
+            byteBuffer = initialByteBuffer;
+            headerBufferTier = 0;
+            headerCapacity = headerBufferPool.getInitialSize();
+        }
+
         for (int i = 0; i <= lastActiveFilter; i++) {
             activeFilters[i].recycle();
         }
@@ -356,6 +388,7 @@ public class Http11InputBuffer implements InputBuffer, ApplicationBufferHandler
                 // 设置开始时间，一旦开始读取数据 (即使只是跳过空白行)
                 if (request.getStartTime() < 0) {
                     request.setStartTime(System.currentTimeMillis());
+                    request.markPhase(org.apache.coyote.Constants.PHASE_FIRST_BYTE);
                 }
                 chr = byteBuffer.get();
             } while ((chr == Constants.CR) || (chr == Constants.LF));
@@ -622,6 +655,9 @@ public class Http11InputBuffer implements InputBuffer, ApplicationBufferHandler
         }
     }
 
+    /**
+     * @return 剩余的输入, 与 header 缓冲区共享数组, 因此必须在 {@link #recycle()} 之前使用
+     */
     ByteBuffer getLeftover() {
         int available = byteBuffer.remaining();
         if (available > 0) {
@@ -637,11 +673,14 @@ public class Http11InputBuffer implements InputBuffer, ApplicationBufferHandler
         wrapper = socketWrapper;
         wrapper.setAppReadBufHandler(this);
 
-        int bufLength = headerBufferSize +
+        int bufLength = headerCapacity +
                 wrapper.getSocketBufferHandler().getReadBuffer().capacity();
         if (byteBuffer == null || byteBuffer.capacity() < bufLength) {
             byteBuffer = ByteBuffer.allocate(bufLength);
             byteBuffer.position(0).limit(0);
+            if (headerBufferTier == 0) {
+                initialByteBuffer = byteBuffer;
+            }
         }
     }
 
@@ -649,6 +688,52 @@ public class Http11InputBuffer implements InputBuffer, ApplicationBufferHandler
 
     // --------------------------------------------------------- Private Methods
 
+    /**
+     * 从池中借用能容纳指定 header 大小的缓冲区, 复制已读取的数据 (保持偏移量不变),
+     * 并将已解析的请求行和 header 指向新的缓冲区.
+     */
+    private void expandHeaderBuffer(int size) {
+        int tier = headerBufferPool.getTier(size);
+        if (tier <= headerBufferTier) {
+            // 不会发生: size 不超过 headerBufferSize
+            throw new IllegalArgumentException(sm.getString("iib.requestheadertoolarge.error"));
+        }
+        ByteBuffer expanded = headerBufferPool.borrow(tier,
+                wrapper.getSocketBufferHandler().getReadBuffer().capacity());
+        byte[] oldArray = byteBuffer.array();
+        byte[] newArray = expanded.array();
+        System.arraycopy(oldArray, byteBuffer.arrayOffset(), newArray, expanded.arrayOffset(),
+                byteBuffer.limit());
+        expanded.limit(byteBuffer.limit()).position(byteBuffer.position());
+
+        rebase(request.method(), oldArray, newArray);
+        rebase(request.requestURI(), oldArray, newArray);
+        rebase(request.queryString(), oldArray, newArray);
+        rebase(request.protocol(), oldArray, newArray);
+        for (int i = 0; i < headers.size(); i++) {
+            rebase(headers.getName(i), oldArray, newArray);
+            rebase(headers.getValue(i), oldArray, newArray);
+        }
+
+        if (headerBufferTier > 0) {
+            headerBufferPool.release(headerBufferTier, byteBuffer);
+        }
+        byteBuffer = expanded;
+        headerBufferTier = tier;
+        headerCapacity = headerBufferPool.getTierSize(tier);
+    }
+
+
+    private static void rebase(MessageBytes mb, byte[] oldArray, byte[] newArray) {
+        if (mb.getType() == MessageBytes.T_BYTES) {
+            ByteChunk bc = mb.getByteChunk();
+            if (bc.getBuffer() == oldArray) {
+                mb.setBytes(newArray, bc.getStart(), bc.getLength());
+            }
+        }
+    }
+
+
     /**
      * 尝试将一些数据读入输入缓冲区.
      *
@@ -661,6 +746,9 @@ public class Http11InputBuffer implements InputBuffer, ApplicationBufferHandler
             if (byteBuffer.limit() >= headerBufferSize) {
                 throw new IllegalArgumentException(sm.getString("iib.requestheadertoolarge.error"));
             }
+            if (byteBuffer.limit() >= headerCapacity) {
+                expandHeaderBuffer(byteBuffer.limit() + 1);
+            }
         } else {
             byteBuffer.limit(end).position(end);
         }
@@ -721,6 +809,7 @@ public class Http11InputBuffer implements InputBuffer, ApplicationBufferHandler
         if (headerParsePos == HeaderParsePosition.HEADER_START) {
             // 标记当前缓冲区位置
             headerData.start = byteBuffer.position();
+            headerData.nameHash = 0;
             headerParsePos = HeaderParsePosition.HEADER_NAME;
         }
 
@@ -743,7 +832,7 @@ public class Http11InputBuffer implements InputBuffer, ApplicationBufferHandler
             if (chr == Constants.COLON) {
                 headerParsePos = HeaderParsePosition.HEADER_VALUE_START;
                 headerData.headerValue = headers.addValue(byteBuffer.array(), headerData.start,
-                        pos - headerData.start);
+                        pos - headerData.start, headerData.nameHash);
                 pos = byteBuffer.position();
                 // 标记当前缓冲区位置
                 headerData.start = pos;
@@ -761,8 +850,11 @@ public class Http11InputBuffer implements InputBuffer, ApplicationBufferHandler
 
             // chr 是header 名称的下一个字节. 转换为小写.
             if ((chr >= Constants.A) && (chr <= Constants.Z)) {
-                byteBuffer.put(pos, (byte) (chr - Constants.LC_OFFSET));
+                chr = (byte) (chr - Constants.LC_OFFSET);
+                byteBuffer.put(pos, chr);
             }
+            // token 字符都是 ASCII, 顺便计算名称的哈希, MimeHeaders 无需再次扫描
+            headerData.nameHash = 31 * headerData.nameHash + chr;
         }
 
         // 跳过行并忽略 header
@@ -964,8 +1056,13 @@ public class Http11InputBuffer implements InputBuffer, ApplicationBufferHandler
          * 保存header的值的MB. 它是 null, 在解析 header 名称期间, 并在名称解析之后创建.
          */
         MessageBytes headerValue = null;
+        /**
+         * 当解析header 名称时: 已读取的小写名称的哈希 (与 {@link String#hashCode()} 一致).
+         */
+        int nameHash = 0;
         public void recycle() {
             start = 0;
+            nameHash = 0;
             realPos = 0;
             lastSignificantChar = 0;
             headerValue = null;
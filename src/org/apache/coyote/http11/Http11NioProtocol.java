@@ -34,6 +34,14 @@ public class Http11NioProtocol extends AbstractHttp11JsseProtocol<NioChannel> {
         return ((NioEndpoint)getEndpoint()).getPollerThreadCount();
     }
 
+    public void setReusePortShardCount(int count) {
+        ((NioEndpoint)getEndpoint()).setReusePortShardCount(count);
+    }
+
+    public int getReusePortShardCount() {
+        return ((NioEndpoint)getEndpoint()).getReusePortShardCount();
+    }
+
     public void setSelectorTimeout(long timeout) {
         ((NioEndpoint)getEndpoint()).setSelectorTimeout(timeout);
     }
@@ -50,6 +58,26 @@ public class Http11NioProtocol extends AbstractHttp11JsseProtocol<NioChannel> {
       return ((NioEndpoint)getEndpoint()).getPollerThreadPriority();
     }
 
+    public void setHandshakeThreads(int handshakeThreads) {
+        ((NioEndpoint)getEndpoint()).setHandshakeThreads(handshakeThreads);
+    }
+
+    public int getHandshakeThreads() {
+        return ((NioEndpoint)getEndpoint()).getHandshakeThreads();
+    }
+
+    public void setMaxHandshakeQueueSize(int maxHandshakeQueueSize) {
+        ((NioEndpoint)getEndpoint()).setMaxHandshakeQueueSize(maxHandshakeQueueSize);
+    }
+
+    public int getMaxHandshakeQueueSize() {
+        return ((NioEndpoint)getEndpoint()).getMaxHandshakeQueueSize();
+    }
+
+    public int getHandshakeQueueDepth() {
+        return ((NioEndpoint)getEndpoint()).getHandshakeQueueDepth();
+    }
+
 
     // ----------------------------------------------------- JMX related methods
 
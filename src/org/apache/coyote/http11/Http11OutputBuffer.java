@@ -52,7 +52,20 @@ public class Http11OutputBuffer implements OutputBuffer {
     /**
      * 用于创建header 的缓冲区.
      */
-    protected final ByteBuffer headerBuffer;
+    protected ByteBuffer headerBuffer;
+
+
+    /**
+     * 提供更大 header 缓冲区的池. 如果为 <code>null</code>, header 缓冲区固定为 maxHttpHeaderSize.
+     */
+    private final HeaderBufferPool headerBufferPool;
+
+
+    /**
+     * 处理器持有的初始 header 缓冲区, 以及当前 header 缓冲区所在的池级别 (0 表示初始缓冲区).
+     */
+    private ByteBuffer initialHeaderBuffer;
+    private int headerBufferTier = 0;
 
 
     /**
@@ -91,16 +104,40 @@ public class Http11OutputBuffer implements OutputBuffer {
     protected long byteCount = 0;
 
 
+    /**
+     * 已写入 socket 写缓冲区但尚未刷新的流水线响应的字节数 (header 加主体, 近似值).
+     */
+    private long deferredBytes = 0;
+
+
+    /**
+     * 当前 header 缓冲区写入的字节数, 用于统计推迟的字节数.
+     */
+    private int headerBytes = 0;
+
+
     @Deprecated
     private boolean sendReasonPhrase = false;
 
 
     protected Http11OutputBuffer(Response response, int headerBufferSize, boolean sendReasonPhrase) {
+        this(response, headerBufferSize, sendReasonPhrase, null);
+    }
+
+
+    protected Http11OutputBuffer(Response response, int headerBufferSize, boolean sendReasonPhrase,
+            HeaderBufferPool headerBufferPool) {
 
         this.response = response;
         this.sendReasonPhrase = sendReasonPhrase;
+        this.headerBufferPool = headerBufferPool;
 
-        headerBuffer = ByteBuffer.allocate(headerBufferSize);
+        if (headerBufferPool == null) {
+            headerBuffer = ByteBuffer.allocate(headerBufferSize);
+        } else {
+            headerBuffer = ByteBuffer.allocate(headerBufferPool.getInitialSize());
+        }
+        initialHeaderBuffer = headerBuffer;
 
         filterLibrary = new OutputFilter[0];
         activeFilters = new OutputFilter[0];
@@ -263,6 +300,7 @@ public class Http11OutputBuffer implements OutputBuffer {
     public void recycle() {
         nextRequest();
         socketWrapper = null;
+        deferredBytes = 0;
     }
 
 
@@ -277,11 +315,18 @@ public class Http11OutputBuffer implements OutputBuffer {
         }
         // 回收响应对象
         response.recycle();
+        // 归还借用的 header 缓冲区
+        if (headerBufferTier > 0) {
+            headerBufferPool.release(headerBufferTier, headerBuffer);
+            headerBuffer = initialHeaderBuffer;
+            headerBufferTier = 0;
+        }
         // 重置指针
         headerBuffer.position(0).limit(headerBuffer.capacity());
         lastActiveFilter = -1;
         responseFinished = false;
         byteCount = 0;
+        headerBytes = 0;
     }
 
 
@@ -291,6 +336,19 @@ public class Http11OutputBuffer implements OutputBuffer {
      * @throws IOException 发生底层 I/O 错误
      */
     public void finishResponse() throws IOException {
+        finishResponse(false);
+    }
+
+
+    /**
+     * 完成写入响应.
+     *
+     * @param deferFlush <code>true</code> 保留 socket 写缓冲区中的数据, 以便与后续流水线请求的响应
+     *                   合并为一次写入. 调用者必须在等待更多输入之前调用 {@link #flushDeferred()}.
+     *
+     * @throws IOException 发生底层 I/O 错误
+     */
+    public void finishResponse(boolean deferFlush) throws IOException {
         if (responseFinished) {
             return;
         }
@@ -299,12 +357,36 @@ public class Http11OutputBuffer implements OutputBuffer {
             activeFilters[lastActiveFilter].end();
         }
 
-        flushBuffer(true);
+        if (deferFlush) {
+            deferredBytes += headerBytes + byteCount;
+        } else {
+            flushBuffer(true);
+        }
 
         responseFinished = true;
     }
 
 
+    /**
+     * @return 已推迟刷新的流水线响应的字节数
+     */
+    public long getDeferredBytes() {
+        return deferredBytes;
+    }
+
+
+    /**
+     * 写出所有推迟刷新的流水线响应.
+     *
+     * @throws IOException 发生底层 I/O 错误
+     */
+    public void flushDeferred() throws IOException {
+        if (deferredBytes > 0) {
+            flushBuffer(true);
+        }
+    }
+
+
     public void init(SocketWrapperBase<?> socketWrapper) {
         this.socketWrapper = socketWrapper;
     }
@@ -335,6 +417,7 @@ public class Http11OutputBuffer implements OutputBuffer {
 
         if (headerBuffer.position() > 0) {
             // 发送响应 header 缓冲区
+            headerBytes = headerBuffer.position();
             headerBuffer.flip();
             try {
                 socketWrapper.write(isBlocking(), headerBuffer);
@@ -514,9 +597,36 @@ public class Http11OutputBuffer implements OutputBuffer {
     private void checkLengthBeforeWrite(int length) {
         // "+ 4": BZ 57509. 为 CR/LF/COLON/SP 字符保留空间, 在写操作之后直接放入缓冲区.
         if (headerBuffer.position() + length + 4 > headerBuffer.capacity()) {
-            throw new HeadersTooLargeException(
-                    sm.getString("iob.responseheadertoolarge.error"));
+            if (!expandHeaderBuffer(headerBuffer.position() + length + 4)) {
+                throw new HeadersTooLargeException(
+                        sm.getString("iob.responseheadertoolarge.error"));
+            }
+        }
+    }
+
+
+    /**
+     * 从池中借用能容纳指定大小的 header 缓冲区, 并复制已写入的 header.
+     *
+     * @return <code>false</code> 如果没有池, 或者指定大小超过最大 header 大小
+     */
+    private boolean expandHeaderBuffer(int size) {
+        if (headerBufferPool == null) {
+            return false;
+        }
+        int tier = headerBufferPool.getTier(size);
+        if (tier <= headerBufferTier) {
+            return false;
+        }
+        ByteBuffer expanded = headerBufferPool.borrow(tier, 0);
+        headerBuffer.flip();
+        expanded.put(headerBuffer);
+        if (headerBufferTier > 0) {
+            headerBufferPool.release(headerBufferTier, headerBuffer);
         }
+        headerBuffer = expanded;
+        headerBufferTier = tier;
+        return true;
     }
 
 
@@ -531,6 +641,7 @@ public class Http11OutputBuffer implements OutputBuffer {
      * @throws IOException 写入数据错误
      */
     protected boolean flushBuffer(boolean block) throws IOException  {
+        deferredBytes = 0;
         return socketWrapper.flush(block);
     }
 
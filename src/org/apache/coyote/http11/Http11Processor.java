@@ -136,6 +136,12 @@ public class Http11Processor extends AbstractProcessor {
     protected boolean disableUploadTimeout = false;
 
 
+    /**
+     * 流水线请求的响应可以推迟刷新的最大字节数. 0 表示每个响应完成后立即刷新.
+     */
+    protected int maxDeferredPipelineBytes = 0;
+
+
     /**
      * 允许的压缩等级.
      */
@@ -209,14 +215,33 @@ public class Http11Processor extends AbstractProcessor {
             boolean rejectIllegalHeaderName, AbstractEndpoint<?> endpoint, int maxTrailerSize,
             Set<String> allowedTrailerHeaders, int maxExtensionSize, int maxSwallowSize,
             Map<String,UpgradeProtocol> httpUpgradeProtocols, boolean sendReasonPhrase) {
+        this(maxHttpHeaderSize, allowHostHeaderMismatch, rejectIllegalHeaderName, endpoint,
+                maxTrailerSize, allowedTrailerHeaders, maxExtensionSize, maxSwallowSize,
+                httpUpgradeProtocols, sendReasonPhrase, null, null);
+    }
+
+
+    /**
+     * @param inputHeaderBufferPool  请求 header 缓冲区的池, 如果为 <code>null</code>,
+     *                               缓冲区始终按 maxHttpHeaderSize 分配
+     * @param outputHeaderBufferPool 响应 header 缓冲区的池, 如果为 <code>null</code>,
+     *                               缓冲区始终按 maxHttpHeaderSize 分配
+     */
+    public Http11Processor(int maxHttpHeaderSize, boolean allowHostHeaderMismatch,
+            boolean rejectIllegalHeaderName, AbstractEndpoint<?> endpoint, int maxTrailerSize,
+            Set<String> allowedTrailerHeaders, int maxExtensionSize, int maxSwallowSize,
+            Map<String,UpgradeProtocol> httpUpgradeProtocols, boolean sendReasonPhrase,
+            HeaderBufferPool inputHeaderBufferPool, HeaderBufferPool outputHeaderBufferPool) {
 
         super(endpoint);
         userDataHelper = new UserDataHelper(log);
 
-        inputBuffer = new Http11InputBuffer(request, maxHttpHeaderSize,rejectIllegalHeaderName);
+        inputBuffer = new Http11InputBuffer(request, maxHttpHeaderSize,rejectIllegalHeaderName,
+                inputHeaderBufferPool);
         request.setInputBuffer(inputBuffer);
 
-        outputBuffer = new Http11OutputBuffer(response, maxHttpHeaderSize, sendReasonPhrase);
+        outputBuffer = new Http11OutputBuffer(response, maxHttpHeaderSize, sendReasonPhrase,
+                outputHeaderBufferPool);
         response.setOutputBuffer(outputBuffer);
 
         // Create and add the identity filters.
@@ -428,6 +453,25 @@ public class Http11Processor extends AbstractProcessor {
         return disableUploadTimeout;
     }
 
+
+    /**
+     * 设置流水线请求的响应可以推迟刷新的最大字节数. 当输入缓冲区中已有下一个请求的数据时,
+     * 响应将保留在 socket 写缓冲区中, 与后续响应合并写入, 直到达到此限制或需要等待更多输入.
+     *
+     * @param maxDeferredPipelineBytes 最大字节数, 0 禁用
+     */
+    public void setMaxDeferredPipelineBytes(int maxDeferredPipelineBytes) {
+        this.maxDeferredPipelineBytes = maxDeferredPipelineBytes;
+    }
+
+
+    /**
+     * @return 流水线请求的响应可以推迟刷新的最大字节数
+     */
+    public int getMaxDeferredPipelineBytes() {
+        return maxDeferredPipelineBytes;
+    }
+
     /**
      * 设置上传超时时间.
      *
@@ -640,6 +684,7 @@ public class Http11Processor extends AbstractProcessor {
             try {
                 if (!inputBuffer.parseRequestLine(keptAlive)) {
                     if (inputBuffer.getParsingRequestLinePhase() == -1) {
+                        flushDeferredResponses();
                         return SocketState.UPGRADING;
                     } else if (handleIncompleteRequestLineRead()) {
                         break;
@@ -660,6 +705,13 @@ public class Http11Processor extends AbstractProcessor {
                         readComplete = false;
                         break;
                     }
+                    markConnectionPhases();
+                    if (!endpoint.admitRequest()) {
+                        // 503 - 端点过载, 不处理请求
+                        response.setStatus(503);
+                        setErrorState(ErrorState.CLOSE_CLEAN, null);
+                        getAdapter().log(request, response, 0);
+                    }
                     if (!disableUploadTimeout) {
                         socketWrapper.setReadTimeout(connectionUploadTimeout);
                     }
@@ -668,6 +720,8 @@ public class Http11Processor extends AbstractProcessor {
                 if (log.isDebugEnabled()) {
                     log.debug(sm.getString("http11processor.header.parse"), e);
                 }
+                // 读取失败 (例如客户端在流水线请求之后半关闭连接) 不影响之前已完成的响应
+                flushDeferredResponses();
                 setErrorState(ErrorState.CLOSE_CONNECTION_NOW, e);
                 break;
             } catch (Throwable t) {
@@ -748,6 +802,11 @@ public class Http11Processor extends AbstractProcessor {
                 keepAlive = false;
             }
 
+            // 读取请求主体时可能阻塞, 客户端可能在收到之前的响应后才发送主体
+            if (!getErrorState().isError() && requestHasBody()) {
+                flushDeferredResponses();
+            }
+
             // 在适配器中处理请求
             if (!getErrorState().isError()) {
                 try {
@@ -786,7 +845,7 @@ public class Http11Processor extends AbstractProcessor {
             rp.setStage(org.apache.coyote.Constants.STAGE_ENDINPUT);
             if (!isAsync()) {
                 // 如果这是异步请求，则请求在完成时结束. AsyncContext 负责在这种情况下调用 endRequest().
-                endRequest();
+                endRequest(true);
             }
             rp.setStage(org.apache.coyote.Constants.STAGE_ENDOUTPUT);
 
@@ -817,6 +876,9 @@ public class Http11Processor extends AbstractProcessor {
             sendfileState = processSendfile(socketWrapper);
         }
 
+        // 返回 poller 之前写出所有推迟的响应
+        flushDeferredResponses();
+
         rp.setStage(org.apache.coyote.Constants.STAGE_ENDED);
 
         if (getErrorState().isError() || endpoint.isPaused()) {
@@ -1375,6 +1437,36 @@ public class Http11Processor extends AbstractProcessor {
     }
 
 
+    private boolean canDeferFlush() {
+        return maxDeferredPipelineBytes > 0 && keepAlive && !getErrorState().isError() &&
+                upgradeToken == null && sendfileData == null &&
+                response.getWriteListener() == null &&
+                outputBuffer.getDeferredBytes() < maxDeferredPipelineBytes &&
+                inputBuffer.available(false) > 0;
+    }
+
+
+    private boolean requestHasBody() {
+        return request.getContentLengthLong() > 0 ||
+                request.getMimeHeaders().getValue("transfer-encoding") != null;
+    }
+
+
+    /*
+     * 推迟的是之前已经完成的响应, 当前请求的错误状态不影响它们, 因此不检查错误状态.
+     * 任何刷新 (无论成功还是失败) 都会清除推迟的字节数, 所以只有在 socket 已经关闭时才丢弃它们.
+     */
+    private void flushDeferredResponses() {
+        if (outputBuffer.getDeferredBytes() > 0 && !socketWrapper.isClosed()) {
+            try {
+                outputBuffer.flushDeferred();
+            } catch (IOException e) {
+                setErrorState(ErrorState.CLOSE_CONNECTION_NOW, e);
+            }
+        }
+    }
+
+
     @Override
     protected SocketState dispatchEndRequest() {
         if (!keepAlive) {
@@ -1402,6 +1494,14 @@ public class Http11Processor extends AbstractProcessor {
      * 没有更多的输入传递给应用程序. 根据错误和期望状态，剩余的输入将被忽略或连接下降.
      */
     private void endRequest() {
+        endRequest(false);
+    }
+
+
+    /*
+     * allowDeferFlush: 如果输入缓冲区中已有下一个流水线请求的数据, 是否可以推迟刷新响应.
+     */
+    private void endRequest(boolean allowDeferFlush) {
         if (getErrorState().isError()) {
             // 如果正在关闭连接, 不要排干输入. 如果servlet拒绝它，上传100GB的文件的方法不会将线程捆绑在一起.
             inputBuffer.setSwallowInput(false);
@@ -1428,7 +1528,8 @@ public class Http11Processor extends AbstractProcessor {
         if (getErrorState().isIoAllowed()) {
             try {
                 action(ActionCode.COMMIT, null);
-                outputBuffer.finishResponse();
+                outputBuffer.finishResponse(allowDeferFlush && canDeferFlush());
+                request.markPhase(org.apache.coyote.Constants.PHASE_RESPONSE_END);
             } catch (IOException e) {
                 setErrorState(ErrorState.CLOSE_CONNECTION_NOW, e);
             } catch (Throwable t) {
@@ -0,0 +1,137 @@
+package org.apache.coyote.http2;
+
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import org.apache.tomcat.util.codec.binary.Base64;
+import org.apache.tomcat.util.security.ConcurrentMessageDigest;
+
+/**
+ * 客户端发送的缓存摘要 (draft-ietf-httpbis-cache-digest), 表示客户端缓存中已有的 URL 的集合.
+ * <p>
+ * 摘要是 base64url 编码的 Golomb-Rice 编码集合: 开头 5 位为 log2(N), 接着 5 位为 log2(P),
+ * 然后是排序后的哈希值的差值. 每个 URL 的哈希值是其 SHA-256 摘要的最高 log2(N * P) 位.
+ * 集合是概率性的, 可能误报 (概率为 1/P), 但不会漏报.
+ */
+class CacheDigest {
+
+    private static final String SHA256 = "SHA-256";
+
+    static {
+        try {
+            ConcurrentMessageDigest.init(SHA256);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private final int hashBits;
+    private final long[] values;
+
+
+    private CacheDigest(int hashBits, long[] values) {
+        this.hashBits = hashBits;
+        this.values = values;
+    }
+
+
+    /**
+     * 解析 base64url 编码的摘要.
+     *
+     * @param digest 摘要的值
+     *
+     * @return 解析的摘要, 如果摘要无效, 则为 <code>null</code>
+     */
+    static CacheDigest parse(String digest) {
+        byte[] data = Base64.decodeBase64(digest);
+        if (data == null || data.length < 2) {
+            return null;
+        }
+        BitReader reader = new BitReader(data);
+        int logN = (int) reader.read(5);
+        int logP = (int) reader.read(5);
+        int hashBits = logN + logP;
+        if (hashBits == 0 || hashBits > 62) {
+            return null;
+        }
+        // 每个值至少需要 logP + 1 位
+        long[] values = new long[(data.length * 8 - 10) / (logP + 1)];
+        int count = 0;
+        long previous = -1;
+        while (true) {
+            long quotient = reader.readUnary();
+            if (quotient < 0) {
+                break;
+            }
+            long remainder = reader.read(logP);
+            if (remainder < 0) {
+                break;
+            }
+            previous = previous + 1 + ((quotient << logP) | remainder);
+            values[count++] = previous;
+        }
+        return new CacheDigest(hashBits, Arrays.copyOf(values, count));
+    }
+
+
+    /**
+     * @param key URL, 对于 cache-digest header 是绝对 URL, 对于 cookie 是路径
+     *
+     * @return <code>true</code> 如果 URL (可能) 在客户端的缓存中
+     */
+    boolean contains(String key) {
+        byte[] hash = ConcurrentMessageDigest.digest(SHA256, key.getBytes(StandardCharsets.UTF_8));
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (hash[i] & 0xFF);
+        }
+        value = value >>> (64 - hashBits);
+        return Arrays.binarySearch(values, value) >= 0;
+    }
+
+
+    private static class BitReader {
+
+        private final byte[] data;
+        private int bit = 0;
+
+        BitReader(byte[] data) {
+            this.data = data;
+        }
+
+        /*
+         * @return 读取的值, 如果没有足够的数据, 则为 -1
+         */
+        long read(int bits) {
+            if (bit + bits > data.length * 8) {
+                return -1;
+            }
+            long result = 0;
+            for (int i = 0; i < bits; i++) {
+                result = (result << 1) | nextBit();
+            }
+            return result;
+        }
+
+        /*
+         * @return 1 之前的 0 的个数, 如果数据在遇到 1 之前结束 (填充), 则为 -1
+         */
+        long readUnary() {
+            long count = 0;
+            while (bit < data.length * 8) {
+                if (nextBit() == 1) {
+                    return count;
+                }
+                count++;
+            }
+            return -1;
+        }
+
+        private int nextBit() {
+            int result = (data[bit >> 3] >> (7 - (bit & 7))) & 1;
+            bit++;
+            return result;
+        }
+    }
+}
@@ -13,6 +13,16 @@ public class HpackDecoder {
 
     private static final int DEFAULT_RING_BUFFER_SIZE = 10;
 
+    private static final int STRING_CACHE_SIZE = 1024;
+    private static final int MAX_CACHED_STRING_LENGTH = 64;
+
+    /*
+     * 解码的字面字符串的缓存, 由所有的解码器共享, 使重复出现的 header 名称和较短的值
+     * (例如 content-type, te, grpc-encoding) 不必每次都创建新的 String. 直接映射, 冲突时替换, 因此大小固定.
+     * 缓存的元素是不可变的 String, 因此不需要同步.
+     */
+    private static final String[] STRING_CACHE = new String[STRING_CACHE_SIZE];
+
     /**
      * 接收从这个解码器发出的header的对象
      */
@@ -96,7 +106,7 @@ public class HpackDecoder {
                     buffer.position(originalPos);
                     return;
                 }
-                String headerValue = readHpackString(buffer);
+                String headerValue = readHpackString(buffer, true);
                 if (headerValue == null) {
                     buffer.position(originalPos);
                     return;
@@ -110,7 +120,7 @@ public class HpackDecoder {
                     buffer.position(originalPos);
                     return;
                 }
-                String headerValue = readHpackString(buffer);
+                String headerValue = readHpackString(buffer, true);
                 if (headerValue == null) {
                     buffer.position(originalPos);
                     return;
@@ -123,7 +133,8 @@ public class HpackDecoder {
                     buffer.position(originalPos);
                     return;
                 }
-                String headerValue = readHpackString(buffer);
+                // 不缓存可能是敏感数据的值
+                String headerValue = readHpackString(buffer, false);
                 if (headerValue == null) {
                     buffer.position(originalPos);
                     return;
@@ -183,11 +194,11 @@ public class HpackDecoder {
         } else if (index != 0) {
             return handleIndexedHeaderName(index);
         } else {
-            return readHpackString(buffer);
+            return readHpackString(buffer, true);
         }
     }
 
-    private String readHpackString(ByteBuffer buffer) throws HpackException {
+    private String readHpackString(ByteBuffer buffer, boolean cache) throws HpackException {
         if (!buffer.hasRemaining()) {
             return null;
         }
@@ -199,20 +210,33 @@ public class HpackDecoder {
         }
         boolean huffman = (data & 0b10000000) != 0;
         if (huffman) {
-            return readHuffmanString(length, buffer);
-        }
-        for (int i = 0; i < length; ++i) {
-            stringBuilder.append((char) buffer.get());
+            HPackHuffman.decode(buffer, length, stringBuilder);
+        } else {
+            for (int i = 0; i < length; ++i) {
+                stringBuilder.append((char) buffer.get());
+            }
         }
-        String ret = stringBuilder.toString();
+        String ret = cache ? toCachedString() : stringBuilder.toString();
         stringBuilder.setLength(0);
         return ret;
     }
 
-    private String readHuffmanString(int length, ByteBuffer buffer) throws HpackException {
-        HPackHuffman.decode(buffer, length, stringBuilder);
+    private String toCachedString() {
+        int length = stringBuilder.length();
+        if (length > MAX_CACHED_STRING_LENGTH) {
+            return stringBuilder.toString();
+        }
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + stringBuilder.charAt(i);
+        }
+        int slot = (h ^ (h >>> 16)) & (STRING_CACHE_SIZE - 1);
+        String cached = STRING_CACHE[slot];
+        if (cached != null && cached.contentEquals(stringBuilder)) {
+            return cached;
+        }
         String ret = stringBuilder.toString();
-        stringBuilder.setLength(0);
+        STRING_CACHE[slot] = ret;
         return ret;
     }
 
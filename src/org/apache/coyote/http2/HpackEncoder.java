@@ -1,12 +1,8 @@
 package org.apache.coyote.http2;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayDeque;
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Deque;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
@@ -49,15 +45,29 @@ public class HpackEncoder {
 
     private MimeHeaders currentHeaders;
 
-    private int entryPositionCounter;
-
     private int newMaxHeaderSize = -1; //如果最大header 大小已经修改
     private int minNewMaxHeaderSize = -1; //记录newMaxHeaderSize最小的值, as per section 4.1
 
     private static final Map<String, TableEntry[]> ENCODING_STATIC_TABLE;
 
-    private final Deque<TableEntry> evictionQueue = new ArrayDeque<>();
-    private final Map<String, List<TableEntry>> dynamicTable = new HashMap<>(); //TODO: 使用自定义数据结构减少分配
+    private static final int INITIAL_TABLE_CAPACITY = 16;
+
+    /*
+     * 动态表. 条目按插入顺序保存在环形缓冲区中, firstEntry 是最旧的条目, 最新的条目的 HPACK 索引为
+     * STATIC_TABLE_LENGTH + 1. 添加和删除条目时不创建对象, 只有环形缓冲区满时容量才加倍.
+     */
+    private String[] entryNames = new String[INITIAL_TABLE_CAPACITY];
+    private String[] entryValues = new String[INITIAL_TABLE_CAPACITY];
+    private int firstEntry;
+    private int entryCount;
+
+    /*
+     * 动态表的开放寻址 (线性探测) 哈希索引, 保存条目在环形缓冲区中的位置 + 1 (0 表示空槽).
+     * nameIndex 按名称查找最新的同名条目, fieldIndex 按名称和值查找. 容量是环形缓冲区的两倍,
+     * 因此装载因子不超过 0.5.
+     */
+    private int[] nameIndex = new int[INITIAL_TABLE_CAPACITY * 2];
+    private int[] fieldIndex = new int[INITIAL_TABLE_CAPACITY * 2];
 
     static {
         Map<String, TableEntry[]> map = new HashMap<>();
@@ -131,8 +141,6 @@ public class HpackEncoder {
                     if (log.isDebugEnabled()) {
                         log.debug(sm.getString("hpackEncoder.encodeHeader", headerName, val));
                     }
-                    TableEntry tableEntry = findInTable(headerName, val);
-
                     // 用11来确保有足够的空间用于可变长度的整数
                     int required = 11 + headerName.length() + 1 + val.length();
 
@@ -140,38 +148,41 @@ public class HpackEncoder {
                         this.headersIterator = it;
                         return State.UNDERFLOW;
                     }
-                    // Only index if it will fit
-                    boolean canIndex = hpackHeaderFunction.shouldUseIndexing(headerName, val) &&
-                            (headerName.length() + val.length() + 32) < maxTableSize;
-                    if (tableEntry == null && canIndex) {
-                        // 添加条目到动态表
-                        target.put((byte) (1 << 6));
-                        writeHuffmanEncodableName(target, headerName);
-                        writeHuffmanEncodableValue(target, headerName, val);
-                        addToDynamicTable(headerName, val);
-                    } else if (tableEntry == null) {
-                        //从未索引的文字
-                        target.put((byte) (1 << 4));
-                        writeHuffmanEncodableName(target, headerName);
-                        writeHuffmanEncodableValue(target, headerName, val);
+
+                    TableEntry staticEntry = findInStaticTable(headerName, val);
+                    if (staticEntry != null && val.equals(staticEntry.value)) {
+                        // 所有的事情都在表中
+                        target.put((byte) (1 << 7));
+                        Hpack.encodeInteger(target, staticEntry.position, 7);
                     } else {
-                        // so we know something is already in the table
-                        if (val.equals(tableEntry.value)) {
-                            // 所有的事情都在表中
+                        int pos = findEntry(fieldIndex, headerName, val);
+                        if (pos != -1) {
                             target.put((byte) (1 << 7));
-                            Hpack.encodeInteger(target, tableEntry.getPosition(), 7);
+                            Hpack.encodeInteger(target, getEntryIndex(pos), 7);
                         } else {
+                            int nameIdx = 0;
+                            if (staticEntry != null) {
+                                nameIdx = staticEntry.position;
+                            } else {
+                                pos = findEntry(nameIndex, headerName, null);
+                                if (pos != -1) {
+                                    nameIdx = getEntryIndex(pos);
+                                }
+                            }
+                            // Only index if it will fit
+                            boolean canIndex = hpackHeaderFunction.shouldUseIndexing(headerName, val) &&
+                                    (headerName.length() + val.length() + 32) < maxTableSize;
+                            int prefix = canIndex ? 6 : 4;
+                            target.put((byte) (1 << prefix));
+                            if (nameIdx == 0) {
+                                writeHuffmanEncodableName(target, headerName);
+                            } else {
+                                Hpack.encodeInteger(target, nameIdx, prefix);
+                            }
+                            writeHuffmanEncodableValue(target, headerName, val);
                             if (canIndex) {
                                 // 添加条目到动态表
-                                target.put((byte) (1 << 6));
-                                Hpack.encodeInteger(target, tableEntry.getPosition(), 6);
-                                writeHuffmanEncodableValue(target, headerName, val);
                                 addToDynamicTable(headerName, val);
-
-                            } else {
-                                target.put((byte) (1 << 4));
-                                Hpack.encodeInteger(target, tableEntry.getPosition(), 4);
-                                writeHuffmanEncodableValue(target, headerName, val);
                             }
                         }
                     }
@@ -220,71 +231,162 @@ public class HpackEncoder {
     }
 
     private void addToDynamicTable(String headerName, String val) {
-        int pos = entryPositionCounter++;
-        DynamicTableEntry d = new DynamicTableEntry(headerName, val, -pos);
-        List<TableEntry> existing = dynamicTable.get(headerName);
-        if (existing == null) {
-            dynamicTable.put(headerName, existing = new ArrayList<>(1));
+        if (entryCount == entryNames.length) {
+            resizeDynamicTable();
         }
-        existing.add(d);
-        evictionQueue.add(d);
-        currentTableSize += d.size;
+        int mask = entryNames.length - 1;
+        int pos = (firstEntry + entryCount) & mask;
+        entryNames[pos] = headerName;
+        entryValues[pos] = val;
+        entryCount++;
+        // 新条目替换索引中同名 (或同名同值) 的旧条目, 因为查找总是使用最新的条目
+        putIndex(nameIndex, pos, false);
+        putIndex(fieldIndex, pos, true);
+        currentTableSize += 32 + headerName.length() + val.length();
         runEvictionIfRequired();
-        if (entryPositionCounter == Integer.MAX_VALUE) {
-            //prevent rollover
-            preventPositionRollover();
+    }
+
+
+    private void runEvictionIfRequired() {
+        while (currentTableSize > maxTableSize && entryCount > 0) {
+            int pos = firstEntry;
+            // 条目按插入顺序删除, 因此如果索引仍指向这个条目, 就不存在更新的同名 (或同名同值) 的条目
+            removeIndex(nameIndex, pos, false);
+            removeIndex(fieldIndex, pos, true);
+            currentTableSize -= 32 + entryNames[pos].length() + entryValues[pos].length();
+            entryNames[pos] = null;
+            entryValues[pos] = null;
+            firstEntry = (firstEntry + 1) & (entryNames.length - 1);
+            entryCount--;
+        }
+    }
+
+
+    private void resizeDynamicTable() {
+        int oldLength = entryNames.length;
+        String[] newNames = new String[oldLength * 2];
+        String[] newValues = new String[oldLength * 2];
+        for (int i = 0; i < entryCount; i++) {
+            int pos = (firstEntry + i) & (oldLength - 1);
+            newNames[i] = entryNames[pos];
+            newValues[i] = entryValues[pos];
+        }
+        entryNames = newNames;
+        entryValues = newValues;
+        firstEntry = 0;
+        nameIndex = new int[newNames.length * 2];
+        fieldIndex = new int[newNames.length * 2];
+        for (int pos = 0; pos < entryCount; pos++) {
+            putIndex(nameIndex, pos, false);
+            putIndex(fieldIndex, pos, true);
+        }
+    }
+
+
+    /*
+     * 环形缓冲区中的位置对应的 HPACK 索引.
+     */
+    private int getEntryIndex(int pos) {
+        int mask = entryNames.length - 1;
+        int newest = (firstEntry + entryCount - 1) & mask;
+        return Hpack.STATIC_TABLE_LENGTH + 1 + ((newest - pos) & mask);
+    }
+
+
+    private static int hash(String name, String value, boolean withValue) {
+        int h = name.hashCode();
+        if (withValue) {
+            h = h * 31 + value.hashCode();
         }
+        return h ^ (h >>> 16);
+    }
+
 
+    private int hashEntry(int pos, boolean withValue) {
+        return hash(entryNames[pos], entryValues[pos], withValue);
     }
 
 
-    private void preventPositionRollover() {
-        //如果 position 计数器即将翻滚, 迭代所有的表条目, 并设置它们的位置到它们的实际位置
-        for (Map.Entry<String, List<TableEntry>> entry : dynamicTable.entrySet()) {
-            for (TableEntry t : entry.getValue()) {
-                t.position = t.getPosition();
+    /*
+     * @return 条目在环形缓冲区中的位置, 如果未找到, 则为 -1
+     */
+    private int findEntry(int[] index, String name, String value) {
+        boolean withValue = value != null;
+        int mask = index.length - 1;
+        int slot = hash(name, value, withValue) & mask;
+        int p;
+        while ((p = index[slot]) != 0) {
+            int pos = p - 1;
+            if (name.equals(entryNames[pos]) && (!withValue || value.equals(entryValues[pos]))) {
+                return pos;
             }
+            slot = (slot + 1) & mask;
         }
-        entryPositionCounter = 0;
+        return -1;
     }
 
-    private void runEvictionIfRequired() {
 
-        while (currentTableSize > maxTableSize) {
-            TableEntry next = evictionQueue.poll();
-            if (next == null) {
+    private void putIndex(int[] index, int pos, boolean withValue) {
+        String name = entryNames[pos];
+        String value = entryValues[pos];
+        int mask = index.length - 1;
+        int slot = hashEntry(pos, withValue) & mask;
+        int p;
+        while ((p = index[slot]) != 0) {
+            int other = p - 1;
+            if (name.equals(entryNames[other]) && (!withValue || value.equals(entryValues[other]))) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = pos + 1;
+    }
+
+
+    private void removeIndex(int[] index, int pos, boolean withValue) {
+        int mask = index.length - 1;
+        int slot = hashEntry(pos, withValue) & mask;
+        int p;
+        while ((p = index[slot]) != pos + 1) {
+            if (p == 0) {
+                // 已被更新的条目替换
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        // 向后移动删除, 使后续的条目仍可以从其原始位置探测到
+        index[slot] = 0;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            p = index[next];
+            if (p == 0) {
                 return;
             }
-            currentTableSize -= next.size;
-            List<TableEntry> list = dynamicTable.get(next.name);
-            list.remove(next);
-            if (list.isEmpty()) {
-                dynamicTable.remove(next.name);
+            int home = hashEntry(p - 1, withValue) & mask;
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                index[slot] = p;
+                index[next] = 0;
+                slot = next;
             }
         }
     }
 
-    private TableEntry findInTable(String headerName, String value) {
+
+    /*
+     * @return 名称和值都匹配的静态表条目, 或者只有名称匹配的第一个条目, 如果名称不在静态表中, 则为 null
+     */
+    private static TableEntry findInStaticTable(String headerName, String value) {
         TableEntry[] staticTable = ENCODING_STATIC_TABLE.get(headerName);
-        if (staticTable != null) {
-            for (TableEntry st : staticTable) {
-                if (st.value != null && st.value.equals(value)) { //todo: some form of lookup?
-                    return st;
-                }
-            }
+        if (staticTable == null) {
+            return null;
         }
-        List<TableEntry> dynamic = dynamicTable.get(headerName);
-        if (dynamic != null) {
-            for (TableEntry st : dynamic) {
-                if (st.value.equals(value)) { //todo: some form of lookup?
-                    return st;
-                }
+        for (TableEntry st : staticTable) {
+            if (st.value != null && st.value.equals(value)) {
+                return st;
             }
         }
-        if (staticTable != null) {
-            return staticTable[0];
-        }
-        return null;
+        return staticTable[0];
     }
 
     public void setMaxTableSize(int newSize) {
@@ -321,34 +423,12 @@ public class HpackEncoder {
     static class TableEntry {
         final String name;
         final String value;
-        final int size;
-        int position;
+        final int position;
 
         TableEntry(String name, String value, int position) {
             this.name = name;
             this.value = value;
             this.position = position;
-            if (value != null) {
-                this.size = 32 + name.length() + value.length();
-            } else {
-                this.size = -1;
-            }
-        }
-
-        public int getPosition() {
-            return position;
-        }
-    }
-
-    class DynamicTableEntry extends TableEntry {
-
-        DynamicTableEntry(String name, String value, int position) {
-            super(name, value, position);
-        }
-
-        @Override
-        public int getPosition() {
-            return super.getPosition() + entryPositionCounter + Hpack.STATIC_TABLE_LENGTH;
         }
     }
 
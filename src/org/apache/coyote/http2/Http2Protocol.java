@@ -31,6 +31,14 @@ public class Http2Protocol implements UpgradeProtocol {
     static final int DEFAULT_MAX_CONCURRENT_STREAM_EXECUTION = 20;
     // 默认由 HTTP/2 规范定义
     static final int DEFAULT_INITIAL_WINDOW_SIZE = (1 << 16) - 1;
+    // 明文 prior knowledge 连接 (通常是内部服务之间的流量) 的默认值
+    static final long DEFAULT_PRIOR_KNOWLEDGE_MAX_CONCURRENT_STREAMS = 1000;
+    static final int DEFAULT_PRIOR_KNOWLEDGE_MAX_CONCURRENT_STREAM_EXECUTION = 100;
+    static final int DEFAULT_PRIOR_KNOWLEDGE_INITIAL_WINDOW_SIZE = 256 * 1024;
+    static final int DEFAULT_PRIOR_KNOWLEDGE_CONNECTION_WINDOW_SIZE = 4 * 1024 * 1024;
+    static final int DEFAULT_MAX_LEARNED_PUSH_PAGES = 1000;
+    static final int DEFAULT_MAX_LEARNED_PUSH_RESOURCES = 16;
+    static final int DEFAULT_MIN_LEARNED_PUSH_OBSERVATIONS = 3;
 
     private static final String HTTP_UPGRADE_NAME = "h2c";
     private static final String ALPN_NAME = "h2";
@@ -42,6 +50,9 @@ public class Http2Protocol implements UpgradeProtocol {
     private long writeTimeout = DEFAULT_WRITE_TIMEOUT;
     private long maxConcurrentStreams = DEFAULT_MAX_CONCURRENT_STREAMS;
     private int maxConcurrentStreamExecution = DEFAULT_MAX_CONCURRENT_STREAM_EXECUTION;
+    private int maxTotalConcurrentStreamExecution = -1;
+    private volatile StreamDispatcher streamDispatcher = null;
+    private int streamStateCacheSize = -1;
     // 如果需要较低的初始值, 在这里设置, 但是不要修改上面默认定义的.
     private int initialWindowSize = DEFAULT_INITIAL_WINDOW_SIZE;
     // Limits
@@ -52,6 +63,20 @@ public class Http2Protocol implements UpgradeProtocol {
     private int maxTrailerCount = Constants.DEFAULT_MAX_TRAILER_COUNT;
     private int maxTrailerSize = Constants.DEFAULT_MAX_TRAILER_SIZE;
     private boolean initiatePingDisabled = false;
+    // Prior knowledge
+    private long priorKnowledgeMaxConcurrentStreams = DEFAULT_PRIOR_KNOWLEDGE_MAX_CONCURRENT_STREAMS;
+    private int priorKnowledgeMaxConcurrentStreamExecution =
+            DEFAULT_PRIOR_KNOWLEDGE_MAX_CONCURRENT_STREAM_EXECUTION;
+    private int priorKnowledgeInitialWindowSize = DEFAULT_PRIOR_KNOWLEDGE_INITIAL_WINDOW_SIZE;
+    private int priorKnowledgeConnectionWindowSize = DEFAULT_PRIOR_KNOWLEDGE_CONNECTION_WINDOW_SIZE;
+    // Push
+    private boolean pushLearningEnabled = false;
+    private int maxLearnedPushPages = DEFAULT_MAX_LEARNED_PUSH_PAGES;
+    private int maxLearnedPushResources = DEFAULT_MAX_LEARNED_PUSH_RESOURCES;
+    private int minLearnedPushObservations = DEFAULT_MIN_LEARNED_PUSH_OBSERVATIONS;
+    private String pushCacheDigestCookie = null;
+    private volatile PushLearner pushLearner = null;
+    private final PushStatistics pushStatistics = new PushStatistics();
 
     @Override
     public String getHttpUpgradeName(boolean isSSLEnabled) {
@@ -74,8 +99,16 @@ public class Http2Protocol implements UpgradeProtocol {
 
     @Override
     public Processor getProcessor(SocketWrapperBase<?> socketWrapper, Adapter adapter) {
+        Http2UpgradeHandler handler = createUpgradeHandler(adapter, null);
+        if (!ALPN_NAME.equals(socketWrapper.getNegotiatedProtocol())) {
+            // 明文的 prior knowledge 连接
+            handler.setMaxConcurrentStreams(getPriorKnowledgeMaxConcurrentStreams());
+            handler.setMaxConcurrentStreamExecution(getPriorKnowledgeMaxConcurrentStreamExecution());
+            handler.setInitialWindowSize(getPriorKnowledgeInitialWindowSize());
+            handler.setConnectionWindowSize(getPriorKnowledgeConnectionWindowSize());
+        }
         UpgradeProcessorInternal processor = new UpgradeProcessorInternal(socketWrapper,
-                new UpgradeToken(getInternalUpgradeHandler(adapter, null), null, null));
+                new UpgradeToken(handler, null, null));
         return processor;
     }
 
@@ -83,6 +116,11 @@ public class Http2Protocol implements UpgradeProtocol {
     @Override
     public InternalHttpUpgradeHandler getInternalUpgradeHandler(Adapter adapter,
             Request coyoteRequest) {
+        return createUpgradeHandler(adapter, coyoteRequest);
+    }
+
+
+    private Http2UpgradeHandler createUpgradeHandler(Adapter adapter, Request coyoteRequest) {
         Http2UpgradeHandler result = new Http2UpgradeHandler(adapter, coyoteRequest);
 
         result.setReadTimeout(getReadTimeout());
@@ -90,6 +128,8 @@ public class Http2Protocol implements UpgradeProtocol {
         result.setWriteTimeout(getWriteTimeout());
         result.setMaxConcurrentStreams(getMaxConcurrentStreams());
         result.setMaxConcurrentStreamExecution(getMaxConcurrentStreamExecution());
+        result.setStreamDispatcher(getStreamDispatcher());
+        result.setStreamStateCacheSize(getStreamStateCacheSize());
         result.setInitialWindowSize(getInitialWindowSize());
         result.setAllowedTrailerHeaders(allowedTrailerHeaders);
         result.setMaxHeaderCount(getMaxHeaderCount());
@@ -97,6 +137,7 @@ public class Http2Protocol implements UpgradeProtocol {
         result.setMaxTrailerCount(getMaxTrailerCount());
         result.setMaxTrailerSize(getMaxTrailerSize());
         result.setInitiatePingDisabled(initiatePingDisabled);
+        result.setPushPolicy(getPushLearner(), pushStatistics, pushCacheDigestCookie);
         return result;
     }
 
@@ -173,6 +214,51 @@ public class Http2Protocol implements UpgradeProtocol {
     }
 
 
+    public int getMaxTotalConcurrentStreamExecution() {
+        return maxTotalConcurrentStreamExecution;
+    }
+
+
+    /**
+     * 所有连接同时执行的流的最大数量. 达到上限时, 新的流在其连接中排队, 有排队的流的连接轮流获得执行的机会.
+     * 应小于连接器的最大线程数, 以便为 HTTP/1.1 请求保留线程.
+     *
+     * @param maxTotalConcurrentStreamExecution 最大数量, 小于 1 表示只限制每个连接
+     *                                          (参见 {@link #setMaxConcurrentStreamExecution(int)})
+     */
+    public void setMaxTotalConcurrentStreamExecution(int maxTotalConcurrentStreamExecution) {
+        this.maxTotalConcurrentStreamExecution = maxTotalConcurrentStreamExecution;
+    }
+
+
+    /**
+     * @return 所有连接当前正在执行的流的数量, 如果没有配置连接器级别的上限, 则为 -1
+     */
+    public int getActiveStreamExecutionCount() {
+        StreamDispatcher dispatcher = streamDispatcher;
+        if (dispatcher == null) {
+            return -1;
+        }
+        return dispatcher.getActive();
+    }
+
+
+    public int getStreamStateCacheSize() {
+        return streamStateCacheSize;
+    }
+
+
+    /**
+     * 每个连接缓存的已完成的流的状态 (coyote Request/Response 以及输入和输出缓冲区) 的最大数量,
+     * 以便新的流重用, 而不是为每个流重新分配.
+     *
+     * @param streamStateCacheSize 最大数量, 0 禁用缓存, -1 表示使用连接的 maxConcurrentStreamExecution
+     */
+    public void setStreamStateCacheSize(int streamStateCacheSize) {
+        this.streamStateCacheSize = streamStateCacheSize;
+    }
+
+
     public int getInitialWindowSize() {
         return initialWindowSize;
     }
@@ -253,4 +339,183 @@ public class Http2Protocol implements UpgradeProtocol {
     public void setInitiatePingDisabled(boolean initiatePingDisabled) {
         this.initiatePingDisabled = initiatePingDisabled;
     }
+
+
+    public long getPriorKnowledgeMaxConcurrentStreams() {
+        return priorKnowledgeMaxConcurrentStreams;
+    }
+
+
+    /**
+     * 以下 prior knowledge 的设置用于不经过 HTTP 升级或 ALPN, 直接以连接前言开始的明文 HTTP/2 连接.
+     * 这样的连接通常来自内部服务 (例如服务网格), 因此默认值比其它连接的更大.
+     *
+     * @param priorKnowledgeMaxConcurrentStreams 每个连接的最大并发流数
+     */
+    public void setPriorKnowledgeMaxConcurrentStreams(long priorKnowledgeMaxConcurrentStreams) {
+        this.priorKnowledgeMaxConcurrentStreams = priorKnowledgeMaxConcurrentStreams;
+    }
+
+
+    public int getPriorKnowledgeMaxConcurrentStreamExecution() {
+        return priorKnowledgeMaxConcurrentStreamExecution;
+    }
+
+
+    public void setPriorKnowledgeMaxConcurrentStreamExecution(
+            int priorKnowledgeMaxConcurrentStreamExecution) {
+        this.priorKnowledgeMaxConcurrentStreamExecution = priorKnowledgeMaxConcurrentStreamExecution;
+    }
+
+
+    public int getPriorKnowledgeInitialWindowSize() {
+        return priorKnowledgeInitialWindowSize;
+    }
+
+
+    public void setPriorKnowledgeInitialWindowSize(int priorKnowledgeInitialWindowSize) {
+        this.priorKnowledgeInitialWindowSize = priorKnowledgeInitialWindowSize;
+    }
+
+
+    public int getPriorKnowledgeConnectionWindowSize() {
+        return priorKnowledgeConnectionWindowSize;
+    }
+
+
+    public void setPriorKnowledgeConnectionWindowSize(int priorKnowledgeConnectionWindowSize) {
+        this.priorKnowledgeConnectionWindowSize = priorKnowledgeConnectionWindowSize;
+    }
+
+
+    public boolean getPushLearningEnabled() {
+        return pushLearningEnabled;
+    }
+
+
+    /**
+     * 是否从 DefaultServlet 提供的静态资源的 Referer 学习每个页面的推送集合, 并在之后请求页面时主动推送.
+     *
+     * @param pushLearningEnabled <code>true</code> 启用学习
+     */
+    public void setPushLearningEnabled(boolean pushLearningEnabled) {
+        this.pushLearningEnabled = pushLearningEnabled;
+    }
+
+
+    public int getMaxLearnedPushPages() {
+        return maxLearnedPushPages;
+    }
+
+
+    public void setMaxLearnedPushPages(int maxLearnedPushPages) {
+        this.maxLearnedPushPages = maxLearnedPushPages;
+    }
+
+
+    public int getMaxLearnedPushResources() {
+        return maxLearnedPushResources;
+    }
+
+
+    public void setMaxLearnedPushResources(int maxLearnedPushResources) {
+        this.maxLearnedPushResources = maxLearnedPushResources;
+    }
+
+
+    public int getMinLearnedPushObservations() {
+        return minLearnedPushObservations;
+    }
+
+
+    /**
+     * Referer 由客户端提供, 因此一个资源只有在这个数量的不同连接上被观察到之后, 才会被推送给请求页面的所有客户端.
+     *
+     * @param minLearnedPushObservations 不同连接的最小数量
+     */
+    public void setMinLearnedPushObservations(int minLearnedPushObservations) {
+        this.minLearnedPushObservations = minLearnedPushObservations;
+    }
+
+
+    public String getPushCacheDigestCookie() {
+        return pushCacheDigestCookie;
+    }
+
+
+    /**
+     * 包含客户端缓存摘要的 cookie 的名称. 摘要使用与 cache-digest header 相同的编码, 但以路径而不是绝对 URL 为键.
+     *
+     * @param pushCacheDigestCookie cookie 名称, 或 <code>null</code> 不使用 cookie
+     */
+    public void setPushCacheDigestCookie(String pushCacheDigestCookie) {
+        this.pushCacheDigestCookie = pushCacheDigestCookie;
+    }
+
+
+    public PushStatistics getPushStatistics() {
+        return pushStatistics;
+    }
+
+
+    public long getPushPromiseCount() {
+        return pushStatistics.getPromiseCount();
+    }
+
+
+    public long getPushHitCount() {
+        return pushStatistics.getHitCount();
+    }
+
+
+    public long getPushCancelCount() {
+        return pushStatistics.getCancelCount();
+    }
+
+
+    public long getPushDuplicateCount() {
+        return pushStatistics.getDuplicateCount();
+    }
+
+
+    public long getPushCacheDigestHitCount() {
+        return pushStatistics.getCacheDigestHitCount();
+    }
+
+
+    private StreamDispatcher getStreamDispatcher() {
+        if (maxTotalConcurrentStreamExecution < 1) {
+            return null;
+        }
+        StreamDispatcher result = streamDispatcher;
+        if (result == null) {
+            synchronized (this) {
+                result = streamDispatcher;
+                if (result == null) {
+                    result = new StreamDispatcher(maxTotalConcurrentStreamExecution);
+                    streamDispatcher = result;
+                }
+            }
+        }
+        return result;
+    }
+
+
+    private PushLearner getPushLearner() {
+        if (!pushLearningEnabled) {
+            return null;
+        }
+        PushLearner result = pushLearner;
+        if (result == null) {
+            synchronized (this) {
+                result = pushLearner;
+                if (result == null) {
+                    result = new PushLearner(maxLearnedPushPages, maxLearnedPushResources,
+                            minLearnedPushObservations);
+                    pushLearner = result;
+                }
+            }
+        }
+        return result;
+    }
 }
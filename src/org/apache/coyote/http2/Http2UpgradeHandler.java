@@ -4,9 +4,10 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
@@ -14,7 +15,6 @@ import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -80,6 +80,7 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
 
     private final Adapter adapter;
     private volatile SocketWrapperBase<?> socketWrapper;
+    private volatile Http2Writer writer;
     private volatile SSLSupport sslSupport;
 
     private volatile Http2Parser parser;
@@ -99,6 +100,8 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
 
     private HpackDecoder hpackDecoder;
     private HpackEncoder hpackEncoder;
+    // HPACK 编码的顺序必须与 header 块在连接上的顺序一致
+    private final Object hpackEncoderLock = new Object();
 
     // 所有的超时时间, 毫秒
     private long readTimeout = Http2Protocol.DEFAULT_READ_TIMEOUT;
@@ -114,13 +117,16 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
     private final PingManager pingManager = new PingManager();
     private volatile int newStreamsSinceLastPrune = 0;
     // 连接阻塞时跟踪 (windowSize < 1)
-    private final ConcurrentMap<AbstractStream,int[]> backLogStreams = new ConcurrentHashMap<>();
-    private long backLogSize = 0;
+    private final StreamScheduler backLog = new StreamScheduler();
 
     // Stream 并发控制
     private int maxConcurrentStreamExecution = Http2Protocol.DEFAULT_MAX_CONCURRENT_STREAM_EXECUTION;
-    private AtomicInteger streamConcurrency = null;
-    private Queue<StreamRunnable> queuedRunnable = null;
+    private StreamDispatcher streamDispatcher = null;
+    private StreamDispatcher.ConnectionQueue streamQueue = null;
+
+    // 流状态的重用
+    private int streamStateCacheSize = -1;
+    private StreamStateCache streamStateCache = null;
 
     // Limits
     private Set<String> allowedTrailerHeaders = Collections.emptySet();
@@ -129,6 +135,11 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
     private int maxTrailerCount = Constants.DEFAULT_MAX_TRAILER_COUNT;
     private int maxTrailerSize = Constants.DEFAULT_MAX_TRAILER_SIZE;
 
+    private PushPolicy pushPolicy;
+
+    // 连接级别的接收窗口. 大于协议的默认值时, 在初始设置帧之后发送 WINDOW_UPDATE 增加它
+    private int connectionWindowSize = ConnectionSettingsBase.DEFAULT_INITIAL_WINDOW_SIZE;
+
 
     public Http2UpgradeHandler(Adapter adapter, Request coyoteRequest) {
         super (STREAM_ID_ZERO);
@@ -137,6 +148,7 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
 
         remoteSettings = new ConnectionSettingsRemote(connectionId);
         localSettings = new ConnectionSettingsLocal(connectionId);
+        pushPolicy = new PushPolicy(connectionId, null, new PushStatistics(), null);
 
         // 初始HTTP请求变为流1.
         if (coyoteRequest != null) {
@@ -164,9 +176,16 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
         }
 
         // 初始化并发控制
-        if (maxConcurrentStreamExecution < localSettings.getMaxConcurrentStreams()) {
-            streamConcurrency = new AtomicInteger(0);
-            queuedRunnable = new ConcurrentLinkedQueue<>();
+        if (streamDispatcher == null) {
+            streamDispatcher = new StreamDispatcher(-1);
+        }
+        streamQueue = new StreamDispatcher.ConnectionQueue(
+                socketWrapper.getEndpoint().getExecutor(), maxConcurrentStreamExecution);
+
+        // 初始化流状态的缓存. 在这里而不是在构造方法中, 因为 prior knowledge 连接在之后修改设置
+        int cacheSize = streamStateCacheSize < 0 ? maxConcurrentStreamExecution : streamStateCacheSize;
+        if (cacheSize > 0) {
+            streamStateCache = new StreamStateCache(cacheSize, localSettings.getInitialWindowSize());
         }
 
         parser = new Http2Parser(connectionId, this, this);
@@ -203,8 +222,16 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
         // 发送初始化的设置帧
         try {
             byte[] settings = localSettings.getSettingsFrameForPending();
-            socketWrapper.write(true, settings, 0, settings.length);
-            socketWrapper.flush(true);
+            int increment = connectionWindowSize - ConnectionSettingsBase.DEFAULT_INITIAL_WINDOW_SIZE;
+            if (increment > 0) {
+                byte[] windowUpdate = new byte[13];
+                ByteUtil.setThreeBytes(windowUpdate, 0,  4);
+                windowUpdate[3] = FrameType.WINDOW_UPDATE.getIdByte();
+                ByteUtil.set31Bits(windowUpdate, 9, increment);
+                writer.write(ByteBuffer.wrap(settings), ByteBuffer.wrap(windowUpdate));
+            } else {
+                writer.write(ByteBuffer.wrap(settings));
+            }
         } catch (IOException ioe) {
             String msg = sm.getString("upgradeHandler.sendPrefaceFail", connectionId);
             if (log.isDebugEnabled()) {
@@ -235,12 +262,16 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
         }
 
         if (webConnection != null) {
+            pushPolicy.pushLearned(stream);
             processStreamOnContainerThread(stream);
         }
     }
 
 
     private void processStreamOnContainerThread(Stream stream) {
+        Request coyoteRequest = stream.getCoyoteRequest();
+        coyoteRequest.markPhase(org.apache.coyote.Constants.PHASE_HEADERS_PARSED);
+        coyoteRequest.markPhase(org.apache.coyote.Constants.PHASE_QUEUED);
         StreamProcessor streamProcessor = new StreamProcessor(this, stream, adapter, socketWrapper);
         streamProcessor.setSslSupport(sslSupport);
         processStreamOnContainerThread(streamProcessor, SocketEvent.OPEN_READ);
@@ -249,22 +280,14 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
 
     void processStreamOnContainerThread(StreamProcessor streamProcessor, SocketEvent event) {
         StreamRunnable streamRunnable = new StreamRunnable(streamProcessor, event);
-        if (streamConcurrency == null) {
-            socketWrapper.getEndpoint().getExecutor().execute(streamRunnable);
-        } else {
-            if (getStreamConcurrency() < maxConcurrentStreamExecution) {
-                increaseStreamConcurrency();
-                socketWrapper.getEndpoint().getExecutor().execute(streamRunnable);
-            } else {
-                queuedRunnable.offer(streamRunnable);
-            }
-        }
+        streamDispatcher.dispatch(streamQueue, streamRunnable);
     }
 
 
     @Override
     public void setSocketWrapper(SocketWrapperBase<?> wrapper) {
         this.socketWrapper = wrapper;
+        this.writer = new Http2Writer(wrapper);
     }
 
 
@@ -399,30 +422,23 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
     }
 
 
-    private int increaseStreamConcurrency() {
-        return streamConcurrency.incrementAndGet();
+    /**
+     * 在流的处理正常完成后调用, 以便在流关闭后重用它的状态.
+     */
+    void streamProcessingComplete(Stream stream) {
+        if (streamStateCache != null) {
+            streamStateCache.streamComplete(stream);
+        }
     }
 
-    private int decreaseStreamConcurrency() {
-        return streamConcurrency.decrementAndGet();
-    }
 
-    private int getStreamConcurrency() {
-        return streamConcurrency.get();
+    StreamStateCache getStreamStateCache() {
+        return streamStateCache;
     }
 
+
     void executeQueuedStream() {
-        if (streamConcurrency == null) {
-            return;
-        }
-        decreaseStreamConcurrency();
-        if (getStreamConcurrency() < maxConcurrentStreamExecution) {
-            StreamRunnable streamRunnable = queuedRunnable.poll();
-            if (streamRunnable != null) {
-                increaseStreamConcurrency();
-                socketWrapper.getEndpoint().getExecutor().execute(streamRunnable);
-            }
-        }
+        streamDispatcher.complete(streamQueue);
     }
 
 
@@ -445,10 +461,7 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
         // Payload
         ByteUtil.setFourBytes(rstFrame, 9, se.getError().getCode());
 
-        synchronized (socketWrapper) {
-            socketWrapper.write(true, rstFrame, 0, rstFrame.length);
-            socketWrapper.flush(true);
-        }
+        writer.write(ByteBuffer.wrap(rstFrame));
     }
 
 
@@ -475,14 +488,12 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
         byte[] payloadLength = new byte[3];
         ByteUtil.setThreeBytes(payloadLength, 0, len);
 
-        synchronized (socketWrapper) {
-            socketWrapper.write(true, payloadLength, 0, payloadLength.length);
-            socketWrapper.write(true, GOAWAY, 0, GOAWAY.length);
-            socketWrapper.write(true, fixedPayload, 0, 8);
-            if (debugMsg != null) {
-                socketWrapper.write(true, debugMsg, 0, debugMsg.length);
-            }
-            socketWrapper.flush(true);
+        if (debugMsg == null) {
+            writer.write(ByteBuffer.wrap(payloadLength), ByteBuffer.wrap(GOAWAY),
+                    ByteBuffer.wrap(fixedPayload));
+        } else {
+            writer.write(ByteBuffer.wrap(payloadLength), ByteBuffer.wrap(GOAWAY),
+                    ByteBuffer.wrap(fixedPayload), ByteBuffer.wrap(debugMsg));
         }
     }
 
@@ -499,48 +510,12 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
 
         prepareHeaders(coyoteResponse);
 
-        byte[] header = new byte[9];
-        ByteBuffer target = ByteBuffer.allocate(payloadSize);
-        boolean first = true;
-        State state = null;
-        // 确保 Stream 处理线程可以控制 socket.
-        synchronized (socketWrapper) {
-            while (state != State.COMPLETE) {
-                state = getHpackEncoder().encode(coyoteResponse.getMimeHeaders(), target);
-                target.flip();
-                if (state == State.COMPLETE || target.limit() > 0) {
-                    ByteUtil.setThreeBytes(header, 0, target.limit());
-                    if (first) {
-                        first = false;
-                        header[3] = FrameType.HEADERS.getIdByte();
-                        if (stream.getOutputBuffer().hasNoBody()) {
-                            header[4] = FLAG_END_OF_STREAM;
-                        }
-                    } else {
-                        header[3] = FrameType.CONTINUATION.getIdByte();
-                    }
-                    if (state == State.COMPLETE) {
-                        header[4] += FLAG_END_OF_HEADERS;
-                    }
-                    if (log.isDebugEnabled()) {
-                        log.debug(target.limit() + " bytes");
-                    }
-                    ByteUtil.set31Bits(header, 5, stream.getIdentifier().intValue());
-                    try {
-                        socketWrapper.write(true, header, 0, header.length);
-                        socketWrapper.write(true, target);
-                        socketWrapper.flush(true);
-                    } catch (IOException ioe) {
-                        handleAppInitiatedIOException(ioe);
-                    }
-                }
-                if (state == State.UNDERFLOW && target.limit() == 0) {
-                    target = ByteBuffer.allocate(target.capacity() * 2);
-                } else {
-                    target.clear();
-                }
-            }
+        int firstFlags = 0;
+        if (stream.getOutputBuffer().hasNoBody()) {
+            firstFlags = FLAG_END_OF_STREAM;
         }
+        writeHeaderBlock(stream, FrameType.HEADERS.getIdByte(), firstFlags, null,
+                coyoteResponse.getMimeHeaders(), payloadSize);
     }
 
 
@@ -578,23 +553,38 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
                     stream.getIdentifier(), Integer.toString(pushedStreamId)));
         }
 
-        byte[] header = new byte[9];
+        byte[] pushedStreamIdBytes = new byte[4];
+        ByteUtil.set31Bits(pushedStreamIdBytes, 0, pushedStreamId);
+        writeHeaderBlock(stream, FrameType.PUSH_PROMISE.getIdByte(), 0, pushedStreamIdBytes,
+                coyoteRequest.getMimeHeaders(), payloadSize);
+    }
+
+
+    /*
+     * 编码 header 块并作为一个 HEADERS 或 PUSH_PROMISE 帧以及所需的 CONTINUATION 帧写出.
+     * 这些帧作为一个整体入队, 因此不会与其它流的帧交错.
+     */
+    private void writeHeaderBlock(Stream stream, byte firstType, int firstFlags, byte[] prefix,
+            MimeHeaders headers, int payloadSize) throws IOException {
+        List<ByteBuffer> buffers = new ArrayList<>(2);
         ByteBuffer target = ByteBuffer.allocate(payloadSize);
+        if (prefix != null) {
+            target.put(prefix);
+        }
         boolean first = true;
         State state = null;
-        byte[] pushedStreamIdBytes = new byte[4];
-        ByteUtil.set31Bits(pushedStreamIdBytes, 0, pushedStreamId);
-        // 确保 Stream 处理线程可以控制 socket.
-        synchronized (socketWrapper) {
-            target.put(pushedStreamIdBytes);
+        Http2Writer.Frame frame;
+        synchronized (hpackEncoderLock) {
             while (state != State.COMPLETE) {
-                state = getHpackEncoder().encode(coyoteRequest.getMimeHeaders(), target);
+                state = getHpackEncoder().encode(headers, target);
                 target.flip();
                 if (state == State.COMPLETE || target.limit() > 0) {
+                    byte[] header = new byte[9];
                     ByteUtil.setThreeBytes(header, 0, target.limit());
                     if (first) {
                         first = false;
-                        header[3] = FrameType.PUSH_PROMISE.getIdByte();
+                        header[3] = firstType;
+                        header[4] = (byte) firstFlags;
                     } else {
                         header[3] = FrameType.CONTINUATION.getIdByte();
                     }
@@ -605,20 +595,21 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
                         log.debug(target.limit() + " bytes");
                     }
                     ByteUtil.set31Bits(header, 5, stream.getIdentifier().intValue());
-                    try {
-                        socketWrapper.write(true, header, 0, header.length);
-                        socketWrapper.write(true, target);
-                        socketWrapper.flush(true);
-                    } catch (IOException ioe) {
-                        handleAppInitiatedIOException(ioe);
-                    }
-                }
-                if (state == State.UNDERFLOW && target.limit() == 0) {
+                    buffers.add(ByteBuffer.wrap(header));
+                    buffers.add(target);
+                    target = ByteBuffer.allocate(target.capacity());
+                } else if (state == State.UNDERFLOW) {
                     target = ByteBuffer.allocate(target.capacity() * 2);
                 } else {
                     target.clear();
                 }
             }
+            frame = writer.enqueue(buffers.toArray(new ByteBuffer[buffers.size()]));
+        }
+        try {
+            writer.await(frame);
+        } catch (IOException ioe) {
+            handleAppInitiatedIOException(ioe);
         }
     }
 
@@ -652,17 +643,14 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
         }
         if (writeable) {
             ByteUtil.set31Bits(header, 5, stream.getIdentifier().intValue());
-            synchronized (socketWrapper) {
-                try {
-                    socketWrapper.write(true, header, 0, header.length);
-                    int orgLimit = data.limit();
-                    data.limit(data.position() + len);
-                    socketWrapper.write(true, data);
-                    data.limit(orgLimit);
-                    socketWrapper.flush(true);
-                } catch (IOException ioe) {
-                    handleAppInitiatedIOException(ioe);
-                }
+            int orgLimit = data.limit();
+            data.limit(data.position() + len);
+            try {
+                writer.write(ByteBuffer.wrap(header), data);
+            } catch (IOException ioe) {
+                handleAppInitiatedIOException(ioe);
+            } finally {
+                data.limit(orgLimit);
             }
         }
     }
@@ -688,35 +676,36 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
         if (!stream.canWrite()) {
             return;
         }
-        synchronized (socketWrapper) {
-            // Build window update frame for stream 0
-            byte[] frame = new byte[13];
-            ByteUtil.setThreeBytes(frame, 0,  4);
-            frame[3] = FrameType.WINDOW_UPDATE.getIdByte();
-            ByteUtil.set31Bits(frame, 9, increment);
-            socketWrapper.write(true, frame, 0, frame.length);
-            // Change stream Id and re-use
-            ByteUtil.set31Bits(frame, 5, stream.getIdentifier().intValue());
-            try {
-                socketWrapper.write(true, frame, 0, frame.length);
-                socketWrapper.flush(true);
-            } catch (IOException ioe) {
-                if (applicationInitiated) {
-                    handleAppInitiatedIOException(ioe);
-                } else {
-                    throw ioe;
-                }
+        // 连接 (流 0) 和流的窗口更新帧
+        byte[] frame = new byte[26];
+        ByteUtil.setThreeBytes(frame, 0,  4);
+        frame[3] = FrameType.WINDOW_UPDATE.getIdByte();
+        ByteUtil.set31Bits(frame, 9, increment);
+        ByteUtil.setThreeBytes(frame, 13,  4);
+        frame[16] = FrameType.WINDOW_UPDATE.getIdByte();
+        ByteUtil.set31Bits(frame, 18, stream.getIdentifier().intValue());
+        ByteUtil.set31Bits(frame, 22, increment);
+        try {
+            writer.write(ByteBuffer.wrap(frame));
+        } catch (IOException ioe) {
+            if (applicationInitiated) {
+                handleAppInitiatedIOException(ioe);
+            } else {
+                throw ioe;
             }
         }
     }
 
 
     private void processWrites() throws IOException {
-        synchronized (socketWrapper) {
+        socketWrapper.getLock().lock();
+        try {
             if (socketWrapper.flush(false)) {
                 socketWrapper.registerWriteInterest();
                 return;
             }
+        } finally {
+            socketWrapper.getLock().unlock();
         }
     }
 
@@ -728,34 +717,25 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
             do {
                 synchronized (this) {
                     if (!stream.canWrite()) {
+                        backLog.remove(stream);
                         throw new CloseNowException(
                                 sm.getString("upgradeHandler.stream.notWritable",
                                         stream.getConnectionId(), stream.getIdentifier()));
                     }
                     long windowSize = getWindowSize();
-                    if (windowSize < 1 || backLogSize > 0) {
+                    if (windowSize < 1 || backLog.getBackLogSize() > 0) {
                         // 这个流被分配了吗
-                        int[] value = backLogStreams.get(stream);
-                        if (value == null) {
-                            value = new int[] { reservation, 0 };
-                            backLogStreams.put(stream, value);
-                            backLogSize += reservation;
-                            // Add the parents as well
-                            AbstractStream parent = stream.getParentStream();
-                            while (parent != null && backLogStreams.putIfAbsent(parent, new int[2]) == null) {
-                                parent = parent.getParentStream();
-                            }
-                        } else {
-                            if (value[1] > 0) {
-                                allocation = value[1];
-                                decrementWindowSize(allocation);
-                                if (value[0] == 0) {
-                                    // 已全部分配完毕, 因此这个流可以从  backlog 删除.
-                                    backLogStreams.remove(stream);
-                                } else {
-                                    // 此分配已被使用. 将分配重置为零. 留下 backlog 中的流, 因为它还有很多字节要写入.
-                                    value[1] = 0;
-                                }
+                        if (!stream.inBackLog) {
+                            backLog.add(stream, reservation);
+                        } else if (stream.backLogAllocated > 0) {
+                            allocation = stream.backLogAllocated;
+                            decrementWindowSize(allocation);
+                            if (stream.backLogRequested == 0) {
+                                // 已全部分配完毕, 因此这个流可以从  backlog 删除.
+                                backLog.remove(stream);
+                            } else {
+                                // 此分配已被使用. 将分配重置为零. 留下 backlog 中的流, 因为它还有很多字节要写入.
+                                stream.backLogAllocated = 0;
                             }
                         }
                     } else if (windowSize < reservation) {
@@ -785,7 +765,7 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
     @SuppressWarnings("sync-override") // notifyAll() 需要外部同步来避免死锁
     @Override
     protected void incrementWindowSize(int increment) throws Http2Exception {
-        Set<AbstractStream> streamsToNotify = null;
+        Stream streamsToNotify = null;
 
         synchronized (this) {
             long windowSize = getWindowSize();
@@ -795,37 +775,32 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
             super.incrementWindowSize(increment);
         }
 
-        if (streamsToNotify != null) {
-            for (AbstractStream stream : streamsToNotify) {
-                synchronized (stream) {
-                    stream.notifyAll();
-                }
+        // 连接窗口只由读取连接的线程增加, 因此通知链表不会被并发修改
+        while (streamsToNotify != null) {
+            Stream stream = streamsToNotify;
+            streamsToNotify = stream.nextToNotify;
+            stream.nextToNotify = null;
+            synchronized (stream) {
+                stream.notifyAll();
             }
         }
     }
 
 
-    private synchronized Set<AbstractStream> releaseBackLog(int increment) {
-        Set<AbstractStream> result = new HashSet<>();
-        if (backLogSize < increment) {
+    private synchronized Stream releaseBackLog(int increment) {
+        if (backLog.getBackLogSize() < increment) {
             // 清空整个 backlog
-            result.addAll(backLogStreams.keySet());
-            backLogStreams.clear();
-            backLogSize = 0;
+            return backLog.clear();
         } else {
-            int leftToAllocate = increment;
-            while (leftToAllocate > 0) {
-                leftToAllocate = allocate(this, leftToAllocate);
-            }
-            for (Entry<AbstractStream,int[]> entry : backLogStreams.entrySet()) {
-                int allocation = entry.getValue()[1];
-                if (allocation > 0) {
-                    backLogSize -= allocation;
-                    result.add(entry.getKey());
+            Stream result = backLog.allocate(increment);
+            if (log.isDebugEnabled()) {
+                for (Stream stream = result; stream != null; stream = stream.nextToNotify) {
+                    log.debug(sm.getString("upgradeHandler.allocate.debug", getConnectionId(),
+                            stream.getIdentifier(), Integer.toString(stream.backLogAllocated)));
                 }
             }
+            return result;
         }
-        return result;
     }
 
 
@@ -836,76 +811,6 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
     }
 
 
-    private int allocate(AbstractStream stream, int allocation) {
-        if (log.isDebugEnabled()) {
-            log.debug(sm.getString("upgradeHandler.allocate.debug", getConnectionId(),
-                    stream.getIdentifier(), Integer.toString(allocation)));
-        }
-        // 分配给指定的流
-        int[] value = backLogStreams.get(stream);
-        if (value[0] >= allocation) {
-            value[0] -= allocation;
-            value[1] += allocation;
-            return 0;
-        }
-
-        // 有一些剩下的, 因此分配给流的子级.
-        int leftToAllocate = allocation;
-        value[1] = value[0];
-        value[0] = 0;
-        leftToAllocate -= value[1];
-
-        if (log.isDebugEnabled()) {
-            log.debug(sm.getString("upgradeHandler.allocate.left",
-                    getConnectionId(), stream.getIdentifier(), Integer.toString(leftToAllocate)));
-        }
-
-        // Recipients 是位于backlog中的当前流的子级.
-        Set<AbstractStream> recipients = new HashSet<>();
-        recipients.addAll(stream.getChildStreams());
-        recipients.retainAll(backLogStreams.keySet());
-
-        // 循环直到分配或接受者用完为止
-        while (leftToAllocate > 0) {
-            if (recipients.size() == 0) {
-                backLogStreams.remove(stream);
-                return leftToAllocate;
-            }
-
-            int totalWeight = 0;
-            for (AbstractStream recipient : recipients) {
-                if (log.isDebugEnabled()) {
-                    log.debug(sm.getString("upgradeHandler.allocate.recipient",
-                            getConnectionId(), stream.getIdentifier(), recipient.getIdentifier(),
-                            Integer.toString(recipient.getWeight())));
-                }
-                totalWeight += recipient.getWeight();
-            }
-
-            // 使用 Iterator, 因此完全分配的 children/recipients 可以删除.
-            Iterator<AbstractStream> iter = recipients.iterator();
-            int allocated = 0;
-            while (iter.hasNext()) {
-                AbstractStream recipient = iter.next();
-                int share = leftToAllocate * recipient.getWeight() / totalWeight;
-                if (share == 0) {
-                    // 这是为了避免触发无限循环的舍入问题. 这将导致非常轻微的过度分配，但HTTP/2应该应付这一点.
-                    share = 1;
-                }
-                int remainder = allocate(recipient, share);
-                // 删除收到分配的接收者, 因此他们被排除在下一个分配回合之外.
-                if (remainder > 0) {
-                    iter.remove();
-                }
-                allocated += (share - remainder);
-            }
-            leftToAllocate -= allocated;
-        }
-
-        return 0;
-    }
-
-
     private Stream getStream(int streamId, boolean unknownIsError) throws ConnectionException {
         Integer key = Integer.valueOf(streamId);
         Stream result = streams.get(key);
@@ -927,6 +832,9 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
         }
 
         pruneClosedStreams();
+        if (streamStateCache != null) {
+            streamStateCache.recycleCompletedStreams();
+        }
 
         Stream result = new Stream(key, this);
         streams.put(key, result);
@@ -1103,6 +1011,9 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
 
 
     void push(Request request, Stream associatedStream) throws IOException {
+        if (!pushPolicy.shouldPush(request, associatedStream)) {
+            return;
+        }
         Stream pushStream  = createLocalStream(request);
 
         // TODO: Is 1k the optimal value?
@@ -1173,11 +1084,30 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
     }
 
 
+    /**
+     * @param streamDispatcher 由协议的所有连接共享的 dispatcher, 以限制所有连接同时执行的流;
+     *                         如果为 <code>null</code>, 连接使用自己的 dispatcher
+     */
+    void setStreamDispatcher(StreamDispatcher streamDispatcher) {
+        this.streamDispatcher = streamDispatcher;
+    }
+
+
+    public void setStreamStateCacheSize(int streamStateCacheSize) {
+        this.streamStateCacheSize = streamStateCacheSize;
+    }
+
+
     public void setInitialWindowSize(int initialWindowSize) {
         localSettings.set(Setting.INITIAL_WINDOW_SIZE, initialWindowSize);
     }
 
 
+    public void setConnectionWindowSize(int connectionWindowSize) {
+        this.connectionWindowSize = connectionWindowSize;
+    }
+
+
     public void setAllowedTrailerHeaders(Set<String> allowedTrailerHeaders) {
         this.allowedTrailerHeaders = allowedTrailerHeaders;
     }
@@ -1228,6 +1158,17 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
     }
 
 
+    void setPushPolicy(PushLearner pushLearner, PushStatistics pushStatistics,
+            String cacheDigestCookieName) {
+        pushPolicy = new PushPolicy(connectionId, pushLearner, pushStatistics, cacheDigestCookieName);
+    }
+
+
+    PushPolicy getPushPolicy() {
+        return pushPolicy;
+    }
+
+
     // ----------------------------------------------- Http2Parser.Input methods
 
     @Override
@@ -1347,6 +1288,11 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
             stream.checkState(FrameType.HEADERS);
             stream.receivedStartOfHeaders(headersEndStream);
             closeIdleStreams(streamId);
+            if (!socketWrapper.getEndpoint().admitRequest()) {
+                throw new StreamException(sm.getString("upgradeHandler.overloaded",
+                        connectionId, Integer.toString(streamId)),
+                        Http2Error.REFUSED_STREAM, streamId);
+            }
             if (localSettings.getMaxConcurrentStreams() < activeRemoteStreamCount.incrementAndGet()) {
                 activeRemoteStreamCount.decrementAndGet();
                 throw new StreamException(sm.getString("upgradeHandler.tooManyRemoteStreams",
@@ -1402,6 +1348,7 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
         Stream stream = getStream(streamId, connectionState.get().isNewStreamAllowed());
         if (stream != null && stream.isActive()) {
             if (stream.receivedEndOfHeaders()) {
+                pushPolicy.pushLearned(stream);
                 processStreamOnContainerThread(stream);
             }
         }
@@ -1419,6 +1366,9 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
     public void reset(int streamId, long errorCode) throws Http2Exception  {
         Stream stream = getStream(streamId, true);
         stream.checkState(FrameType.RST);
+        if (stream.isPushed() && errorCode == Http2Error.CANCEL.getCode()) {
+            pushPolicy.pushCancelled();
+        }
         stream.receiveReset(errorCode);
     }
 
@@ -1456,10 +1406,7 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
                         "upgradeHandler.unexpectedAck", connectionId, getIdentifier()));
             }
         } else {
-            synchronized (socketWrapper) {
-                socketWrapper.write(true, SETTINGS_ACK, 0, SETTINGS_ACK.length);
-                socketWrapper.flush(true);
-            }
+            writer.write(ByteBuffer.wrap(SETTINGS_ACK));
         }
     }
 
@@ -1527,15 +1474,15 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
             if (force || now - lastPingNanoTime > pingIntervalNano) {
                 lastPingNanoTime = now;
                 byte[] payload = new byte[8];
-                synchronized (socketWrapper) {
+                Http2Writer.Frame frame;
+                synchronized (this) {
                     int sentSequence = ++sequence;
                     PingRecord pingRecord = new PingRecord(sentSequence, now);
                     inflightPings.add(pingRecord);
                     ByteUtil.set31Bits(payload, 4, sentSequence);
-                    socketWrapper.write(true, PING, 0, PING.length);
-                    socketWrapper.write(true, payload, 0, payload.length);
-                    socketWrapper.flush(true);
+                    frame = writer.enqueue(ByteBuffer.wrap(PING), ByteBuffer.wrap(payload));
                 }
+                writer.await(frame);
             }
         }
 
@@ -1564,11 +1511,7 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
 
             } else {
                 // 客户端发起ping. Echo it back.
-                synchronized (socketWrapper) {
-                    socketWrapper.write(true, PING_ACK, 0, PING_ACK.length);
-                    socketWrapper.write(true, payload, 0, payload.length);
-                    socketWrapper.flush(true);
-                }
+                writer.write(ByteBuffer.wrap(PING_ACK), ByteBuffer.wrap(payload));
             }
         }
 
@@ -0,0 +1,240 @@
+package org.apache.coyote.http2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.tomcat.util.collections.MpscLinkedQueue;
+import org.apache.tomcat.util.net.SocketWrapperBase;
+
+/**
+ * 一个 HTTP/2 连接的出站帧队列.
+ * <p>
+ * 写入帧的线程只将帧入队, 然后等待帧被写出. 同一时刻只有一个线程 (写入者) 持有 socket 的锁,
+ * 它把队列中所有流的帧依次写入 socket 的写缓冲区, 最后只刷新一次. 这样多个流并发写入时,
+ * 它们的帧被合并为尽可能少的网络写入 (使用 TLS 时, 尽可能少的 TLS 记录), 其它线程也不必竞争 socket 的锁.
+ * <p>
+ * 写入者不是单独的线程, 而是由发现没有写入者的入队线程担任, 因此不会因为执行器中的线程都在等待写入而死锁.
+ * 已经持有 socket 锁的线程 (处理连接读取的线程) 直接写出队列.
+ */
+class Http2Writer {
+
+    private final SocketWrapperBase<?> socketWrapper;
+    private final MpscLinkedQueue<Frame> queue = new MpscLinkedQueue<>();
+
+    /*
+     * 尚未被写入者处理的入队请求的数量. 从 0 增加的线程成为写入者.
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /*
+     * 持有 socket 锁, 并等待排在它的帧之前的入队完成的线程. 入队完成后由生产者唤醒.
+     */
+    private volatile Thread drainer;
+
+
+    Http2Writer(SocketWrapperBase<?> socketWrapper) {
+        this.socketWrapper = socketWrapper;
+    }
+
+
+    /**
+     * 写入一个帧 (或一组必须连续写出的帧), 直到数据被刷新到网络才返回.
+     *
+     * @param buffers 要写入的数据. 写入之后, 每个缓冲区的位置等于其限制.
+     *
+     * @throws IOException 如果写入失败
+     */
+    void write(ByteBuffer... buffers) throws IOException {
+        Frame frame = enqueue(buffers);
+        await(frame);
+    }
+
+
+    /**
+     * 将帧入队但不等待. 调用者必须随后调用 {@link #await(Frame)}, 在此之前不得修改缓冲区.
+     * 用于需要在持有其它锁时确定帧的顺序的情况 (例如 HPACK 编码).
+     *
+     * @param buffers 要写入的数据
+     *
+     * @return 入队的帧
+     */
+    Frame enqueue(ByteBuffer... buffers) {
+        Frame frame = new Frame(buffers, Thread.currentThread());
+        queue.offer(frame);
+        Thread drainer = this.drainer;
+        if (drainer != null) {
+            LockSupport.unpark(drainer);
+        }
+        return frame;
+    }
+
+
+    /**
+     * 等待帧被写出.
+     *
+     * @param frame 由 {@link #enqueue(ByteBuffer...)} 返回的帧
+     *
+     * @throws IOException 如果写入失败
+     */
+    void await(Frame frame) throws IOException {
+        Lock lock = socketWrapper.getLock();
+        boolean interrupted = false;
+        if (isHeldByCurrentThread(lock)) {
+            // 写入者可能正在等待此线程持有的锁, 因此直接写出队列
+            drain();
+            if (!frame.done) {
+                // 另一个生产者正在入队排在前面的帧. 等待它完成入队后唤醒此线程.
+                // 设置 drainer 之后再次写出队列, 以免错过在设置之前完成的入队
+                drainer = Thread.currentThread();
+                try {
+                    drain();
+                    while (!frame.done) {
+                        interrupted |= park();
+                        drain();
+                    }
+                } finally {
+                    drainer = null;
+                }
+            }
+        } else if (pending.getAndIncrement() == 0) {
+            lock.lock();
+            try {
+                int missed = 1;
+                try {
+                    do {
+                        drain();
+                        missed = pending.addAndGet(-missed);
+                    } while (missed != 0);
+                } catch (Throwable t) {
+                    // 放弃写入者的角色之前, 使其它线程已入队的帧失败, 否则这些线程会一直等待
+                    abort(missed, new IOException(t));
+                    throw t;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        while (!frame.done) {
+            interrupted |= park();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (frame.error != null) {
+            throw frame.error;
+        }
+    }
+
+
+    /*
+     * 等待被唤醒. 清除中断状态, 否则之后的 park() 会立即返回; 调用者在等待结束后恢复中断状态.
+     *
+     * @return <code>true</code> 如果线程被中断
+     */
+    private boolean park() {
+        LockSupport.park(this);
+        return Thread.interrupted();
+    }
+
+
+    /*
+     * 写出队列中的所有帧并刷新一次. 必须持有 socket 的锁.
+     * 即使写入时抛出了运行时异常, 已出队的帧也会完成, 它们的线程不会一直等待.
+     */
+    private void drain() {
+        Frame first = null;
+        Frame last = null;
+        IOException error = null;
+        try {
+            Frame frame;
+            while ((frame = queue.poll()) != null) {
+                if (first == null) {
+                    first = frame;
+                } else {
+                    last.nextWritten = frame;
+                }
+                last = frame;
+                if (error == null) {
+                    try {
+                        for (ByteBuffer buffer : frame.buffers) {
+                            socketWrapper.write(true, buffer);
+                        }
+                    } catch (IOException ioe) {
+                        error = ioe;
+                    }
+                }
+            }
+            if (first != null && error == null) {
+                try {
+                    socketWrapper.flush(true);
+                } catch (IOException ioe) {
+                    error = ioe;
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            error = new IOException(e);
+            throw e;
+        } finally {
+            complete(first, error);
+        }
+    }
+
+
+    /*
+     * 写入者失败后, 使之后入队的帧失败, 直到没有尚未处理的入队请求.
+     */
+    private void abort(int missed, IOException error) {
+        do {
+            Frame first = null;
+            Frame last = null;
+            Frame frame;
+            while ((frame = queue.poll()) != null) {
+                if (first == null) {
+                    first = frame;
+                } else {
+                    last.nextWritten = frame;
+                }
+                last = frame;
+            }
+            complete(first, error);
+            missed = pending.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+
+    private static void complete(Frame first, IOException error) {
+        Frame frame = first;
+        while (frame != null) {
+            Frame next = frame.nextWritten;
+            frame.nextWritten = null;
+            frame.error = error;
+            frame.done = true;
+            LockSupport.unpark(frame.waiter);
+            frame = next;
+        }
+    }
+
+
+    private static boolean isHeldByCurrentThread(Lock lock) {
+        return lock instanceof ReentrantLock && ((ReentrantLock) lock).isHeldByCurrentThread();
+    }
+
+
+    static class Frame extends MpscLinkedQueue.Node {
+
+        private final ByteBuffer[] buffers;
+        private final Thread waiter;
+        private Frame nextWritten;
+        private IOException error;
+        private volatile boolean done;
+
+        private Frame(ByteBuffer[] buffers, Thread waiter) {
+            this.buffers = buffers;
+            this.waiter = waiter;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.apache.coyote.http2;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 从观察到的请求中学习每个页面引用的静态资源, 由一个 {@link Http2Protocol} 的所有连接共享.
+ * <p>
+ * 当一个由 DefaultServlet 提供的静态资源的请求带有同一主机的 Referer 时, 资源被记录为 Referer 页面的候选资源.
+ * Referer 由客户端提供, 因此只有在至少 <code>minObservations</code> 个不同的连接上观察到之后, 候选资源才被加入页面的推送集合.
+ * 之后请求该页面时, 推送集合中的资源被主动推送. 推送的资源不再成功响应时, 从集合中删除.
+ * <p>
+ * 页面按主机和路径区分, 因此共享连接器的虚拟主机不会推送彼此的资源.
+ * 页面按最近使用的顺序保留, 达到上限时删除最久未使用的页面, 因此虚假的页面不会使学习停止.
+ */
+class PushLearner {
+
+    private final int maxResources;
+    private final int minObservations;
+
+    /*
+     * 以 {@link #getKey(String, String)} 为键, 按访问顺序. 由 this 的锁保护.
+     */
+    private final Map<String,Page> pages;
+
+
+    /**
+     * @param maxPages        学习的页面的最大数量
+     * @param maxResources    每个页面的推送集合 (以及候选资源) 的最大数量
+     * @param minObservations 资源加入推送集合之前, 必须观察到它的不同连接的数量
+     */
+    PushLearner(final int maxPages, int maxResources, int minObservations) {
+        this.maxResources = maxResources;
+        this.minObservations = Math.max(1, minObservations);
+        this.pages = new LinkedHashMap<String,Page>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,Page> eldest) {
+                return size() > maxPages;
+            }
+        };
+    }
+
+
+    /**
+     * @param host         请求的主机名
+     * @param page         页面的路径, 不包括查询字符串
+     * @param resource     页面引用的资源的路径, 包括查询字符串
+     * @param connectionId 观察到请求的连接
+     */
+    synchronized void learn(String host, String page, String resource, String connectionId) {
+        if (page.equals(resource)) {
+            return;
+        }
+        String key = getKey(host, page);
+        Page p = pages.get(key);
+        if (p == null) {
+            p = new Page();
+            pages.put(key, p);
+        }
+        p.observe(resource, connectionId);
+    }
+
+
+    synchronized void forget(String host, String page, String resource) {
+        Page p = pages.get(getKey(host, page));
+        if (p != null) {
+            p.pushSet.remove(resource);
+            p.candidates.remove(resource);
+        }
+    }
+
+
+    /**
+     * @param host 请求的主机名
+     * @param page 页面的路径, 不包括查询字符串
+     *
+     * @return 页面的推送集合, 如果没有, 则为 <code>null</code>
+     */
+    synchronized String[] getPushSet(String host, String page) {
+        Page p = pages.get(getKey(host, page));
+        if (p == null || p.pushSet.isEmpty()) {
+            return null;
+        }
+        return p.pushSet.toArray(new String[p.pushSet.size()]);
+    }
+
+
+    /*
+     * 主机名不包含 '/', 因此主机名和路径之间不需要分隔符.
+     */
+    private static String getKey(String host, String page) {
+        if (host == null) {
+            return page;
+        }
+        return host.toLowerCase(Locale.ENGLISH) + page;
+    }
+
+
+    private final class Page {
+
+        // 已确认的资源, 最早学习的在前
+        private final Set<String> pushSet = new LinkedHashSet<>();
+        // 尚未确认的资源, 以及观察到它们的连接
+        private final Map<String,Set<String>> candidates = new LinkedHashMap<>();
+
+        private void observe(String resource, String connectionId) {
+            if (pushSet.contains(resource)) {
+                return;
+            }
+            Set<String> connections = candidates.get(resource);
+            if (connections == null) {
+                connections = new HashSet<>();
+                candidates.put(resource, connections);
+                removeOldest(candidates.keySet());
+            }
+            connections.add(connectionId);
+            if (connections.size() >= minObservations) {
+                candidates.remove(resource);
+                pushSet.add(resource);
+                removeOldest(pushSet);
+            }
+        }
+
+        private void removeOldest(Set<String> set) {
+            if (set.size() > maxResources) {
+                Iterator<String> iter = set.iterator();
+                iter.next();
+                iter.remove();
+            }
+        }
+    }
+}
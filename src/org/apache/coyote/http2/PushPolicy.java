@@ -0,0 +1,349 @@
+package org.apache.coyote.http2;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.apache.coyote.Request;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.http.MimeHeaders;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * 一个连接的服务器推送策略. 决定是否发送推送, 并推送 {@link PushLearner} 学习到的资源.
+ * <p>
+ * 以下情况不推送:
+ * <ul>
+ * <li>相同的路径已经在这个连接上推送过</li>
+ * <li>客户端通过 <code>cache-digest</code> header (以绝对 URL 为键) 或者配置的 cookie (以路径为键,
+ *     与 cache-digest 使用相同的编码) 表明资源已在其缓存中</li>
+ * </ul>
+ */
+class PushPolicy {
+
+    private static final Log log = LogFactory.getLog(PushPolicy.class);
+    private static final StringManager sm = StringManager.getManager(PushPolicy.class);
+
+    private static final int MAX_PUSHED_PATHS = 256;
+
+    // 不复制到学习的推送请求中的 header, 与 ApplicationPushBuilder 相同
+    private static final String[] EXCLUDED_HEADERS = { "if-match", "if-none-match",
+            "if-modified-since", "if-unmodified-since", "if-range", "range", "expect",
+            "authorization", "referer", "content-length", "content-type", "priority" };
+
+    private final String connectionId;
+    private final PushLearner learner;
+    private final PushStatistics statistics;
+    private final String cacheDigestCookieName;
+
+    private final Set<String> pushedPaths = new LinkedHashSet<>();
+    private String cacheDigestHeader;
+    private List<CacheDigest> headerDigests;
+    private String cacheDigestCookie;
+    private CacheDigest cookieDigest;
+
+
+    /**
+     * @param connectionId          连接 ID, 用于日志
+     * @param learner               学习推送集合的对象, 如果为 <code>null</code>, 不学习也不主动推送
+     * @param statistics            推送的计数器
+     * @param cacheDigestCookieName 包含缓存摘要的 cookie 的名称, 如果为 <code>null</code>, 则不使用 cookie
+     */
+    PushPolicy(String connectionId, PushLearner learner, PushStatistics statistics,
+            String cacheDigestCookieName) {
+        this.connectionId = connectionId;
+        this.learner = learner;
+        this.statistics = statistics;
+        this.cacheDigestCookieName = cacheDigestCookieName;
+    }
+
+
+    /**
+     * 决定是否推送. 如果返回 <code>true</code>, 推送被记录为已发送.
+     *
+     * @param pushTarget       推送的请求, 已设置伪 header
+     * @param associatedStream 关联的流
+     *
+     * @return <code>true</code> 如果应该发送推送
+     */
+    synchronized boolean shouldPush(Request pushTarget, Stream associatedStream) {
+        String path = pushTarget.getHeader(":path");
+        if (!pushedPaths.add(path)) {
+            statistics.duplicate();
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("pushPolicy.duplicate", connectionId,
+                        associatedStream.getIdentifier(), path));
+            }
+            return false;
+        }
+        if (pushedPaths.size() > MAX_PUSHED_PATHS) {
+            Iterator<String> iter = pushedPaths.iterator();
+            iter.next();
+            iter.remove();
+        }
+
+        updateCacheDigests(associatedStream.getCoyoteRequest());
+        boolean cached = false;
+        if (headerDigests != null) {
+            String url = pushTarget.scheme().toString() + "://" +
+                    pushTarget.getHeader(":authority") + path;
+            for (CacheDigest digest : headerDigests) {
+                if (digest.contains(url)) {
+                    cached = true;
+                    break;
+                }
+            }
+        }
+        if (!cached && cookieDigest != null) {
+            cached = cookieDigest.contains(path);
+        }
+        if (cached) {
+            statistics.cacheDigestHit();
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("pushPolicy.cached", connectionId,
+                        associatedStream.getIdentifier(), path));
+            }
+            return false;
+        }
+
+        statistics.promise();
+        return true;
+    }
+
+
+    /**
+     * 推送为请求的页面学习到的资源. 必须在开始处理流之前调用, 以便 PUSH_PROMISE 在响应之前发送.
+     *
+     * @param stream 客户端发起的流, 已收到全部 header
+     */
+    void pushLearned(Stream stream) {
+        if (learner == null || !stream.isPushSupported()) {
+            return;
+        }
+        Request request = stream.getCoyoteRequest();
+        if (!request.method().equals("GET")) {
+            return;
+        }
+        String[] pushSet = learner.getPushSet(request.serverName().toString(),
+                request.requestURI().toString());
+        if (pushSet == null) {
+            return;
+        }
+        for (String path : pushSet) {
+            try {
+                stream.push(createPushRequest(request, path));
+            } catch (IOException ioe) {
+                if (log.isDebugEnabled()) {
+                    log.debug(sm.getString("pushPolicy.pushLearnedFailed", connectionId,
+                            stream.getIdentifier(), path), ioe);
+                }
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * 在流的响应完成后调用. 统计推送的结果, 或者从静态资源的请求学习推送集合.
+     *
+     * @param stream 已完成的流
+     */
+    void streamComplete(Stream stream) {
+        Request request = stream.getCoyoteRequest();
+        int status = stream.getCoyoteResponse().getStatus();
+        if (stream.isPushed()) {
+            if (status >= 200 && status < 300) {
+                statistics.hit();
+            } else if (learner != null) {
+                String page = getRefererPage(request);
+                if (page != null) {
+                    learner.forget(request.serverName().toString(), page, getPath(request));
+                }
+            }
+            return;
+        }
+        if (learner == null ||
+                request.getAttribute(org.apache.coyote.Constants.PUSH_STATIC_RESOURCE_ATTR) == null ||
+                (status != 200 && status != 304) || !request.method().equals("GET")) {
+            return;
+        }
+        String page = getRefererPage(request);
+        if (page != null) {
+            learner.learn(request.serverName().toString(), page, getPath(request),
+                    connectionId);
+        }
+    }
+
+
+    void pushCancelled() {
+        statistics.cancel();
+    }
+
+
+    private void updateCacheDigests(Request request) {
+        String header = request.getHeader("cache-digest");
+        if (header != null && !header.equals(cacheDigestHeader)) {
+            cacheDigestHeader = header;
+            headerDigests = parseCacheDigestHeader(header);
+        }
+        if (cacheDigestCookieName != null) {
+            String cookie = getCookie(request.getHeader("cookie"), cacheDigestCookieName);
+            if (cookie != null && !cookie.equals(cacheDigestCookie)) {
+                cacheDigestCookie = cookie;
+                cookieDigest = parseCacheDigest(cookie);
+            }
+        }
+    }
+
+
+    /*
+     * Cache-Digest = 1#( digest-value *( OWS ";" OWS digest-flag ) )
+     * 使用 validators 的摘要需要 ETag, 而 stale 的摘要中的资源需要更新, 因此两者都被忽略.
+     */
+    private List<CacheDigest> parseCacheDigestHeader(String header) {
+        List<CacheDigest> result = new ArrayList<>();
+        for (String digest : header.split(",")) {
+            String[] parts = digest.split(";");
+            boolean usable = true;
+            for (int i = 1; i < parts.length; i++) {
+                String flag = parts[i].trim().toLowerCase(Locale.ENGLISH);
+                if (flag.equals("validators") || flag.equals("stale")) {
+                    usable = false;
+                }
+            }
+            if (usable) {
+                CacheDigest cacheDigest = parseCacheDigest(parts[0].trim());
+                if (cacheDigest != null) {
+                    result.add(cacheDigest);
+                }
+            }
+        }
+        return result.isEmpty() ? null : result;
+    }
+
+
+    private CacheDigest parseCacheDigest(String value) {
+        CacheDigest result = CacheDigest.parse(value);
+        if (result == null && log.isDebugEnabled()) {
+            log.debug(sm.getString("pushPolicy.invalidCacheDigest", connectionId, value));
+        }
+        return result;
+    }
+
+
+    private static String getCookie(String header, String name) {
+        if (header == null) {
+            return null;
+        }
+        for (String cookie : header.split(";")) {
+            cookie = cookie.trim();
+            if (cookie.length() > name.length() && cookie.charAt(name.length()) == '=' &&
+                    cookie.startsWith(name)) {
+                String value = cookie.substring(name.length() + 1);
+                if (value.length() > 1 && value.charAt(0) == '"' &&
+                        value.charAt(value.length() - 1) == '"') {
+                    value = value.substring(1, value.length() - 1);
+                }
+                return value;
+            }
+        }
+        return null;
+    }
+
+
+    /*
+     * @return 同一主机的 Referer 的路径 (不包括查询字符串), 如果没有这样的 Referer, 则为 null
+     */
+    private static String getRefererPage(Request request) {
+        String referer = request.getHeader("referer");
+        if (referer == null) {
+            return null;
+        }
+        int hostStart = referer.indexOf("://");
+        if (hostStart == -1) {
+            return null;
+        }
+        hostStart += 3;
+        int pathStart = referer.indexOf('/', hostStart);
+        if (pathStart == -1) {
+            return null;
+        }
+        int hostEnd = referer.indexOf(':', hostStart);
+        if (hostEnd == -1 || hostEnd > pathStart) {
+            hostEnd = pathStart;
+        }
+        if (!request.serverName().equalsIgnoreCase(referer.substring(hostStart, hostEnd))) {
+            return null;
+        }
+        int pathEnd = pathStart;
+        while (pathEnd < referer.length()) {
+            char c = referer.charAt(pathEnd);
+            if (c == '?' || c == '#') {
+                break;
+            }
+            pathEnd++;
+        }
+        return referer.substring(pathStart, pathEnd);
+    }
+
+
+    private static String getPath(Request request) {
+        if (request.queryString().isNull()) {
+            return request.requestURI().toString();
+        }
+        return request.requestURI().toString() + "?" + request.queryString().toString();
+    }
+
+
+    private static Request createPushRequest(Request base, String path) {
+        Request pushTarget = new Request();
+        pushTarget.method().setString("GET");
+        String scheme = base.scheme().toString();
+        pushTarget.scheme().setString(scheme);
+        pushTarget.serverName().setString(base.serverName().toString());
+        int port = base.getServerPort();
+        if (port == -1) {
+            port = "https".equals(scheme) ? 443 : 80;
+        }
+        pushTarget.setServerPort(port);
+
+        MimeHeaders headers = base.getMimeHeaders();
+        for (int i = 0; i < headers.size(); i++) {
+            String name = headers.getName(i).toString();
+            if (name.charAt(0) != ':' && !isExcluded(name)) {
+                pushTarget.getMimeHeaders().addValue(name).setString(headers.getValue(i).toString());
+            }
+        }
+        pushTarget.getMimeHeaders().addValue("referer").setString(
+                scheme + "://" + base.serverName().toString() + ":" + port + base.requestURI().toString());
+
+        int queryStart = path.indexOf('?');
+        String uri;
+        if (queryStart == -1) {
+            uri = path;
+        } else {
+            uri = path.substring(0, queryStart);
+            pushTarget.queryString().setString(path.substring(queryStart + 1));
+        }
+        // 与客户端的请求相同, 设置为字节, 以便进行解码和规范化
+        byte[] uriBytes = uri.getBytes(StandardCharsets.ISO_8859_1);
+        pushTarget.requestURI().setBytes(uriBytes, 0, uriBytes.length);
+        return pushTarget;
+    }
+
+
+    private static boolean isExcluded(String name) {
+        for (String excluded : EXCLUDED_HEADERS) {
+            if (excluded.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
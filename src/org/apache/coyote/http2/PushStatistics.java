@@ -0,0 +1,89 @@
+package org.apache.coyote.http2;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 服务器推送的计数器, 由一个 {@link Http2Protocol} 的所有连接共享.
+ */
+public class PushStatistics {
+
+    private final AtomicLong promiseCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong cancelCount = new AtomicLong();
+    private final AtomicLong duplicateCount = new AtomicLong();
+    private final AtomicLong cacheDigestHitCount = new AtomicLong();
+
+
+    /**
+     * @return 发送的 PUSH_PROMISE 的数量
+     */
+    public long getPromiseCount() {
+        return promiseCount.get();
+    }
+
+
+    /**
+     * @return 成功 (2xx) 完成的推送响应的数量
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+
+    /**
+     * @return 被客户端以 RST_STREAM (CANCEL) 取消的推送的数量
+     */
+    public long getCancelCount() {
+        return cancelCount.get();
+    }
+
+
+    /**
+     * @return 因为已经在同一个连接上推送过而跳过的推送的数量
+     */
+    public long getDuplicateCount() {
+        return duplicateCount.get();
+    }
+
+
+    /**
+     * @return 因为客户端的缓存摘要表明资源已被缓存而跳过的推送的数量
+     */
+    public long getCacheDigestHitCount() {
+        return cacheDigestHitCount.get();
+    }
+
+
+    public void reset() {
+        promiseCount.set(0);
+        hitCount.set(0);
+        cancelCount.set(0);
+        duplicateCount.set(0);
+        cacheDigestHitCount.set(0);
+    }
+
+
+    void promise() {
+        promiseCount.incrementAndGet();
+    }
+
+
+    void hit() {
+        hitCount.incrementAndGet();
+    }
+
+
+    void cancel() {
+        cancelCount.incrementAndGet();
+    }
+
+
+    void duplicate() {
+        duplicateCount.incrementAndGet();
+    }
+
+
+    void cacheDigestHit() {
+        cacheDigestHitCount.incrementAndGet();
+    }
+}
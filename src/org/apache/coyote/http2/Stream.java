@@ -39,6 +39,9 @@ public class Stream extends AbstractStream implements HeaderEmitter {
     }
 
     private volatile int weight = Constants.DEFAULT_WEIGHT;
+    // RFC 9218 优先级, 来自请求的 priority header
+    private volatile int urgency = StreamScheduler.DEFAULT_URGENCY;
+    private volatile boolean incremental = true;
     private volatile long contentLengthReceived = 0;
 
     private final Http2UpgradeHandler handler;
@@ -46,12 +49,21 @@ public class Stream extends AbstractStream implements HeaderEmitter {
     // 状态机有太多的开销
     private int headerState = HEADER_STATE_START;
     private StreamException headerException = null;
-    // TODO: null 完成时减少关闭流使用的内存
-    private final Request coyoteRequest;
+    // 回收时置为 null, 以减少关闭的流使用的内存 (参见 StreamStateCache)
+    private volatile Request coyoteRequest;
     private StringBuilder cookieHeader = null;
-    private final Response coyoteResponse = new Response();
+    private volatile Response coyoteResponse;
     private final StreamInputBuffer inputBuffer;
-    private final StreamOutputBuffer outputBuffer = new StreamOutputBuffer();
+    private final StreamOutputBuffer outputBuffer;
+
+    // 连接窗口 backlog 的状态. 由 StreamScheduler 管理, 受 Http2UpgradeHandler 的锁保护.
+    boolean inBackLog = false;
+    int backLogRequested = 0;
+    int backLogAllocated = 0;
+    int backLogList;
+    Stream backLogPrev;
+    Stream backLogNext;
+    Stream nextToNotify;
 
 
     public Stream(Integer identifier, Http2UpgradeHandler handler) {
@@ -65,20 +77,30 @@ public class Stream extends AbstractStream implements HeaderEmitter {
         handler.addChild(this);
         setWindowSize(handler.getRemoteSettings().getInitialWindowSize());
         state = new StreamStateMachine(this);
+        StreamStateCache cache = handler.getStreamStateCache();
         if (coyoteRequest == null) {
             // HTTP/2 new request
-            this.coyoteRequest = new Request();
+            Request cachedRequest = cache == null ? null : cache.popRequest();
+            if (cachedRequest == null) {
+                this.coyoteRequest = new Request();
+                this.coyoteResponse = new Response();
+            } else {
+                this.coyoteRequest = cachedRequest;
+                this.coyoteResponse = cachedRequest.getResponse();
+            }
             this.inputBuffer = new StreamInputBuffer();
             this.coyoteRequest.setInputBuffer(inputBuffer);
         } else {
             // HTTP/1.1 upgrade
             this.coyoteRequest = coyoteRequest;
+            this.coyoteResponse = new Response();
             this.inputBuffer = null;
             // 这里已经填充了Header
             state.receivedStartOfHeaders();
             // TODO 假设此时已读取的主体无效
             state.receivedEndOfStream();
         }
+        this.outputBuffer = new StreamOutputBuffer(cache == null ? null : cache.popOutputBuffer());
         // No sendfile for HTTP/2 (它在请求中默认启用)
         this.coyoteRequest.setSendfile(false);
         this.coyoteResponse.setOutputBuffer(outputBuffer);
@@ -86,6 +108,7 @@ public class Stream extends AbstractStream implements HeaderEmitter {
         this.coyoteRequest.protocol().setString("HTTP/2.0");
         if (this.coyoteRequest.getStartTime() < 0) {
             this.coyoteRequest.setStartTime(System.currentTimeMillis());
+            this.coyoteRequest.markPhase(org.apache.coyote.Constants.PHASE_FIRST_BYTE);
         }
     }
 
@@ -201,6 +224,11 @@ public class Stream extends AbstractStream implements HeaderEmitter {
 
     @Override
     protected synchronized void doNotifyAll() {
+        Response coyoteResponse = this.coyoteResponse;
+        if (coyoteResponse == null) {
+            // 已回收
+            return;
+        }
         if (coyoteResponse.getWriteListener() == null) {
             // 阻塞IO, 线程将等待. 释放它.
             // 使用 notifyAll() 更安全(应该没有必要)
@@ -334,6 +362,9 @@ public class Stream extends AbstractStream implements HeaderEmitter {
             if ("expect".equals(name) && "100-continue".equals(value)) {
                 coyoteRequest.setExpectation(true);
             }
+            if ("priority".equals(name)) {
+                parsePriority(value);
+            }
             if (pseudoHeader) {
                 headerException = new StreamException(sm.getString(
                         "stream.header.unknownPseudoHeader", getConnectionId(), getIdentifier(),
@@ -412,6 +443,45 @@ public class Stream extends AbstractStream implements HeaderEmitter {
     }
 
 
+    int getUrgency() {
+        return urgency;
+    }
+
+
+    boolean isIncremental() {
+        return incremental;
+    }
+
+
+    /*
+     * 解析 RFC 9218 priority header (结构化字段字典, 例如 "u=1, i"). 无法识别的成员被忽略.
+     * 请求发送了 priority header, 因此增量标志默认为 false.
+     */
+    private void parsePriority(String value) {
+        int newUrgency = StreamScheduler.DEFAULT_URGENCY;
+        boolean newIncremental = false;
+        for (String member : value.split(",")) {
+            member = member.trim();
+            int semi = member.indexOf(';');
+            if (semi > -1) {
+                member = member.substring(0, semi);
+            }
+            if (member.equals("i") || member.equals("i=?1")) {
+                newIncremental = true;
+            } else if (member.equals("i=?0")) {
+                newIncremental = false;
+            } else if (member.length() == 3 && member.startsWith("u=")) {
+                int u = member.charAt(2) - '0';
+                if (u >= 0 && u < StreamScheduler.URGENCY_LEVELS) {
+                    newUrgency = u;
+                }
+            }
+        }
+        urgency = newUrgency;
+        incremental = newIncremental;
+    }
+
+
     Request getCoyoteRequest() {
         return coyoteRequest;
     }
@@ -541,11 +611,47 @@ public class Stream extends AbstractStream implements HeaderEmitter {
     }
 
 
+    /*
+     * 由 StreamStateCache 在连接线程中调用, 此时流的处理已完成, 流已关闭并且不能再接收 DATA 帧.
+     * 流保留在关闭的流的历史记录中, 但请求, 响应和缓冲区交给缓存以供新的流重用.
+     * 只有新的客户端流的请求属于流; 升级和推送的请求不被缓存.
+     */
+    void recycle(StreamStateCache cache) {
+        if (log.isDebugEnabled()) {
+            log.debug(sm.getString("stream.recycle", getConnectionId(), getIdentifier()));
+        }
+        ByteBuffer buffer = outputBuffer.releaseBuffer();
+        if (buffer != null) {
+            cache.pushOutputBuffer(buffer);
+        }
+        if (inputBuffer != null) {
+            inputBuffer.releaseBuffers(cache);
+            Request request = coyoteRequest;
+            coyoteRequest = null;
+            coyoteResponse = null;
+            if (request != null) {
+                cache.pushRequest(request);
+            }
+        } else {
+            coyoteRequest = null;
+            coyoteResponse = null;
+        }
+    }
+
+
     boolean isPushSupported() {
         return handler.getRemoteSettings().getEnablePush();
     }
 
 
+    /**
+     * @return <code>true</code> 如果这是服务器推送的流
+     */
+    boolean isPushed() {
+        return (getIdentifier().intValue() & 1) == 0;
+    }
+
+
     final void push(Request request) throws IOException {
         if (!isPushSupported()) {
             return;
@@ -601,12 +707,20 @@ public class Stream extends AbstractStream implements HeaderEmitter {
 
     class StreamOutputBuffer implements OutputBuffer {
 
-        private final ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+        private ByteBuffer buffer;
         private volatile long written = 0;
         private volatile boolean closed = false;
         private volatile boolean endOfStreamSent = false;
         private volatile boolean writeInterest = false;
 
+        StreamOutputBuffer(ByteBuffer buffer) {
+            if (buffer == null) {
+                this.buffer = ByteBuffer.allocate(8 * 1024);
+            } else {
+                this.buffer = buffer;
+            }
+        }
+
         /* 写方法进行同步, 以确保一次只有一个线程能够访问缓冲区. 没有这种保护, 一个客户端进行并发写操作可能损坏缓冲.
          */
 
@@ -750,6 +864,12 @@ public class Stream extends AbstractStream implements HeaderEmitter {
         public boolean hasNoBody() {
             return ((written == 0) && closed);
         }
+
+        synchronized ByteBuffer releaseBuffer() {
+            ByteBuffer result = buffer;
+            buffer = null;
+            return result;
+        }
     }
 
 
@@ -768,6 +888,8 @@ public class Stream extends AbstractStream implements HeaderEmitter {
         private volatile ByteBuffer inBuffer;
         private volatile boolean readInterest;
         private boolean reset = false;
+        // inBuffer 包装了重放的请求主体, 不属于这个流
+        private boolean replayed = false;
 
         /**
          * @deprecated Unused. Will be removed in Tomcat 9. Use
@@ -938,6 +1060,7 @@ public class Stream extends AbstractStream implements HeaderEmitter {
 
         protected synchronized void insertReplayedBody(ByteChunk body) {
             inBuffer = ByteBuffer.wrap(body.getBytes(),  body.getOffset(),  body.getLength());
+            replayed = true;
         }
 
 
@@ -945,10 +1068,13 @@ public class Stream extends AbstractStream implements HeaderEmitter {
             if (inBuffer == null) {
                 // 客户端在发送时必须遵守Tomcat的窗口大小, 因此这是客户端使用的Tomcat设置的初始的窗口大小 (即这里需要本地设置).
                 int size = handler.getLocalSettings().getInitialWindowSize();
+                StreamStateCache cache = handler.getStreamStateCache();
                 synchronized (this) {
                     if (inBuffer == null) {
-                        inBuffer = ByteBuffer.allocate(size);
-                        outBuffer = new byte[size];
+                        ByteBuffer in = cache == null ? null : cache.popInBuffer(size);
+                        byte[] out = cache == null ? null : cache.popOutBuffer(size);
+                        inBuffer = in == null ? ByteBuffer.allocate(size) : in;
+                        outBuffer = out == null ? new byte[size] : out;
                     }
                 }
             }
@@ -964,6 +1090,14 @@ public class Stream extends AbstractStream implements HeaderEmitter {
             }
         }
 
+        synchronized void releaseBuffers(StreamStateCache cache) {
+            if (inBuffer != null && outBuffer != null && !replayed) {
+                cache.pushInputBuffers(inBuffer, outBuffer);
+            }
+            inBuffer = null;
+            outBuffer = null;
+        }
+
         private final void notifyEof() {
             if (inBuffer != null) {
                 synchronized (inBuffer) {
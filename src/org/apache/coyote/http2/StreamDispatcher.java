@@ -0,0 +1,167 @@
+package org.apache.coyote.http2;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 将流的处理任务提交给连接器的 executor, 并限制同时执行的任务数.
+ * <p>
+ * 每个连接同时执行的任务不超过其 maxConcurrentStreamExecution, 超出的任务在连接中排队, 而不是提交给 executor.
+ * 如果配置了连接器级别的上限 ({@link Http2Protocol#setMaxTotalConcurrentStreamExecution(int)}),
+ * 一个 dispatcher 由所有连接共享. 达到上限时, 有排队任务的连接按轮转顺序每次获得一个执行机会,
+ * 因此一个打开大量慢请求的客户端不会占满线程池. 否则每个连接使用自己的 dispatcher.
+ */
+class StreamDispatcher {
+
+    private final int maxActive;
+    private int active = 0;
+    // 有排队的任务, 并且未达到自身上限的连接, 按轮转顺序
+    private final Deque<ConnectionQueue> ready = new ArrayDeque<>();
+
+
+    /**
+     * @param maxActive 所有连接同时执行的任务的最大数量, -1 表示没有限制
+     */
+    StreamDispatcher(int maxActive) {
+        this.maxActive = maxActive;
+    }
+
+
+    /**
+     * 执行任务, 如果达到连接或 dispatcher 的上限, 则将其排队.
+     */
+    void dispatch(ConnectionQueue connection, StreamRunnable runnable) {
+        synchronized (this) {
+            if (connection.active >= connection.maxActive || !isBelowLimit()) {
+                connection.queue.add(runnable);
+                if (connection.active < connection.maxActive) {
+                    addReady(connection);
+                }
+                return;
+            }
+            connection.active++;
+            active++;
+        }
+        if (!execute(connection, runnable)) {
+            executeNext();
+        }
+    }
+
+
+    /**
+     * 在连接的任务执行完成后调用, 执行下一个排队的任务 (可能属于另一个连接).
+     */
+    void complete(ConnectionQueue connection) {
+        synchronized (this) {
+            connection.active--;
+            active--;
+            if (!connection.queue.isEmpty()) {
+                addReady(connection);
+            }
+        }
+        executeNext();
+    }
+
+
+    /*
+     * 按轮转顺序执行排队的任务, 直到一个任务被执行, 或者没有可以执行的任务.
+     */
+    private void executeNext() {
+        while (true) {
+            ConnectionQueue next;
+            StreamRunnable runnable;
+            synchronized (this) {
+                if (!isBelowLimit()) {
+                    return;
+                }
+                while (true) {
+                    next = ready.poll();
+                    if (next == null) {
+                        return;
+                    }
+                    next.ready = false;
+                    // 加入后可能已经达到自身上限, 它将在下次 complete 时重新加入
+                    if (next.active < next.maxActive) {
+                        runnable = next.queue.poll();
+                        if (runnable != null) {
+                            break;
+                        }
+                    }
+                }
+                next.active++;
+                active++;
+                if (!next.queue.isEmpty() && next.active < next.maxActive) {
+                    addReady(next);
+                }
+            }
+            if (execute(next, runnable)) {
+                return;
+            }
+        }
+    }
+
+
+    /*
+     * 将任务提交给 executor. 如果 executor 拒绝了任务, 释放任务占用的位置并使流失败,
+     * 否则这些位置永远不会被 complete 释放.
+     *
+     * @return <code>true</code> 如果任务已提交
+     */
+    private boolean execute(ConnectionQueue connection, StreamRunnable runnable) {
+        try {
+            connection.executor.execute(runnable);
+            return true;
+        } catch (RejectedExecutionException ree) {
+            synchronized (this) {
+                connection.active--;
+                active--;
+                if (!connection.queue.isEmpty()) {
+                    addReady(connection);
+                }
+            }
+            runnable.rejected(ree);
+            return false;
+        }
+    }
+
+
+    int getActive() {
+        synchronized (this) {
+            return active;
+        }
+    }
+
+
+    private boolean isBelowLimit() {
+        return maxActive < 0 || active < maxActive;
+    }
+
+
+    private void addReady(ConnectionQueue connection) {
+        if (!connection.ready) {
+            connection.ready = true;
+            ready.add(connection);
+        }
+    }
+
+
+    /**
+     * 一个连接的任务队列. 字段由 dispatcher 的锁保护.
+     */
+    static class ConnectionQueue {
+
+        private final Executor executor;
+        private final int maxActive;
+        private final Queue<StreamRunnable> queue = new ArrayDeque<>();
+        private int active = 0;
+        private boolean ready = false;
+
+        ConnectionQueue(Executor executor, int maxActive) {
+            this.executor = executor;
+            this.maxActive = maxActive;
+        }
+    }
+}
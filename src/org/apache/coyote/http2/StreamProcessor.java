@@ -2,6 +2,7 @@ package org.apache.coyote.http2;
 
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.coyote.AbstractProcessor;
 import org.apache.coyote.ActionCode;
@@ -59,6 +60,8 @@ class StreamProcessor extends AbstractProcessor {
                                     stream.getIdentifier()), Http2Error.INTERNAL_ERROR,
                                     stream.getIdentifier().intValue());
                             stream.close(se);
+                        } else {
+                            handler.streamProcessingComplete(stream);
                         }
                     }
                 } catch (Exception e) {
@@ -77,6 +80,19 @@ class StreamProcessor extends AbstractProcessor {
     }
 
 
+    /**
+     * 在 executor 拒绝执行这个处理器的任务时调用. 流不会被处理, 因此重置它.
+     */
+    final void rejected(RejectedExecutionException ree) {
+        StreamException se = new StreamException(sm.getString(
+                "streamProcessor.rejected", stream.getConnectionId(),
+                stream.getIdentifier()), Http2Error.INTERNAL_ERROR,
+                stream.getIdentifier().intValue());
+        se.initCause(ree);
+        stream.close(se);
+    }
+
+
     @Override
     protected final void prepareResponse() throws IOException {
         response.setCommitted(true);
@@ -222,6 +238,7 @@ class StreamProcessor extends AbstractProcessor {
 
     @Override
     public SocketState service(SocketWrapperBase<?> socket) throws IOException {
+        request.markPhase(org.apache.coyote.Constants.PHASE_DEQUEUED);
         try {
             adapter.service(request, response);
         } catch (Exception e) {
@@ -241,6 +258,7 @@ class StreamProcessor extends AbstractProcessor {
         } else {
             action(ActionCode.CLOSE, null);
             request.updateCounters();
+            handler.getPushPolicy().streamComplete(stream);
             return SocketState.CLOSED;
         }
     }
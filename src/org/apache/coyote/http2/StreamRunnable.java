@@ -1,5 +1,7 @@
 package org.apache.coyote.http2;
 
+import java.util.concurrent.RejectedExecutionException;
+
 import org.apache.tomcat.util.net.SocketEvent;
 
 class StreamRunnable implements Runnable {
@@ -18,4 +20,12 @@ class StreamRunnable implements Runnable {
     public void run() {
         processor.process(event);
     }
+
+
+    /**
+     * 在 executor 拒绝执行这个任务时调用.
+     */
+    void rejected(RejectedExecutionException ree) {
+        processor.rejected(ree);
+    }
 }
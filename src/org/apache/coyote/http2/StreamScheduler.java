@@ -0,0 +1,208 @@
+package org.apache.coyote.http2;
+
+/**
+ * 当连接的流量控制窗口耗尽时, 在等待写入的流之间分配连接窗口.
+ * <p>
+ * 流按 RFC 9218 的紧急程度 (0 最紧急, 7 最不紧急) 分级, 先满足较紧急的级别. 在同一级别中,
+ * 非增量 (non-incremental) 的流按流 ID 顺序依次获得全部所需的窗口, 然后增量 (incremental) 的流
+ * 按权重比例轮流分配剩余的窗口. 没有发送 priority header 的流视为紧急程度 3 的增量流,
+ * 使用 RFC 7540 的权重, 因此行为与按权重公平分配相同.
+ * <p>
+ * 流通过其自身的字段链接, 分配窗口时不创建任何对象. 所有方法必须在持有 {@link Http2UpgradeHandler} 的锁时调用.
+ */
+class StreamScheduler {
+
+    static final int URGENCY_LEVELS = 8;
+    static final int DEFAULT_URGENCY = 3;
+
+    /*
+     * 每个紧急程度两个链表: 索引 2 * urgency 为非增量流, 2 * urgency + 1 为增量流.
+     * 增量流的链表是循环链表, 头部在每次分配之后前移, 以轮流获得舍入的余量.
+     */
+    private final Stream[] heads = new Stream[URGENCY_LEVELS * 2];
+
+    /*
+     * 尚未分配的窗口请求的总和.
+     */
+    private long backLogSize = 0;
+
+
+    long getBackLogSize() {
+        return backLogSize;
+    }
+
+
+    /**
+     * 将流加入 backlog.
+     *
+     * @param stream      等待写入的流, 必须不在 backlog 中
+     * @param reservation 流需要的窗口大小
+     */
+    void add(Stream stream, int reservation) {
+        stream.backLogRequested = reservation;
+        stream.backLogAllocated = 0;
+        stream.backLogList = 2 * stream.getUrgency() + (stream.isIncremental() ? 1 : 0);
+        backLogSize += reservation;
+        Stream head = heads[stream.backLogList];
+        if (head == null) {
+            stream.backLogNext = stream;
+            stream.backLogPrev = stream;
+            heads[stream.backLogList] = stream;
+        } else if (stream.isIncremental()) {
+            // 插入到末尾 (头部之前)
+            linkBefore(stream, head);
+        } else {
+            // 按流 ID 排序
+            int id = stream.getIdentifier().intValue();
+            Stream s = head;
+            do {
+                if (s.getIdentifier().intValue() > id) {
+                    break;
+                }
+                s = s.backLogNext;
+            } while (s != head);
+            linkBefore(stream, s);
+            if (s == head && head.getIdentifier().intValue() > id) {
+                heads[stream.backLogList] = stream;
+            }
+        }
+        stream.inBackLog = true;
+    }
+
+
+    /**
+     * 将流从 backlog 中删除. 如果流不在 backlog 中, 则什么都不做.
+     */
+    void remove(Stream stream) {
+        if (!stream.inBackLog) {
+            return;
+        }
+        backLogSize -= stream.backLogRequested;
+        unlink(stream);
+        stream.backLogRequested = 0;
+        stream.backLogAllocated = 0;
+    }
+
+
+    /**
+     * 清空 backlog.
+     *
+     * @return 被删除的流, 通过 {@link Stream#nextToNotify} 链接
+     */
+    Stream clear() {
+        Stream toNotify = null;
+        for (int i = 0; i < heads.length; i++) {
+            while (heads[i] != null) {
+                Stream stream = heads[i];
+                unlink(stream);
+                stream.backLogRequested = 0;
+                stream.backLogAllocated = 0;
+                stream.nextToNotify = toNotify;
+                toNotify = stream;
+            }
+        }
+        backLogSize = 0;
+        return toNotify;
+    }
+
+
+    /**
+     * 分配连接窗口.
+     *
+     * @param increment 可以分配的窗口大小
+     *
+     * @return 获得分配的流, 通过 {@link Stream#nextToNotify} 链接
+     */
+    Stream allocate(int increment) {
+        Stream toNotify = null;
+        int leftToAllocate = increment;
+        for (int urgency = 0; urgency < URGENCY_LEVELS && leftToAllocate > 0; urgency++) {
+            // 非增量流: 依次满足
+            Stream head = heads[2 * urgency];
+            if (head != null) {
+                Stream s = head;
+                do {
+                    if (s.backLogRequested > 0) {
+                        int share = Math.min(leftToAllocate, s.backLogRequested);
+                        leftToAllocate -= share;
+                        if (s.backLogAllocated == 0) {
+                            s.nextToNotify = toNotify;
+                            toNotify = s;
+                        }
+                        grant(s, share);
+                    }
+                    s = s.backLogNext;
+                } while (s != head && leftToAllocate > 0);
+            }
+
+            // 增量流: 按权重比例分配, 直到窗口或请求用完
+            head = heads[2 * urgency + 1];
+            while (head != null && leftToAllocate > 0) {
+                int totalWeight = 0;
+                Stream s = head;
+                do {
+                    if (s.backLogRequested > 0) {
+                        totalWeight += s.getWeight();
+                    }
+                    s = s.backLogNext;
+                } while (s != head);
+                if (totalWeight == 0) {
+                    break;
+                }
+                int available = leftToAllocate;
+                s = head;
+                do {
+                    if (s.backLogRequested > 0) {
+                        // 至少为 1, 避免舍入导致的无限循环
+                        int share = Math.max(1, (int) ((long) available * s.getWeight() / totalWeight));
+                        share = Math.min(share, Math.min(leftToAllocate, s.backLogRequested));
+                        leftToAllocate -= share;
+                        if (s.backLogAllocated == 0) {
+                            s.nextToNotify = toNotify;
+                            toNotify = s;
+                        }
+                        grant(s, share);
+                    }
+                    s = s.backLogNext;
+                } while (s != head && leftToAllocate > 0);
+                // 轮转, 使下一轮从下一个流开始
+                heads[2 * urgency + 1] = head.backLogNext;
+                head = heads[2 * urgency + 1];
+            }
+        }
+        return toNotify;
+    }
+
+
+    private void grant(Stream stream, int share) {
+        stream.backLogRequested -= share;
+        stream.backLogAllocated += share;
+        backLogSize -= share;
+    }
+
+
+    private static void linkBefore(Stream stream, Stream next) {
+        Stream prev = next.backLogPrev;
+        stream.backLogPrev = prev;
+        stream.backLogNext = next;
+        prev.backLogNext = stream;
+        next.backLogPrev = stream;
+    }
+
+
+    private void unlink(Stream stream) {
+        int list = stream.backLogList;
+        if (stream.backLogNext == stream) {
+            heads[list] = null;
+        } else {
+            stream.backLogPrev.backLogNext = stream.backLogNext;
+            stream.backLogNext.backLogPrev = stream.backLogPrev;
+            if (heads[list] == stream) {
+                heads[list] = stream.backLogNext;
+            }
+        }
+        stream.backLogNext = null;
+        stream.backLogPrev = null;
+        stream.inBackLog = false;
+    }
+}
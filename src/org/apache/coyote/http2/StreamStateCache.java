@@ -0,0 +1,108 @@
+package org.apache.coyote.http2;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.coyote.Request;
+import org.apache.tomcat.util.collections.SynchronizedStack;
+
+/**
+ * 缓存一个连接上已完成的流的状态 (coyote Request/Response 以及输入和输出缓冲区), 以便新的流重用.
+ * <p>
+ * 已关闭的流仍然保留在连接的流中, 作为优先级树和关闭的流的历史记录的一部分, 因此只有状态被重用, 而不是 Stream 本身.
+ * 流的处理完成后, 流被加入完成队列. 连接线程在创建新的流之前回收队列中的流, 因为只有连接线程将请求主体写入输入缓冲区,
+ * 此时没有正在进行的写入. 只回收不能再接收 DATA 帧的流.
+ */
+class StreamStateCache {
+
+    private final int initialWindowSize;
+    private final SynchronizedStack<Request> requests;
+    private final SynchronizedStack<ByteBuffer> outputBuffers;
+    private final SynchronizedStack<ByteBuffer> inBuffers;
+    private final SynchronizedStack<byte[]> outBuffers;
+    private final Queue<Stream> completedStreams = new ConcurrentLinkedQueue<>();
+
+
+    /**
+     * @param size              缓存的每种对象的最大数量
+     * @param initialWindowSize 连接的本地初始窗口大小, 即输入缓冲区的大小
+     */
+    StreamStateCache(int size, int initialWindowSize) {
+        this.initialWindowSize = initialWindowSize;
+        requests = new SynchronizedStack<>(size, size);
+        outputBuffers = new SynchronizedStack<>(size, size);
+        inBuffers = new SynchronizedStack<>(size, size);
+        outBuffers = new SynchronizedStack<>(size, size);
+    }
+
+
+    /**
+     * 在流的处理完成后调用. 在容器线程中调用, 所以只将流加入完成队列.
+     */
+    void streamComplete(Stream stream) {
+        completedStreams.offer(stream);
+    }
+
+
+    /**
+     * 回收完成队列中的流. 必须由连接线程调用.
+     */
+    void recycleCompletedStreams() {
+        Stream stream = completedStreams.poll();
+        while (stream != null) {
+            if (!stream.isActive() && stream.isInputFinished()) {
+                stream.recycle(this);
+            }
+            stream = completedStreams.poll();
+        }
+    }
+
+
+    Request popRequest() {
+        return requests.pop();
+    }
+
+
+    void pushRequest(Request request) {
+        request.recycle();
+        request.getResponse().recycle();
+        requests.push(request);
+    }
+
+
+    ByteBuffer popOutputBuffer() {
+        return outputBuffers.pop();
+    }
+
+
+    void pushOutputBuffer(ByteBuffer buffer) {
+        buffer.clear();
+        outputBuffers.push(buffer);
+    }
+
+
+    ByteBuffer popInBuffer(int size) {
+        if (size != initialWindowSize) {
+            return null;
+        }
+        return inBuffers.pop();
+    }
+
+
+    byte[] popOutBuffer(int size) {
+        if (size != initialWindowSize) {
+            return null;
+        }
+        return outBuffers.pop();
+    }
+
+
+    void pushInputBuffers(ByteBuffer inBuffer, byte[] outBuffer) {
+        if (inBuffer.capacity() == initialWindowSize && outBuffer.length == initialWindowSize) {
+            inBuffer.clear();
+            inBuffers.push(inBuffer);
+            outBuffers.push(outBuffer);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.apache.tomcat.util.collections;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 可重用对象的无锁, 有界对象池. 这是 {@link SynchronizedStack} 的替代方案, 适用于多个线程同时获取和归还对象的场景.
+ * 对象保存在固定大小的环形缓冲区中, 所以 {@link #push(Object)} 和 {@link #pop()} 都不会创建垃圾, 也不需要获取监视器.
+ * <p>
+ * 实现基于 Dmitry Vyukov 的有界 MPMC 队列: 每个槽都有一个序列号, 生产者和消费者通过 CAS 领取槽位.
+ * 因为槽位只通过序列号移交, 复用对象时不存在 ABA 问题.
+ *
+ * @param <T> 此池管理的对象类型
+ */
+public class ConcurrentRingPool<T> {
+
+    public static final int DEFAULT_SIZE = 128;
+
+    /*
+     * limit 为 -1 (无限制) 时使用的容量. 环形缓冲区不能扩展.
+     */
+    private static final int UNLIMITED_SIZE = 4096;
+
+    private final int mask;
+    private final AtomicReferenceArray<T> buffer;
+    private final AtomicLongArray sequence;
+
+    private final AtomicLong insert = new AtomicLong(0);
+    private final AtomicLong remove = new AtomicLong(0);
+
+
+    public ConcurrentRingPool() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * @param limit 池中保留的最大对象数. 向上取整为2的幂. 0 表示不保留任何对象, -1 表示使用一个较大的默认容量.
+     */
+    public ConcurrentRingPool(int limit) {
+        int capacity;
+        if (limit < 0) {
+            capacity = UNLIMITED_SIZE;
+        } else if (limit == 0) {
+            capacity = 0;
+        } else {
+            capacity = 1;
+            while (capacity < limit) {
+                capacity <<= 1;
+            }
+        }
+        mask = capacity - 1;
+        buffer = new AtomicReferenceArray<>(capacity);
+        sequence = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequence.set(i, i);
+        }
+    }
+
+
+    /**
+     * 将对象归还到池中.
+     *
+     * @param obj 要归还的对象
+     *
+     * @return <code>true</code> 如果对象已加入池中; <code>false</code> 如果池已满, 此时调用者应丢弃该对象
+     */
+    public boolean push(T obj) {
+        if (mask < 0) {
+            return false;
+        }
+        while (true) {
+            long pos = insert.get();
+            int index = (int) pos & mask;
+            long diff = sequence.get(index) - pos;
+            if (diff == 0) {
+                if (insert.compareAndSet(pos, pos + 1)) {
+                    buffer.lazySet(index, obj);
+                    sequence.set(index, pos + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                if (pos - remove.get() > mask) {
+                    // Full
+                    return false;
+                }
+                // 消费者已领取此槽位, 但尚未释放. 池没有满, 重试而不是丢弃对象
+                continue;
+            }
+            // 否则另一个生产者已领取此槽位, 重试
+        }
+    }
+
+
+    /**
+     * 从池中获取一个对象.
+     *
+     * @return 池中的对象; 如果池为空, 则为 <code>null</code>
+     */
+    public T pop() {
+        if (mask < 0) {
+            return null;
+        }
+        while (true) {
+            long pos = remove.get();
+            int index = (int) pos & mask;
+            long diff = sequence.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (remove.compareAndSet(pos, pos + 1)) {
+                    T result = buffer.get(index);
+                    buffer.lazySet(index, null);
+                    sequence.set(index, pos + mask + 1);
+                    return result;
+                }
+            } else if (diff < 0) {
+                // Empty
+                return null;
+            }
+            // 否则另一个消费者已领取此槽位, 重试
+        }
+    }
+
+
+    public void clear() {
+        while (pop() != null) {
+            // NO-OP
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.apache.tomcat.util.collections;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 多生产者, 单消费者的无锁无界队列. 队列是侵入式的: 元素本身就是链表节点, 因此入队和出队都不会创建垃圾.
+ * 这是 {@link SynchronizedQueue} 的替代方案, 适用于只有一个线程 (例如轮询线程) 读取队列的场景.
+ * <p>
+ * 实现基于 Dmitry Vyukov 的侵入式 MPSC 节点队列. {@link #offer(Node)} 可以由任意线程调用;
+ * {@link #poll()} 和 {@link #isEmpty()} 必须只由单个消费线程调用.
+ * 节点在被 {@link #poll()} 返回之后才可以再次入队.
+ *
+ * @param <T> 此队列管理的节点类型
+ */
+public class MpscLinkedQueue<T extends MpscLinkedQueue.Node> {
+
+    /**
+     * 队列元素的基类.
+     */
+    public static class Node {
+        private volatile Node next;
+    }
+
+
+    private final Node stub = new Node();
+
+    /*
+     * 最近入队的节点. 由生产者交换.
+     */
+    private final AtomicReference<Node> head = new AtomicReference<>(stub);
+
+    /*
+     * 下一个要出队的节点. 只由消费者访问.
+     */
+    private Node tail = stub;
+
+
+    public boolean offer(T t) {
+        push(t);
+        return true;
+    }
+
+
+    private void push(Node node) {
+        node.next = null;
+        Node prev = head.getAndSet(node);
+        // 在这一步完成之前, 消费者看不到 node, 也看不到之后入队的任何节点
+        prev.next = node;
+    }
+
+
+    /**
+     * 出队下一个节点.
+     *
+     * @return 下一个节点; 如果队列为空, 或者下一个节点的入队仍在进行中, 则为 <code>null</code>
+     */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        Node tail = this.tail;
+        Node next = tail.next;
+        if (tail == stub) {
+            if (next == null) {
+                return null;
+            }
+            this.tail = next;
+            tail = next;
+            next = next.next;
+        }
+        if (next != null) {
+            this.tail = next;
+            return (T) tail;
+        }
+        if (tail != head.get()) {
+            // 生产者已交换 head, 但尚未链接节点
+            return null;
+        }
+        // tail 是最后一个节点. 重新入队 stub 以便可以安全地移除 tail.
+        push(stub);
+        next = tail.next;
+        if (next != null) {
+            this.tail = next;
+            return (T) tail;
+        }
+        return null;
+    }
+
+
+    public boolean isEmpty() {
+        Node tail = this.tail;
+        return tail == stub ? tail.next == null : false;
+    }
+
+
+    /**
+     * 丢弃所有节点. 必须由消费线程调用.
+     */
+    public void clear() {
+        while (poll() != null) {
+            // NO-OP
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.apache.tomcat.util.compat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ThreadFactory;
+
+class Jre21Compat extends Jre9Compat {
+
+    private static final String PINNED_EVENT_NAME = "jdk.VirtualThreadPinned";
+
+    private static final Method ofVirtualMethod;
+    private static final Method nameMethod;
+    private static final Method factoryMethod;
+
+    private static final Class<?> consumerClazz;
+    private static final Constructor<?> recordingStreamConstructor;
+    private static final Method enableMethod;
+    private static final Method onEventMethod;
+    private static final Method startAsyncMethod;
+    private static final Method closeMethod;
+
+    static {
+        Method m1 = null;
+        Method m2 = null;
+        Method m3 = null;
+
+        try {
+            Class<?> builderClazz = Class.forName("java.lang.Thread$Builder");
+            m1 = Thread.class.getMethod("ofVirtual");
+            m2 = builderClazz.getMethod("name", String.class, long.class);
+            m3 = builderClazz.getMethod("factory");
+        } catch (ClassNotFoundException e) {
+            // Must be before Java 21
+        } catch (ReflectiveOperationException | IllegalArgumentException e) {
+            // Should never happen
+        }
+
+        ofVirtualMethod = m1;
+        nameMethod = m2;
+        factoryMethod = m3;
+
+        Class<?> c4 = null;
+        Constructor<?> c5 = null;
+        Method m6 = null;
+        Method m7 = null;
+        Method m8 = null;
+        Method m9 = null;
+
+        try {
+            // JFR 是可选模块, 可能不在运行时镜像中
+            Class<?> recordingStreamClazz = Class.forName("jdk.jfr.consumer.RecordingStream");
+            c4 = Class.forName("java.util.function.Consumer");
+            c5 = recordingStreamClazz.getConstructor();
+            m6 = recordingStreamClazz.getMethod("enable", String.class);
+            m7 = recordingStreamClazz.getMethod("onEvent", String.class, c4);
+            m8 = recordingStreamClazz.getMethod("startAsync");
+            m9 = recordingStreamClazz.getMethod("close");
+        } catch (ClassNotFoundException e) {
+            // JFR not available
+            c5 = null;
+        } catch (ReflectiveOperationException | IllegalArgumentException e) {
+            // Should never happen
+            c5 = null;
+        }
+
+        consumerClazz = c4;
+        recordingStreamConstructor = c5;
+        enableMethod = m6;
+        onEventMethod = m7;
+        startAsyncMethod = m8;
+        closeMethod = m9;
+    }
+
+
+    static boolean isSupported() {
+        return ofVirtualMethod != null;
+    }
+
+
+    @Override
+    public ThreadFactory createVirtualThreadFactory(String namePrefix) {
+        try {
+            Object builder = ofVirtualMethod.invoke(null);
+            nameMethod.invoke(builder, namePrefix, Long.valueOf(0));
+            return (ThreadFactory) factoryMethod.invoke(builder);
+        } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+            throw new UnsupportedOperationException(e);
+        }
+    }
+
+
+    @Override
+    public Closeable monitorVirtualThreadPinning(final Runnable listener) {
+        if (recordingStreamConstructor == null) {
+            super.monitorVirtualThreadPinning(listener);
+        }
+        try {
+            final Object recordingStream = recordingStreamConstructor.newInstance();
+            enableMethod.invoke(recordingStream, PINNED_EVENT_NAME);
+            Object consumer = Proxy.newProxyInstance(Jre21Compat.class.getClassLoader(),
+                    new Class<?>[] { consumerClazz }, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            switch (method.getName()) {
+                            case "accept":
+                                listener.run();
+                                return null;
+                            case "hashCode":
+                                return Integer.valueOf(System.identityHashCode(proxy));
+                            case "equals":
+                                return Boolean.valueOf(proxy == args[0]);
+                            default:
+                                return PINNED_EVENT_NAME;
+                            }
+                        }
+                    });
+            onEventMethod.invoke(recordingStream, PINNED_EVENT_NAME, consumer);
+            startAsyncMethod.invoke(recordingStream);
+            return new Closeable() {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        closeMethod.invoke(recordingStream);
+                    } catch (ReflectiveOperationException e) {
+                        throw new IOException(e);
+                    }
+                }
+            };
+        } catch (ReflectiveOperationException | IllegalArgumentException e) {
+            throw new UnsupportedOperationException(e);
+        }
+    }
+}
@@ -6,9 +6,12 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.channels.NetworkChannel;
 import java.util.Deque;
 import java.util.Set;
 import java.util.jar.JarFile;
@@ -39,6 +42,7 @@ class Jre9Compat extends Jre8Compat {
     private static final Method getMethod;
     private static final Constructor<JarFile> jarFileConstructor;
     private static final Method isMultiReleaseMethod;
+    private static final SocketOption<Boolean> reusePortOption;
 
     private static final Object RUNTIME_VERSION;
     private static final int RUNTIME_MAJOR_VERSION;
@@ -59,6 +63,7 @@ class Jre9Compat extends Jre8Compat {
         Method m13 = null;
         Object o14 = null;
         Object o15 = null;
+        SocketOption<Boolean> o16 = null;
 
         try {
             Class<?> moduleLayerClazz = Class.forName("java.lang.ModuleLayer");
@@ -85,6 +90,10 @@ class Jre9Compat extends Jre8Compat {
             m13 = JarFile.class.getMethod("isMultiRelease");
             o14 = runtimeVersionMethod.invoke(null);
             o15 = majorMethod.invoke(o14);
+            @SuppressWarnings("unchecked")
+            SocketOption<Boolean> reusePort = (SocketOption<Boolean>)
+                    StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+            o16 = reusePort;
 
         } catch (ClassNotFoundException e) {
             // Must be Java 8
@@ -105,6 +114,7 @@ class Jre9Compat extends Jre8Compat {
         getMethod = m11;
         jarFileConstructor = c12;
         isMultiReleaseMethod = m13;
+        reusePortOption = o16;
 
         RUNTIME_VERSION = o14;
         if (o15 != null) {
@@ -151,6 +161,16 @@ class Jre9Compat extends Jre8Compat {
     }
 
 
+    @Override
+    public void setReusePort(NetworkChannel channel) throws IOException {
+        if (reusePortOption == null || !channel.supportedOptions().contains(reusePortOption)) {
+            // 例如 Windows 不支持此选项
+            super.setReusePort(channel);
+        }
+        channel.setOption(reusePortOption, Boolean.TRUE);
+    }
+
+
     @Override
     public void disableCachingForJarUrlConnections() throws IOException {
         try {
@@ -1,10 +1,13 @@
 package org.apache.tomcat.util.compat;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.channels.NetworkChannel;
 import java.util.Deque;
+import java.util.concurrent.ThreadFactory;
 import java.util.jar.JarFile;
 
 import javax.net.ssl.SSLEngine;
@@ -23,24 +26,34 @@ public class JreCompat {
     private static final JreCompat instance;
     private static StringManager sm =
             StringManager.getManager(JreCompat.class.getPackage().getName());
+    private static final boolean jre21Available;
     private static final boolean jre9Available;
     private static final boolean jre8Available;
 
 
     static {
-        // 这是具有Java 7最低Java版本的Tomcat 8. 可选功能所需的最新Java版本是Java 9.
+        // 这是具有Java 7最低Java版本的Tomcat 8. 可选功能所需的最新Java版本是Java 21.
         // 首先查找JVM最高的支持
-        if (Jre9Compat.isSupported()) {
+        if (Jre21Compat.isSupported()) {
+            instance = new Jre21Compat();
+            jre21Available = true;
+            jre9Available = true;
+            jre8Available = true;
+        }
+        else if (Jre9Compat.isSupported()) {
             instance = new Jre9Compat();
+            jre21Available = false;
             jre9Available = true;
             jre8Available = true;
         }
         else if (Jre8Compat.isSupported()) {
             instance = new Jre8Compat();
+            jre21Available = false;
             jre9Available = false;
             jre8Available = true;
         } else {
             instance = new JreCompat();
+            jre21Available = false;
             jre9Available = false;
             jre8Available = false;
         }
@@ -108,6 +121,20 @@ public class JreCompat {
     }
 
 
+    /**
+     * 在给定的通道上启用 SO_REUSEPORT, 以便多个监听套接字可以绑定到同一个地址和端口.
+     * 必须在绑定通道之前调用.
+     *
+     * @param channel 要配置的通道
+     *
+     * @throws IOException 如果设置套接字选项时发生I/O错误
+     * @throws UnsupportedOperationException 如果JRE或操作系统不支持 SO_REUSEPORT
+     */
+    public void setReusePort(NetworkChannel channel) throws IOException {
+        throw new UnsupportedOperationException(sm.getString("jreCompat.noReusePort"));
+    }
+
+
     /**
      * 禁用JAR URL连接的缓存. 对于Java 8及更早版本，这也会禁用所有URL连接的缓存.
      *
@@ -176,4 +203,39 @@ public class JreCompat {
     public int jarFileRuntimeMajorVersion() {
         return RUNTIME_MAJOR_VERSION;
     }
+
+
+    // Java 21方法的Java 7实现
+
+    public static boolean isJre21Available() {
+        return jre21Available;
+    }
+
+
+    /**
+     * 创建一个线程工厂, 为每个任务创建一个新的虚拟线程.
+     *
+     * @param namePrefix 线程名称的前缀, 后跟一个从0开始的计数器
+     *
+     * @return 虚拟线程的线程工厂
+     *
+     * @throws UnsupportedOperationException 如果JRE不支持虚拟线程
+     */
+    public ThreadFactory createVirtualThreadFactory(String namePrefix) {
+        throw new UnsupportedOperationException(sm.getString("jreCompat.noVirtualThreads"));
+    }
+
+
+    /**
+     * 开始监视虚拟线程固定其载体线程的事件 (通过JFR事件 jdk.VirtualThreadPinned).
+     *
+     * @param listener 每次发生固定事件时调用
+     *
+     * @return 关闭时停止监视
+     *
+     * @throws UnsupportedOperationException 如果JRE不支持虚拟线程或JFR事件流
+     */
+    public Closeable monitorVirtualThreadPinning(Runnable listener) {
+        throw new UnsupportedOperationException(sm.getString("jreCompat.noVirtualThreadPinningEvents"));
+    }
 }
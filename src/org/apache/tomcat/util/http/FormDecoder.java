@@ -0,0 +1,177 @@
+package org.apache.tomcat.util.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.apache.tomcat.util.http.Parameters.FailReason;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * 增量地解码 <code>application/x-www-form-urlencoded</code> 请求主体到 {@link Parameters}.
+ * <p>
+ * 主体按块读入一个可重用的缓冲区, 每块只处理以 '&amp;' 结束的完整的参数, 剩余的部分移到缓冲区的开头, 与下一块一起处理.
+ * 因此除非单个参数超过缓冲区, 不论主体多大, 都不会分配更大的数组.
+ * 调用者可以在每块之后检查需要的参数是否已经存在, 而不必读取整个主体.
+ * 解码失败时, 之前的块中的参数仍然保留在 {@link Parameters} 中, 只有失败的原因被记录.
+ * <p>
+ * 这个类不是线程安全的, 与请求一起回收.
+ */
+public final class FormDecoder {
+
+    private static final StringManager sm =
+        StringManager.getManager("org.apache.tomcat.util.http");
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private byte[] buffer;
+
+    /**
+     * 缓冲区开头的还没有处理的字节数. 这些字节中没有 '&amp;'.
+     */
+    private int count;
+
+    private Parameters parameters;
+    private InputStream in;
+
+    /**
+     * 主体中还没有读取的字节数, 或者 -1 如果主体的长度未知.
+     */
+    private long remaining;
+    private long maxLength;
+    private long read;
+    private boolean finished = true;
+
+
+    /**
+     * 开始解码一个主体. 不读取任何数据.
+     *
+     * @param parameters    解码的参数添加到的对象
+     * @param in            请求主体
+     * @param contentLength 主体的长度, 或者 -1 如果长度未知 (分块的主体)
+     * @param maxLength     主体的最大长度, 或者 -1 如果没有限制
+     */
+    public void start(Parameters parameters, InputStream in, long contentLength,
+            long maxLength) {
+        if (buffer == null) {
+            buffer = new byte[DEFAULT_BUFFER_SIZE];
+        }
+        this.parameters = parameters;
+        this.in = in;
+        this.remaining = contentLength;
+        this.maxLength = maxLength;
+        read = 0;
+        count = 0;
+        finished = false;
+    }
+
+
+    /**
+     * @return <code>true</code> 如果整个主体已经解码, 或者解码已经失败
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+
+    /**
+     * 读取主体的下一块, 并处理其中完整的参数.
+     *
+     * @throws EOFException 如果主体在内容长度之前结束. 不完整的参数被丢弃
+     * @throws IllegalStateException 如果主体超过最大长度
+     * @throws IOException 如果读取主体失败. 之后解码已经结束, 不完整的参数被丢弃
+     */
+    public void decodeNext() throws IOException {
+        if (finished) {
+            return;
+        }
+
+        if (count == buffer.length) {
+            // 单个参数超过缓冲区
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int len = buffer.length - count;
+        if (remaining >= 0 && remaining < len) {
+            len = (int) remaining;
+        }
+
+        int n;
+        try {
+            n = in.read(buffer, count, len);
+        } catch (IOException e) {
+            // 主体的其余部分不能再读取, 不完整的参数被丢弃
+            finished = true;
+            count = 0;
+            throw e;
+        }
+        if (n <= 0) {
+            finished = true;
+            if (remaining > 0) {
+                count = 0;
+                throw new EOFException();
+            }
+            process(count);
+            return;
+        }
+
+        read += n;
+        if (maxLength >= 0 && read > maxLength) {
+            finished = true;
+            count = 0;
+            throw new IllegalStateException(
+                    sm.getString("formDecoder.postTooLarge", Long.valueOf(maxLength)));
+        }
+
+        int end = count + n;
+        if (remaining > 0) {
+            remaining -= n;
+            if (remaining == 0) {
+                finished = true;
+                process(end);
+                return;
+            }
+        }
+
+        // 之前剩余的部分中没有 '&', 所以只需要搜索新读取的字节
+        int last = -1;
+        for (int i = end - 1; i >= count; i--) {
+            if (buffer[i] == '&') {
+                last = i;
+                break;
+            }
+        }
+        if (last < 0) {
+            count = end;
+            return;
+        }
+        process(last);
+        count = end - last - 1;
+        System.arraycopy(buffer, last + 1, buffer, 0, count);
+
+        if (parameters.getParseFailedReason() == FailReason.TOO_MANY_PARAMETERS) {
+            // 其它参数将被忽略, 不需要继续读取
+            finished = true;
+            count = 0;
+        }
+    }
+
+
+    private void process(int end) {
+        if (end > 0) {
+            parameters.processParameters(buffer, 0, end);
+        }
+        count = 0;
+    }
+
+
+    public void recycle() {
+        if (buffer != null && buffer.length > DEFAULT_BUFFER_SIZE) {
+            buffer = null;
+        }
+        count = 0;
+        parameters = null;
+        in = null;
+        finished = true;
+    }
+}
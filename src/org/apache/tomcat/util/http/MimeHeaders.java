@@ -3,8 +3,10 @@ package org.apache.tomcat.util.http;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Arrays;
 import java.util.Enumeration;
 
+import org.apache.tomcat.util.buf.Ascii;
 import org.apache.tomcat.util.buf.MessageBytes;
 import org.apache.tomcat.util.res.StringManager;
 
@@ -78,6 +80,27 @@ public class MimeHeaders {
      */
     public static final int DEFAULT_HEADER_SIZE=8;
 
+    /**
+     * Name hash used for header names that contain non-ASCII characters (or
+     * whose hash happens to be zero). Fields with this hash are always
+     * compared by name.
+     */
+    static final int NO_HASH = 0;
+
+    /**
+     * Frequently accessed headers that are resolved to fixed slots as they
+     * are added, so that looking them up does not require a scan.
+     */
+    private static final String[] WELL_KNOWN_NAMES = { "host", "content-length",
+            "connection", "transfer-encoding", "cookie" };
+    private static final int[] WELL_KNOWN_HASHES = new int[WELL_KNOWN_NAMES.length];
+
+    static {
+        for (int i = 0; i < WELL_KNOWN_NAMES.length; i++) {
+            WELL_KNOWN_HASHES[i] = WELL_KNOWN_NAMES[i].hashCode();
+        }
+    }
+
     private static final StringManager sm =
             StringManager.getManager("org.apache.tomcat.util.http");
 
@@ -97,11 +120,23 @@ public class MimeHeaders {
      */
     private int limit = -1;
 
+    /**
+     * Index of the first field for each of the {@link #WELL_KNOWN_NAMES}, or
+     * -1 if there is no such field.
+     */
+    private final int[] wellKnown = new int[WELL_KNOWN_NAMES.length];
+
+    /**
+     * Removing a field moves other fields so the well known slots are rebuilt
+     * on the next lookup.
+     */
+    private boolean wellKnownValid = true;
+
     /**
      * Creates a new MimeHeaders object using a default buffer size.
      */
     public MimeHeaders() {
-        // NO-OP
+        Arrays.fill(wellKnown, -1);
     }
 
     /**
@@ -134,6 +169,8 @@ public class MimeHeaders {
             headers[i].recycle();
         }
         count = 0;
+        Arrays.fill(wellKnown, -1);
+        wellKnownValid = true;
     }
 
     /**
@@ -163,6 +200,7 @@ public class MimeHeaders {
             MimeHeaderField mhf = createHeader();
             mhf.getName().duplicate(source.getName(i));
             mhf.getValue().duplicate(source.getValue(i));
+            nameAdded(mhf, source.headers[i].getNameHash());
         }
     }
 
@@ -208,8 +246,9 @@ public class MimeHeaders {
         // of constructing the hashtable
 
         // A custom search tree may be better
+        int hash = hashIgnoreCase(name);
         for (int i = starting; i < count; i++) {
-            if (headers[i].getName().equalsIgnoreCase(name)) {
+            if (matches(i, name, hash)) {
                 return i;
             }
         }
@@ -272,6 +311,7 @@ public class MimeHeaders {
     public MessageBytes addValue( String name ) {
          MimeHeaderField mh = createHeader();
         mh.getName().setString(name);
+        nameAdded(mh, hashIgnoreCase(name));
         return mh.getValue();
     }
 
@@ -286,8 +326,26 @@ public class MimeHeaders {
      */
     public MessageBytes addValue(byte b[], int startN, int len)
     {
+        return addValue(b, startN, len, hashIgnoreCase(b, startN, len));
+    }
+
+    /**
+     * Create a new named header using un-translated byte[] and a name hash
+     * that the caller calculated while parsing the name, so the name does not
+     * have to be scanned again.
+     * @param b The header name bytes
+     * @param startN Offset
+     * @param len Length
+     * @param nameHash The hash of the name as calculated by
+     *                 {@link #hashIgnoreCase(byte[], int, int)}. For an
+     *                 ASCII name this is the {@link String#hashCode()} of the
+     *                 lower case form of the name.
+     * @return the message bytes container for the value
+     */
+    public MessageBytes addValue(byte b[], int startN, int len, int nameHash) {
         MimeHeaderField mhf=createHeader();
         mhf.getName().setBytes(b, startN, len);
+        nameAdded(mhf, nameHash);
         return mhf.getValue();
     }
 
@@ -298,10 +356,11 @@ public class MimeHeaders {
      * @return the message bytes container for the value
      */
     public MessageBytes setValue( String name ) {
+        int hash = hashIgnoreCase(name);
         for ( int i = 0; i < count; i++ ) {
-            if(headers[i].getName().equalsIgnoreCase(name)) {
+            if(matches(i, name, hash)) {
                 for ( int j=i+1; j < count; j++ ) {
-                    if(headers[j].getName().equalsIgnoreCase(name)) {
+                    if(matches(j, name, hash)) {
                         removeHeader(j--);
                     }
                 }
@@ -310,6 +369,7 @@ public class MimeHeaders {
         }
         MimeHeaderField mh = createHeader();
         mh.getName().setString(name);
+        nameAdded(mh, hash);
         return mh.getValue();
     }
 
@@ -322,8 +382,17 @@ public class MimeHeaders {
      * @return the value
      */
     public MessageBytes getValue(String name) {
+        int hash = hashIgnoreCase(name);
+        int slot = findWellKnown(name, hash);
+        if (slot > -1) {
+            if (!wellKnownValid) {
+                rebuildWellKnown();
+            }
+            int i = wellKnown[slot];
+            return i > -1 ? headers[i].getValue() : null;
+        }
         for (int i = 0; i < count; i++) {
-            if (headers[i].getName().equalsIgnoreCase(name)) {
+            if (matches(i, name, hash)) {
                 return headers[i].getValue();
             }
         }
@@ -340,8 +409,9 @@ public class MimeHeaders {
      */
     public MessageBytes getUniqueValue(String name) {
         MessageBytes result = null;
+        int hash = hashIgnoreCase(name);
         for (int i = 0; i < count; i++) {
-            if (headers[i].getName().equalsIgnoreCase(name)) {
+            if (matches(i, name, hash)) {
                 if (result == null) {
                     result = headers[i].getValue();
                 } else {
@@ -369,8 +439,9 @@ public class MimeHeaders {
         // XXX
         // warning: rather sticky code; heavily tuned
 
+        int hash = hashIgnoreCase(name);
         for (int i = 0; i < count; i++) {
-            if (headers[i].getName().equalsIgnoreCase(name)) {
+            if (matches(i, name, hash)) {
                 removeHeader(i--);
             }
         }
@@ -387,6 +458,100 @@ public class MimeHeaders {
         headers[idx] = headers[count - 1];
         headers[count - 1] = mh;
         count--;
+        wellKnownValid = false;
+    }
+
+
+    // -------------------- Name index --------------------
+
+    /**
+     * Calculates the case insensitive hash of a header name. For an ASCII
+     * name this is the {@link String#hashCode()} of the lower case form of
+     * the name.
+     * @param name The header name
+     * @return the hash or {@link #NO_HASH} if the name contains non-ASCII
+     *         characters
+     */
+    static int hashIgnoreCase(String name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c > 127) {
+                return NO_HASH;
+            }
+            hash = 31 * hash + Ascii.toLower(c);
+        }
+        return hash;
+    }
+
+    /**
+     * Calculates the case insensitive hash of a header name.
+     * @param b The header name bytes
+     * @param start Offset
+     * @param len Length
+     * @return the hash or {@link #NO_HASH} if the name contains non-ASCII
+     *         bytes
+     */
+    public static int hashIgnoreCase(byte[] b, int start, int len) {
+        int hash = 0;
+        for (int i = start; i < start + len; i++) {
+            if (b[i] < 0) {
+                return NO_HASH;
+            }
+            hash = 31 * hash + Ascii.toLower(b[i]);
+        }
+        return hash;
+    }
+
+    private boolean matches(int i, String name, int hash) {
+        int fieldHash = headers[i].getNameHash();
+        if (fieldHash != hash && fieldHash != NO_HASH && hash != NO_HASH) {
+            return false;
+        }
+        return headers[i].getName().equalsIgnoreCase(name);
+    }
+
+    private static int findWellKnown(String name, int hash) {
+        if (hash == NO_HASH) {
+            return -1;
+        }
+        for (int i = 0; i < WELL_KNOWN_HASHES.length; i++) {
+            if (WELL_KNOWN_HASHES[i] == hash && WELL_KNOWN_NAMES[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Must be called after the name of the field has been set.
+     */
+    private void nameAdded(MimeHeaderField mh, int hash) {
+        mh.setNameHash(hash);
+        if (!wellKnownValid || hash == NO_HASH) {
+            return;
+        }
+        for (int i = 0; i < WELL_KNOWN_HASHES.length; i++) {
+            if (WELL_KNOWN_HASHES[i] == hash) {
+                if (wellKnown[i] == -1 && mh.getName().equalsIgnoreCase(WELL_KNOWN_NAMES[i])) {
+                    wellKnown[i] = count - 1;
+                }
+                return;
+            }
+        }
+    }
+
+    private void rebuildWellKnown() {
+        Arrays.fill(wellKnown, -1);
+        for (int slot = 0; slot < WELL_KNOWN_NAMES.length; slot++) {
+            for (int i = 0; i < count; i++) {
+                if (matches(i, WELL_KNOWN_NAMES[slot], WELL_KNOWN_HASHES[slot])) {
+                    wellKnown[slot] = i;
+                    break;
+                }
+            }
+        }
+        wellKnownValid = true;
     }
 
 }
@@ -492,6 +657,7 @@ class MimeHeaderField {
 
     private final MessageBytes nameB = MessageBytes.newInstance();
     private final MessageBytes valueB = MessageBytes.newInstance();
+    private int nameHash = MimeHeaders.NO_HASH;
 
     /**
      * Creates a new, uninitialized header field.
@@ -503,6 +669,15 @@ class MimeHeaderField {
     public void recycle() {
         nameB.recycle();
         valueB.recycle();
+        nameHash = MimeHeaders.NO_HASH;
+    }
+
+    public int getNameHash() {
+        return nameHash;
+    }
+
+    public void setNameHash(int nameHash) {
+        this.nameHash = nameHash;
     }
 
     public MessageBytes getName() {
@@ -16,6 +16,7 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
@@ -32,6 +33,7 @@ import org.apache.tomcat.util.threads.ResizableExecutor;
 import org.apache.tomcat.util.threads.TaskQueue;
 import org.apache.tomcat.util.threads.TaskThreadFactory;
 import org.apache.tomcat.util.threads.ThreadPoolExecutor;
+import org.apache.tomcat.util.threads.VirtualThreadExecutor;
 
 /**
  * @param <S> 此端点管理的套接字的类型.
@@ -415,6 +417,102 @@ public abstract class AbstractEndpoint<S> {
     public Executor getExecutor() { return executor; }
 
 
+    /**
+     * 内部执行器是否使用虚拟线程, 而不是 {@link ThreadPoolExecutor}. 需要 Java 21 或更高版本;
+     * 在不支持的JRE上记录警告并使用线程池. 使用虚拟线程时 maxThreads 和 minSpareThreads 不起作用, 并发由 maxConnections 限制.
+     */
+    private boolean useVirtualThreads = false;
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+    public boolean getUseVirtualThreads() { return useVirtualThreads; }
+
+
+    /**
+     * 套接字处理任务在执行器中的目标排队时间 (毫秒). 排队时间在整个 {@link #getAdmissionInterval()} 内持续超过此值时,
+     * 端点被认为过载并开始拒绝新的工作. 0 禁用准入控制.
+     */
+    private long admissionTargetLatency = 0;
+    public void setAdmissionTargetLatency(long admissionTargetLatency) {
+        this.admissionTargetLatency = admissionTargetLatency;
+    }
+    public long getAdmissionTargetLatency() { return admissionTargetLatency; }
+
+
+    /**
+     * 准入控制的间隔 (毫秒).
+     */
+    private long admissionInterval = 100;
+    public void setAdmissionInterval(long admissionInterval) {
+        this.admissionInterval = admissionInterval;
+    }
+    public long getAdmissionInterval() { return admissionInterval; }
+
+
+    /**
+     * {@link AdmissionController} 实现的完全限定类名. 如果未设置, 而 admissionTargetLatency 大于 0,
+     * 则使用 {@link CoDelAdmissionController}.
+     */
+    private String admissionController = null;
+    public void setAdmissionController(String admissionController) {
+        this.admissionController = admissionController;
+    }
+    public String getAdmissionController() { return admissionController; }
+
+    private volatile AdmissionController admissionControllerInstance = null;
+
+    private final AtomicLong shedCount = new AtomicLong();
+
+    /**
+     * @return 因过载而被拒绝的请求和流的数量
+     */
+    public long getShedCount() { return shedCount.get(); }
+
+    /**
+     * @return <code>true</code> 如果准入控制器当前认为端点过载
+     */
+    public boolean isOverloaded() {
+        AdmissionController controller = admissionControllerInstance;
+        return controller != null && controller.isOverloaded(System.nanoTime());
+    }
+
+
+    /**
+     * 在开始处理一个新的请求或流之前调用.
+     *
+     * @return <code>false</code> 如果端点过载, 应该立即拒绝该请求或流
+     */
+    public boolean admitRequest() {
+        if (isOverloaded()) {
+            shedCount.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * 报告一个套接字处理任务的排队时间.
+     *
+     * @param queued 任务提交给执行器时的 {@link System#nanoTime()}
+     * @param now    任务开始运行时的 {@link System#nanoTime()}
+     */
+    protected void recordQueueLatency(long queued, long now) {
+        AdmissionController controller = admissionControllerInstance;
+        if (controller != null) {
+            controller.queueLatency(now - queued, now);
+        }
+    }
+
+
+    /**
+     * @return <code>true</code> 如果接受器应该因过载而暂时停止接受新的连接
+     */
+    protected boolean isAcceptThrottled() {
+        return isOverloaded();
+    }
+
+
     /**
      * 服务器套接字端口.
      */
@@ -739,6 +837,8 @@ public abstract class AbstractEndpoint<S> {
         if (executor != null) {
             if (executor instanceof ThreadPoolExecutor) {
                 return ((ThreadPoolExecutor) executor).getPoolSize();
+            } else if (executor instanceof VirtualThreadExecutor) {
+                return ((VirtualThreadExecutor) executor).getActiveCount();
             } else if (executor instanceof ResizableExecutor) {
                 return ((ResizableExecutor) executor).getPoolSize();
             } else {
@@ -757,6 +857,8 @@ public abstract class AbstractEndpoint<S> {
         if (executor != null) {
             if (executor instanceof ThreadPoolExecutor) {
                 return ((ThreadPoolExecutor) executor).getActiveCount();
+            } else if (executor instanceof VirtualThreadExecutor) {
+                return ((VirtualThreadExecutor) executor).getActiveCount();
             } else if (executor instanceof ResizableExecutor) {
                 return ((ResizableExecutor) executor).getActiveCount();
             } else {
@@ -767,6 +869,37 @@ public abstract class AbstractEndpoint<S> {
         }
     }
 
+    /**
+     * 返回执行器队列中等待线程的任务数.
+     *
+     * @return 队列中的任务数; 如果执行器没有可检查的队列 (例如使用虚拟线程时), 则为 -1; 如果没有执行器, 则为 -2
+     */
+    public int getExecutorQueueSize() {
+        Executor executor = this.executor;
+        if (executor != null) {
+            if (executor instanceof java.util.concurrent.ThreadPoolExecutor) {
+                return ((java.util.concurrent.ThreadPoolExecutor) executor).getQueue().size();
+            } else {
+                return -1;
+            }
+        } else {
+            return -2;
+        }
+    }
+
+    /**
+     * 返回虚拟线程固定其载体线程的事件数.
+     *
+     * @return 固定事件数; 如果执行器不使用虚拟线程或无法监视固定事件, 则为 -1
+     */
+    public long getVirtualThreadPinnedCount() {
+        Executor executor = this.executor;
+        if (executor instanceof VirtualThreadExecutor) {
+            return ((VirtualThreadExecutor) executor).getPinnedCount();
+        }
+        return -1;
+    }
+
     public boolean isRunning() {
         return running;
     }
@@ -778,6 +911,14 @@ public abstract class AbstractEndpoint<S> {
 
     public void createExecutor() {
         internalExecutor = true;
+        if (useVirtualThreads) {
+            try {
+                executor = new VirtualThreadExecutor(getName() + "-virt-");
+                return;
+            } catch (UnsupportedOperationException e) {
+                getLog().warn(sm.getString("endpoint.virtualThreadsUnsupported", getName()));
+            }
+        }
         TaskQueue taskqueue = new TaskQueue();
         TaskThreadFactory tf = new TaskThreadFactory(getName() + "-exec-", daemon, getThreadPriority());
         executor = new ThreadPoolExecutor(getMinSpareThreads(), getMaxThreads(), 60, TimeUnit.SECONDS,taskqueue, tf);
@@ -805,6 +946,19 @@ public abstract class AbstractEndpoint<S> {
                 }
                 TaskQueue queue = (TaskQueue) tpe.getQueue();
                 queue.setParent(null);
+            } else if (executor instanceof VirtualThreadExecutor) {
+                VirtualThreadExecutor vte = (VirtualThreadExecutor) executor;
+                vte.shutdown();
+                long timeout = getExecutorTerminationTimeoutMillis();
+                if (timeout > 0) {
+                    try {
+                        if (!vte.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+                            getLog().warn(sm.getString("endpoint.warn.executorShutdown", getName()));
+                        }
+                    } catch (InterruptedException e) {
+                        // Ignore
+                    }
+                }
             }
         }
     }
@@ -956,6 +1110,7 @@ public abstract class AbstractEndpoint<S> {
             }
             Executor executor = getExecutor();
             if (dispatch && executor != null) {
+                sc.queued = System.nanoTime();
                 executor.execute(sc);
             } else {
                 sc.run();
@@ -1058,6 +1213,17 @@ public abstract class AbstractEndpoint<S> {
             bind();
             bindState = BindState.BOUND_ON_START;
         }
+        AdmissionController controller = null;
+        if (admissionController != null) {
+            controller = (AdmissionController) Class.forName(admissionController)
+                    .getConstructor().newInstance();
+        } else if (admissionTargetLatency > 0) {
+            controller = new CoDelAdmissionController();
+        }
+        if (controller != null) {
+            controller.init(this);
+        }
+        admissionControllerInstance = controller;
         startInternal();
     }
 
@@ -1066,7 +1232,7 @@ public abstract class AbstractEndpoint<S> {
         acceptors = new Acceptor[count];
 
         for (int i = 0; i < count; i++) {
-            acceptors[i] = createAcceptor();
+            acceptors[i] = createAcceptor(i);
             String threadName = getName() + "-Acceptor-" + i;
             acceptors[i].setThreadName(threadName);
             Thread t = new Thread(acceptors[i], threadName);
@@ -1083,6 +1249,19 @@ public abstract class AbstractEndpoint<S> {
     protected abstract Acceptor createAcceptor();
 
 
+    /**
+     * 允许端点为给定索引的接受器线程提供特定Acceptor实现的钩子, 例如当每个接受器都有自己的监听套接字时.
+     * 默认实现委托给 {@link #createAcceptor()}.
+     *
+     * @param index 接受器线程的索引, 从 0 到 {@link #getAcceptorThreadCount()} - 1
+     *
+     * @return 接受器
+     */
+    protected Acceptor createAcceptor(int index) {
+        return createAcceptor();
+    }
+
+
     /**
      * 暂停端点, 这将阻止它接受新的连接.
      */
@@ -9,6 +9,7 @@ import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLParameters;
@@ -26,6 +27,11 @@ public abstract class AbstractJsseEndpoint<S> extends AbstractEndpoint<S> {
 
     private SSLImplementation sslImplementation = null;
 
+    // 初始握手的延迟统计, 从 SNI 处理完成到握手完成
+    private final AtomicLong handshakeCount = new AtomicLong(0);
+    private final AtomicLong handshakeTime = new AtomicLong(0);
+    private volatile long maxHandshakeTime = 0;
+
     public String getSslImplementationName() {
         return sslImplementationName;
     }
@@ -41,6 +47,30 @@ public abstract class AbstractJsseEndpoint<S> extends AbstractEndpoint<S> {
     }
 
 
+    /**
+     * @return 完成的初始 TLS 握手的数量
+     */
+    public long getHandshakeCount() {
+        return handshakeCount.get();
+    }
+
+
+    /**
+     * @return 所有完成的初始 TLS 握手的总时间, 毫秒
+     */
+    public long getHandshakeTime() {
+        return handshakeTime.get();
+    }
+
+
+    /**
+     * @return 最长的初始 TLS 握手的时间, 毫秒
+     */
+    public long getMaxHandshakeTime() {
+        return maxHandshakeTime;
+    }
+
+
     public int getSniParseLimit() {
         return sniParseLimit;
     }
@@ -118,6 +148,28 @@ public abstract class AbstractJsseEndpoint<S> extends AbstractEndpoint<S> {
     }
 
 
+    /**
+     * 在连接的初始握手完成后由 secure channel 调用, 以记录主机的握手统计.
+     *
+     * @param sniHostName 用于选择 SSLHostConfig 的主机名
+     * @param engine      完成握手的 engine
+     * @param start       握手开始的时间
+     */
+    void handshakeCompleted(String sniHostName, SSLEngine engine, long start) {
+        // 恢复的会话在握手开始之前创建. 比较秒, 因为 OpenSSL 的会话时间只精确到秒
+        boolean resumed = engine.getSession().getCreationTime() / 1000 < start / 1000;
+        getSSLHostConfig(sniHostName).handshakeCompleted(resumed);
+
+        long time = System.currentTimeMillis() - start;
+        handshakeCount.incrementAndGet();
+        handshakeTime.addAndGet(time);
+        // 不需要精确, 只是统计
+        if (time > maxHandshakeTime) {
+            maxHandshakeTime = time;
+        }
+    }
+
+
     @Override
     protected void releaseSSLContext(SSLHostConfig sslHostConfig) {
         for (SSLHostConfigCertificate certificate : sslHostConfig.getCertificates(true)) {
@@ -134,6 +186,7 @@ public abstract class AbstractJsseEndpoint<S> extends AbstractEndpoint<S> {
     protected SSLEngine createSSLEngine(String sniHostName, List<Cipher> clientRequestedCiphers,
             List<String> clientRequestedApplicationProtocols) {
         SSLHostConfig sslHostConfig = getSSLHostConfig(sniHostName);
+        sslHostConfig.checkSessionTicketKeys();
 
         SSLHostConfigCertificate certificate = selectCertificate(sslHostConfig, clientRequestedCiphers);
 
@@ -0,0 +1,35 @@
+package org.apache.tomcat.util.net;
+
+/**
+ * 端点的准入控制器. 端点报告每个套接字处理任务在执行器中的排队时间, 控制器据此判断是否过载.
+ * 过载时, HTTP/1.1 请求被立即以 503 响应拒绝, 新的 HTTP/2 流被以 REFUSED_STREAM 拒绝,
+ * 并且接受器暂停接受新的连接, 直到排队时间恢复.
+ * <p>
+ * 实现必须是线程安全的, 并提供一个公共无参构造器.
+ */
+public interface AdmissionController {
+
+    /**
+     * 在端点启动时调用.
+     *
+     * @param endpoint 使用此控制器的端点
+     */
+    void init(AbstractEndpoint<?> endpoint);
+
+
+    /**
+     * 报告一个套接字处理任务从创建到开始运行的时间.
+     *
+     * @param latency 排队时间, 以纳秒为单位
+     * @param now     任务开始运行的时间, {@link System#nanoTime()}
+     */
+    void queueLatency(long latency, long now);
+
+
+    /**
+     * @param now 当前时间, {@link System#nanoTime()}
+     *
+     * @return <code>true</code> 如果应拒绝新的请求和连接
+     */
+    boolean isOverloaded(long now);
+}
@@ -90,6 +90,13 @@ public class AprEndpoint extends AbstractEndpoint<Long> implements SNICallBack {
     private final Map<Long,AprSocketWrapper> connections = new ConcurrentHashMap<>();
 
 
+    /**
+     * 每个主机的 SSL context 的共享的会话票证密钥的监听器.
+     */
+    private final Map<SSLHostConfig,SessionTicketKeyRing.Listener> ticketKeyListeners =
+            new ConcurrentHashMap<>();
+
+
     // ------------------------------------------------------------ Constructor
 
     public AprEndpoint() {
@@ -587,6 +594,22 @@ public class AprEndpoint extends AbstractEndpoint<Long> implements SNICallBack {
             cctx = 0;
         }
 
+        // 使用共享的会话票证密钥, 以便在其它节点上恢复会话
+        if (!sslHostConfig.getDisableSessionTickets()) {
+            SessionTicketKeyRing ticketKeyRing = sslHostConfig.getSessionTicketKeyRing();
+            if (ticketKeyRing != null) {
+                final long sslCtx = ctx;
+                SessionTicketKeyRing.Listener listener = new SessionTicketKeyRing.Listener() {
+                    @Override
+                    public void ticketKeysChanged(byte[] ticketKeys) {
+                        SSLContext.setSessionTicketKeys(sslCtx, ticketKeys);
+                    }
+                };
+                ticketKeyListeners.put(sslHostConfig, listener);
+                ticketKeyRing.addListener(listener);
+            }
+        }
+
         sslHostConfig.setOpenSslConfContext(Long.valueOf(cctx));
         sslHostConfig.setOpenSslContext(Long.valueOf(ctx));
     }
@@ -594,6 +617,10 @@ public class AprEndpoint extends AbstractEndpoint<Long> implements SNICallBack {
 
     @Override
     protected void releaseSSLContext(SSLHostConfig sslHostConfig) {
+        SessionTicketKeyRing.Listener listener = ticketKeyListeners.remove(sslHostConfig);
+        if (listener != null) {
+            sslHostConfig.getSessionTicketKeyRing().removeListener(listener);
+        }
         Long ctx = sslHostConfig.getOpenSslContext();
         if (ctx != null) {
             SSLContext.free(ctx.longValue());
@@ -610,6 +637,7 @@ public class AprEndpoint extends AbstractEndpoint<Long> implements SNICallBack {
     @Override
     public long getSslContext(String sniHostName) {
         SSLHostConfig sslHostConfig = getSSLHostConfig(sniHostName);
+        sslHostConfig.checkSessionTicketKeys();
         Long ctx = sslHostConfig.getOpenSslContext();
         if (ctx != null) {
             return ctx.longValue();
@@ -804,6 +832,7 @@ public class AprEndpoint extends AbstractEndpoint<Long> implements SNICallBack {
             // 2: SSL handshake
             step = 2;
             if (sslContext != 0) {
+                getSSLHostConfig(null).checkSessionTicketKeys();
                 SSLSocket.attach(sslContext, socket);
                 if (SSLSocket.handshake(socket) != 0) {
                     if (log.isDebugEnabled()) {
@@ -975,7 +1004,7 @@ public class AprEndpoint extends AbstractEndpoint<Long> implements SNICallBack {
             while (running) {
 
                 // 如果端点暂停，则循环
-                while (paused && running) {
+                while ((paused || isAcceptThrottled()) && running) {
                     state = AcceptorState.PAUSED;
                     try {
                         Thread.sleep(50);
@@ -2198,7 +2227,9 @@ public class AprEndpoint extends AbstractEndpoint<Long> implements SNICallBack {
         @Override
         public void run() {
 
-            synchronized (socket) {
+            Lock lock = socket.getLock();
+            lock.lock();
+            try {
                 if (!deferAccept) {
                     if (setSocketOptions(socket)) {
                         getPoller().add(socket.getSocket().longValue(),
@@ -2225,6 +2256,8 @@ public class AprEndpoint extends AbstractEndpoint<Long> implements SNICallBack {
                         socket = null;
                     }
                 }
+            } finally {
+                lock.unlock();
             }
         }
     }
@@ -0,0 +1,53 @@
+package org.apache.tomcat.util.net;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 CoDel (Controlled Delay) 的准入控制器. 只有当排队时间在整个间隔内持续高于目标值时, 才认为端点过载,
+ * 所以短暂的突发不会导致拒绝请求. 一旦有任务的排队时间低于目标值, 过载状态立即结束.
+ * 如果在一个间隔内没有任务运行 (因此没有新的测量值), 过载状态也会结束, 以免接受器永远暂停.
+ * <p>
+ * 目标值和间隔取自 {@link AbstractEndpoint#getAdmissionTargetLatency()} 和
+ * {@link AbstractEndpoint#getAdmissionInterval()}.
+ */
+public class CoDelAdmissionController implements AdmissionController {
+
+    private volatile long target;
+    private volatile long interval;
+
+    /*
+     * 排队时间首次超过目标值之后, 过了此时间仍未低于目标值则进入过载状态. 0 表示当前低于目标值.
+     */
+    private volatile long firstAboveTime = 0;
+    private volatile long lastSampleTime = 0;
+    private volatile boolean overloaded = false;
+
+
+    @Override
+    public void init(AbstractEndpoint<?> endpoint) {
+        target = TimeUnit.MILLISECONDS.toNanos(endpoint.getAdmissionTargetLatency());
+        interval = TimeUnit.MILLISECONDS.toNanos(endpoint.getAdmissionInterval());
+        firstAboveTime = 0;
+        overloaded = false;
+    }
+
+
+    @Override
+    public void queueLatency(long latency, long now) {
+        lastSampleTime = now;
+        if (latency < target) {
+            firstAboveTime = 0;
+            overloaded = false;
+        } else if (firstAboveTime == 0) {
+            firstAboveTime = now + interval;
+        } else if (now - firstAboveTime >= 0) {
+            overloaded = true;
+        }
+    }
+
+
+    @Override
+    public boolean isOverloaded(long now) {
+        return overloaded && now - lastSampleTime < interval;
+    }
+}
@@ -0,0 +1,201 @@
+package org.apache.tomcat.util.net;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.codec.binary.Base64;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * 从文件中读取 TLS 会话票证密钥, 并设置到以文件的绝对路径命名的 {@link SessionTicketKeyRing}.
+ * <p>
+ * 文件的每一行包含一个 Base64 编码的 48 字节密钥, 第一个是当前的加密密钥. 空行和以 <code>#</code> 开头的行被忽略.
+ * 文件被修改时重新加载. 为了不需要后台线程, 由 endpoint 在创建新的 TLS 连接时调用 {@link #check()},
+ * 并且最多每 {@link #CHECK_INTERVAL} 毫秒检查一次文件.
+ * <p>
+ * 如果配置了轮换间隔, 在文件比轮换间隔更旧时, 生成一个新的密钥, 并原子地重写文件. 当文件位于所有节点共享的存储上时,
+ * 只应该有一个节点启用轮换, 其它的节点只读取文件.
+ * <p>
+ * 任何可以读取文件的人都可以解密恢复的会话, 因此文件必须只有运行服务器的用户可以读取.
+ * 轮换时写入的文件只授予所有者读写的权限.
+ */
+public class FileSessionTicketKeySource {
+
+    private static final Log log = LogFactory.getLog(FileSessionTicketKeySource.class);
+    private static final StringManager sm = StringManager.getManager(FileSessionTicketKeySource.class);
+
+    /**
+     * 检查文件是否被修改的最小间隔, 毫秒.
+     */
+    public static final long CHECK_INTERVAL = 5000;
+
+    private static final ConcurrentMap<String,FileSessionTicketKeySource> sources =
+            new ConcurrentHashMap<>();
+
+
+    /**
+     * @param file             密钥文件
+     * @param rotationInterval 轮换间隔, 秒. 小于 1 表示不轮换, 只读取文件
+     * @param keyCount         轮换时保留的密钥的最大数量
+     * @return 文件的来源, 如果不存在则创建
+     */
+    public static FileSessionTicketKeySource getInstance(File file, int rotationInterval,
+            int keyCount) {
+        String name = file.getAbsolutePath();
+        FileSessionTicketKeySource result = sources.get(name);
+        if (result == null) {
+            result = new FileSessionTicketKeySource(file, rotationInterval, keyCount);
+            FileSessionTicketKeySource existing = sources.putIfAbsent(name, result);
+            if (existing != null) {
+                result = existing;
+            } else {
+                result.check(true);
+            }
+        }
+        return result;
+    }
+
+
+    private final File file;
+    private final long rotationInterval;
+    private final int keyCount;
+    private final SessionTicketKeyRing keyRing;
+    private volatile long nextCheck = 0;
+    private long lastModified = -1;
+
+
+    private FileSessionTicketKeySource(File file, int rotationInterval, int keyCount) {
+        this.file = file;
+        this.rotationInterval = rotationInterval * 1000L;
+        this.keyCount = keyCount;
+        this.keyRing = SessionTicketKeyRing.getKeyRing(file.getAbsolutePath());
+    }
+
+
+    public SessionTicketKeyRing getKeyRing() {
+        return keyRing;
+    }
+
+
+    /**
+     * 如果距离上次检查已经超过 {@link #CHECK_INTERVAL}, 重新加载修改的文件, 并在需要时轮换密钥.
+     */
+    public void check() {
+        if (System.currentTimeMillis() < nextCheck) {
+            return;
+        }
+        check(false);
+    }
+
+
+    private synchronized void check(boolean force) {
+        long now = System.currentTimeMillis();
+        if (!force && now < nextCheck) {
+            return;
+        }
+        nextCheck = now + CHECK_INTERVAL;
+
+        try {
+            long modified = file.lastModified();
+            if (rotationInterval > 0 && (modified == 0 || now - modified >= rotationInterval)) {
+                byte[][] keys = SessionTicketKeyRing.rotate(
+                        modified == 0 ? null : read(), keyCount);
+                write(keys);
+                modified = file.lastModified();
+                if (log.isDebugEnabled()) {
+                    log.debug(sm.getString("fileSessionTicketKeySource.rotated",
+                            file.getAbsolutePath()));
+                }
+            }
+            if (modified == 0) {
+                if (lastModified != 0) {
+                    log.warn(sm.getString("fileSessionTicketKeySource.missing",
+                            file.getAbsolutePath()));
+                }
+                lastModified = 0;
+                return;
+            }
+            if (modified != lastModified) {
+                keyRing.setKeys(read(), modified);
+                lastModified = modified;
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn(sm.getString("fileSessionTicketKeySource.error", file.getAbsolutePath()), e);
+        }
+    }
+
+
+    private byte[][] read() throws IOException {
+        List<byte[]> keys = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.US_ASCII))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.charAt(0) == '#') {
+                    continue;
+                }
+                keys.add(Base64.decodeBase64(line));
+            }
+        }
+        return keys.toArray(new byte[keys.size()][]);
+    }
+
+
+    private void write(byte[][] keys) throws IOException {
+        File tmp = new File(file.getAbsolutePath() + ".tmp");
+        // 在写入密钥之前创建文件, 移动保留文件的权限
+        createPrivateFile(tmp);
+        try {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp),
+                    StandardCharsets.US_ASCII)) {
+                for (byte[] key : keys) {
+                    writer.write(Base64.encodeBase64String(key));
+                    writer.write('\n');
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp.toPath());
+            throw e;
+        }
+    }
+
+
+    /*
+     * 创建一个只有所有者可以读写的空文件. 之前存在的文件 (可能有其它的权限或所有者) 被删除.
+     */
+    private static void createPrivateFile(File f) throws IOException {
+        Path path = f.toPath();
+        Files.deleteIfExists(path);
+        if (path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(
+                    PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(path);
+            if (!f.setReadable(false, false) || !f.setReadable(true, true) ||
+                    !f.setWritable(false, false) || !f.setWritable(true, true)) {
+                log.warn(sm.getString("fileSessionTicketKeySource.permissions",
+                        f.getAbsolutePath()));
+            }
+        }
+    }
+}
@@ -387,7 +387,7 @@ public class Nio2Endpoint extends AbstractJsseEndpoint<Nio2Channel> {
             while (running) {
 
                 // 如果端点暂停，则循环
-                while (paused && running) {
+                while ((paused || isAcceptThrottled()) && running) {
                     state = AcceptorState.PAUSED;
                     try {
                         Thread.sleep(50);
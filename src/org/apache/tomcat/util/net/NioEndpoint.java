@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketAddress;
 import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
 import java.nio.channels.CancelledKeyException;
@@ -17,13 +18,19 @@ import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.WritableByteChannel;
+import java.nio.channels.spi.SelectorProvider;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLSession;
 
@@ -31,10 +38,15 @@ import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.ExceptionUtils;
 import org.apache.tomcat.util.IntrospectionUtils;
-import org.apache.tomcat.util.collections.SynchronizedQueue;
+import org.apache.tomcat.util.collections.ConcurrentRingPool;
+import org.apache.tomcat.util.collections.MpscLinkedQueue;
 import org.apache.tomcat.util.collections.SynchronizedStack;
+import org.apache.tomcat.util.compat.JreCompat;
+import org.apache.tomcat.util.modeler.Registry;
+import org.apache.tomcat.util.net.AbstractEndpoint.Acceptor.AcceptorState;
 import org.apache.tomcat.util.net.AbstractEndpoint.Handler.SocketState;
 import org.apache.tomcat.util.net.jsse.JSSESupport;
+import org.apache.tomcat.util.threads.TaskThreadFactory;
 
 /**
  * NIO定制的线程池, 提供以下服务:
@@ -66,21 +78,31 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
      */
     private ServerSocketChannel serverSock = null;
 
+    /**
+     * 使用 SO_REUSEPORT 绑定的监听套接字分片. 未启用分片模式时为 <code>null</code>.
+     */
+    private ReusePortShard[] shards = null;
+
     /**
      *
      */
     private volatile CountDownLatch stopLatch = null;
 
     /**
-     * 轮询器事件的缓存
+     * 轮询器事件的缓存. 事件由工作线程获取并由轮询线程归还, 因此使用无锁池.
      */
-    private SynchronizedStack<PollerEvent> eventCache;
+    private ConcurrentRingPool<PollerEvent> eventCache;
 
     /**
      * Bytebuffer缓存, 每个通道都有一组缓冲区 (two, 除了SSL持有四个)
      */
     private SynchronizedStack<NioChannel> nioChannels;
 
+    /**
+     * 直接缓冲区的 slab 分配器, 每个轮询器一个 Arena. 如果未使用直接缓冲区或 slab 分配器被禁用, 则为 null.
+     */
+    private volatile SlabBufferPool slabBufferPool;
+
 
     // ------------------------------------------------------------- Properties
 
@@ -119,6 +141,49 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
     public void setPollerThreadCount(int pollerThreadCount) { this.pollerThreadCount = pollerThreadCount; }
     public int getPollerThreadCount() { return pollerThreadCount; }
 
+    /**
+     * 使用 SO_REUSEPORT 绑定到同一地址的监听套接字数量.
+     * 大于1时, 每个监听套接字都有自己的接受器和轮询器, 由内核在它们之间分配新连接, 不再共享接受器到轮询器的交接.
+     * 此时接受器线程数和轮询线程数都等于分片数. 默认 0 (禁用).
+     */
+    private int reusePortShardCount = 0;
+    public void setReusePortShardCount(int reusePortShardCount) { this.reusePortShardCount = reusePortShardCount; }
+    public int getReusePortShardCount() { return reusePortShardCount; }
+
+    /**
+     * 用于创建监听套接字和轮询器选择器的 {@link SelectorProvider} 的完全限定类名.
+     * 这允许使用替代的多路复用实现 (例如基于原生 epoll 边缘触发或 io_uring 的提供者),
+     * 而无需更改端点, 套接字包装器或处理器. <code>null</code> (默认) 表示使用JVM默认的提供者.
+     */
+    private String selectorProvider = null;
+    public void setSelectorProvider(String selectorProvider) { this.selectorProvider = selectorProvider; }
+    public String getSelectorProvider() { return selectorProvider; }
+
+    /**
+     * 端点绑定时解析的提供者.
+     */
+    private SelectorProvider provider = SelectorProvider.provider();
+
+    /**
+     * 执行 TLS 握手的委托任务 (例如 RSA 和 ECDHE 运算) 的线程数. 大于 0 时, 委托任务在单独的有界线程池中执行,
+     * 完成后通过轮询器恢复握手, 因此在重连风暴期间处理线程可以继续服务已建立的连接. 默认 0 (在处理线程中执行).
+     */
+    private int handshakeThreads = 0;
+    public void setHandshakeThreads(int handshakeThreads) { this.handshakeThreads = handshakeThreads; }
+    public int getHandshakeThreads() { return handshakeThreads; }
+
+    /**
+     * 握手线程池等待执行的握手的最大数量. 队列已满时, 委托任务在处理线程中执行.
+     */
+    private int maxHandshakeQueueSize = 1024;
+    public void setMaxHandshakeQueueSize(int maxHandshakeQueueSize) { this.maxHandshakeQueueSize = maxHandshakeQueueSize; }
+    public int getMaxHandshakeQueueSize() { return maxHandshakeQueueSize; }
+
+    private volatile ThreadPoolExecutor handshakeExecutor = null;
+    private final AtomicLong handshakeTaskCount = new AtomicLong(0);
+    private final AtomicLong handshakeTaskTime = new AtomicLong(0);
+    private final AtomicLong handshakeTaskRejectedCount = new AtomicLong(0);
+
     private long selectorTimeout = 1000;
     public void setSelectorTimeout(long timeout){ this.selectorTimeout = timeout;}
     public long getSelectorTimeout(){ return this.selectorTimeout; }
@@ -175,6 +240,122 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
     }
 
 
+    /**
+     * @return slab 分配器每个 Arena 中每个大小级别的使用情况. 如果未使用 slab 分配器, 则为空数组
+     */
+    public String[] getSlabBufferPoolUsage() {
+        SlabBufferPool pool = slabBufferPool;
+        return pool == null ? new String[0] : pool.getUsage();
+    }
+
+
+    /**
+     * @return slab 分配器已分配的直接内存字节数
+     */
+    public long getSlabBufferAllocatedBytes() {
+        SlabBufferPool pool = slabBufferPool;
+        return pool == null ? 0 : pool.getAllocatedBytes();
+    }
+
+
+    /**
+     * @return 从 slab 分配器分配且尚未归还的缓冲区数量
+     */
+    public long getSlabBuffersInUse() {
+        SlabBufferPool pool = slabBufferPool;
+        return pool == null ? 0 : pool.getInUseCount();
+    }
+
+
+    /**
+     * @return 在握手线程池中等待执行的握手的数量
+     */
+    public int getHandshakeQueueDepth() {
+        ThreadPoolExecutor executor = handshakeExecutor;
+        return executor == null ? 0 : executor.getQueue().size();
+    }
+
+
+    /**
+     * @return 在握手线程池中正在执行委托任务的握手的数量
+     */
+    public int getActiveHandshakeTaskCount() {
+        ThreadPoolExecutor executor = handshakeExecutor;
+        return executor == null ? 0 : executor.getActiveCount();
+    }
+
+
+    /**
+     * @return 在握手线程池中执行的委托任务的批数
+     */
+    public long getHandshakeTaskCount() {
+        return handshakeTaskCount.get();
+    }
+
+
+    /**
+     * @return 在握手线程池中执行委托任务的总时间, 毫秒
+     */
+    public long getHandshakeTaskTime() {
+        return handshakeTaskTime.get();
+    }
+
+
+    /**
+     * @return 由于队列已满而在处理线程中执行委托任务的次数
+     */
+    public long getHandshakeTaskRejectedCount() {
+        return handshakeTaskRejectedCount.get();
+    }
+
+
+    boolean isHandshakeExecutorEnabled() {
+        return handshakeExecutor != null;
+    }
+
+
+    /**
+     * 将通道的握手委托任务提交到握手线程池. 任务完成后, 注册写兴趣以便轮询器恢复握手.
+     * 使用写兴趣, 因为套接字几乎总是可写的, 并且 handshake() 会处理网络输入缓冲区中已有的数据.
+     *
+     * @param channel 需要执行委托任务的通道
+     *
+     * @return <code>true</code> 如果任务已提交, <code>false</code> 如果未配置握手线程池或队列已满
+     */
+    boolean executeHandshakeTasks(final SecureNioChannel channel) {
+        ThreadPoolExecutor executor = handshakeExecutor;
+        if (executor == null) {
+            return false;
+        }
+        final NioSocketWrapper socketWrapper = (NioSocketWrapper) channel.getAttachment();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long start = System.currentTimeMillis();
+                    try {
+                        channel.runDelegatedTasks();
+                    } catch (Throwable t) {
+                        ExceptionUtils.handleThrowable(t);
+                        // 握手的下一步将失败并关闭套接字
+                        if (log.isDebugEnabled()) {
+                            log.debug(sm.getString("endpoint.nio.handshakeTaskFail"), t);
+                        }
+                    } finally {
+                        handshakeTaskCount.incrementAndGet();
+                        handshakeTaskTime.addAndGet(System.currentTimeMillis() - start);
+                        socketWrapper.registerWriteInterest();
+                    }
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            handshakeTaskRejectedCount.incrementAndGet();
+            return false;
+        }
+    }
+
+
     // ----------------------------------------------- Public Lifecycle Methods
 
     /**
@@ -183,13 +364,27 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
     @Override
     public void bind() throws Exception {
 
-        serverSock = ServerSocketChannel.open();
-        socketProperties.setProperties(serverSock.socket());
+        if (selectorProvider == null) {
+            provider = SelectorProvider.provider();
+        } else {
+            provider = (SelectorProvider) Class.forName(selectorProvider).getConstructor().newInstance();
+        }
+        selectorPool.setSelectorProvider(provider);
+
         InetSocketAddress addr = (getAddress()!=null?new InetSocketAddress(getAddress(),getPort()):new InetSocketAddress(getPort()));
-        serverSock.socket().bind(addr,getAcceptCount());
-        serverSock.configureBlocking(true); //mimic APR behavior
+        if (reusePortShardCount > 1) {
+            bindShards(addr);
+        }
+        if (shards == null) {
+            serverSock = openServerSocket(addr, false);
+        }
 
         // 初始化接受器，轮询器的线程计数默认值
+        if (shards != null) {
+            // 每个分片正好一个接受器和一个轮询器
+            acceptorThreadCount = shards.length;
+            pollerThreadCount = shards.length;
+        }
         if (acceptorThreadCount == 0) {
             // FIXME: 多个接受线程似乎没有那么好用
             acceptorThreadCount = 1;
@@ -206,6 +401,105 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
         selectorPool.open();
     }
 
+    private ServerSocketChannel openServerSocket(SocketAddress addr, boolean reusePort)
+            throws IOException {
+        ServerSocketChannel ssc = provider.openServerSocketChannel();
+        try {
+            if (reusePort) {
+                JreCompat.getInstance().setReusePort(ssc);
+            }
+            socketProperties.setProperties(ssc.socket());
+            ssc.socket().bind(addr,getAcceptCount());
+            ssc.configureBlocking(true); //mimic APR behavior
+        } catch (IOException | RuntimeException e) {
+            ssc.close();
+            throw e;
+        }
+        return ssc;
+    }
+
+
+    /**
+     * 使用 SO_REUSEPORT 将 {@link #getReusePortShardCount()} 个监听套接字绑定到给定地址.
+     * 如果运行时不支持 SO_REUSEPORT, 记录警告并保持 {@link #shards} 为 <code>null</code>, 以便回退到单个监听套接字.
+     */
+    private void bindShards(InetSocketAddress addr) throws IOException {
+        ReusePortShard[] result = new ReusePortShard[reusePortShardCount];
+        SocketAddress shardAddr = addr;
+        try {
+            for (int i = 0; i < result.length; i++) {
+                ServerSocketChannel ssc = openServerSocket(shardAddr, true);
+                result[i] = new ReusePortShard(i, ssc);
+                if (i == 0) {
+                    // 端口可能是 0 (临时端口), 其余分片必须绑定到第一个分片实际使用的端口
+                    shardAddr = ssc.getLocalAddress();
+                }
+            }
+        } catch (UnsupportedOperationException e) {
+            log.warn(sm.getString("endpoint.nio.reusePortUnsupported", getName()), e);
+            closeShards(result);
+            return;
+        } catch (IOException e) {
+            closeShards(result);
+            throw e;
+        }
+        shards = result;
+        serverSock = shards[0].getServerSocket();
+        registerShards();
+    }
+
+
+    private void closeShards(ReusePortShard[] toClose) {
+        for (ReusePortShard shard : toClose) {
+            if (shard == null) {
+                continue;
+            }
+            try {
+                shard.getServerSocket().close();
+            } catch (IOException ioe) {
+                if (log.isDebugEnabled()) {
+                    log.debug(sm.getString("endpoint.err.close"), ioe);
+                }
+            }
+        }
+    }
+
+
+    private void registerShards() {
+        if (getDomain() == null) {
+            return;
+        }
+        for (ReusePortShard shard : shards) {
+            ObjectName shardOname = null;
+            try {
+                shardOname = new ObjectName(getDomain() + ":type=ReusePortShard,ThreadPool=" +
+                        getName() + ",name=" + shard.getIndex());
+                Registry.getRegistry(null, null).registerComponent(shard, shardOname, null);
+                shard.setObjectName(shardOname);
+            } catch (MalformedObjectNameException e) {
+                log.warn(sm.getString("endpoint.nio.invalidJmxNameShard",
+                        Integer.valueOf(shard.getIndex())), e);
+            } catch (Exception e) {
+                log.warn(sm.getString("endpoint.jmxRegistrationFailed", shardOname), e);
+            }
+        }
+    }
+
+
+    /**
+     * 返回 SO_REUSEPORT 分片.
+     *
+     * @return 分片; 如果未启用分片模式, 则为空数组
+     */
+    public ReusePortShard[] getReusePortShards() {
+        ReusePortShard[] result = shards;
+        if (result == null) {
+            return new ReusePortShard[0];
+        }
+        return result.clone();
+    }
+
+
     /**
      * 启动NIO端点，创建接受器，轮询器线程.
      */
@@ -218,15 +512,26 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
 
             processorCache = new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE,
                     socketProperties.getProcessorCache());
-            eventCache = new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE,
-                            socketProperties.getEventCache());
+            eventCache = new ConcurrentRingPool<>(socketProperties.getEventCache());
             nioChannels = new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE,
                     socketProperties.getBufferPool());
+            if (socketProperties.getDirectBufferSlabSize() > 0 &&
+                    (socketProperties.getDirectBuffer() || socketProperties.getDirectSslBuffer())) {
+                slabBufferPool = new SlabBufferPool(getPollerThreadCount(),
+                        socketProperties.getDirectBufferSlabSize(), socketProperties.getBufferPool());
+            }
 
             // 创建工作者集合
             if ( getExecutor() == null ) {
                 createExecutor();
             }
+            if (isSSLEnabled() && handshakeThreads > 0) {
+                TaskThreadFactory tf = new TaskThreadFactory(getName() + "-handshake-",
+                        getDaemon(), getThreadPriority());
+                handshakeExecutor = new ThreadPoolExecutor(handshakeThreads, handshakeThreads,
+                        60, TimeUnit.SECONDS,
+                        new ArrayBlockingQueue<Runnable>(Math.max(1, maxHandshakeQueueSize)), tf);
+            }
 
             initializeConnectionLatch();
 
@@ -234,6 +539,12 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
             pollers = new Poller[getPollerThreadCount()];
             for (int i=0; i<pollers.length; i++) {
                 pollers[i] = new Poller();
+                if (slabBufferPool != null) {
+                    pollers[i].arena = slabBufferPool.getArena(i);
+                }
+                if (shards != null) {
+                    shards[i].setPoller(pollers[i]);
+                }
                 Thread pollerThread = new Thread(pollers[i], getName() + "-ClientPoller-"+i);
                 pollerThread.setPriority(threadPriority);
                 pollerThread.setDaemon(true);
@@ -270,7 +581,18 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
                 log.warn(sm.getString("endpoint.nio.stopLatchAwaitInterrupted"), e);
             }
             shutdownExecutor();
+            if (handshakeExecutor != null) {
+                handshakeExecutor.shutdownNow();
+                handshakeExecutor = null;
+            }
             eventCache.clear();
+            if (slabBufferPool != null) {
+                NioChannel channel;
+                while ((channel = nioChannels.pop()) != null) {
+                    channel.free();
+                }
+                slabBufferPool.clear();
+            }
             nioChannels.clear();
             processorCache.clear();
         }
@@ -289,8 +611,19 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
             stop();
         }
         // 关闭服务器套接字
-        serverSock.socket().close();
-        serverSock.close();
+        if (shards != null) {
+            Registry registry = Registry.getRegistry(null, null);
+            for (ReusePortShard shard : shards) {
+                if (shard.getObjectName() != null) {
+                    registry.unregisterComponent(shard.getObjectName());
+                }
+            }
+            closeShards(shards);
+            shards = null;
+        } else {
+            serverSock.socket().close();
+            serverSock.close();
+        }
         serverSock = null;
         destroySsl();
         super.unbind();
@@ -322,7 +655,42 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
 
     @Override
     protected AbstractEndpoint.Acceptor createAcceptor() {
-        return new Acceptor();
+        return new Acceptor(null);
+    }
+
+
+    @Override
+    protected AbstractEndpoint.Acceptor createAcceptor(int index) {
+        if (shards != null) {
+            return new Acceptor(shards[index]);
+        }
+        return createAcceptor();
+    }
+
+
+    /**
+     * 内核在共享 SO_REUSEPORT 端口的监听套接字之间分配连接, 因此一轮虚假连接不一定能解锁所有分片的接受器.
+     * 在分片模式下重复解锁, 直到没有接受器仍在运行.
+     */
+    @Override
+    protected void unlockAccept() {
+        super.unlockAccept();
+        if (shards == null) {
+            return;
+        }
+        for (int i = 1; i < shards.length; i++) {
+            boolean unlockRequired = false;
+            for (AbstractEndpoint.Acceptor acceptor : acceptors) {
+                if (acceptor.getState() == AcceptorState.RUNNING) {
+                    unlockRequired = true;
+                    break;
+                }
+            }
+            if (!unlockRequired) {
+                return;
+            }
+            super.unlockAccept();
+        }
     }
 
 
@@ -344,6 +712,21 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
      * @return <code>true</code>如果套接字配置正确，处理可能会继续; <code>false</code>如果套接字需要立即关闭
      */
     protected boolean setSocketOptions(SocketChannel socket) {
+        return setSocketOptions(socket, getPoller0());
+    }
+
+
+    /**
+     * 处理指定的连接, 并将其注册到给定的轮询器.
+     *
+     * @param socket 套接字通道
+     * @param poller 要注册套接字的轮询器
+     *
+     * @return <code>true</code>如果套接字配置正确，处理可能会继续; <code>false</code>如果套接字需要立即关闭
+     */
+    protected boolean setSocketOptions(SocketChannel socket, Poller poller) {
+        NioChannel channel = null;
+        SocketBufferHandler bufhandler = null;
         // 处理连接
         try {
             //禁用阻塞, APR 风格, 要去轮询它
@@ -351,12 +734,12 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
             Socket sock = socket.socket();
             socketProperties.setProperties(sock);
 
-            NioChannel channel = nioChannels.pop();
+            channel = nioChannels.pop();
             if (channel == null) {
-                SocketBufferHandler bufhandler = new SocketBufferHandler(
+                bufhandler = new SocketBufferHandler(
                         socketProperties.getAppReadBufSize(),
                         socketProperties.getAppWriteBufSize(),
-                        socketProperties.getDirectBuffer());
+                        socketProperties.getDirectBuffer(), poller.arena);
                 if (isSSLEnabled()) {
                     channel = new SecureNioChannel(socket, bufhandler, selectorPool, this);
                 } else {
@@ -366,7 +749,7 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
                 channel.setIOChannel(socket);
                 channel.reset();
             }
-            getPoller0().register(channel);
+            poller.register(channel);
         } catch (Throwable t) {
             ExceptionUtils.handleThrowable(t);
             try {
@@ -374,6 +757,16 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
             } catch (Throwable tt) {
                 ExceptionUtils.handleThrowable(tt);
             }
+            // 通道没有注册, 不会被关闭. 释放它的缓冲区, 与 close() 相同
+            try {
+                if (channel != null) {
+                    channel.free();
+                } else if (bufhandler != null) {
+                    bufhandler.free();
+                }
+            } catch (Throwable tt) {
+                ExceptionUtils.handleThrowable(tt);
+            }
             // Tell to close the socket
             return false;
         }
@@ -399,6 +792,15 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
      */
     protected class Acceptor extends AbstractEndpoint.Acceptor {
 
+        /**
+         * 此接受器服务的分片; 未启用分片模式时为 <code>null</code>.
+         */
+        private final ReusePortShard shard;
+
+        public Acceptor(ReusePortShard shard) {
+            this.shard = shard;
+        }
+
         @Override
         public void run() {
 
@@ -408,7 +810,7 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
             while (running) {
 
                 // 如果端点暂停，则循环
-                while (paused && running) {
+                while ((paused || isAcceptThrottled()) && running) {
                     state = AcceptorState.PAUSED;
                     try {
                         Thread.sleep(50);
@@ -429,7 +831,11 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
                     SocketChannel socket = null;
                     try {
                         // 从服务器套接字接受下一个传入连接
-                        socket = serverSock.accept();
+                        if (shard == null) {
+                            socket = serverSock.accept();
+                        } else {
+                            socket = shard.getServerSocket().accept();
+                        }
                     } catch (IOException ioe) {
                         // 没有得到套接字
                         countDownConnection();
@@ -448,7 +854,14 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
                     // 配置套接字
                     if (running && !paused) {
                         // 如果成功，setSocketOptions()将把套接字交给适当的处理器
-                        if (!setSocketOptions(socket)) {
+                        boolean success;
+                        if (shard == null) {
+                            success = setSocketOptions(socket);
+                        } else {
+                            shard.acceptCount.incrementAndGet();
+                            success = setSocketOptions(socket, shard.getPoller());
+                        }
+                        if (!success) {
                             closeSocket(socket);
                         }
                     } else {
@@ -500,6 +913,8 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
                     if (!nioChannels.push(socket)) {
                         socket.free();
                     }
+                } else if (slabBufferPool != null) {
+                    socket.free();
                 }
             }
         } catch (Exception x) {
@@ -513,7 +928,7 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
      *
      * 用于轮询器事件的可缓存对象, 以避免GC
      */
-    public static class PollerEvent implements Runnable {
+    public static class PollerEvent extends MpscLinkedQueue.Node implements Runnable {
 
         private NioChannel socket;
         private int interestOps;
@@ -581,22 +996,41 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
     public class Poller implements Runnable {
 
         private Selector selector;
-        private final SynchronizedQueue<PollerEvent> events =
-                new SynchronizedQueue<>();
+        /*
+         * 任意线程都可以添加事件, 但只有轮询线程处理它们
+         */
+        private final MpscLinkedQueue<PollerEvent> events =
+                new MpscLinkedQueue<>();
 
         private volatile boolean close = false;
         private long nextExpiration = 0;//optimize expiration handling
 
+        /*
+         * -1 表示轮询线程即将或正在阻塞于 select(). 只有将计数器从 -1 增加到 0 的 addEvent() 调用才会唤醒选择器,
+         * 因此在轮询线程醒来之前添加的其它事件不会再产生唤醒的系统调用.
+         */
         private AtomicLong wakeupCounter = new AtomicLong(0);
 
         private volatile int keyCount = 0;
 
+        /**
+         * 为此轮询器的新连接分配直接缓冲区的 Arena.
+         */
+        private SlabBufferPool.Arena arena = null;
+
+        /**
+         * 已处理的轮询器事件数. 只由轮询线程写入.
+         */
+        private volatile long eventCount = 0;
+
         public Poller() throws IOException {
-            this.selector = Selector.open();
+            this.selector = provider.openSelector();
         }
 
         public int getKeyCount() { return keyCount; }
 
+        public long getEventCount() { return eventCount; }
+
         public Selector getSelector() { return selector;}
 
         /**
@@ -641,8 +1075,9 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
             boolean result = false;
 
             PollerEvent pe = null;
-            for (int i = 0, size = events.size(); i < size && (pe = events.poll()) != null; i++ ) {
+            while ((pe = events.poll()) != null) {
                 result = true;
+                eventCount++;
                 try {
                     pe.run();
                     pe.reset();
@@ -1400,6 +1835,7 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
                 } else if (handshake == SelectionKey.OP_WRITE){
                     socketWrapper.registerWriteInterest();
                 }
+                // SecureNioChannel.HANDSHAKE_TASKS_PENDING: 握手线程池完成委托任务后注册兴趣
             } catch (CancelledKeyException cx) {
                 socket.getPoller().cancelledKey(key);
             } catch (VirtualMachineError vme) {
@@ -1418,6 +1854,61 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
         }
     }
 
+    // -------------------------------------------- ReusePortShard Inner Class
+
+    /**
+     * 使用 SO_REUSEPORT 绑定的单个监听套接字, 及其配对的接受器和轮询器的统计信息.
+     * 每个分片都注册为一个 MBean.
+     */
+    public static class ReusePortShard {
+
+        private final int index;
+        private final ServerSocketChannel serverSocket;
+        private volatile Poller poller = null;
+        private volatile ObjectName oname = null;
+
+        private final AtomicLong acceptCount = new AtomicLong(0);
+
+        public ReusePortShard(int index, ServerSocketChannel serverSocket) {
+            this.index = index;
+            this.serverSocket = serverSocket;
+        }
+
+        public int getIndex() { return index; }
+
+        protected ServerSocketChannel getServerSocket() { return serverSocket; }
+
+        protected Poller getPoller() { return poller; }
+        protected void setPoller(Poller poller) { this.poller = poller; }
+
+        protected ObjectName getObjectName() { return oname; }
+        protected void setObjectName(ObjectName oname) { this.oname = oname; }
+
+        /**
+         * @return 此分片的接受器已接受并交给轮询器的连接数
+         */
+        public long getAcceptCount() {
+            return acceptCount.get();
+        }
+
+        /**
+         * @return 此分片的轮询器在最近一次选择中返回的密钥数
+         */
+        public int getKeyCount() {
+            Poller poller = this.poller;
+            return poller == null ? 0 : poller.getKeyCount();
+        }
+
+        /**
+         * @return 此分片的轮询器已处理的轮询器事件数
+         */
+        public long getPollerEventCount() {
+            Poller poller = this.poller;
+            return poller == null ? 0 : poller.getEventCount();
+        }
+    }
+
+
     // ----------------------------------------------- SendfileData Inner Class
     public static class SendfileData extends SendfileDataBase {
 
@@ -6,6 +6,7 @@ import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.nio.channels.spi.SelectorProvider;
 import java.util.NoSuchElementException;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -39,11 +40,23 @@ public class NioSelectorPool {
     protected ConcurrentLinkedQueue<Selector> selectors =
             new ConcurrentLinkedQueue<>();
 
+    /**
+     * 用于打开选择器的提供者. 必须与创建套接字通道的提供者相同. <code>null</code> 表示使用JVM默认的提供者.
+     */
+    protected SelectorProvider selectorProvider = null;
+
+    protected Selector openSelector() throws IOException {
+        if (selectorProvider == null) {
+            return Selector.open();
+        }
+        return selectorProvider.openSelector();
+    }
+
     protected Selector getSharedSelector() throws IOException {
         if (SHARED && SHARED_SELECTOR == null) {
-            synchronized ( NioSelectorPool.class ) {
+            synchronized ( this ) {
                 if ( SHARED_SELECTOR == null )  {
-                    SHARED_SELECTOR = Selector.open();
+                    SHARED_SELECTOR = openSelector();
                     log.info("Using a shared selector for servlet write/read");
                 }
             }
@@ -63,13 +76,13 @@ public class NioSelectorPool {
         try {
             s = selectors.size()>0?selectors.poll():null;
             if (s == null) {
-                s = Selector.open();
+                s = openSelector();
             }
             else spare.decrementAndGet();
 
         }catch (NoSuchElementException x ) {
             try {
-                s = Selector.open();
+                s = openSelector();
             } catch (IOException iox) {
             }
         } finally {
@@ -107,6 +120,16 @@ public class NioSelectorPool {
 
     public void open() throws IOException {
         enabled = true;
+        if (SHARED) {
+            synchronized (this) {
+                Selector s = SHARED_SELECTOR;
+                if (s != null && s.provider() != getEffectiveProvider()) {
+                    // 在配置提供者之前打开的, 不能与端点的通道一起使用
+                    SHARED_SELECTOR = null;
+                    s.close();
+                }
+            }
+        }
         getSharedSelector();
         if (SHARED) {
             blockingSelector = new NioBlockingSelector();
@@ -259,6 +282,18 @@ public class NioSelectorPool {
         return read;
     }
 
+    public void setSelectorProvider(SelectorProvider selectorProvider) {
+        this.selectorProvider = selectorProvider;
+    }
+
+    private SelectorProvider getEffectiveProvider() {
+        return selectorProvider == null ? SelectorProvider.provider() : selectorProvider;
+    }
+
+    public SelectorProvider getSelectorProvider() {
+        return selectorProvider;
+    }
+
     public void setMaxSelectors(int maxSelectors) {
         this.maxSelectors = maxSelectors;
     }
@@ -11,6 +11,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.ObjectName;
 import javax.net.ssl.KeyManagerFactory;
@@ -100,6 +101,14 @@ public class SSLHostConfig implements Serializable {
     private boolean disableSessionTickets = false;
     private boolean insecureRenegotiation = false;
     private OpenSSLConf openSslConf = null;
+    private String sessionTicketKeyFile = null;
+    private int sessionTicketKeyRotationInterval = -1;
+    private int sessionTicketKeyCount = 3;
+    private String sessionTicketKeyRingName = null;
+    private transient FileSessionTicketKeySource sessionTicketKeySource = null;
+    // Statistics
+    private final AtomicLong fullHandshakeCount = new AtomicLong();
+    private final AtomicLong resumedHandshakeCount = new AtomicLong();
 
     public SSLHostConfig() {
         // 设置定义字段时无法（轻松）设置的默认值.
@@ -797,6 +806,133 @@ public class SSLHostConfig implements Serializable {
     }
 
 
+    /**
+     * 从文件中读取会话票证密钥, 以便集群中的所有节点使用相同的密钥 (参见 {@link FileSessionTicketKeySource}).
+     *
+     * @param sessionTicketKeyFile 密钥文件的路径, 相对路径相对于 CATALINA_BASE
+     */
+    public void setSessionTicketKeyFile(String sessionTicketKeyFile) {
+        setProperty("sessionTicketKeyFile", Type.OPENSSL);
+        this.sessionTicketKeyFile = sessionTicketKeyFile;
+    }
+
+
+    public String getSessionTicketKeyFile() {
+        return sessionTicketKeyFile;
+    }
+
+
+    /**
+     * @param sessionTicketKeyRotationInterval 这个节点生成新的密钥并重写密钥文件的间隔, 秒.
+     *                                         小于 1 表示只读取文件. 只应该在一个节点上启用.
+     */
+    public void setSessionTicketKeyRotationInterval(int sessionTicketKeyRotationInterval) {
+        setProperty("sessionTicketKeyRotationInterval", Type.OPENSSL);
+        this.sessionTicketKeyRotationInterval = sessionTicketKeyRotationInterval;
+    }
+
+
+    public int getSessionTicketKeyRotationInterval() {
+        return sessionTicketKeyRotationInterval;
+    }
+
+
+    /**
+     * @param sessionTicketKeyCount 轮换时密钥文件中保留的密钥的数量, 包括当前的加密密钥.
+     *        只有当前的加密密钥被设置到 SSL 上下文
+     */
+    public void setSessionTicketKeyCount(int sessionTicketKeyCount) {
+        setProperty("sessionTicketKeyCount", Type.OPENSSL);
+        this.sessionTicketKeyCount = sessionTicketKeyCount;
+    }
+
+
+    public int getSessionTicketKeyCount() {
+        return sessionTicketKeyCount;
+    }
+
+
+    /**
+     * 使用由其它组件 (例如集群监听器) 设置的命名的 {@link SessionTicketKeyRing} 中的会话票证密钥.
+     * 如果设置了 sessionTicketKeyFile, 这个属性被忽略.
+     *
+     * @param sessionTicketKeyRingName 密钥环的名称
+     */
+    public void setSessionTicketKeyRingName(String sessionTicketKeyRingName) {
+        setProperty("sessionTicketKeyRingName", Type.OPENSSL);
+        this.sessionTicketKeyRingName = sessionTicketKeyRingName;
+    }
+
+
+    public String getSessionTicketKeyRingName() {
+        return sessionTicketKeyRingName;
+    }
+
+
+    /**
+     * @return 这个主机使用的共享的会话票证密钥, 如果使用 SSL 上下文自己的随机密钥, 则为 <code>null</code>
+     */
+    public SessionTicketKeyRing getSessionTicketKeyRing() {
+        if (sessionTicketKeyFile != null) {
+            FileSessionTicketKeySource source = sessionTicketKeySource;
+            if (source == null) {
+                source = FileSessionTicketKeySource.getInstance(
+                        new File(adjustRelativePath(sessionTicketKeyFile)),
+                        sessionTicketKeyRotationInterval, sessionTicketKeyCount);
+                sessionTicketKeySource = source;
+            }
+            return source.getKeyRing();
+        }
+        if (sessionTicketKeyRingName != null) {
+            return SessionTicketKeyRing.getKeyRing(sessionTicketKeyRingName);
+        }
+        return null;
+    }
+
+
+    /**
+     * 检查会话票证密钥文件是否需要重新加载或轮换. 由 endpoint 在创建新的 TLS 连接时调用.
+     */
+    public void checkSessionTicketKeys() {
+        FileSessionTicketKeySource source = sessionTicketKeySource;
+        if (source != null) {
+            source.check();
+        }
+    }
+
+
+    // ------------------------------------------------------------ Statistics
+
+    /**
+     * 记录一个已完成的初始握手. 由 NIO 和 NIO2 connector 调用, 适用于 JSSE 和 OpenSSL 实现.
+     *
+     * @param resumed <code>true</code> 如果恢复了之前的会话 (会话 ID 或票证)
+     */
+    public void handshakeCompleted(boolean resumed) {
+        if (resumed) {
+            resumedHandshakeCount.incrementAndGet();
+        } else {
+            fullHandshakeCount.incrementAndGet();
+        }
+    }
+
+
+    /**
+     * @return 建立了新的会话的握手的数量
+     */
+    public long getFullHandshakeCount() {
+        return fullHandshakeCount.get();
+    }
+
+
+    /**
+     * @return 恢复了之前的会话的握手的数量
+     */
+    public long getResumedHandshakeCount() {
+        return resumedHandshakeCount.get();
+    }
+
+
     // --------------------------------------------------------- Support methods
 
     public static String adjustRelativePath(String path) {
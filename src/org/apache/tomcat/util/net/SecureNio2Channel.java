@@ -47,6 +47,9 @@ public class SecureNio2Channel extends Nio2Channel  {
     protected boolean sniComplete = false;
 
     private volatile boolean handshakeComplete;
+    // 初始握手的 SNI 主机名和开始时间, 用于握手统计
+    private String sniHostName = null;
+    private long handshakeStart = 0;
     private volatile HandshakeStatus handshakeStatus; //gets set by handshake
 
     private volatile boolean unwrapBeforeRead = false;
@@ -113,6 +116,8 @@ public class SecureNio2Channel extends Nio2Channel  {
         sslEngine = null;
         sniComplete = false;
         handshakeComplete = false;
+        sniHostName = null;
+        handshakeStart = 0;
         closed = false;
         closing = false;
         netInBuffer.clear();
@@ -218,6 +223,10 @@ public class SecureNio2Channel extends Nio2Channel  {
                     handshakeComplete = !netOutBuffer.hasRemaining();
                     //如果完成，则返回0; 否则仍然有数据要写
                     if (handshakeComplete) {
+                        if (handshakeStart > 0) {
+                            endpoint.handshakeCompleted(sniHostName, sslEngine, handshakeStart);
+                            handshakeStart = 0;
+                        }
                         return 0;
                     } else {
                         if (async) {
@@ -362,6 +371,8 @@ public class SecureNio2Channel extends Nio2Channel  {
 
         sslEngine = endpoint.createSSLEngine(hostName, clientRequestedCiphers,
                 clientRequestedApplicationProtocols);
+        sniHostName = hostName;
+        handshakeStart = System.currentTimeMillis();
 
         // 确保应用程序缓冲区（必须先前创建）足够大.
         getBufHandler().expand(sslEngine.getSession().getApplicationBufferSize());
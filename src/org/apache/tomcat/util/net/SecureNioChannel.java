@@ -32,6 +32,12 @@ public class SecureNioChannel extends NioChannel  {
     private static final Log log = LogFactory.getLog(SecureNioChannel.class);
     private static final StringManager sm = StringManager.getManager(SecureNioChannel.class);
 
+    /**
+     * {@link #handshake(boolean, boolean)} 的返回值, 表示委托任务已提交到握手线程池.
+     * 任务完成后, 握手线程池通过轮询器恢复套接字, 因此调用者不应该注册任何兴趣操作.
+     */
+    public static final int HANDSHAKE_TASKS_PENDING = 0x100;
+
     // 通过观察SSL引擎在各种情况下请求的内容来确定值
     private static final int DEFAULT_NET_BUFFER_SIZE = 16921;
 
@@ -43,6 +49,11 @@ public class SecureNioChannel extends NioChannel  {
     protected boolean sniComplete = false;
 
     protected boolean handshakeComplete = false;
+    // 初始握手的 SNI 主机名和开始时间, 用于握手统计
+    private String sniHostName = null;
+    private long handshakeStart = 0;
+    // 阻塞的重新握手不能在其它线程中执行委托任务
+    private boolean blockingHandshake = false;
     protected HandshakeStatus handshakeStatus; //gets set by handshake
 
     protected boolean closed = false;
@@ -51,12 +62,25 @@ public class SecureNioChannel extends NioChannel  {
     protected NioSelectorPool pool;
     private final NioEndpoint endpoint;
 
+    /*
+     * 如果不为 null, 网络缓冲区从此 Arena 分配并归还给它.
+     */
+    private final SlabBufferPool.Arena netBufferArena;
+
     public SecureNioChannel(SocketChannel channel, SocketBufferHandler bufHandler,
             NioSelectorPool pool, NioEndpoint endpoint) {
         super(channel, bufHandler);
 
         // 创建网络缓冲区 (这些包含加密数据).
         if (endpoint.getSocketProperties().getDirectSslBuffer()) {
+            netBufferArena = bufHandler.getArena();
+        } else {
+            netBufferArena = null;
+        }
+        if (netBufferArena != null) {
+            netInBuffer = netBufferArena.allocate(DEFAULT_NET_BUFFER_SIZE);
+            netOutBuffer = netBufferArena.allocate(DEFAULT_NET_BUFFER_SIZE);
+        } else if (endpoint.getSocketProperties().getDirectSslBuffer()) {
             netInBuffer = ByteBuffer.allocateDirect(DEFAULT_NET_BUFFER_SIZE);
             netOutBuffer = ByteBuffer.allocateDirect(DEFAULT_NET_BUFFER_SIZE);
         } else {
@@ -75,6 +99,9 @@ public class SecureNioChannel extends NioChannel  {
         sslEngine = null;
         sniComplete = false;
         handshakeComplete = false;
+        sniHostName = null;
+        handshakeStart = 0;
+        blockingHandshake = false;
         closed = false;
         closing = false;
         netInBuffer.clear();
@@ -83,12 +110,23 @@ public class SecureNioChannel extends NioChannel  {
     @Override
     public void free() {
         super.free();
-        if (endpoint.getSocketProperties().getDirectSslBuffer()) {
+        if (netBufferArena != null) {
+            netBufferArena.release(netInBuffer);
+            netBufferArena.release(netOutBuffer);
+        } else if (endpoint.getSocketProperties().getDirectSslBuffer()) {
             ByteBufferUtils.cleanDirectBuffer(netInBuffer);
             ByteBufferUtils.cleanDirectBuffer(netOutBuffer);
         }
     }
 
+    private ByteBuffer expandNetBuffer(ByteBuffer buffer, int newSize) {
+        if (netBufferArena != null) {
+            return netBufferArena.expand(buffer, newSize);
+        } else {
+            return ByteBufferUtils.expand(buffer, newSize);
+        }
+    }
+
 //===========================================================================================
 //                  NIO SSL METHODS
 //===========================================================================================
@@ -132,14 +170,16 @@ public class SecureNioChannel extends NioChannel  {
     }
 
     /**
-     * 执行SSL握手, 非阻塞, 但在同一个线程上执行NEED_TASK.
+     * 执行SSL握手, 非阻塞, 但在同一个线程上执行NEED_TASK, 除非 endpoint 配置了握手线程池.
      * 于是, 你永远不应该使用你的Acceptor线程调用这个方法, 因为会显着减慢你的系统.
-     * 如果此方法的返回值为正, 选择键应该是注册的interestOps，由返回值给出.
+     * 如果此方法的返回值为 {@link SelectionKey#OP_READ} 或 {@link SelectionKey#OP_WRITE},
+     * 选择键应该是注册的interestOps，由返回值给出.
      *
      * @param read boolean - true 如果底层通道是可读的
      * @param write boolean - true 如果底层通道是可写的
      *
-     * @return 0 如果握手完成, -1 如果发生错误 (而不是一个IOException), 否则它返回SelectionKey interestOps值
+     * @return 0 如果握手完成, -1 如果发生错误 (而不是一个IOException), {@link #HANDSHAKE_TASKS_PENDING}
+     *         如果委托任务正在握手线程池中执行, 否则它返回SelectionKey interestOps值
      *
      * @throws IOException 如果在握手期间发生I/O错误，或者在打包或解包期间握手失败
      */
@@ -181,7 +221,15 @@ public class SecureNioChannel extends NioChannel  {
                     // 如果交付了最后一个包，就完成了
                     handshakeComplete = !netOutBuffer.hasRemaining();
                     // 如果完成则返回0, 否则仍然有数据要写入
-                    return handshakeComplete?0:SelectionKey.OP_WRITE;
+                    if (handshakeComplete) {
+                        if (handshakeStart > 0) {
+                            endpoint.handshakeCompleted(sniHostName, sslEngine, handshakeStart);
+                            handshakeStart = 0;
+                        }
+                        return 0;
+                    } else {
+                        return SelectionKey.OP_WRITE;
+                    }
                 }
                 case NEED_WRAP: {
                     // 执行包装功能
@@ -194,8 +242,8 @@ public class SecureNioChannel extends NioChannel  {
                         handshake = handshakeWrap(write);
                     }
                     if (handshake.getStatus() == Status.OK) {
-                        if (handshakeStatus == HandshakeStatus.NEED_TASK)
-                            handshakeStatus = tasks();
+                        if (handshakeStatus == HandshakeStatus.NEED_TASK && !runTasks())
+                            return HANDSHAKE_TASKS_PENDING;
                     } else if (handshake.getStatus() == Status.CLOSED) {
                         flush(netOutBuffer);
                         return -1;
@@ -214,8 +262,8 @@ public class SecureNioChannel extends NioChannel  {
                     // 执行解包功能
                     handshake = handshakeUnwrap(read);
                     if ( handshake.getStatus() == Status.OK ) {
-                        if (handshakeStatus == HandshakeStatus.NEED_TASK)
-                            handshakeStatus = tasks();
+                        if (handshakeStatus == HandshakeStatus.NEED_TASK && !runTasks())
+                            return HANDSHAKE_TASKS_PENDING;
                     } else if ( handshake.getStatus() == Status.BUFFER_UNDERFLOW ){
                         // 读取更多数据, 重新注册OP_READ
                         return SelectionKey.OP_READ;
@@ -227,7 +275,9 @@ public class SecureNioChannel extends NioChannel  {
                     break;
                 }
                 case NEED_TASK: {
-                    handshakeStatus = tasks();
+                    if (!runTasks()) {
+                        return HANDSHAKE_TASKS_PENDING;
+                    }
                     break;
                 }
                 default: throw new IllegalStateException(sm.getString("channel.nio.ssl.invalidStatus", handshakeStatus));
@@ -262,7 +312,7 @@ public class SecureNioChannel extends NioChannel  {
             log.info(sm.getString("channel.nio.ssl.expandNetInBuffer",
                     Integer.toString(newLimit)));
 
-            netInBuffer = ByteBufferUtils.expand(netInBuffer, newLimit);
+            netInBuffer = expandNetBuffer(netInBuffer, newLimit);
             sc.read(netInBuffer);
             extractor = new TLSClientHelloExtractor(netInBuffer);
         }
@@ -297,6 +347,8 @@ public class SecureNioChannel extends NioChannel  {
 
         sslEngine = endpoint.createSSLEngine(hostName, clientRequestedCiphers,
                 clientRequestedApplicationProtocols);
+        sniHostName = hostName;
+        handshakeStart = System.currentTimeMillis();
 
         // 确保应用程序缓冲区（必须先前创建）足够大.
         getBufHandler().expand(sslEngine.getSession().getApplicationBufferSize());
@@ -305,8 +357,8 @@ public class SecureNioChannel extends NioChannel  {
             log.info(sm.getString("channel.nio.ssl.expandNetOutBuffer",
                     Integer.toString(sslEngine.getSession().getApplicationBufferSize())));
         }
-        netInBuffer = ByteBufferUtils.expand(netInBuffer, sslEngine.getSession().getPacketBufferSize());
-        netOutBuffer = ByteBufferUtils.expand(netOutBuffer, sslEngine.getSession().getPacketBufferSize());
+        netInBuffer = expandNetBuffer(netInBuffer, sslEngine.getSession().getPacketBufferSize());
+        netOutBuffer = expandNetBuffer(netOutBuffer, sslEngine.getSession().getPacketBufferSize());
 
         // 将限制和位置设置为预期值
         netOutBuffer.position(0);
@@ -337,6 +389,7 @@ public class SecureNioChannel extends NioChannel  {
         if (!getBufHandler().isReadBufferEmpty()) throw new IOException(sm.getString("channel.nio.ssl.appInputNotEmpty"));
         if (!getBufHandler().isWriteBufferEmpty()) throw new IOException(sm.getString("channel.nio.ssl.appOutputNotEmpty"));
         handshakeComplete = false;
+        blockingHandshake = true;
         boolean isReadable = false;
         boolean isWriteable = false;
         boolean handshaking = true;
@@ -353,7 +406,8 @@ public class SecureNioChannel extends NioChannel  {
                     default : {
                         long now = System.currentTimeMillis();
                         if (selector==null) {
-                            selector = Selector.open();
+                            // 必须与创建套接字通道的提供者相同
+                            selector = pool.openSelector();
                             key = getIOChannel().register(selector, hsStatus);
                         } else {
                             key.interestOps(hsStatus); // null warning supressed
@@ -375,6 +429,7 @@ public class SecureNioChannel extends NioChannel  {
             IOException x = new IOException(cx);
             throw x;
         } finally {
+            blockingHandshake = false;
             if (key!=null) try {key.cancel();} catch (Exception ignore) {}
             if (selector!=null) try {selector.close();} catch (Exception ignore) {}
         }
@@ -395,6 +450,27 @@ public class SecureNioChannel extends NioChannel  {
         return sslEngine.getHandshakeStatus();
     }
 
+    /**
+     * 执行握手的委托任务. 如果 endpoint 配置了握手线程池, 将任务提交到线程池, 以便处理线程可以继续服务已建立的连接.
+     * 如果线程池的队列已满, 在当前线程上执行任务.
+     *
+     * @return <code>true</code> 如果任务已在当前线程上执行, <code>false</code> 如果任务已提交到握手线程池
+     */
+    private boolean runTasks() {
+        if (!blockingHandshake && endpoint.executeHandshakeTasks(this)) {
+            return false;
+        }
+        handshakeStatus = tasks();
+        return true;
+    }
+
+    /**
+     * 由握手线程池调用, 执行委托任务并更新握手状态.
+     */
+    void runDelegatedTasks() {
+        handshakeStatus = tasks();
+    }
+
     /**
      * 执行WRAP功能
      * 
@@ -451,8 +527,9 @@ public class SecureNioChannel extends NioChannel  {
             // 读取状态
             handshakeStatus = result.getHandshakeStatus();
             if ( result.getStatus() == SSLEngineResult.Status.OK &&
-                 result.getHandshakeStatus() == HandshakeStatus.NEED_TASK ) {
-                // 如果需要，执行任务
+                 result.getHandshakeStatus() == HandshakeStatus.NEED_TASK &&
+                 (blockingHandshake || !endpoint.isHandshakeExecutorEnabled()) ) {
+                // 如果需要，执行任务. 否则由 handshake() 将任务提交到握手线程池
                 handshakeStatus = tasks();
             }
             // 执行另一个解包?
@@ -0,0 +1,184 @@
+package org.apache.tomcat.util.net;
+
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * 一组命名的 TLS 会话票证密钥, 由多个 SSL 上下文共享.
+ * <p>
+ * 密钥由来源 (密钥文件, 参见 {@link FileSessionTicketKeySource}, 或者集群监听器) 设置, 并通知所有注册的 SSL 上下文.
+ * 如果集群中的所有节点使用相同的密钥, 客户端可以在任何节点上恢复会话, 而不需要完整的握手.
+ * 第一个密钥是当前的密钥, 其余的是轮换之前的密钥. OpenSSL 的 SSL 上下文只接受一个密钥, 因此只有当前的密钥被设置到
+ * SSL 上下文, 轮换密钥后, 之前发出的票证不能再恢复会话, 客户端进行一次完整的握手.
+ * 旧的密钥只保留在密钥环和密钥文件中.
+ * <p>
+ * 密钥环按名称注册, 因此来源和 SSL 上下文可以以任何顺序创建.
+ */
+public final class SessionTicketKeyRing {
+
+    private static final StringManager sm = StringManager.getManager(SessionTicketKeyRing.class);
+
+    /**
+     * 每个密钥的长度: 16 字节名称, 16 字节 HMAC 密钥和 16 字节 AES 密钥.
+     */
+    public static final int KEY_LENGTH = 48;
+
+    private static final ConcurrentMap<String,SessionTicketKeyRing> keyRings =
+            new ConcurrentHashMap<>();
+    private static final SecureRandom random = new SecureRandom();
+
+
+    /**
+     * @param name 密钥环的名称
+     * @return 指定名称的密钥环, 如果不存在则创建
+     */
+    public static SessionTicketKeyRing getKeyRing(String name) {
+        SessionTicketKeyRing result = keyRings.get(name);
+        if (result == null) {
+            result = new SessionTicketKeyRing(name);
+            SessionTicketKeyRing existing = keyRings.putIfAbsent(name, result);
+            if (existing != null) {
+                result = existing;
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * @return 新的随机密钥
+     */
+    public static byte[] generateKey() {
+        byte[] key = new byte[KEY_LENGTH];
+        random.nextBytes(key);
+        return key;
+    }
+
+
+    /**
+     * 在现有的密钥之前添加一个新的密钥, 并删除最旧的密钥, 使总数不超过 <code>keyCount</code>.
+     *
+     * @param keys     当前的密钥, 可以为 <code>null</code>
+     * @param keyCount 保留的密钥的最大数量
+     * @return 轮换后的密钥
+     */
+    public static byte[][] rotate(byte[][] keys, int keyCount) {
+        int retained = keys == null ? 0 : Math.min(keys.length, Math.max(keyCount, 1) - 1);
+        byte[][] result = new byte[retained + 1][];
+        result[0] = generateKey();
+        if (retained > 0) {
+            System.arraycopy(keys, 0, result, 1, retained);
+        }
+        return result;
+    }
+
+
+    private final String name;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile byte[][] keys = null;
+    private volatile long rotated = 0;
+
+
+    private SessionTicketKeyRing(String name) {
+        this.name = name;
+    }
+
+
+    public String getName() {
+        return name;
+    }
+
+
+    /**
+     * @return 当前的密钥, 第一个是当前的加密密钥, 如果还没有设置密钥, 则为 <code>null</code>
+     */
+    public byte[][] getKeys() {
+        return keys;
+    }
+
+
+    /**
+     * @return 当前的加密密钥创建的时间, 如果还没有设置密钥, 则为 0
+     */
+    public long getRotated() {
+        return rotated;
+    }
+
+
+    /**
+     * 设置密钥并通知所有的监听器.
+     *
+     * @param keys    新的密钥, 第一个是加密密钥
+     * @param rotated 加密密钥创建的时间
+     */
+    public void setKeys(byte[][] keys, long rotated) {
+        if (keys == null || keys.length == 0) {
+            throw new IllegalArgumentException(sm.getString("sessionTicketKeyRing.noKeys", name));
+        }
+        byte[][] copy = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == null || keys[i].length != KEY_LENGTH) {
+                throw new IllegalArgumentException(sm.getString(
+                        "sessionTicketKeyRing.invalidKey", name, Integer.toString(KEY_LENGTH)));
+            }
+            copy[i] = keys[i].clone();
+        }
+        // 同步, 以便监听器按顺序收到修改
+        synchronized (this) {
+            this.keys = copy;
+            this.rotated = rotated;
+            byte[] ticketKeys = getTicketKeys();
+            for (Listener listener : listeners) {
+                listener.ticketKeysChanged(ticketKeys);
+            }
+        }
+    }
+
+
+    /**
+     * @return 当前的加密密钥, {@link #KEY_LENGTH} 字节, 可以传递给
+     *         <code>SSLContext.setSessionTicketKeys</code>. 如果还没有设置密钥, 则为 <code>null</code>
+     */
+    public byte[] getTicketKeys() {
+        byte[][] current = keys;
+        if (current == null) {
+            return null;
+        }
+        return current[0].clone();
+    }
+
+
+    /**
+     * 注册监听器. 如果已经设置了密钥, 立即使用当前的密钥通知监听器.
+     *
+     * @param listener 要添加的监听器
+     */
+    public synchronized void addListener(Listener listener) {
+        listeners.add(listener);
+        byte[] ticketKeys = getTicketKeys();
+        if (ticketKeys != null) {
+            listener.ticketKeysChanged(ticketKeys);
+        }
+    }
+
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+
+    /**
+     * 接收密钥的修改, 通常是一个 SSL 上下文.
+     */
+    public static interface Listener {
+
+        /**
+         * @param ticketKeys 新的加密密钥, {@link #KEY_LENGTH} 字节
+         */
+        void ticketKeysChanged(byte[] ticketKeys);
+    }
+}
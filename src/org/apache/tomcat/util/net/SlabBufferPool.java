@@ -0,0 +1,314 @@
+package org.apache.tomcat.util.net;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.collections.ConcurrentRingPool;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * 用于 socket 和 TLS 网络缓冲区的直接内存分片 (slab) 分配器.
+ * <p>
+ * 直接缓冲区不是逐个分配的, 而是一次分配一个能容纳多个缓冲区的 slab, 再切分为固定大小的缓冲区.
+ * 释放的缓冲区回到其大小级别的无锁池中, 供后续连接复用, 所以连接的建立和关闭不再需要分配和释放直接内存.
+ * slab 的内存在 {@link #clear()} 之后, 当所有切片都不可达时由 GC 回收.
+ * <p>
+ * 每个 Poller 使用一个 {@link Arena}, 以减少 Poller 之间的竞争. 缓冲区总是归还到分配它的 Arena.
+ * 缓冲区只有一个所有者 ({@link SocketBufferHandler} 或 {@link SecureNioChannel}),
+ * 因此每个 Arena 统计未归还的缓冲区数量. 在调试模式下还会记录每个缓冲区的分配位置,
+ * 以便在 {@link #clear()} 时报告泄漏, 并检测重复释放.
+ */
+public class SlabBufferPool {
+
+    private static final Log log = LogFactory.getLog(SlabBufferPool.class);
+    private static final StringManager sm = StringManager.getManager(SlabBufferPool.class);
+
+    /*
+     * 每个 Arena 支持的不同缓冲区大小的数量. 实际只使用少数几种大小 (应用读写缓冲区和 TLS 网络缓冲区).
+     */
+    private static final int MAX_SIZE_CLASSES = 8;
+
+    private final int buffersPerSlab;
+    private final int limit;
+    private final Arena[] arenas;
+
+    /*
+     * 调试模式下, 未归还的缓冲区及其分配位置.
+     */
+    private final Map<ByteBuffer,Throwable> outstanding;
+
+
+    /**
+     * @param arenaCount     Arena 数量, 通常等于 Poller 数量
+     * @param buffersPerSlab 每个 slab 切分的缓冲区数量
+     * @param limit          每个 Arena 的每个大小级别中保留的最大空闲缓冲区数量.
+     *                       参见 {@link ConcurrentRingPool#ConcurrentRingPool(int)}
+     */
+    public SlabBufferPool(int arenaCount, int buffersPerSlab, int limit) {
+        this.buffersPerSlab = Math.max(1, buffersPerSlab);
+        this.limit = limit;
+        arenas = new Arena[Math.max(1, arenaCount)];
+        for (int i = 0; i < arenas.length; i++) {
+            arenas[i] = new Arena();
+        }
+        if (log.isDebugEnabled()) {
+            outstanding = new IdentityHashMap<>();
+        } else {
+            outstanding = null;
+        }
+    }
+
+
+    public Arena getArena(int index) {
+        return arenas[index % arenas.length];
+    }
+
+
+    /**
+     * @return 每个 Arena 中每个大小级别的使用情况, 用于通过 JMX 报告
+     */
+    public String[] getUsage() {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < arenas.length; i++) {
+            for (int j = 0; j < MAX_SIZE_CLASSES; j++) {
+                SizeClass sc = arenas[i].sizeClasses.get(j);
+                if (sc == null) {
+                    break;
+                }
+                result.add("arena=" + i + ",size=" + sc.capacity + ",slabs=" + sc.slabs.get() +
+                        ",inUse=" + sc.inUse.get() + ",discarded=" + sc.discarded.get());
+            }
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+
+    /**
+     * @return 从 slab 分配的直接内存总字节数
+     */
+    public long getAllocatedBytes() {
+        long result = 0;
+        for (Arena arena : arenas) {
+            for (int j = 0; j < MAX_SIZE_CLASSES; j++) {
+                SizeClass sc = arena.sizeClasses.get(j);
+                if (sc == null) {
+                    break;
+                }
+                result += sc.slabs.get() * sc.capacity * buffersPerSlab;
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * @return 已分配但尚未归还的缓冲区数量
+     */
+    public long getInUseCount() {
+        long result = 0;
+        for (Arena arena : arenas) {
+            for (int j = 0; j < MAX_SIZE_CLASSES; j++) {
+                SizeClass sc = arena.sizeClasses.get(j);
+                if (sc == null) {
+                    break;
+                }
+                result += sc.inUse.get();
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * 丢弃所有空闲缓冲区. 调试模式下报告所有尚未归还的缓冲区.
+     */
+    public void clear() {
+        for (Arena arena : arenas) {
+            for (int j = 0; j < MAX_SIZE_CLASSES; j++) {
+                SizeClass sc = arena.sizeClasses.get(j);
+                if (sc == null) {
+                    break;
+                }
+                sc.free.clear();
+            }
+        }
+        if (outstanding != null) {
+            synchronized (outstanding) {
+                for (Map.Entry<ByteBuffer,Throwable> entry : outstanding.entrySet()) {
+                    log.debug(sm.getString("slabBufferPool.leak",
+                            Integer.valueOf(entry.getKey().capacity())), entry.getValue());
+                }
+                outstanding.clear();
+            }
+        }
+    }
+
+
+    /**
+     * 一组大小级别. 从一个 Arena 分配的缓冲区必须归还给同一个 Arena.
+     */
+    public class Arena {
+
+        private final AtomicReferenceArray<SizeClass> sizeClasses =
+                new AtomicReferenceArray<>(MAX_SIZE_CLASSES);
+
+        /**
+         * 分配一个直接缓冲区.
+         *
+         * @param capacity 需要的容量
+         *
+         * @return 已清空的直接缓冲区, 容量正好为 <code>capacity</code>
+         */
+        public ByteBuffer allocate(int capacity) {
+            SizeClass sc = getSizeClass(capacity);
+            ByteBuffer result;
+            if (sc == null) {
+                result = ByteBuffer.allocateDirect(capacity);
+            } else {
+                result = sc.allocate();
+            }
+            if (outstanding != null) {
+                synchronized (outstanding) {
+                    outstanding.put(result, new Throwable());
+                }
+            }
+            return result;
+        }
+
+
+        /**
+         * 归还一个由 {@link #allocate(int)} 分配的缓冲区. 调用者此后不得再使用它.
+         *
+         * @param buffer 要归还的缓冲区
+         */
+        public void release(ByteBuffer buffer) {
+            if (outstanding != null) {
+                synchronized (outstanding) {
+                    if (outstanding.remove(buffer) == null) {
+                        log.debug(sm.getString("slabBufferPool.doubleRelease",
+                                Integer.valueOf(buffer.capacity())), new Throwable());
+                        return;
+                    }
+                }
+            }
+            SizeClass sc = findSizeClass(buffer.capacity());
+            if (sc != null) {
+                sc.release(buffer);
+            }
+        }
+
+
+        /**
+         * 将缓冲区扩展到指定大小. 数据以与 {@link org.apache.tomcat.util.buf.ByteBufferUtils#expand(ByteBuffer, int)}
+         * 相同的方式复制, 原缓冲区被归还.
+         *
+         * @param in      由此 Arena 分配的缓冲区
+         * @param newSize 新的容量
+         *
+         * @return 新的缓冲区, 如果原缓冲区已经足够大, 则返回原缓冲区
+         */
+        public ByteBuffer expand(ByteBuffer in, int newSize) {
+            if (in.capacity() >= newSize) {
+                return in;
+            }
+            ByteBuffer out = allocate(newSize);
+            in.flip();
+            out.put(in);
+            release(in);
+            return out;
+        }
+
+
+        private SizeClass findSizeClass(int capacity) {
+            for (int i = 0; i < MAX_SIZE_CLASSES; i++) {
+                SizeClass sc = sizeClasses.get(i);
+                if (sc == null) {
+                    return null;
+                }
+                if (sc.capacity == capacity) {
+                    return sc;
+                }
+            }
+            return null;
+        }
+
+
+        private SizeClass getSizeClass(int capacity) {
+            for (int i = 0; i < MAX_SIZE_CLASSES; i++) {
+                SizeClass sc = sizeClasses.get(i);
+                if (sc == null) {
+                    sizeClasses.compareAndSet(i, null, new SizeClass(capacity));
+                    sc = sizeClasses.get(i);
+                }
+                if (sc.capacity == capacity) {
+                    return sc;
+                }
+            }
+            // 大小级别已用完, 不使用池
+            return null;
+        }
+    }
+
+
+    private class SizeClass {
+
+        private final int capacity;
+        private final ConcurrentRingPool<ByteBuffer> free;
+        private final AtomicLong slabs = new AtomicLong();
+        private final AtomicLong inUse = new AtomicLong();
+        private final AtomicLong discarded = new AtomicLong();
+
+        private SizeClass(int capacity) {
+            this.capacity = capacity;
+            // 至少能容纳一个 slab 切分出的所有缓冲区
+            if (limit < 0) {
+                free = new ConcurrentRingPool<>(limit);
+            } else {
+                free = new ConcurrentRingPool<>(Math.max(limit, buffersPerSlab));
+            }
+        }
+
+        private ByteBuffer allocate() {
+            inUse.incrementAndGet();
+            ByteBuffer result = free.pop();
+            if (result == null) {
+                result = carve();
+            }
+            result.clear();
+            return result;
+        }
+
+        private void release(ByteBuffer buffer) {
+            inUse.decrementAndGet();
+            if (!free.push(buffer)) {
+                discarded.incrementAndGet();
+            }
+        }
+
+        /*
+         * 分配一个新的 slab, 返回第一个切片, 其余切片放入空闲池.
+         */
+        private ByteBuffer carve() {
+            ByteBuffer slab = ByteBuffer.allocateDirect(capacity * buffersPerSlab);
+            slabs.incrementAndGet();
+            ByteBuffer result = null;
+            for (int i = 0; i < buffersPerSlab; i++) {
+                slab.limit((i + 1) * capacity).position(i * capacity);
+                ByteBuffer slice = slab.slice();
+                if (result == null) {
+                    result = slice;
+                } else if (!free.push(slice)) {
+                    discarded.incrementAndGet();
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -14,10 +14,26 @@ public class SocketBufferHandler {
 
     private final boolean direct;
 
+    /*
+     * 如果不为 null, 此连接的直接缓冲区从此 Arena 分配并归还给它.
+     */
+    private final SlabBufferPool.Arena arena;
+    private final boolean pooled;
+
     public SocketBufferHandler(int readBufferSize, int writeBufferSize,
             boolean direct) {
+        this(readBufferSize, writeBufferSize, direct, null);
+    }
+
+    public SocketBufferHandler(int readBufferSize, int writeBufferSize,
+            boolean direct, SlabBufferPool.Arena arena) {
         this.direct = direct;
-        if (direct) {
+        this.arena = arena;
+        this.pooled = direct && arena != null;
+        if (pooled) {
+            readBuffer = arena.allocate(readBufferSize);
+            writeBuffer = arena.allocate(writeBufferSize);
+        } else if (direct) {
             readBuffer = ByteBuffer.allocateDirect(readBufferSize);
             writeBuffer = ByteBuffer.allocateDirect(writeBufferSize);
         } else {
@@ -136,13 +152,28 @@ public class SocketBufferHandler {
 
     public void expand(int newSize) {
         configureReadBufferForWrite();
-        readBuffer = ByteBufferUtils.expand(readBuffer, newSize);
         configureWriteBufferForWrite();
-        writeBuffer = ByteBufferUtils.expand(writeBuffer, newSize);
+        if (pooled) {
+            readBuffer = arena.expand(readBuffer, newSize);
+            writeBuffer = arena.expand(writeBuffer, newSize);
+        } else {
+            readBuffer = ByteBufferUtils.expand(readBuffer, newSize);
+            writeBuffer = ByteBufferUtils.expand(writeBuffer, newSize);
+        }
+    }
+
+    /**
+     * @return 为此连接分配直接缓冲区的 Arena, 如果不使用 slab 分配器, 则为 <code>null</code>
+     */
+    public SlabBufferPool.Arena getArena() {
+        return arena;
     }
 
     public void free() {
-        if (direct) {
+        if (pooled) {
+            arena.release(readBuffer);
+            arena.release(writeBuffer);
+        } else if (direct) {
             ByteBufferUtils.cleanDirectBuffer(readBuffer);
             ByteBufferUtils.cleanDirectBuffer(writeBuffer);
         }
@@ -1,12 +1,18 @@
 package org.apache.tomcat.util.net;
 
 import java.util.Objects;
+import java.util.concurrent.locks.Lock;
 
 public abstract class SocketProcessorBase<S> implements Runnable {
 
     protected SocketWrapperBase<S> socketWrapper;
     protected SocketEvent event;
 
+    /*
+     * 此处理器提交给执行器的时间, 用于测量排队时间. 0 表示未经排队直接运行.
+     */
+    long queued = 0;
+
     public SocketProcessorBase(SocketWrapperBase<S> socketWrapper, SocketEvent event) {
         reset(socketWrapper, event);
     }
@@ -21,13 +27,26 @@ public abstract class SocketProcessorBase<S> implements Runnable {
 
     @Override
     public final void run() {
-        synchronized (socketWrapper) {
-            // 可能会同时触发处理以进行读取和写入. 上面的同步可确保并行处理不会发生.
+        long queued = this.queued;
+        long started = 0;
+        if (queued != 0) {
+            this.queued = 0;
+            started = System.nanoTime();
+            socketWrapper.getEndpoint().recordQueueLatency(queued, started);
+        }
+        // doRun() 可能会清除 socketWrapper, 因此保留对锁的引用
+        Lock lock = socketWrapper.getLock();
+        lock.lock();
+        try {
+            socketWrapper.setDispatchTimes(queued, started);
+            // 可能会同时触发处理以进行读取和写入. 上面的锁可确保并行处理不会发生.
             // 下面的测试确保, 如果要处理的第一个事件导致套接字被关闭, 不处理后续事件.
             if (socketWrapper.isClosed()) {
                 return;
             }
             doRun();
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -36,6 +36,12 @@ public class SocketProperties {
      */
     protected boolean directSslBuffer = false;
 
+    /**
+     * 启用直接缓冲区时, 每次从直接内存分配的 slab 切分的缓冲区数量.
+     * 0 禁用 slab 分配器, 每个缓冲区单独分配. 默认 16
+     */
+    protected int directBufferSlabSize = 16;
+
     /**
      * 套接字接收缓冲区大小 (SO_RCVBUF), 以字节为单位.
      * 如果未设置，则使用JVM默认值.
@@ -211,6 +217,10 @@ public class SocketProperties {
         return directSslBuffer;
     }
 
+    public int getDirectBufferSlabSize() {
+        return directBufferSlabSize;
+    }
+
     public boolean getOoBInline() {
         return ooBInline.booleanValue();
     }
@@ -344,6 +354,10 @@ public class SocketProperties {
         this.directSslBuffer = directSslBuffer;
     }
 
+    public void setDirectBufferSlabSize(int directBufferSlabSize) {
+        this.directBufferSlabSize = directBufferSlabSize;
+    }
+
     public void setSoLingerOn(boolean soLingerOn) {
         this.soLingerOn = Boolean.valueOf(soLingerOn);
     }
@@ -7,6 +7,7 @@ import java.util.Iterator;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 
@@ -24,6 +25,11 @@ public abstract class SocketWrapperBase<E> {
     private final E socket;
     private final AbstractEndpoint<E> endpoint;
 
+    /*
+     * 用于串行化此套接字处理的锁. 使用 Lock 而不是在包装器上同步, 这样在虚拟线程上处理时, 持有锁期间的阻塞I/O不会固定载体线程.
+     */
+    private final Lock lock = new ReentrantLock();
+
     // 易失性，因为I/O和设置超时值发生在与检查超时的线程不同的线程上.
     private volatile long readTimeout = -1;
     private volatile long writeTimeout = -1;
@@ -52,6 +58,14 @@ public abstract class SocketWrapperBase<E> {
      */
     private volatile IOException error = null;
 
+    /*
+     * 连接建立的时间, 以及最近一次处理任务提交给执行器和开始运行的时间 (System.nanoTime()),
+     * 用于统计请求各阶段的延迟. 0 表示未知或已被请求读取.
+     */
+    private volatile long acceptTime = System.nanoTime();
+    private long dispatchTime = 0;
+    private long dispatchStartTime = 0;
+
     /**
      * 用于与套接字通信的缓冲区.
      */
@@ -84,6 +98,45 @@ public abstract class SocketWrapperBase<E> {
         return endpoint;
     }
 
+    public Lock getLock() {
+        return lock;
+    }
+
+    /**
+     * 获取并清除连接建立的时间. 只有连接上的第一个请求会得到它.
+     *
+     * @return 连接建立时的 {@link System#nanoTime()}, 如果已被读取, 则为 0
+     */
+    public long consumeAcceptTime() {
+        long result = acceptTime;
+        acceptTime = 0;
+        return result;
+    }
+
+    void setDispatchTimes(long dispatchTime, long dispatchStartTime) {
+        this.dispatchTime = dispatchTime;
+        this.dispatchStartTime = dispatchStartTime;
+    }
+
+    /**
+     * @return 当前处理任务提交给执行器时的 {@link System#nanoTime()}, 如果未经排队或已被读取, 则为 0.
+     *         只能在持有 {@link #getLock()} 时调用.
+     */
+    public long getDispatchTime() { return dispatchTime; }
+
+    /**
+     * @return 当前处理任务开始运行时的 {@link System#nanoTime()}. 只能在持有 {@link #getLock()} 时调用.
+     */
+    public long getDispatchStartTime() { return dispatchStartTime; }
+
+    /**
+     * 清除排队时间, 使同一次处理中的后续 (流水线) 请求不再统计排队时间.
+     */
+    public void clearDispatchTimes() {
+        dispatchTime = 0;
+        dispatchStartTime = 0;
+    }
+
     public IOException getError() { return error; }
     public void setError(IOException error) {
         // 不是完全线程安全, 但足够好. 只需要确保一旦this.error为非null, 它永远不会为 null.
@@ -245,6 +298,31 @@ public abstract class SocketWrapperBase<E> {
 
     public abstract int read(boolean block, byte[] b, int off, int len) throws IOException;
     public abstract int read(boolean block, ByteBuffer to) throws IOException;
+
+
+    /**
+     * 非阻塞地读取输入的开头, 但不消费它. 用于在选择处理器之前识别连接使用的协议.
+     *
+     * @param to 接收数据的缓冲区. 剩余空间必须小于读缓冲区的容量, 以便数据经过读缓冲区.
+     *
+     * @return 读取的字节数, 如果没有可用的数据, 则为 0, 如果已到达流的末尾, 则为 -1
+     *
+     * @throws IOException 如果在读取期间发生IO错误
+     */
+    public int peek(ByteBuffer to) throws IOException {
+        if (to.remaining() >= socketBufferHandler.getReadBuffer().capacity()) {
+            throw new IllegalArgumentException();
+        }
+        int nRead = read(false, to);
+        if (nRead > 0) {
+            // 数据是从读缓冲区复制的, 因此只需将读缓冲区的位置退回
+            ByteBuffer readBuffer = socketBufferHandler.getReadBuffer();
+            readBuffer.position(readBuffer.position() - nRead);
+        }
+        return nRead;
+    }
+
+
     public abstract boolean isReadyForRead() throws IOException;
     public abstract void setAppReadBufHandler(ApplicationBufferHandler handler);
 
@@ -35,6 +35,7 @@ import org.apache.tomcat.util.net.Constants;
 import org.apache.tomcat.util.net.SSLHostConfig;
 import org.apache.tomcat.util.net.SSLHostConfigCertificate;
 import org.apache.tomcat.util.net.SSLHostConfigCertificate.Type;
+import org.apache.tomcat.util.net.SessionTicketKeyRing;
 import org.apache.tomcat.util.net.jsse.JSSEKeyManager;
 import org.apache.tomcat.util.net.openssl.ciphers.OpenSSLCipherConfigurationParser;
 import org.apache.tomcat.util.res.StringManager;
@@ -54,6 +55,7 @@ public class OpenSSLContext implements org.apache.tomcat.util.net.SSLContext {
     private final SSLHostConfig sslHostConfig;
     private final SSLHostConfigCertificate certificate;
     private OpenSSLSessionContext sessionContext;
+    private SessionTicketKeyRing ticketKeyRing;
 
     private final List<String> negotiableProtocols;
 
@@ -171,6 +173,9 @@ public class OpenSSLContext implements org.apache.tomcat.util.net.SSLContext {
     public synchronized void destroy() {
         // 防止由构造异常触发的多个destroyPools()调用, 以及稍后的finalize()
         if (aprPoolDestroyed.compareAndSet(0, 1)) {
+            if (ticketKeyRing != null) {
+                ticketKeyRing.removeListener(sessionContext);
+            }
             if (ctx != 0) {
                 SSLContext.free(ctx);
             }
@@ -400,6 +405,13 @@ public class OpenSSLContext implements org.apache.tomcat.util.net.SSLContext {
             sessionContext = new OpenSSLSessionContext(ctx);
             // 如果正在使用客户端身份验证, OpenSSL要求设置此项, 以便始终设置它, 以防应用程序配置为需要它
             sessionContext.setSessionIdContext(SSLContext.DEFAULT_SESSION_ID_CONTEXT);
+            // 使用共享的会话票证密钥, 以便在其它节点上恢复会话
+            if (!sslHostConfig.getDisableSessionTickets()) {
+                ticketKeyRing = sslHostConfig.getSessionTicketKeyRing();
+                if (ticketKeyRing != null) {
+                    ticketKeyRing.addListener(sessionContext);
+                }
+            }
             sslHostConfig.setOpenSslContext(Long.valueOf(ctx));
             initialized = true;
         } catch (Exception e) {
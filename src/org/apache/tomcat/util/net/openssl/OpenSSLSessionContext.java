@@ -8,12 +8,13 @@ import javax.net.ssl.SSLSessionContext;
 
 import org.apache.tomcat.jni.SSL;
 import org.apache.tomcat.jni.SSLContext;
+import org.apache.tomcat.util.net.SessionTicketKeyRing;
 import org.apache.tomcat.util.res.StringManager;
 
 /**
  * OpenSSL特定的{@link SSLSessionContext}实现.
  */
-public class OpenSSLSessionContext implements SSLSessionContext {
+public class OpenSSLSessionContext implements SSLSessionContext, SessionTicketKeyRing.Listener {
     private static final StringManager sm = StringManager.getManager(OpenSSLSessionContext.class);
     private static final Enumeration<byte[]> EMPTY = new EmptyEnumeration();
 
@@ -47,6 +48,14 @@ public class OpenSSLSessionContext implements SSLSessionContext {
         SSLContext.setSessionTicketKeys(context, keys);
     }
 
+    /**
+     * 使用共享的密钥环的新的密钥.
+     */
+    @Override
+    public void ticketKeysChanged(byte[] ticketKeys) {
+        setTicketKeys(ticketKeys);
+    }
+
     /**
      * 启用或禁用SSL会话的缓存.
      *
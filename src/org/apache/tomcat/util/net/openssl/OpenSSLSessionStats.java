@@ -70,6 +70,21 @@ public final class OpenSSLSessionStats {
         return SSLContext.sessionHits(context);
     }
 
+    /**
+     * @return 在服务器模式下, 建立了新的会话的完整握手的数量. 恢复的会话 (会话 ID 或票证) 不包括在内.
+     */
+    public long fullHandshakes() {
+        long result = acceptGood() - hits();
+        return result < 0 ? 0 : result;
+    }
+
+    /**
+     * @return 在服务器模式下, 恢复了之前的会话 (会话 ID 或票证) 的握手的数量. 与 {@link #hits()} 相同.
+     */
+    public long resumedHandshakes() {
+        return hits();
+    }
+
     /**
      * @return 在服务器模式下, 从外部会话高速缓存成功检索的会话数.
      */
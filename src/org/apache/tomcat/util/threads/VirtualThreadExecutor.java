@@ -0,0 +1,160 @@
+package org.apache.tomcat.util.threads;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.compat.JreCompat;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * 为每个任务启动一个新虚拟线程的执行器. 没有任务队列, 也没有线程数上限: 并发由调用者 (例如端点的 maxConnections) 限制.
+ * 阻塞在 {@link java.util.concurrent.locks.Lock} 或 {@link java.util.concurrent.CountDownLatch} 上的任务会挂起虚拟线程并释放其载体线程.
+ * <p>
+ * 需要 Java 21 或更高版本. 还会统计虚拟线程固定其载体线程的事件 (如果JRE支持JFR事件流).
+ */
+public class VirtualThreadExecutor implements Executor {
+
+    private static final Log log = LogFactory.getLog(VirtualThreadExecutor.class);
+    private static final StringManager sm = StringManager.getManager("org.apache.tomcat.util.threads.res");
+
+    private final ThreadFactory threadFactory;
+
+    private final AtomicInteger activeCount = new AtomicInteger(0);
+    private final AtomicLong completedTaskCount = new AtomicLong(0);
+    private final AtomicLong pinnedCount = new AtomicLong(0);
+
+    private final Closeable pinningMonitor;
+
+    private volatile boolean shutdown = false;
+
+
+    /**
+     * @param namePrefix 虚拟线程名称的前缀
+     *
+     * @throws UnsupportedOperationException 如果JRE不支持虚拟线程
+     */
+    public VirtualThreadExecutor(String namePrefix) {
+        threadFactory = JreCompat.getInstance().createVirtualThreadFactory(namePrefix);
+        Closeable monitor = null;
+        try {
+            monitor = JreCompat.getInstance().monitorVirtualThreadPinning(new Runnable() {
+                @Override
+                public void run() {
+                    pinnedCount.incrementAndGet();
+                }
+            });
+        } catch (UnsupportedOperationException e) {
+            log.info(sm.getString("virtualThreadExecutor.noPinningEvents"), e);
+        }
+        pinningMonitor = monitor;
+    }
+
+
+    @Override
+    public void execute(Runnable command) {
+        if (shutdown) {
+            throw new RejectedExecutionException(sm.getString("virtualThreadExecutor.shutdown"));
+        }
+        activeCount.incrementAndGet();
+        try {
+            threadFactory.newThread(new Task(command)).start();
+        } catch (RuntimeException | Error e) {
+            activeCount.decrementAndGet();
+            throw e;
+        }
+    }
+
+
+    /**
+     * 停止接受新任务. 已经在运行的任务不会被中断.
+     */
+    public void shutdown() {
+        shutdown = true;
+        if (pinningMonitor != null) {
+            try {
+                pinningMonitor.close();
+            } catch (IOException e) {
+                log.debug(sm.getString("virtualThreadExecutor.pinningMonitorCloseFail"), e);
+            }
+        }
+    }
+
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+
+    /**
+     * 等待所有正在运行的任务完成.
+     *
+     * @param timeout 最长等待时间
+     * @param unit    超时的单位
+     *
+     * @return <code>true</code>如果所有任务都已完成
+     *
+     * @throws InterruptedException 如果在等待时被中断
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (activeCount.get() > 0) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+
+    /**
+     * @return 已提交但尚未完成的任务数. 由于每个任务都有自己的虚拟线程, 这也是当前的虚拟线程数.
+     */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+
+    public long getCompletedTaskCount() {
+        return completedTaskCount.get();
+    }
+
+
+    /**
+     * @return 观察到的虚拟线程固定载体线程的事件数; 如果无法监视固定事件, 则为 -1
+     */
+    public long getPinnedCount() {
+        if (pinningMonitor == null) {
+            return -1;
+        }
+        return pinnedCount.get();
+    }
+
+
+    private class Task implements Runnable {
+
+        private final Runnable command;
+
+        Task(Runnable command) {
+            this.command = command;
+        }
+
+        @Override
+        public void run() {
+            try {
+                command.run();
+            } finally {
+                activeCount.decrementAndGet();
+                completedTaskCount.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package org.apache.catalina.connector;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.core.StandardHost;
+import org.apache.catalina.core.StandardWrapper;
+import org.apache.catalina.mapper.MappingData;
+import org.apache.catalina.servlet4preview.http.MappingMatch;
+import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.buf.MessageBytes;
+
+public class TestMappingCache {
+
+    private TesterContext context;
+    private StandardWrapper wrapper;
+    private StandardHost host;
+
+
+    @Before
+    public void setUp() {
+        host = new StandardHost();
+        context = new TesterContext();
+        wrapper = new StandardWrapper();
+    }
+
+
+    @Test
+    public void testHit() {
+        MappingCache cache = new MappingCache(16);
+        cache.put("localhost", uri("/app/servlet/info"), 1,
+                decoded("/app/servlet/info"), mapping(MappingMatch.PATH));
+
+        MappingCache.Entry entry = cache.get("localhost", uri("/app/servlet/info"), 1);
+        Assert.assertNotNull(entry);
+
+        MessageBytes decodedURI = MessageBytes.newInstance();
+        entry.restoreURI(decodedURI);
+        Assert.assertEquals("/app/servlet/info", decodedURI.toString());
+
+        MappingData mappingData = new MappingData();
+        entry.restoreMapping(mappingData);
+        Assert.assertSame(host, mappingData.host);
+        Assert.assertSame(context, mappingData.context);
+        Assert.assertSame(wrapper, mappingData.wrapper);
+        Assert.assertEquals("/app", mappingData.contextPath.toString());
+        Assert.assertEquals("/servlet", mappingData.wrapperPath.toString());
+        Assert.assertEquals("/info", mappingData.pathInfo.toString());
+        Assert.assertEquals(MappingMatch.PATH, mappingData.matchType);
+    }
+
+
+    @Test
+    public void testMiss() {
+        MappingCache cache = new MappingCache(16);
+        cache.put("localhost", uri("/app/servlet"), 1,
+                decoded("/app/servlet"), mapping(MappingMatch.EXACT));
+
+        Assert.assertNull(cache.get("otherhost", uri("/app/servlet"), 1));
+        Assert.assertNull(cache.get("localhost", uri("/app/servlet2"), 1));
+        Assert.assertNull(cache.get("localhost", uri("/app/servle"), 1));
+        // URI 是在更大的缓冲区中的一部分
+        ByteChunk chunk = uri("xx/app/servletyy");
+        chunk.setOffset(2);
+        chunk.setEnd(chunk.getEnd() - 2);
+        Assert.assertNotNull(cache.get("localhost", chunk, 1));
+    }
+
+
+    @Test
+    public void testNotCacheable() {
+        MappingCache cache = new MappingCache(16);
+
+        // 默认 servlet 和欢迎文件的映射依赖于资源
+        cache.put("localhost", uri("/app/a"), 1, decoded("/app/a"),
+                mapping(MappingMatch.DEFAULT));
+        cache.put("localhost", uri("/app/b/"), 1, decoded("/app/b/"),
+                mapping(MappingMatch.PATH));
+        // 路径参数必须被解析
+        cache.put("localhost", uri("/app/c;jsessionid=1"), 1, decoded("/app/c"),
+                mapping(MappingMatch.EXACT));
+        MappingData redirect = mapping(MappingMatch.EXACT);
+        redirect.redirectPath.setString("/app/d/");
+        cache.put("localhost", uri("/app/d"), 1, decoded("/app/d"), redirect);
+        MappingData noWrapper = mapping(MappingMatch.EXACT);
+        noWrapper.wrapper = null;
+        cache.put("localhost", uri("/app/e"), 1, decoded("/app/e"), noWrapper);
+
+        Assert.assertEquals(0, countEntries(cache));
+    }
+
+
+    @Test
+    public void testPausedContext() {
+        MappingCache cache = new MappingCache(16);
+        cache.put("localhost", uri("/app/servlet"), 1,
+                decoded("/app/servlet"), mapping(MappingMatch.EXACT));
+        context.paused = true;
+        Assert.assertNull(cache.get("localhost", uri("/app/servlet"), 1));
+        context.paused = false;
+        Assert.assertNotNull(cache.get("localhost", uri("/app/servlet"), 1));
+    }
+
+
+    @Test
+    public void testModificationClearsEntries() {
+        MappingCache cache = new MappingCache(16);
+        for (int i = 0; i < 8; i++) {
+            cache.put("localhost", uri("/app/servlet" + i), 1,
+                    decoded("/app/servlet" + i), mapping(MappingMatch.EXACT));
+        }
+        Assert.assertTrue(countEntries(cache) > 0);
+
+        // 映射器被修改之后, 缓存不能再引用 (可能已经删除的) 上下文
+        Assert.assertNull(cache.get("localhost", uri("/app/servlet0"), 2));
+        Assert.assertEquals(0, countEntries(cache));
+    }
+
+
+    @Test
+    public void testStalePutDiscarded() {
+        MappingCache cache = new MappingCache(16);
+        Assert.assertNull(cache.get("localhost", uri("/app/servlet"), 2));
+        // 映射在修改之前开始
+        cache.put("localhost", uri("/app/servlet"), 1,
+                decoded("/app/servlet"), mapping(MappingMatch.EXACT));
+        Assert.assertEquals(0, countEntries(cache));
+        Assert.assertNull(cache.get("localhost", uri("/app/servlet"), 2));
+    }
+
+
+    @Test
+    public void testCollision() {
+        // 只有一个槽, 新的条目替换旧的条目
+        MappingCache cache = new MappingCache(1);
+        cache.put("localhost", uri("/app/a"), 1, decoded("/app/a"),
+                mapping(MappingMatch.EXACT));
+        cache.put("localhost", uri("/app/b"), 1, decoded("/app/b"),
+                mapping(MappingMatch.EXACT));
+        Assert.assertNull(cache.get("localhost", uri("/app/a"), 1));
+        Assert.assertNotNull(cache.get("localhost", uri("/app/b"), 1));
+    }
+
+
+    private MappingData mapping(MappingMatch matchType) {
+        MappingData mappingData = new MappingData();
+        mappingData.host = host;
+        mappingData.context = context;
+        mappingData.contextSlashCount = 1;
+        mappingData.wrapper = wrapper;
+        mappingData.contextPath.setString("/app");
+        mappingData.requestPath.setString("/servlet/info");
+        mappingData.wrapperPath.setString("/servlet");
+        mappingData.pathInfo.setString("/info");
+        mappingData.matchType = matchType;
+        return mappingData;
+    }
+
+
+    private static ByteChunk uri(String uri) {
+        byte[] bytes = uri.getBytes(StandardCharsets.ISO_8859_1);
+        ByteChunk chunk = new ByteChunk();
+        chunk.setBytes(bytes, 0, bytes.length);
+        return chunk;
+    }
+
+
+    private static MessageBytes decoded(String path) {
+        MessageBytes mb = MessageBytes.newInstance();
+        mb.setString(path);
+        return mb;
+    }
+
+
+    private static int countEntries(MappingCache cache) {
+        try {
+            Field field = MappingCache.class.getDeclaredField("entries");
+            field.setAccessible(true);
+            int count = 0;
+            for (Object entry : (Object[]) field.get(cache)) {
+                if (entry != null) {
+                    count++;
+                }
+            }
+            return count;
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+
+    private static class TesterContext extends StandardContext {
+
+        private volatile boolean paused;
+
+        @Override
+        public boolean getPaused() {
+            return paused;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package org.apache.catalina.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.tomcat.SimpleInstanceManager;
+import org.apache.tomcat.util.descriptor.web.FilterDef;
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+
+/**
+ * 将 {@link FilterChainTemplates} 的结果与之前 ApplicationFilterFactory 的两次遍历的算法比较:
+ * 首先按映射的顺序添加 URL 匹配的过滤器, 然后添加 servlet 名称匹配的过滤器, 每个过滤器只添加一次.
+ */
+public class TestFilterChainTemplates {
+
+    private static final String[] URL_PATTERNS =
+            { "*", "/*", "/a/*", "/a/b", "/a", "*.jsp", "/b/*", "/c/d/*" };
+    private static final String[] SERVLET_NAMES = { "*", "s1", "s2" };
+    private static final String[] REQUEST_PATHS =
+            { "/", "/a", "/a/b", "/a/b/c", "/a/x.jsp", "/b", "/b/x", "/c/d", "/index.jsp", null };
+
+    private TesterContext context;
+
+
+    @Before
+    public void setUp() throws Exception {
+        StandardEngine engine = new StandardEngine();
+        engine.setName("Catalina");
+        StandardHost host = new StandardHost();
+        host.setName("localhost");
+        host.setParent(engine);
+        context = new TesterContext();
+        context.setName("/test");
+        context.setParent(host);
+        context.setInstanceManager(new SimpleInstanceManager());
+        for (int i = 0; i < 6; i++) {
+            context.addFilterConfig("f" + i);
+        }
+    }
+
+
+    @Test
+    public void testOrder() {
+        FilterMap[] maps = {
+                servletMap("f0", "s1"),
+                urlMap("f1", "/a/*"),
+                urlMap("f2", "*"),
+                servletMap("f3", "*"),
+                urlMap("f4", "*.jsp") };
+        FilterChainTemplates templates = new FilterChainTemplates(context, maps);
+
+        // URL 映射在前, 然后是 servlet 名称映射, 各自按映射的顺序
+        assertFilters(templates.getFilters("s1", DispatcherType.REQUEST, "/a/x.jsp"),
+                "f1", "f2", "f4", "f0", "f3");
+        assertFilters(templates.getFilters("s2", DispatcherType.REQUEST, "/b"),
+                "f2", "f3");
+        // 命名的调度只匹配 "*" URL 映射
+        assertFilters(templates.getFilters("s1", DispatcherType.REQUEST, null),
+                "f2", "f0", "f3");
+        assertFilters(templates.getFilters(null, DispatcherType.REQUEST, "/b"), "f2");
+        assertFilters(templates.getFilters(null, DispatcherType.FORWARD, "/a/b"));
+    }
+
+
+    @Test
+    public void testDeduplication() {
+        FilterMap[] maps = {
+                urlMap("f0", "/a/*"),
+                urlMap("f1", "/a/b"),
+                urlMap("f0", "/a/b"),
+                servletMap("f1", "s1"),
+                servletMap("f2", "s1"),
+                servletMap("f2", "*") };
+        FilterChainTemplates templates = new FilterChainTemplates(context, maps);
+
+        assertFilters(templates.getFilters("s1", DispatcherType.REQUEST, "/a/b"),
+                "f0", "f1", "f2");
+        assertFilters(templates.getFilters("s1", DispatcherType.REQUEST, "/c"),
+                "f1", "f2");
+    }
+
+
+    @Test
+    public void testDispatcher() {
+        FilterMap forward = urlMap("f0", "/*");
+        forward.setDispatcher("FORWARD");
+        FilterMap both = urlMap("f1", "/*");
+        both.setDispatcher("REQUEST");
+        both.setDispatcher("ERROR");
+        FilterMap[] maps = { forward, both, urlMap("f2", "/*") };
+        FilterChainTemplates templates = new FilterChainTemplates(context, maps);
+
+        assertFilters(templates.getFilters("s1", DispatcherType.REQUEST, "/a"), "f1", "f2");
+        assertFilters(templates.getFilters("s1", DispatcherType.FORWARD, "/a"), "f0");
+        assertFilters(templates.getFilters("s1", DispatcherType.ERROR, "/a"), "f1");
+        assertFilters(templates.getFilters("s1", DispatcherType.ASYNC, "/a"));
+    }
+
+
+    @Test
+    public void testMissingFilterConfig() {
+        FilterMap[] maps = { urlMap("missing", "/*"), urlMap("f0", "/*"),
+                servletMap("missing", "*") };
+        FilterChainTemplates templates = new FilterChainTemplates(context, maps);
+        assertFilters(templates.getFilters("s1", DispatcherType.REQUEST, "/a"), "f0");
+    }
+
+
+    @Test
+    public void testTemplatesShared() {
+        FilterMap[] maps = { urlMap("f0", "/a/*"), urlMap("f1", "*.jsp") };
+        FilterChainTemplates templates = new FilterChainTemplates(context, maps);
+        // 同一个 URL 模式类
+        Assert.assertSame(templates.getFilters("s1", DispatcherType.REQUEST, "/a/b"),
+                templates.getFilters("s1", DispatcherType.REQUEST, "/a/c"));
+        Assert.assertNotSame(templates.getFilters("s1", DispatcherType.REQUEST, "/a/b"),
+                templates.getFilters("s1", DispatcherType.REQUEST, "/a/b.jsp"));
+    }
+
+
+    @Test
+    public void testAgainstTwoPass() {
+        doTestAgainstTwoPass(20);
+    }
+
+
+    @Test
+    public void testAgainstTwoPassUncacheable() {
+        // 超过 64 个依赖路径的 URL 映射, 每个请求都创建数组
+        doTestAgainstTwoPass(100);
+    }
+
+
+    private void doTestAgainstTwoPass(int maxMaps) {
+        Random random = new Random(maxMaps);
+        DispatcherType[] dispatchers = DispatcherType.values();
+        for (int round = 0; round < 200; round++) {
+            FilterMap[] maps = new FilterMap[1 + random.nextInt(maxMaps)];
+            for (int i = 0; i < maps.length; i++) {
+                // f6 没有过滤器配置
+                String filterName = "f" + random.nextInt(7);
+                if (random.nextInt(3) == 0) {
+                    maps[i] = servletMap(filterName,
+                            SERVLET_NAMES[random.nextInt(SERVLET_NAMES.length)]);
+                } else {
+                    maps[i] = urlMap(filterName,
+                            URL_PATTERNS[random.nextInt(URL_PATTERNS.length)]);
+                    if (random.nextInt(4) == 0) {
+                        maps[i].addURLPattern(URL_PATTERNS[random.nextInt(URL_PATTERNS.length)]);
+                    }
+                }
+                int dispatcherCount = random.nextInt(3);
+                for (int j = 0; j < dispatcherCount; j++) {
+                    maps[i].setDispatcher(dispatchers[random.nextInt(dispatchers.length)].name());
+                }
+            }
+            FilterChainTemplates templates = new FilterChainTemplates(context, maps);
+
+            for (int i = 0; i < 100; i++) {
+                String servletName = random.nextInt(4) == 0 ? null :
+                        "s" + random.nextInt(4);
+                DispatcherType dispatcher = dispatchers[random.nextInt(dispatchers.length)];
+                String requestPath = REQUEST_PATHS[random.nextInt(REQUEST_PATHS.length)];
+                ApplicationFilterConfig[] expected =
+                        createFiltersTwoPass(maps, servletName, dispatcher, requestPath);
+                String message = Arrays.toString(maps) + " " + servletName + " " +
+                        dispatcher + " " + requestPath;
+                Assert.assertArrayEquals(message, expected,
+                        templates.getFilters(servletName, dispatcher, requestPath));
+                // 第二次使用模板
+                Assert.assertArrayEquals(message, expected,
+                        templates.getFilters(servletName, dispatcher, requestPath));
+            }
+        }
+    }
+
+
+    /*
+     * 之前 ApplicationFilterFactory.createFilterChain() 的算法.
+     */
+    private ApplicationFilterConfig[] createFiltersTwoPass(FilterMap[] filterMaps,
+            String servletName, DispatcherType dispatcher, String requestPath) {
+        List<ApplicationFilterConfig> result = new ArrayList<>();
+        for (FilterMap filterMap : filterMaps) {
+            if (!ApplicationFilterFactory.matchDispatcher(filterMap, dispatcher)) {
+                continue;
+            }
+            if (!matchFiltersURL(filterMap, requestPath)) {
+                continue;
+            }
+            addFilter(result, filterMap);
+        }
+        for (FilterMap filterMap : filterMaps) {
+            if (!ApplicationFilterFactory.matchDispatcher(filterMap, dispatcher)) {
+                continue;
+            }
+            if (!ApplicationFilterFactory.matchFiltersServlet(filterMap, servletName)) {
+                continue;
+            }
+            addFilter(result, filterMap);
+        }
+        return result.toArray(new ApplicationFilterConfig[result.size()]);
+    }
+
+
+    private static boolean matchFiltersURL(FilterMap filterMap, String requestPath) {
+        if (filterMap.getMatchAllUrlPatterns()) {
+            return true;
+        }
+        if (requestPath == null) {
+            return false;
+        }
+        for (String urlPattern : filterMap.getURLPatterns()) {
+            if (ApplicationFilterFactory.matchFiltersURL(urlPattern, requestPath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private void addFilter(List<ApplicationFilterConfig> filters, FilterMap filterMap) {
+        ApplicationFilterConfig filterConfig =
+                (ApplicationFilterConfig) context.findFilterConfig(filterMap.getFilterName());
+        if (filterConfig != null && !filters.contains(filterConfig)) {
+            filters.add(filterConfig);
+        }
+    }
+
+
+    private void assertFilters(ApplicationFilterConfig[] filters, String... names) {
+        String[] actual = new String[filters.length];
+        for (int i = 0; i < filters.length; i++) {
+            actual[i] = filters[i].getFilterName();
+        }
+        Assert.assertArrayEquals(names, actual);
+    }
+
+
+    private static FilterMap urlMap(String filterName, String urlPattern) {
+        FilterMap filterMap = new FilterMap();
+        filterMap.setFilterName(filterName);
+        filterMap.addURLPattern(urlPattern);
+        return filterMap;
+    }
+
+
+    private static FilterMap servletMap(String filterName, String servletName) {
+        FilterMap filterMap = new FilterMap();
+        filterMap.setFilterName(filterName);
+        filterMap.addServletName(servletName);
+        return filterMap;
+    }
+
+
+    private static class TesterContext extends StandardContext {
+
+        private final Map<String,ApplicationFilterConfig> filterConfigs = new HashMap<>();
+
+        private void addFilterConfig(String name) throws Exception {
+            FilterDef filterDef = new FilterDef();
+            filterDef.setFilterName(name);
+            filterDef.setFilter(new TesterFilter());
+            filterConfigs.put(name, new ApplicationFilterConfig(this, filterDef));
+        }
+
+        @Override
+        public FilterConfig findFilterConfig(String name) {
+            return filterConfigs.get(name);
+        }
+    }
+
+
+    private static class TesterFilter implements Filter {
+
+        @Override
+        public void init(FilterConfig filterConfig) throws ServletException {
+            // NO-OP
+        }
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response,
+                FilterChain chain) throws IOException, ServletException {
+            chain.doFilter(request, response);
+        }
+
+        @Override
+        public void destroy() {
+            // NO-OP
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package org.apache.catalina.mapper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.mapper.Mapper.MappedWrapper;
+
+public class TestWrapperTrie {
+
+    private static final String[] SEGMENTS = { "a", "ab", "abc", "b", "foo", "foobar", "x.y" };
+
+
+    @Test
+    public void testExact() {
+        WrapperTrie trie = createTrie(new String[] { "/", "/foo", "/foo/bar", "/foobar" },
+                new String[0], new String[0]);
+        Assert.assertEquals("/", name(trie.findExact(chars("/"), 0, 1)));
+        Assert.assertEquals("/foo", name(find(trie, "/foo", true)));
+        Assert.assertEquals("/foo/bar", name(find(trie, "/foo/bar", true)));
+        Assert.assertEquals("/foobar", name(find(trie, "/foobar", true)));
+        Assert.assertNull(find(trie, "/fo", true));
+        Assert.assertNull(find(trie, "/foo/", true));
+        Assert.assertNull(find(trie, "/foo/bar/baz", true));
+    }
+
+
+    @Test
+    public void testWildcard() {
+        WrapperTrie trie = createTrie(new String[] { "/foo/bar" },
+                new String[] { "", "/foo", "/foo/bar/baz" }, new String[0]);
+        Assert.assertEquals("", name(find(trie, "/", false)));
+        Assert.assertEquals("", name(find(trie, "/other", false)));
+        Assert.assertEquals("/foo", name(find(trie, "/foo", false)));
+        Assert.assertEquals("/foo", name(find(trie, "/foo/", false)));
+        Assert.assertEquals("/foo", name(find(trie, "/foo/bar", false)));
+        Assert.assertEquals("/foo", name(find(trie, "/foo/bar/ba", false)));
+        Assert.assertEquals("/foo/bar/baz", name(find(trie, "/foo/bar/baz", false)));
+        Assert.assertEquals("/foo/bar/baz", name(find(trie, "/foo/bar/baz/x", false)));
+        // 只在 '/' 处匹配
+        Assert.assertEquals("", name(find(trie, "/foobar", false)));
+        Assert.assertEquals("/foo", name(find(trie, "/foo/bar/bazz", false)));
+    }
+
+
+    @Test
+    public void testWildcardWithoutRoot() {
+        WrapperTrie trie = createTrie(new String[0], new String[] { "/a/b" }, new String[0]);
+        Assert.assertNull(find(trie, "/a", false));
+        Assert.assertNull(find(trie, "/a/bc", false));
+        Assert.assertEquals("/a/b", name(find(trie, "/a/b/c", false)));
+    }
+
+
+    @Test
+    public void testExtension() {
+        WrapperTrie trie = createTrie(new String[0], new String[0],
+                new String[] { "jsp", "jspx", "do" });
+        Assert.assertEquals("jsp", name(trie.findExtension(chars("jsp"), 0, 3)));
+        Assert.assertEquals("jspx", name(trie.findExtension(chars("jspx"), 0, 4)));
+        Assert.assertNull(trie.findExtension(chars("js"), 0, 2));
+        Assert.assertNull(trie.findExtension(chars("jspxx"), 0, 5));
+        Assert.assertEquals("do", name(trie.findExtension(chars("/a.do"), 3, 5)));
+    }
+
+
+    /*
+     * 在随机的映射集合上与之前的二分查找算法比较.
+     */
+    @Test
+    public void testAgainstReference() {
+        Random random = new Random(21);
+        for (int round = 0; round < 200; round++) {
+            String[] exact = randomPaths(random, random.nextInt(20));
+            String[] wildcard = randomPaths(random, random.nextInt(10));
+            if (random.nextInt(4) == 0) {
+                wildcard = append(wildcard, "");
+            }
+            String[] extension = new String[random.nextInt(5)];
+            for (int i = 0; i < extension.length; i++) {
+                extension[i] = SEGMENTS[random.nextInt(SEGMENTS.length)];
+            }
+            exact = unique(exact);
+            wildcard = unique(wildcard);
+            extension = unique(extension);
+
+            MappedWrapper[] exactWrappers = createWrappers(exact);
+            MappedWrapper[] wildcardWrappers = createWrappers(wildcard);
+            MappedWrapper[] extensionWrappers = createWrappers(extension);
+            WrapperTrie trie = new WrapperTrie(exactWrappers, wildcardWrappers,
+                    extensionWrappers);
+            WrapperLookupReference reference = new WrapperLookupReference(exactWrappers,
+                    wildcardWrappers, extensionWrappers);
+
+            for (int i = 0; i < 200; i++) {
+                String path = randomPath(random);
+                if (random.nextBoolean()) {
+                    path = path + "/";
+                }
+                // 路径位于一个更大的缓冲区的中间
+                char[] buf = ("xx" + path + "yy").toCharArray();
+                int end = 2 + path.length();
+                Assert.assertSame(path, reference.findExact(path),
+                        trie.findExact(buf, 2, end));
+                Assert.assertSame(path, reference.findWildcard(path),
+                        trie.findWildcard(buf, 2, end));
+                String ext = SEGMENTS[random.nextInt(SEGMENTS.length)];
+                Assert.assertSame(ext, reference.findExtension(ext),
+                        trie.findExtension(ext.toCharArray(), 0, ext.length()));
+            }
+        }
+    }
+
+
+    private static MappedWrapper find(WrapperTrie trie, String path, boolean exact) {
+        char[] buf = chars(path);
+        if (exact) {
+            return trie.findExact(buf, 0, buf.length);
+        }
+        return trie.findWildcard(buf, 0, buf.length);
+    }
+
+
+    private static String name(MappedWrapper wrapper) {
+        return wrapper == null ? null : wrapper.name;
+    }
+
+
+    private static char[] chars(String s) {
+        return s.toCharArray();
+    }
+
+
+    static WrapperTrie createTrie(String[] exact, String[] wildcard, String[] extension) {
+        return new WrapperTrie(createWrappers(exact), createWrappers(wildcard),
+                createWrappers(extension));
+    }
+
+
+    static MappedWrapper[] createWrappers(String[] names) {
+        MappedWrapper[] result = new MappedWrapper[names.length];
+        for (int i = 0; i < names.length; i++) {
+            result[i] = new MappedWrapper(names[i], null, false, false);
+        }
+        return result;
+    }
+
+
+    private static String[] randomPaths(Random random, int count) {
+        String[] result = new String[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = randomPath(random);
+        }
+        return result;
+    }
+
+
+    private static String randomPath(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int depth = 1 + random.nextInt(4);
+        for (int i = 0; i < depth; i++) {
+            sb.append('/').append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+        }
+        return sb.toString();
+    }
+
+
+    private static String[] append(String[] array, String s) {
+        String[] result = new String[array.length + 1];
+        System.arraycopy(array, 0, result, 0, array.length);
+        result[array.length] = s;
+        return result;
+    }
+
+
+    private static String[] unique(String[] names) {
+        Map<String,Boolean> map = new LinkedHashMap<>();
+        for (String name : names) {
+            map.put(name, Boolean.TRUE);
+        }
+        return map.keySet().toArray(new String[map.size()]);
+    }
+}
@@ -0,0 +1,128 @@
+package org.apache.catalina.mapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.mapper.Mapper.MappedWrapper;
+
+/**
+ * 比较 {@link WrapperTrie} 和之前的二分查找算法 ({@link WrapperLookupReference}) 解析包装器的时间.
+ * 按照 Mapper 的顺序, 先查找精确映射, 然后通配符映射, 最后扩展名映射.
+ */
+public class TesterPerformanceWrapperTrie {
+
+    private static final int ITERATIONS = 2000000;
+
+
+    @Test
+    public void testPerformance() {
+        List<String> exact = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            for (int j = 0; j < 10; j++) {
+                exact.add("/module" + i + "/action" + j);
+            }
+        }
+        List<String> wildcard = new ArrayList<>();
+        wildcard.add("/static");
+        for (int i = 0; i < 30; i++) {
+            wildcard.add("/api/v" + i);
+            wildcard.add("/api/v" + i + "/admin/reports");
+        }
+        String[] extension = { "jsp", "jspx", "do", "json" };
+
+        MappedWrapper[] exactWrappers =
+                TestWrapperTrie.createWrappers(exact.toArray(new String[exact.size()]));
+        MappedWrapper[] wildcardWrappers =
+                TestWrapperTrie.createWrappers(wildcard.toArray(new String[wildcard.size()]));
+        MappedWrapper[] extensionWrappers = TestWrapperTrie.createWrappers(extension);
+        WrapperTrie trie = new WrapperTrie(exactWrappers, wildcardWrappers, extensionWrappers);
+        WrapperLookupReference reference =
+                new WrapperLookupReference(exactWrappers, wildcardWrappers, extensionWrappers);
+
+        String[] paths = {
+                "/module7/action3",
+                "/api/v12/users/1234/orders",
+                "/api/v29/admin/reports/2017/q3",
+                "/static/css/site.css",
+                "/pages/catalog/index.jsp",
+                "/unmapped/deep/path/to/resource",
+        };
+        char[][] bufs = new char[paths.length][];
+        for (int i = 0; i < paths.length; i++) {
+            bufs[i] = paths[i].toCharArray();
+            // 两种实现必须给出相同的结果
+            Assert.assertSame(lookup(reference, paths[i]), lookup(trie, bufs[i]));
+        }
+
+        // Warm up
+        for (int i = 0; i < ITERATIONS / 10; i++) {
+            lookup(reference, paths[i % paths.length]);
+            lookup(trie, bufs[i % bufs.length]);
+        }
+
+        long start = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            if (lookup(reference, paths[i % paths.length]) != null) {
+                found++;
+            }
+        }
+        long referenceTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            if (lookup(trie, bufs[i % bufs.length]) != null) {
+                found--;
+            }
+        }
+        long trieTime = System.nanoTime() - start;
+
+        Assert.assertEquals(0, found);
+        System.out.println("Binary search: " + ITERATIONS + " lookups, " +
+                (referenceTime / 1000000) + "ms");
+        System.out.println("WrapperTrie: " + ITERATIONS + " lookups, " +
+                (trieTime / 1000000) + "ms");
+    }
+
+
+    private static MappedWrapper lookup(WrapperLookupReference reference, String path) {
+        MappedWrapper result = reference.findExact(path);
+        if (result == null) {
+            result = reference.findWildcard(path);
+        }
+        if (result == null) {
+            int slash = path.lastIndexOf('/');
+            int period = path.lastIndexOf('.');
+            if (period > slash) {
+                result = reference.findExtension(path.substring(period + 1));
+            }
+        }
+        return result;
+    }
+
+
+    private static MappedWrapper lookup(WrapperTrie trie, char[] buf) {
+        MappedWrapper result = trie.findExact(buf, 0, buf.length);
+        if (result == null) {
+            result = trie.findWildcard(buf, 0, buf.length);
+        }
+        if (result == null) {
+            int slash = -1;
+            int period = -1;
+            for (int i = buf.length - 1; i >= 0 && slash < 0; i--) {
+                if (buf[i] == '/') {
+                    slash = i;
+                } else if (buf[i] == '.' && period < 0) {
+                    period = i;
+                }
+            }
+            if (period > slash) {
+                result = trie.findExtension(buf, period + 1, buf.length);
+            }
+        }
+        return result;
+    }
+}
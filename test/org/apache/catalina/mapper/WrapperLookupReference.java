@@ -0,0 +1,136 @@
+package org.apache.catalina.mapper;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.catalina.mapper.Mapper.MappedWrapper;
+
+/**
+ * 包装器映射在 {@link WrapperTrie} 之前的查找算法: 在排序的数组中二分查找,
+ * 通配符映射从上下文的嵌套深度开始, 在每个 '/' 处截断路径后再次查找. 用于与 {@link WrapperTrie} 比较.
+ */
+final class WrapperLookupReference {
+
+    private static final Comparator<MappedWrapper> NAME_ORDER = new Comparator<MappedWrapper>() {
+        @Override
+        public int compare(MappedWrapper o1, MappedWrapper o2) {
+            return o1.name.compareTo(o2.name);
+        }
+    };
+
+    private final MappedWrapper[] exactWrappers;
+    private final MappedWrapper[] wildcardWrappers;
+    private final MappedWrapper[] extensionWrappers;
+    private final int nesting;
+
+
+    WrapperLookupReference(MappedWrapper[] exactWrappers, MappedWrapper[] wildcardWrappers,
+            MappedWrapper[] extensionWrappers) {
+        this.exactWrappers = sort(exactWrappers);
+        this.wildcardWrappers = sort(wildcardWrappers);
+        this.extensionWrappers = sort(extensionWrappers);
+        int nesting = 0;
+        for (MappedWrapper wrapper : wildcardWrappers) {
+            nesting = Math.max(nesting, slashCount(wrapper.name));
+        }
+        this.nesting = nesting;
+    }
+
+
+    MappedWrapper findExact(String path) {
+        return exactFind(exactWrappers, path);
+    }
+
+
+    MappedWrapper findWildcard(String path) {
+        String current = path;
+        int lastSlash = -1;
+        int pos = find(wildcardWrappers, current);
+        while (pos >= 0) {
+            String name = wildcardWrappers[pos].name;
+            if (current.startsWith(name)) {
+                if (current.length() == name.length() || current.charAt(name.length()) == '/') {
+                    return wildcardWrappers[pos];
+                }
+            }
+            if (lastSlash == -1) {
+                lastSlash = nthSlash(current, nesting + 1);
+            } else {
+                lastSlash = lastSlash(current);
+            }
+            current = current.substring(0, lastSlash);
+            pos = find(wildcardWrappers, current);
+        }
+        return null;
+    }
+
+
+    MappedWrapper findExtension(String extension) {
+        return exactFind(extensionWrappers, extension);
+    }
+
+
+    private static MappedWrapper[] sort(MappedWrapper[] wrappers) {
+        MappedWrapper[] result = wrappers.clone();
+        Arrays.sort(result, NAME_ORDER);
+        return result;
+    }
+
+
+    /*
+     * @return 名称小于或等于 name 的最后一个元素的位置, 或者 -1
+     */
+    private static int find(MappedWrapper[] map, String name) {
+        int a = 0;
+        int b = map.length - 1;
+        int result = -1;
+        while (a <= b) {
+            int i = (a + b) >>> 1;
+            if (map[i].name.compareTo(name) <= 0) {
+                result = i;
+                a = i + 1;
+            } else {
+                b = i - 1;
+            }
+        }
+        return result;
+    }
+
+
+    private static MappedWrapper exactFind(MappedWrapper[] map, String name) {
+        int pos = find(map, name);
+        if (pos >= 0 && map[pos].name.equals(name)) {
+            return map[pos];
+        }
+        return null;
+    }
+
+
+    private static int lastSlash(String name) {
+        int pos = name.lastIndexOf('/');
+        return pos < 0 ? 0 : pos;
+    }
+
+
+    private static int nthSlash(String name, int n) {
+        int pos = -1;
+        for (int i = 0; i < n; i++) {
+            pos = name.indexOf('/', pos + 1);
+            if (pos < 0) {
+                return name.length();
+            }
+        }
+        return pos;
+    }
+
+
+    private static int slashCount(String name) {
+        int count = 0;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) == '/') {
+                count++;
+            }
+        }
+        return count;
+    }
+}
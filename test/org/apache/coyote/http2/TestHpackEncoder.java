@@ -0,0 +1,214 @@
+package org.apache.coyote.http2;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.tomcat.util.http.MimeHeaders;
+
+/**
+ * 通过 {@link HpackDecoder} 解码 {@link HpackEncoder} 的输出, 检查动态表的环形缓冲区和索引在添加, 淘汰和扩容之后仍与解码器一致.
+ */
+public class TestHpackEncoder {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        MimeHeaders headers = new MimeHeaders();
+        headers.addValue("header1").setString("value1");
+        headers.addValue(":status").setString("200");
+        headers.addValue("header2").setString("value2");
+        headers.addValue("header1").setString("value3");
+
+        HpackEncoder encoder = new HpackEncoder();
+        HpackDecoder decoder = new HpackDecoder();
+        // 伪 header 在前
+        String[][] expected = {
+                {":status", "200"}, {"header1", "value1"}, {"header2", "value2"},
+                {"header1", "value3"} };
+        Assert.assertArrayEquals(expected, roundTrip(encoder, decoder, headers, 512));
+        Assert.assertArrayEquals(expected, roundTrip(encoder, decoder, headers, 512));
+    }
+
+
+    @Test
+    public void testDynamicTableReuse() throws Exception {
+        MimeHeaders headers = new MimeHeaders();
+        for (int i = 0; i < 50; i++) {
+            headers.addValue("x-header-" + i).setString("value-" + i);
+        }
+
+        HpackEncoder encoder = new HpackEncoder();
+        HpackDecoder decoder = new HpackDecoder();
+        ByteBuffer output = ByteBuffer.allocate(4096);
+        encoder.encode(headers, output);
+        output.flip();
+        decoder.setHeaderEmitter(new HeaderCollector());
+        decoder.decode(output);
+
+        // 所有条目都在动态表中 (需要扩容环形缓冲区), 每个 header 编码为一个字节的索引
+        output.clear();
+        encoder.encode(headers, output);
+        output.flip();
+        Assert.assertEquals(50, output.remaining());
+        HeaderCollector collector = new HeaderCollector();
+        decoder.setHeaderEmitter(collector);
+        decoder.decode(output);
+        Assert.assertEquals(50, collector.headers.size());
+        for (int i = 0; i < 50; i++) {
+            Assert.assertEquals("x-header-" + i, collector.headers.get(i)[0]);
+            Assert.assertEquals("value-" + i, collector.headers.get(i)[1]);
+        }
+    }
+
+
+    @Test
+    public void testNotIndexed() throws Exception {
+        MimeHeaders headers = new MimeHeaders();
+        headers.addValue("date").setString("Thu, 01 Jan 1970 00:00:00 GMT");
+
+        HpackEncoder encoder = new HpackEncoder();
+        HpackDecoder decoder = new HpackDecoder();
+        roundTrip(encoder, decoder, headers, 512);
+        Assert.assertEquals(0, decoder.getFilledTableSlots());
+    }
+
+
+    @Test
+    public void testEvictionSmallTable() throws Exception {
+        doTestRandom(128, 1000);
+    }
+
+
+    @Test
+    public void testEvictionDefaultTable() throws Exception {
+        doTestRandom(Hpack.DEFAULT_TABLE_SIZE, 1000);
+    }
+
+
+    @Test
+    public void testTableSizeChanges() throws Exception {
+        HpackEncoder encoder = new HpackEncoder();
+        HpackDecoder decoder = new HpackDecoder();
+        Random random = new Random(1);
+        int[] sizes = { 4096, 64, 0, 1024, 200, 4096 };
+        for (int size : sizes) {
+            encoder.setMaxTableSize(size);
+            for (int i = 0; i < 50; i++) {
+                MimeHeaders headers = randomHeaders(random);
+                Assert.assertArrayEquals(toArray(headers),
+                        roundTrip(encoder, decoder, headers, 8192));
+                checkIndexed(encoder, decoder);
+            }
+            Assert.assertTrue(decoder.getCurrentMemorySize() <= size);
+        }
+    }
+
+
+    private void doTestRandom(int tableSize, int blocks) throws Exception {
+        HpackEncoder encoder = new HpackEncoder();
+        HpackDecoder decoder = new HpackDecoder();
+        encoder.setMaxTableSize(tableSize);
+        Random random = new Random(tableSize);
+        for (int i = 0; i < blocks; i++) {
+            MimeHeaders headers = randomHeaders(random);
+            Assert.assertArrayEquals("Block " + i, toArray(headers),
+                    roundTrip(encoder, decoder, headers, 8192));
+            checkIndexed(encoder, decoder);
+        }
+    }
+
+
+    /*
+     * 解码器的动态表中的每个条目都必须被编码器找到, 编码为索引.
+     * 这检查淘汰和扩容之后, 编码器的索引仍然与表一致. 找到的条目不会再次添加, 因此检查不改变表.
+     */
+    private static void checkIndexed(HpackEncoder encoder, HpackDecoder decoder)
+            throws HpackException {
+        for (int i = 1; i <= decoder.getFilledTableSlots(); i++) {
+            Hpack.HeaderField entry = decoder.getHeaderTable()[decoder.getRealIndex(i)];
+            MimeHeaders single = new MimeHeaders();
+            single.addValue(entry.name).setString(entry.value);
+            ByteBuffer output = ByteBuffer.allocate(64);
+            encoder.encode(single, output);
+            Assert.assertTrue(entry.name + ": " + entry.value, (output.get(0) & 0x80) != 0);
+            output.flip();
+            HeaderCollector collector = new HeaderCollector();
+            decoder.setHeaderEmitter(collector);
+            decoder.decode(output);
+            Assert.assertEquals(entry.name, collector.headers.get(0)[0]);
+            Assert.assertEquals(entry.value, collector.headers.get(0)[1]);
+        }
+    }
+
+
+    /*
+     * 少量的名称和值, 因此同名条目, 同名同值条目和淘汰都会频繁发生.
+     */
+    private static MimeHeaders randomHeaders(Random random) {
+        MimeHeaders headers = new MimeHeaders();
+        if (random.nextBoolean()) {
+            headers.addValue(":status").setString(random.nextBoolean() ? "200" : "404");
+        }
+        int count = 1 + random.nextInt(12);
+        for (int i = 0; i < count; i++) {
+            headers.addValue("x-name-" + random.nextInt(16)).setString(
+                    "value-" + random.nextInt(16));
+        }
+        return headers;
+    }
+
+
+    /*
+     * 编码器先写伪 header, 再按顺序写其它 header.
+     */
+    private static String[][] toArray(MimeHeaders headers) {
+        List<String[]> result = new ArrayList<>();
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < headers.size(); i++) {
+                String name = headers.getName(i).toString();
+                if ((name.charAt(0) == ':') == (pass == 0)) {
+                    result.add(new String[] { name, headers.getValue(i).toString() });
+                }
+            }
+        }
+        return result.toArray(new String[result.size()][]);
+    }
+
+
+    private static String[][] roundTrip(HpackEncoder encoder, HpackDecoder decoder,
+            MimeHeaders headers, int bufferSize) throws HpackException {
+        ByteBuffer output = ByteBuffer.allocate(bufferSize);
+        Assert.assertEquals(HpackEncoder.State.COMPLETE, encoder.encode(headers, output));
+        output.flip();
+        HeaderCollector collector = new HeaderCollector();
+        decoder.setHeaderEmitter(collector);
+        decoder.decode(output);
+        Assert.assertFalse(output.hasRemaining());
+        return collector.headers.toArray(new String[collector.headers.size()][]);
+    }
+
+
+    private static class HeaderCollector implements HpackDecoder.HeaderEmitter {
+
+        private final List<String[]> headers = new ArrayList<>();
+
+        @Override
+        public void emitHeader(String name, String value) {
+            headers.add(new String[] { name, value });
+        }
+
+        @Override
+        public void setHeaderException(StreamException streamException) {
+            // NO-OP
+        }
+
+        @Override
+        public void validateHeaders() throws StreamException {
+            // NO-OP
+        }
+    }
+}
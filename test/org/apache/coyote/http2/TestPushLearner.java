@@ -0,0 +1,51 @@
+package org.apache.coyote.http2;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestPushLearner {
+
+    @Test
+    public void testMinObservations() {
+        PushLearner learner = new PushLearner(10, 10, 2);
+        learner.learn("localhost", "/index.html", "/style.css", "1");
+        learner.learn("localhost", "/index.html", "/style.css", "1");
+        Assert.assertNull(learner.getPushSet("localhost", "/index.html"));
+
+        learner.learn("localhost", "/index.html", "/style.css", "2");
+        Assert.assertArrayEquals(new String[] { "/style.css" },
+                learner.getPushSet("localhost", "/index.html"));
+
+        learner.forget("localhost", "/index.html", "/style.css");
+        Assert.assertNull(learner.getPushSet("localhost", "/index.html"));
+    }
+
+
+    @Test
+    public void testHostsSeparate() {
+        PushLearner learner = new PushLearner(10, 10, 1);
+        learner.learn("a.example.org", "/index.html", "/a.css", "1");
+        learner.learn("b.example.org", "/index.html", "/b.css", "2");
+
+        Assert.assertArrayEquals(new String[] { "/a.css" },
+                learner.getPushSet("a.example.org", "/index.html"));
+        Assert.assertArrayEquals(new String[] { "/b.css" },
+                learner.getPushSet("B.Example.org", "/index.html"));
+        Assert.assertNull(learner.getPushSet("c.example.org", "/index.html"));
+
+        learner.forget("a.example.org", "/index.html", "/b.css");
+        Assert.assertArrayEquals(new String[] { "/b.css" },
+                learner.getPushSet("b.example.org", "/index.html"));
+    }
+
+
+    @Test
+    public void testMaxPages() {
+        PushLearner learner = new PushLearner(2, 10, 1);
+        learner.learn("localhost", "/1", "/r", "1");
+        learner.learn("localhost", "/2", "/r", "1");
+        learner.learn("localhost", "/3", "/r", "1");
+        Assert.assertNull(learner.getPushSet("localhost", "/1"));
+        Assert.assertNotNull(learner.getPushSet("localhost", "/3"));
+    }
+}
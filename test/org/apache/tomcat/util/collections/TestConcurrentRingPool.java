@@ -0,0 +1,133 @@
+package org.apache.tomcat.util.collections;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestConcurrentRingPool {
+
+    @Test
+    public void testEmpty() {
+        ConcurrentRingPool<Object> pool = new ConcurrentRingPool<>();
+        Assert.assertNull(pool.pop());
+    }
+
+
+    @Test
+    public void testPushPop() {
+        ConcurrentRingPool<Object> pool = new ConcurrentRingPool<>(4);
+        Object[] objects = new Object[4];
+        for (int i = 0; i < objects.length; i++) {
+            objects[i] = new Object();
+            Assert.assertTrue(pool.push(objects[i]));
+        }
+        for (int i = 0; i < objects.length; i++) {
+            Assert.assertSame(objects[i], pool.pop());
+        }
+        Assert.assertNull(pool.pop());
+    }
+
+
+    @Test
+    public void testLimitRoundedUp() {
+        ConcurrentRingPool<Object> pool = new ConcurrentRingPool<>(3);
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(pool.push(new Object()));
+        }
+        Assert.assertFalse(pool.push(new Object()));
+    }
+
+
+    @Test
+    public void testFull() {
+        ConcurrentRingPool<Object> pool = new ConcurrentRingPool<>(2);
+        Assert.assertTrue(pool.push("a"));
+        Assert.assertTrue(pool.push("b"));
+        Assert.assertFalse(pool.push("c"));
+        Assert.assertEquals("a", pool.pop());
+        // 槽位在环中移交, 因此可以再次使用
+        Assert.assertTrue(pool.push("c"));
+        Assert.assertEquals("b", pool.pop());
+        Assert.assertEquals("c", pool.pop());
+        Assert.assertNull(pool.pop());
+    }
+
+
+    @Test
+    public void testZeroLimit() {
+        ConcurrentRingPool<Object> pool = new ConcurrentRingPool<>(0);
+        Assert.assertFalse(pool.push(new Object()));
+        Assert.assertNull(pool.pop());
+    }
+
+
+    @Test
+    public void testUnlimited() {
+        ConcurrentRingPool<Object> pool = new ConcurrentRingPool<>(-1);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(pool.push(new Object()));
+        }
+        pool.clear();
+        Assert.assertNull(pool.pop());
+    }
+
+
+    @Test
+    public void testConcurrentPushPop() throws InterruptedException {
+        final int threadCount = 4;
+        final int objectCount = 16;
+        final int iterations = 200000;
+        final ConcurrentRingPool<Object> pool = new ConcurrentRingPool<>(objectCount);
+        for (int i = 0; i < objectCount; i++) {
+            Assert.assertTrue(pool.push(new Object()));
+        }
+        final Map<Object,Boolean> held = new IdentityHashMap<>();
+        final AtomicBoolean failed = new AtomicBoolean(false);
+
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < iterations; j++) {
+                        Object obj = pool.pop();
+                        if (obj == null) {
+                            continue;
+                        }
+                        // 同一个对象不能同时借给两个线程
+                        synchronized (held) {
+                            if (held.put(obj, Boolean.TRUE) != null) {
+                                failed.set(true);
+                            }
+                        }
+                        synchronized (held) {
+                            held.remove(obj);
+                        }
+                        // 对象的数量不超过容量, 池永远不会满
+                        if (!pool.push(obj)) {
+                            failed.set(true);
+                        }
+                    }
+                }
+            };
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertFalse(failed.get());
+        // 所有对象都已归还, 且没有重复
+        Map<Object,Boolean> returned = new IdentityHashMap<>();
+        Object obj;
+        while ((obj = pool.pop()) != null) {
+            Assert.assertNull(returned.put(obj, Boolean.TRUE));
+        }
+        Assert.assertEquals(objectCount, returned.size());
+    }
+}
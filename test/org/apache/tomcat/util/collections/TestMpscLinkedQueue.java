@@ -0,0 +1,122 @@
+package org.apache.tomcat.util.collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestMpscLinkedQueue {
+
+    private static final class Item extends MpscLinkedQueue.Node {
+        private final int producer;
+        private final int value;
+
+        private Item(int producer, int value) {
+            this.producer = producer;
+            this.value = value;
+        }
+    }
+
+
+    @Test
+    public void testEmpty() {
+        MpscLinkedQueue<Item> queue = new MpscLinkedQueue<>();
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertNull(queue.poll());
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+
+    @Test
+    public void testFifo() {
+        MpscLinkedQueue<Item> queue = new MpscLinkedQueue<>();
+        Item[] items = new Item[10];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new Item(0, i);
+            queue.offer(items[i]);
+        }
+        Assert.assertFalse(queue.isEmpty());
+        for (int i = 0; i < items.length; i++) {
+            Assert.assertSame(items[i], queue.poll());
+        }
+        Assert.assertNull(queue.poll());
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+
+    @Test
+    public void testInterleaved() {
+        MpscLinkedQueue<Item> queue = new MpscLinkedQueue<>();
+        Item a = new Item(0, 0);
+        Item b = new Item(0, 1);
+
+        queue.offer(a);
+        Assert.assertSame(a, queue.poll());
+        Assert.assertNull(queue.poll());
+
+        // 出队之后可以再次入队
+        queue.offer(a);
+        queue.offer(b);
+        Assert.assertSame(a, queue.poll());
+        queue.offer(a);
+        Assert.assertSame(b, queue.poll());
+        Assert.assertSame(a, queue.poll());
+        Assert.assertNull(queue.poll());
+    }
+
+
+    @Test
+    public void testClear() {
+        MpscLinkedQueue<Item> queue = new MpscLinkedQueue<>();
+        for (int i = 0; i < 5; i++) {
+            queue.offer(new Item(0, i));
+        }
+        queue.clear();
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertNull(queue.poll());
+    }
+
+
+    @Test
+    public void testMultipleProducers() throws InterruptedException {
+        final int producerCount = 4;
+        final int itemCount = 100000;
+        final MpscLinkedQueue<Item> queue = new MpscLinkedQueue<>();
+
+        Thread[] producers = new Thread[producerCount];
+        for (int i = 0; i < producerCount; i++) {
+            final int producer = i;
+            producers[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < itemCount; j++) {
+                        queue.offer(new Item(producer, j));
+                    }
+                }
+            };
+        }
+        for (Thread producer : producers) {
+            producer.start();
+        }
+
+        // 每个生产者的元素必须按顺序出队, 不丢失也不重复
+        int[] next = new int[producerCount];
+        int received = 0;
+        long deadline = System.currentTimeMillis() + 60000;
+        while (received < producerCount * itemCount) {
+            Item item = queue.poll();
+            if (item == null) {
+                Assert.assertTrue("Timed out", System.currentTimeMillis() < deadline);
+                Thread.yield();
+                continue;
+            }
+            Assert.assertEquals(next[item.producer], item.value);
+            next[item.producer]++;
+            received++;
+        }
+
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        Assert.assertNull(queue.poll());
+        Assert.assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,81 @@
+package org.apache.tomcat.util.collections;
+
+import org.junit.Test;
+
+/**
+ * 比较 {@link ConcurrentRingPool} 和 {@link SynchronizedStack} 作为对象池时的吞吐量, 多个线程同时获取和归还对象.
+ */
+public class TesterPerformanceConcurrentRingPool {
+
+    private static final int THREAD_COUNT = 4;
+    private static final int ITERATIONS = 10000000;
+
+
+    @Test
+    public void testSynchronizedStack() throws InterruptedException {
+        final SynchronizedStack<Object> stack = new SynchronizedStack<>();
+        run("SynchronizedStack", new Pool() {
+            @Override
+            public Object pop() {
+                return stack.pop();
+            }
+            @Override
+            public void push(Object obj) {
+                stack.push(obj);
+            }
+        });
+    }
+
+
+    @Test
+    public void testConcurrentRingPool() throws InterruptedException {
+        final ConcurrentRingPool<Object> ring = new ConcurrentRingPool<>();
+        run("ConcurrentRingPool", new Pool() {
+            @Override
+            public Object pop() {
+                return ring.pop();
+            }
+            @Override
+            public void push(Object obj) {
+                ring.push(obj);
+            }
+        });
+    }
+
+
+    private void run(String name, final Pool pool) throws InterruptedException {
+        Thread[] threads = new Thread[THREAD_COUNT];
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < ITERATIONS; j++) {
+                        Object obj = pool.pop();
+                        if (obj == null) {
+                            obj = new Object();
+                        }
+                        pool.push(obj);
+                    }
+                }
+            };
+        }
+
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long end = System.nanoTime();
+
+        System.out.println(name + ": " + THREAD_COUNT + " threads, " + ITERATIONS +
+                " pop/push each, " + ((end - start) / 1000000) + "ms");
+    }
+
+
+    private interface Pool {
+        Object pop();
+        void push(Object obj);
+    }
+}
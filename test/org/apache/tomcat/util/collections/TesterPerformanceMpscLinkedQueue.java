@@ -0,0 +1,88 @@
+package org.apache.tomcat.util.collections;
+
+import org.junit.Test;
+
+/**
+ * 比较 {@link MpscLinkedQueue} 和 {@link SynchronizedQueue} 作为轮询器事件队列时的吞吐量:
+ * 多个线程入队, 一个线程出队.
+ */
+public class TesterPerformanceMpscLinkedQueue {
+
+    private static final int PRODUCER_COUNT = 4;
+    private static final int ITERATIONS = 5000000;
+
+
+    @Test
+    public void testSynchronizedQueue() throws InterruptedException {
+        final SynchronizedQueue<Event> queue = new SynchronizedQueue<>();
+        run("SynchronizedQueue", new Queue() {
+            @Override
+            public void offer(Event event) {
+                queue.offer(event);
+            }
+            @Override
+            public Event poll() {
+                return queue.poll();
+            }
+        });
+    }
+
+
+    @Test
+    public void testMpscLinkedQueue() throws InterruptedException {
+        final MpscLinkedQueue<Event> queue = new MpscLinkedQueue<>();
+        run("MpscLinkedQueue", new Queue() {
+            @Override
+            public void offer(Event event) {
+                queue.offer(event);
+            }
+            @Override
+            public Event poll() {
+                return queue.poll();
+            }
+        });
+    }
+
+
+    private void run(String name, final Queue queue) throws InterruptedException {
+        Thread[] producers = new Thread[PRODUCER_COUNT];
+        for (int i = 0; i < PRODUCER_COUNT; i++) {
+            producers[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < ITERATIONS; j++) {
+                        queue.offer(new Event());
+                    }
+                }
+            };
+        }
+
+        long start = System.nanoTime();
+        for (Thread producer : producers) {
+            producer.start();
+        }
+        long remaining = (long) PRODUCER_COUNT * ITERATIONS;
+        while (remaining > 0) {
+            if (queue.poll() != null) {
+                remaining--;
+            }
+        }
+        long end = System.nanoTime();
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        System.out.println(name + ": " + PRODUCER_COUNT + " producers, " + ITERATIONS +
+                " events each, " + ((end - start) / 1000000) + "ms");
+    }
+
+
+    private static final class Event extends MpscLinkedQueue.Node {
+    }
+
+
+    private interface Queue {
+        void offer(Event event);
+        Event poll();
+    }
+}
@@ -0,0 +1,286 @@
+package org.apache.tomcat.util.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.tomcat.util.http.Parameters.FailReason;
+
+public class TestFormDecoder {
+
+    private Parameters parameters;
+    private FormDecoder decoder;
+
+
+    @Before
+    public void setUp() {
+        parameters = new Parameters();
+        parameters.setCharset(StandardCharsets.UTF_8);
+        decoder = new FormDecoder();
+    }
+
+
+    @Test
+    public void testSimple() throws IOException {
+        decode("a=1&b=2&a=3", 1024, true, -1);
+        Assert.assertArrayEquals(new String[] { "1", "3" }, parameters.getParameterValues("a"));
+        Assert.assertEquals("2", parameters.getParameter("b"));
+        Assert.assertFalse(parameters.isParseFailed());
+    }
+
+
+    @Test
+    public void testEmpty() throws IOException {
+        decode("", 1024, true, -1);
+        Assert.assertFalse(parameters.getParameterNames().hasMoreElements());
+    }
+
+
+    @Test
+    public void testChunkBoundaries() throws IOException {
+        String body = "name=%E4%B8%AD%E6%96%87&x=a+b&empty=&flag&last=%26%3D";
+        // 每个可能的块大小, 包括在 '&' 和转义序列中间分割
+        for (int chunkSize = 1; chunkSize <= body.length(); chunkSize++) {
+            for (int known = 0; known < 2; known++) {
+                setUp();
+                decode(body, chunkSize, known == 0, -1);
+                String message = "chunkSize " + chunkSize + " known " + known;
+                Assert.assertEquals(message, "中文", parameters.getParameter("name"));
+                Assert.assertEquals(message, "a b", parameters.getParameter("x"));
+                Assert.assertEquals(message, "", parameters.getParameter("empty"));
+                Assert.assertEquals(message, "", parameters.getParameter("flag"));
+                Assert.assertEquals(message, "&=", parameters.getParameter("last"));
+                Assert.assertFalse(message, parameters.isParseFailed());
+            }
+        }
+    }
+
+
+    @Test
+    public void testTrailingSeparator() throws IOException {
+        decode("a=1&b=2&", 3, true, -1);
+        Assert.assertEquals("1", parameters.getParameter("a"));
+        Assert.assertEquals("2", parameters.getParameter("b"));
+        Assert.assertFalse(parameters.isParseFailed());
+    }
+
+
+    @Test
+    public void testParameterLargerThanBuffer() throws IOException {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            value.append((char) ('a' + i % 26));
+        }
+        String body = "a=1&big=" + value + "&b=2";
+        for (int known = 0; known < 2; known++) {
+            setUp();
+            decode(body, 4096, known == 0, -1);
+            Assert.assertEquals("1", parameters.getParameter("a"));
+            Assert.assertEquals(value.toString(), parameters.getParameter("big"));
+            Assert.assertEquals("2", parameters.getParameter("b"));
+        }
+    }
+
+
+    @Test
+    public void testRandom() throws IOException {
+        Random random = new Random(1);
+        for (int round = 0; round < 200; round++) {
+            int count = random.nextInt(50);
+            StringBuilder body = new StringBuilder();
+            String[] values = new String[count];
+            for (int i = 0; i < count; i++) {
+                StringBuilder value = new StringBuilder();
+                int len = random.nextInt(random.nextInt(10) == 0 ? 10000 : 20);
+                for (int j = 0; j < len; j++) {
+                    value.append((char) ('a' + random.nextInt(26)));
+                }
+                values[i] = value.toString();
+                if (i > 0) {
+                    body.append('&');
+                }
+                body.append('p').append(i).append('=').append(value);
+            }
+            setUp();
+            decode(body.toString(), 1 + random.nextInt(10000), random.nextBoolean(), -1);
+            for (int i = 0; i < count; i++) {
+                Assert.assertEquals(values[i], parameters.getParameter("p" + i));
+            }
+        }
+    }
+
+
+    @Test
+    public void testTruncated() throws IOException {
+        byte[] bytes = "a=1&b=2&c=3".getBytes(StandardCharsets.ISO_8859_1);
+        decoder.start(parameters, new ChunkedInputStream(bytes, 4), bytes.length + 10, -1);
+        try {
+            while (!decoder.isFinished()) {
+                decoder.decodeNext();
+            }
+            Assert.fail();
+        } catch (EOFException e) {
+            // Expected
+        }
+        Assert.assertTrue(decoder.isFinished());
+        // 完整的参数已经处理, 不完整的参数被丢弃
+        Assert.assertEquals("1", parameters.getParameter("a"));
+        Assert.assertEquals("2", parameters.getParameter("b"));
+        Assert.assertNull(parameters.getParameter("c"));
+    }
+
+
+    @Test
+    public void testReadFailure() throws IOException {
+        final byte[] bytes = "a=1&b=2&c=3".getBytes(StandardCharsets.ISO_8859_1);
+        InputStream in = new ChunkedInputStream(bytes, 3) {
+            private int reads = 0;
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (++reads > 2) {
+                    throw new IOException();
+                }
+                return super.read(b, off, len);
+            }
+        };
+        decoder.start(parameters, in, bytes.length, -1);
+        int failures = 0;
+        while (!decoder.isFinished()) {
+            try {
+                decoder.decodeNext();
+            } catch (IOException e) {
+                failures++;
+            }
+            Assert.assertTrue(failures <= 1);
+        }
+        Assert.assertEquals(1, failures);
+        // 之前的块中的参数保留, 不完整的参数被丢弃
+        Assert.assertEquals("1", parameters.getParameter("a"));
+        Assert.assertNull(parameters.getParameter("b"));
+    }
+
+
+    @Test
+    public void testMaxLength() throws IOException {
+        String body = "a=1&b=2&c=3&d=4";
+        for (int known = 0; known < 2; known++) {
+            setUp();
+            try {
+                decode(body, 4, known == 0, 10);
+                Assert.fail();
+            } catch (IllegalStateException e) {
+                // Expected
+            }
+            Assert.assertTrue(decoder.isFinished());
+            // 之前的块中的参数保留
+            Assert.assertEquals("1", parameters.getParameter("a"));
+            Assert.assertEquals("2", parameters.getParameter("b"));
+            Assert.assertNull(parameters.getParameter("c"));
+            Assert.assertNull(parameters.getParameter("d"));
+        }
+    }
+
+
+    @Test
+    public void testMaxLengthExact() throws IOException {
+        String body = "a=1&b=2";
+        decode(body, 3, false, body.length());
+        Assert.assertEquals("1", parameters.getParameter("a"));
+        Assert.assertEquals("2", parameters.getParameter("b"));
+    }
+
+
+    @Test
+    public void testTooManyParameters() throws IOException {
+        StringBuilder body = new StringBuilder("p0=0");
+        for (int i = 1; i < 1000; i++) {
+            body.append("&p").append(i).append('=').append(i);
+        }
+        byte[] bytes = body.toString().getBytes(StandardCharsets.ISO_8859_1);
+        parameters.setLimit(5);
+        ChunkedInputStream in = new ChunkedInputStream(bytes, 16);
+        decoder.start(parameters, in, bytes.length, -1);
+        while (!decoder.isFinished()) {
+            decoder.decodeNext();
+        }
+        Assert.assertEquals(FailReason.TOO_MANY_PARAMETERS, parameters.getParseFailedReason());
+        Assert.assertEquals("4", parameters.getParameter("p4"));
+        Assert.assertNull(parameters.getParameter("p5"));
+        // 达到限制后不再读取主体
+        Assert.assertTrue(in.getPosition() < bytes.length);
+    }
+
+
+    @Test
+    public void testRecycle() throws IOException {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            value.append('x');
+        }
+        decode("big=" + value, 8192, true, -1);
+        decoder.recycle();
+        Assert.assertTrue(decoder.isFinished());
+
+        // 回收后可以用于下一个请求
+        parameters = new Parameters();
+        parameters.setCharset(StandardCharsets.UTF_8);
+        decode("a=1&b=2", 1, true, -1);
+        Assert.assertEquals("1", parameters.getParameter("a"));
+        Assert.assertEquals("2", parameters.getParameter("b"));
+        Assert.assertNull(parameters.getParameter("big"));
+    }
+
+
+    private void decode(String body, int chunkSize, boolean knownLength, long maxLength)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.ISO_8859_1);
+        decoder.start(parameters, new ChunkedInputStream(bytes, chunkSize),
+                knownLength ? bytes.length : -1, maxLength);
+        while (!decoder.isFinished()) {
+            decoder.decodeNext();
+        }
+    }
+
+
+    /**
+     * 每次读取最多返回 <code>chunkSize</code> 个字节.
+     */
+    private static class ChunkedInputStream extends InputStream {
+
+        private final byte[] bytes;
+        private final int chunkSize;
+        private int pos = 0;
+
+        private ChunkedInputStream(byte[] bytes, int chunkSize) {
+            this.bytes = bytes;
+            this.chunkSize = chunkSize;
+        }
+
+        private int getPosition() {
+            return pos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return pos < bytes.length ? bytes[pos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (pos == bytes.length) {
+                return -1;
+            }
+            int n = Math.min(Math.min(len, chunkSize), bytes.length - pos);
+            System.arraycopy(bytes, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+    }
+}